@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates the message bodies and attributes which the benchmarks work on.
+ */
+class BenchmarkData {
+	static final String S3_BUCKET_NAME = "benchmark-bucket";
+	static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/benchmark-queue";
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Generates a message body.
+	 *
+	 * @param length
+	 *            The number of chars of the body.
+	 * @param characters
+	 *            The mix of characters: "ascii" for one byte per char in
+	 *            UTF-8, "latin" for two, "cjk" for three, and "emoji" for
+	 *            surrogate pairs of four bytes per two chars, each mixed with
+	 *            ASCII.
+	 */
+	static String generateBody(int length, String characters) {
+		Random random = new Random(length);
+		StringBuilder body = new StringBuilder(length);
+		while (body.length() < length) {
+			if (random.nextInt(4) == 0 || "ascii".equals(characters)) {
+				body.append((char) ('a' + random.nextInt(26)));
+			} else if ("latin".equals(characters)) {
+				body.append((char) (0xC0 + random.nextInt(0x40)));
+			} else if ("cjk".equals(characters)) {
+				body.append((char) (0x4E00 + random.nextInt(0x5000)));
+			} else if ("emoji".equals(characters) && body.length() + 2 <= length) {
+				body.appendCodePoint(0x1F600 + random.nextInt(0x50));
+			} else if ("emoji".equals(characters)) {
+				body.append('a');
+			} else {
+				throw new IllegalArgumentException("Unknown character mix " + characters + ".");
+			}
+		}
+		return body.toString();
+	}
+
+	/**
+	 * Generates a few message attributes of the kind applications send along
+	 * with their messages.
+	 */
+	static Map<String, MessageAttributeValue> generateMessageAttributes() {
+		Map<String, MessageAttributeValue> messageAttributes = new HashMap<String, MessageAttributeValue>();
+		messageAttributes.put("ContentType", new MessageAttributeValue().withDataType("String").withStringValue(
+				"application/json"));
+		messageAttributes.put("CorrelationId", new MessageAttributeValue().withDataType("String").withStringValue(
+				"6f1c0c1e-5d3a-4e0b-9a59-2f3c7d6e8b41"));
+		messageAttributes.put("Priority", new MessageAttributeValue().withDataType("Number").withStringValue("5"));
+		return messageAttributes;
+	}
+
+	static AmazonSQSExtendedClient createClient(InMemoryAmazonSQS sqs, PayloadStore payloadStore) {
+		return new AmazonSQSExtendedClient(sqs, new ExtendedClientConfiguration().withLargePayloadSupportEnabled(
+				payloadStore, S3_BUCKET_NAME));
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sending, receiving and deleting one message through the extended
+ * client against an in-memory stand-in for Amazon SQS and an in-memory
+ * payload store, so that only the work done by the client itself is measured.
+ * Messages of the largest size go through the payload store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// The client logs every S3 operation at info level.
+@Fork(value = 1, jvmArgsAppend = "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog")
+public class EndToEndBenchmark {
+
+	@Param({ "1024", "65536", "1048576" })
+	public int bodyLength;
+
+	private AmazonSQSExtendedClient client;
+	private String body;
+
+	@Setup
+	public void setup() {
+		client = BenchmarkData.createClient(new InMemoryAmazonSQS(), new InMemoryPayloadStore());
+		body = BenchmarkData.generateBody(bodyLength, "ascii");
+	}
+
+	@Benchmark
+	public String sendReceiveDelete() {
+		SendMessageRequest sendMessageRequest = new SendMessageRequest(BenchmarkData.QUEUE_URL, body)
+				.withMessageAttributes(BenchmarkData.generateMessageAttributes());
+		client.sendMessage(sendMessageRequest);
+		Message message = client.receiveMessage(new ReceiveMessageRequest(BenchmarkData.QUEUE_URL)
+				.withMessageAttributeNames("All")).getMessages().get(0);
+		client.deleteMessage(BenchmarkData.QUEUE_URL, message.getReceiptHandle());
+		return message.getBody();
+	}
+}
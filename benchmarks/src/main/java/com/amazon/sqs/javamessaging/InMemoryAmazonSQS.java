@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory stand-in for Amazon SQS which supports sending, receiving and
+ * deleting messages. A received message is removed from its queue right
+ * away, as if its visibility timeout never expired, and deleting it always
+ * succeeds.
+ */
+class InMemoryAmazonSQS extends AbstractAmazonSQS {
+	private final ConcurrentMap<String, ConcurrentLinkedQueue<Message>> queues;
+	private final AtomicLong nextMessageId = new AtomicLong();
+
+	InMemoryAmazonSQS() {
+		queues = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Message>>();
+	}
+
+	@Override
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest) {
+		String messageId = enqueue(sendMessageRequest.getQueueUrl(), sendMessageRequest.getMessageBody(),
+				sendMessageRequest.getMessageAttributes());
+		return new SendMessageResult().withMessageId(messageId);
+	}
+
+	@Override
+	public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+		List<SendMessageBatchResultEntry> successful = new ArrayList<SendMessageBatchResultEntry>();
+		for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.getEntries()) {
+			String messageId = enqueue(sendMessageBatchRequest.getQueueUrl(), entry.getMessageBody(),
+					entry.getMessageAttributes());
+			successful.add(new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(messageId));
+		}
+		return new SendMessageBatchResult().withSuccessful(successful);
+	}
+
+	@Override
+	public ReceiveMessageResult receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+		int maxNumberOfMessages = receiveMessageRequest.getMaxNumberOfMessages() == null ? 1
+				: receiveMessageRequest.getMaxNumberOfMessages();
+		ConcurrentLinkedQueue<Message> queue = getQueue(receiveMessageRequest.getQueueUrl());
+		List<Message> messages = new ArrayList<Message>();
+		Message message;
+		while (messages.size() < maxNumberOfMessages && (message = queue.poll()) != null) {
+			messages.add(message);
+		}
+		return new ReceiveMessageResult().withMessages(messages);
+	}
+
+	@Override
+	public DeleteMessageResult deleteMessage(DeleteMessageRequest deleteMessageRequest) {
+		return new DeleteMessageResult();
+	}
+
+	@Override
+	public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+		List<DeleteMessageBatchResultEntry> successful = new ArrayList<DeleteMessageBatchResultEntry>();
+		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
+			successful.add(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+		}
+		return new DeleteMessageBatchResult().withSuccessful(successful);
+	}
+
+	private String enqueue(String queueUrl, String messageBody, Map<String, MessageAttributeValue> messageAttributes) {
+		String messageId = Long.toString(nextMessageId.incrementAndGet());
+		Message message = new Message().withMessageId(messageId).withReceiptHandle("receipt-handle-" + messageId)
+				.withBody(messageBody).withMessageAttributes(new HashMap<String, MessageAttributeValue>(
+						messageAttributes));
+		getQueue(queueUrl).add(message);
+		return messageId;
+	}
+
+	private ConcurrentLinkedQueue<Message> getQueue(String queueUrl) {
+		ConcurrentLinkedQueue<Message> queue = queues.get(queueUrl);
+		if (queue == null) {
+			ConcurrentLinkedQueue<Message> newQueue = new ConcurrentLinkedQueue<Message>();
+			queue = queues.putIfAbsent(queueUrl, newQueue);
+			if (queue == null) {
+				queue = newQueue;
+			}
+		}
+		return queue;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to decide whether a message is sent through
+ * Amazon S3, which is done for every message sent, across body sizes and
+ * character mixes. Encoding the body, which is how the size used to be
+ * computed, is measured as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSizeBenchmark {
+
+	@Param({ "1024", "65536", "262144" })
+	public int bodyLength;
+
+	@Param({ "ascii", "latin", "cjk", "emoji" })
+	public String characters;
+
+	private AmazonSQSExtendedClient client;
+	private String body;
+	private Map<String, MessageAttributeValue> messageAttributes;
+
+	@Setup
+	public void setup() {
+		client = BenchmarkData.createClient(new InMemoryAmazonSQS(), new InMemoryPayloadStore());
+		body = BenchmarkData.generateBody(bodyLength, characters);
+		messageAttributes = BenchmarkData.generateMessageAttributes();
+	}
+
+	@Benchmark
+	public boolean isLarge() {
+		return client.isLarge(body, client.getMsgAttributesSize(messageAttributes));
+	}
+
+	@Benchmark
+	public int getMsgAttributesSize() {
+		return client.getMsgAttributesSize(messageAttributes);
+	}
+
+	@Benchmark
+	public long utf8Length() {
+		return Utf8Length.of(body);
+	}
+
+	@Benchmark
+	public int encodedLength() {
+		return body.getBytes(StandardCharsets.UTF_8).length;
+	}
+}
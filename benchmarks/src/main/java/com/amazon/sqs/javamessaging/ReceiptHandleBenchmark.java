@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures embedding the location of a payload in the receipt handle of a
+ * received message, and reading it and the original receipt handle back when
+ * the message is deleted, in both receipt handle formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptHandleBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean compact;
+
+	private String receiptHandle;
+	private String s3Key;
+	private String embeddedReceiptHandle;
+
+	@Setup
+	public void setup() {
+		// Receipt handles are opaque strings of a few hundred characters.
+		StringBuilder handle = new StringBuilder();
+		while (handle.length() < 350) {
+			handle.append(UUID.randomUUID().toString().replace("-", ""));
+		}
+		receiptHandle = handle.substring(0, 350);
+		s3Key = UUID.randomUUID().toString();
+		embeddedReceiptHandle = ReceiptHandleCodec.encode(receiptHandle, BenchmarkData.S3_BUCKET_NAME, s3Key,
+				compact);
+	}
+
+	@Benchmark
+	public String embed() {
+		return ReceiptHandleCodec.encode(receiptHandle, BenchmarkData.S3_BUCKET_NAME, s3Key, compact);
+	}
+
+	@Benchmark
+	public String getOriginalReceiptHandle() {
+		return ReceiptHandleCodec.getOriginalReceiptHandle(embeddedReceiptHandle);
+	}
+
+	@Benchmark
+	public Object decode() {
+		return ReceiptHandleCodec.decode(embeddedReceiptHandle);
+	}
+}
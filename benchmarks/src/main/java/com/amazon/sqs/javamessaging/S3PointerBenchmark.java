@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing and reading the JSON pointer to an S3 object which is sent
+ * as the body of a message whose payload is in Amazon S3, in the legacy and
+ * the compact format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S3PointerBenchmark {
+
+	private MessageS3Pointer s3Pointer;
+	private String legacyJson;
+	private String compactJson;
+
+	@Setup
+	public void setup() throws IOException {
+		s3Pointer = new MessageS3Pointer(BenchmarkData.S3_BUCKET_NAME, UUID.randomUUID().toString());
+		s3Pointer.setPayloadSize(1048576);
+		s3Pointer.setCodec("gzip");
+		legacyJson = MessageS3PointerCodec.encode(s3Pointer, false);
+		compactJson = MessageS3PointerCodec.encode(s3Pointer, true);
+	}
+
+	@Benchmark
+	public String encodeLegacy() throws IOException {
+		return MessageS3PointerCodec.encode(s3Pointer, false);
+	}
+
+	@Benchmark
+	public String encodeCompact() throws IOException {
+		return MessageS3PointerCodec.encode(s3Pointer, true);
+	}
+
+	@Benchmark
+	public MessageS3Pointer decodeLegacy() throws IOException {
+		return MessageS3PointerCodec.decode(legacyJson);
+	}
+
+	@Benchmark
+	public MessageS3Pointer decodeCompact() throws IOException {
+		return MessageS3PointerCodec.decode(compactJson);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives the extended client with producer and consumer threads against
+ * simulated Amazon SQS and Amazon S3 services, and prints the throughput,
+ * latency percentiles, errors, and allocation and heap figures of each
+ * scenario. Scenarios are the combinations of the message size thresholds,
+ * producer counts, consumer counts and S3 executor sizes given as
+ * comma-separated lists.
+ *
+ * <p>
+ * Options, with their defaults:
+ * </p>
+ *
+ * <pre>
+ * --sizes=mix:4k@90,1m@10       message size distribution, see MessageSizeDistribution
+ * --messages=1000               messages sent by each producer
+ * --producers=4                 producer thread counts
+ * --consumers=4                 consumer thread counts
+ * --thresholds=262144           message size thresholds of the client
+ * --s3-threads=0                S3 executor sizes, 0 for none
+ * --sqs-latency-ms=5            SQS latency, plus up to --sqs-jitter-ms=2
+ * --sqs-bandwidth-mbps=0        SQS transfer rate in MB/s, 0 for unlimited
+ * --sqs-max-rps=0               SQS requests per second, 0 for unlimited
+ * --sqs-error-rate=0            probability of an SQS request failing
+ * --s3-latency-ms=20            S3 latency, plus up to --s3-jitter-ms=10
+ * --s3-bandwidth-mbps=100       S3 transfer rate in MB/s, 0 for unlimited
+ * --s3-max-rps=0                S3 requests per second, 0 for unlimited
+ * --s3-error-rate=0             probability of an S3 request failing
+ * --visibility-timeout=5        seconds until an undeleted message is redelivered
+ * --drain-timeout=60            seconds to wait for the last messages
+ * </pre>
+ */
+public class LoadTest {
+	private static final Map<String, String> DEFAULTS = new HashMap<String, String>();
+
+	static {
+		DEFAULTS.put("sizes", "mix:4k@90,1m@10");
+		DEFAULTS.put("messages", "1000");
+		DEFAULTS.put("producers", "4");
+		DEFAULTS.put("consumers", "4");
+		DEFAULTS.put("thresholds", Integer.toString(LoadTestScenario.SQS_MESSAGE_SIZE_LIMIT));
+		DEFAULTS.put("s3-threads", "0");
+		DEFAULTS.put("sqs-latency-ms", "5");
+		DEFAULTS.put("sqs-jitter-ms", "2");
+		DEFAULTS.put("sqs-bandwidth-mbps", "0");
+		DEFAULTS.put("sqs-max-rps", "0");
+		DEFAULTS.put("sqs-error-rate", "0");
+		DEFAULTS.put("s3-latency-ms", "20");
+		DEFAULTS.put("s3-jitter-ms", "10");
+		DEFAULTS.put("s3-bandwidth-mbps", "100");
+		DEFAULTS.put("s3-max-rps", "0");
+		DEFAULTS.put("s3-error-rate", "0");
+		DEFAULTS.put("visibility-timeout", "5");
+		DEFAULTS.put("drain-timeout", "60");
+	}
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		// The client logs every S3 operation at info level, which would
+		// dominate the measurements.
+		if (System.getProperty("org.apache.commons.logging.Log") == null) {
+			System.setProperty("org.apache.commons.logging.Log", "org.apache.commons.logging.impl.NoOpLog");
+		}
+
+		List<LoadTestScenario> scenarios;
+		try {
+			scenarios = parseScenarios(parseOptions(args));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		PrintStream out = System.out;
+		LoadTestScenario first = scenarios.get(0);
+		out.println("Message sizes: " + first.getMessageSizes() + ", " + first.getMessagesPerProducer()
+				+ " messages per producer");
+		out.println("Amazon SQS: " + first.getSqsModel());
+		out.println("Amazon S3: " + first.getS3Model());
+		out.println();
+		out.print(LoadTestResult.formatHeader());
+		LoadTestRunner runner = new LoadTestRunner();
+		for (LoadTestScenario scenario : scenarios) {
+			out.print(runner.run(scenario).format(scenario));
+			out.flush();
+		}
+	}
+
+	static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new HashMap<String, String>(DEFAULTS);
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0 || !DEFAULTS.containsKey(arg.substring(2, equals))) {
+				throw new IllegalArgumentException("Unknown option " + arg + ". Options: " + DEFAULTS.keySet());
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		return options;
+	}
+
+	static List<LoadTestScenario> parseScenarios(Map<String, String> options) {
+		LoadTestScenario base = new LoadTestScenario()
+				.withMessageSizes(MessageSizeDistribution.parse(options.get("sizes")))
+				.withMessagesPerProducer(Integer.parseInt(options.get("messages")))
+				.withSqsModel(parseServiceModel(options, "sqs"))
+				.withS3Model(parseServiceModel(options, "s3"))
+				.withVisibilityTimeoutSeconds(Integer.parseInt(options.get("visibility-timeout")))
+				.withDrainTimeoutSeconds(Integer.parseInt(options.get("drain-timeout")));
+
+		List<LoadTestScenario> scenarios = new ArrayList<LoadTestScenario>();
+		for (int threshold : parseIntList(options.get("thresholds"))) {
+			for (int producers : parseIntList(options.get("producers"))) {
+				for (int consumers : parseIntList(options.get("consumers"))) {
+					for (int s3Threads : parseIntList(options.get("s3-threads"))) {
+						scenarios.add(new LoadTestScenario(base).withMessageSizeThreshold(threshold)
+								.withProducers(producers).withConsumers(consumers).withS3Threads(s3Threads));
+					}
+				}
+			}
+		}
+		return scenarios;
+	}
+
+	private static ServiceModel parseServiceModel(Map<String, String> options, String service) {
+		return new ServiceModel(Double.parseDouble(options.get(service + "-latency-ms")),
+				Double.parseDouble(options.get(service + "-jitter-ms")),
+				Double.parseDouble(options.get(service + "-bandwidth-mbps")),
+				Double.parseDouble(options.get(service + "-max-rps")),
+				Double.parseDouble(options.get(service + "-error-rate")));
+	}
+
+	private static List<Integer> parseIntList(String values) {
+		List<Integer> parsed = new ArrayList<Integer>();
+		for (String value : values.split(",")) {
+			parsed.add(Integer.parseInt(value.trim()));
+		}
+		return parsed;
+	}
+}
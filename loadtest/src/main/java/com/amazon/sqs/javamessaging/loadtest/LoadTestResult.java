@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import com.amazon.sqs.javamessaging.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * The measurements of one load test run, and their formatting as a row of
+ * the report. Latencies are measured around the calls to the extended
+ * client, so they include the payload transfers to and from Amazon S3.
+ */
+class LoadTestResult {
+	private static final String ROW_FORMAT = "%-9s %4s %4s %4s %9s %9s %7s %7s %26s %26s %26s %8s %7s %9s %9s %9s%n";
+	private static final double MEGABYTE = 1024 * 1024;
+
+	final LatencyHistogram sendLatency = new LatencyHistogram();
+	final LatencyHistogram receiveLatency = new LatencyHistogram();
+	final LatencyHistogram deleteLatency = new LatencyHistogram();
+
+	long elapsedNanos;
+	long messagesSent;
+	long messagesConsumed;
+	long bytesConsumed;
+	long redeliveries;
+	long sendErrors;
+	long receiveErrors;
+	long deleteErrors;
+	double offloadRatio;
+	long allocatedBytes = -1;
+	long peakHeapBytes;
+	long gcCount;
+	long gcMillis;
+
+	static String formatHeader() {
+		return String.format(Locale.ROOT, ROW_FORMAT, "threshold", "prod", "cons", "s3th", "msg/s", "MB/s",
+				"offload", "lost", "send p50/p99/p999 ms", "receive p50/p99/p999 ms", "delete p50/p99/p999 ms",
+				"errors", "redeliv", "alloc KB/msg", "peak heap MB", "gc n/ms");
+	}
+
+	String format(LoadTestScenario scenario) {
+		double seconds = elapsedNanos / 1e9;
+		String throughput = String.format(Locale.ROOT, "%.1f", messagesConsumed / seconds);
+		String bandwidth = String.format(Locale.ROOT, "%.2f", bytesConsumed / MEGABYTE / seconds);
+		String offload = String.format(Locale.ROOT, "%.1f%%", offloadRatio * 100);
+		String allocation = allocatedBytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", allocatedBytes / 1024.0
+				/ Math.max(1, messagesConsumed));
+		String peakHeap = String.format(Locale.ROOT, "%.1f", peakHeapBytes / MEGABYTE);
+		return String.format(Locale.ROOT, ROW_FORMAT, scenario.getMessageSizeThreshold(), scenario.getProducers(),
+				scenario.getConsumers(), scenario.getS3Threads(), throughput, bandwidth, offload, messagesSent
+						- messagesConsumed, formatPercentiles(sendLatency), formatPercentiles(receiveLatency),
+				formatPercentiles(deleteLatency), sendErrors + receiveErrors + deleteErrors, redeliveries,
+				allocation, peakHeap, gcCount + "/" + gcMillis);
+	}
+
+	private static String formatPercentiles(LatencyHistogram histogram) {
+		return String.format(Locale.ROOT, "%.2f/%.2f/%.2f", histogram.getValueAtPercentile(50) / 1e6, histogram
+				.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6);
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedClient;
+import com.amazon.sqs.javamessaging.DefaultMetricsCollector;
+import com.amazon.sqs.javamessaging.ExtendedClientConfiguration;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a load test scenario: producer threads send messages through the
+ * extended client while consumer threads receive and delete them, against
+ * simulated Amazon SQS and Amazon S3 services.
+ *
+ * <p>
+ * Receive latencies are only recorded for receives which return messages,
+ * since the others wait for the long poll to time out. The allocation figure
+ * covers the producer and consumer threads, which do most of the work of the
+ * client. Payload transfers which run on the S3 executor threads are not
+ * included.
+ * </p>
+ */
+class LoadTestRunner {
+	private static final String S3_BUCKET_NAME = "load-test-bucket";
+	private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/load-test-queue";
+	private static final int RECEIVE_WAIT_TIME_SECONDS = 1;
+	private static final int RECEIVE_MAX_NUMBER_OF_MESSAGES = 10;
+	private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 20;
+
+	/**
+	 * Runs a scenario and returns its measurements once all sent messages
+	 * have been consumed, or the drain timeout has passed.
+	 */
+	LoadTestResult run(final LoadTestScenario scenario) throws InterruptedException {
+		final LoadTestResult result = new LoadTestResult();
+		SimulatedAmazonSQS sqs = new SimulatedAmazonSQS(new SimulatedService("Amazon SQS", scenario.getSqsModel()),
+				scenario.getVisibilityTimeoutSeconds());
+		SimulatedAmazonS3 s3 = new SimulatedAmazonS3(new SimulatedService("Amazon S3", scenario.getS3Model()));
+		DefaultMetricsCollector metrics = new DefaultMetricsCollector();
+		ExtendedClientConfiguration configuration = new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME)
+				.withMessageSizeThreshold(scenario.getMessageSizeThreshold()).withMetricsCollector(metrics);
+		ExecutorService s3Executor = null;
+		if (scenario.getS3Threads() > 0) {
+			s3Executor = Executors.newFixedThreadPool(scenario.getS3Threads());
+			configuration.withS3UploadExecutor(s3Executor).withS3DownloadExecutor(s3Executor);
+		}
+		final AmazonSQSExtendedClient client = new AmazonSQSExtendedClient(sqs, configuration);
+		final String payload = generatePayload(scenario.getMessageSizes().getMaxSize());
+
+		final AtomicLong messagesSent = new AtomicLong();
+		final AtomicLong bytesConsumed = new AtomicLong();
+		final AtomicLong sendErrors = new AtomicLong();
+		final AtomicLong receiveErrors = new AtomicLong();
+		final AtomicLong deleteErrors = new AtomicLong();
+		final AtomicLong allocatedBytes = new AtomicLong();
+		final Set<String> consumedMessageIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final ConsumerStop consumerStop = new ConsumerStop();
+
+		System.gc();
+		HeapSampler heapSampler = new HeapSampler();
+		heapSampler.start();
+		long gcCountBefore = getGcCount();
+		long gcMillisBefore = getGcMillis();
+		long startNanos = System.nanoTime();
+
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int i = 0; i < scenario.getProducers(); i++) {
+			final Random random = new Random(i);
+			producers.add(new Thread(new Runnable() {
+				public void run() {
+					long allocatedBefore = getAllocatedBytes();
+					for (int j = 0; j < scenario.getMessagesPerProducer(); j++) {
+						String body = payload.substring(0, scenario.getMessageSizes().next(random));
+						long sendStartNanos = System.nanoTime();
+						try {
+							client.sendMessage(new SendMessageRequest(QUEUE_URL, body));
+							result.sendLatency.record(System.nanoTime() - sendStartNanos);
+							messagesSent.incrementAndGet();
+						} catch (AmazonClientException e) {
+							sendErrors.incrementAndGet();
+						}
+					}
+					allocatedBytes.addAndGet(getAllocatedBytes() - allocatedBefore);
+				}
+			}, "load-test-producer-" + i));
+		}
+
+		List<Thread> consumers = new ArrayList<Thread>();
+		for (int i = 0; i < scenario.getConsumers(); i++) {
+			consumers.add(new Thread(new Runnable() {
+				public void run() {
+					long allocatedBefore = getAllocatedBytes();
+					ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(QUEUE_URL)
+							.withMaxNumberOfMessages(RECEIVE_MAX_NUMBER_OF_MESSAGES)
+							.withWaitTimeSeconds(RECEIVE_WAIT_TIME_SECONDS);
+					while (!consumerStop.shouldStop(consumedMessageIds.size(), messagesSent.get())) {
+						List<Message> messages;
+						long receiveStartNanos = System.nanoTime();
+						try {
+							messages = client.receiveMessage(receiveMessageRequest).getMessages();
+							// An empty receive measures the long poll.
+							if (!messages.isEmpty()) {
+								result.receiveLatency.record(System.nanoTime() - receiveStartNanos);
+							}
+						} catch (AmazonClientException e) {
+							receiveErrors.incrementAndGet();
+							continue;
+						}
+						for (Message message : messages) {
+							if (consumedMessageIds.add(message.getMessageId())) {
+								bytesConsumed.addAndGet(message.getBody().length());
+							}
+							long deleteStartNanos = System.nanoTime();
+							try {
+								client.deleteMessage(QUEUE_URL, message.getReceiptHandle());
+								result.deleteLatency.record(System.nanoTime() - deleteStartNanos);
+							} catch (AmazonClientException e) {
+								deleteErrors.incrementAndGet();
+							}
+						}
+					}
+					allocatedBytes.addAndGet(getAllocatedBytes() - allocatedBefore);
+				}
+			}, "load-test-consumer-" + i));
+		}
+
+		for (Thread thread : producers) {
+			thread.start();
+		}
+		for (Thread thread : consumers) {
+			thread.start();
+		}
+		for (Thread thread : producers) {
+			thread.join();
+		}
+		consumerStop.producersDone(System.nanoTime() + TimeUnit.SECONDS.toNanos(scenario.getDrainTimeoutSeconds()));
+		for (Thread thread : consumers) {
+			thread.join();
+		}
+
+		result.elapsedNanos = System.nanoTime() - startNanos;
+		result.peakHeapBytes = heapSampler.stopSampling();
+		result.gcCount = getGcCount() - gcCountBefore;
+		result.gcMillis = getGcMillis() - gcMillisBefore;
+		result.messagesSent = messagesSent.get();
+		result.messagesConsumed = consumedMessageIds.size();
+		result.bytesConsumed = bytesConsumed.get();
+		result.redeliveries = sqs.getRedeliveryCount();
+		result.sendErrors = sendErrors.get();
+		result.receiveErrors = receiveErrors.get();
+		result.deleteErrors = deleteErrors.get();
+		result.offloadRatio = metrics.getOffloadRatio(QUEUE_URL);
+		result.allocatedBytes = getAllocatedBytes() < 0 ? -1 : allocatedBytes.get();
+
+		client.shutdown();
+		if (s3Executor != null) {
+			s3Executor.shutdown();
+		}
+		return result;
+	}
+
+	private static String generatePayload(int length) {
+		Random random = new Random(length);
+		char[] payload = new char[length];
+		for (int i = 0; i < length; i++) {
+			payload[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(payload);
+	}
+
+	/**
+	 * Gets the number of bytes allocated by the current thread.
+	 *
+	 * @return The number of bytes, or -1 if the JVM does not measure it.
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread()
+					.getId());
+		}
+		return -1;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+
+	/**
+	 * Decides when the consumers stop: once the producers have finished and
+	 * every message they sent has been consumed, or the drain deadline has
+	 * passed.
+	 */
+	private static class ConsumerStop {
+		private volatile boolean producersDone;
+		private volatile long drainDeadlineNanos;
+
+		void producersDone(long drainDeadlineNanos) {
+			this.drainDeadlineNanos = drainDeadlineNanos;
+			this.producersDone = true;
+		}
+
+		boolean shouldStop(long messagesConsumed, long messagesSent) {
+			return producersDone && (messagesConsumed >= messagesSent || System.nanoTime() - drainDeadlineNanos > 0);
+		}
+	}
+
+	/**
+	 * Samples the used heap on a background thread to find its peak.
+	 */
+	private static class HeapSampler extends Thread {
+		private volatile boolean stopped;
+		private long peakHeapBytes;
+
+		HeapSampler() {
+			super("load-test-heap-sampler");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				sample();
+				try {
+					Thread.sleep(HEAP_SAMPLE_INTERVAL_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Stops sampling.
+		 *
+		 * @return The peak of the used heap in bytes.
+		 */
+		long stopSampling() throws InterruptedException {
+			stopped = true;
+			join();
+			sample();
+			return peakHeapBytes;
+		}
+
+		private void sample() {
+			peakHeapBytes = Math.max(peakHeapBytes, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+					.getUsed());
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+/**
+ * The settings of one load test run: the messages which are sent, the
+ * producer and consumer threads, the configuration of the extended client,
+ * and the behavior of the simulated services.
+ */
+class LoadTestScenario {
+	static final int SQS_MESSAGE_SIZE_LIMIT = 262144;
+
+	private MessageSizeDistribution messageSizes = MessageSizeDistribution.parse("mix:4k@90,1m@10");
+	private int messagesPerProducer = 1000;
+	private int producers = 4;
+	private int consumers = 4;
+	private int messageSizeThreshold = SQS_MESSAGE_SIZE_LIMIT;
+	private int s3Threads = 0;
+	private ServiceModel sqsModel = new ServiceModel(5, 2, 0, 0, 0);
+	private ServiceModel s3Model = new ServiceModel(20, 10, 100, 0, 0);
+	private int visibilityTimeoutSeconds = 5;
+	private int drainTimeoutSeconds = 60;
+
+	LoadTestScenario() {
+	}
+
+	LoadTestScenario(LoadTestScenario other) {
+		this.messageSizes = other.messageSizes;
+		this.messagesPerProducer = other.messagesPerProducer;
+		this.producers = other.producers;
+		this.consumers = other.consumers;
+		this.messageSizeThreshold = other.messageSizeThreshold;
+		this.s3Threads = other.s3Threads;
+		this.sqsModel = other.sqsModel;
+		this.s3Model = other.s3Model;
+		this.visibilityTimeoutSeconds = other.visibilityTimeoutSeconds;
+		this.drainTimeoutSeconds = other.drainTimeoutSeconds;
+	}
+
+	LoadTestScenario withMessageSizes(MessageSizeDistribution messageSizes) {
+		this.messageSizes = messageSizes;
+		return this;
+	}
+
+	LoadTestScenario withMessagesPerProducer(int messagesPerProducer) {
+		this.messagesPerProducer = messagesPerProducer;
+		return this;
+	}
+
+	LoadTestScenario withProducers(int producers) {
+		this.producers = producers;
+		return this;
+	}
+
+	LoadTestScenario withConsumers(int consumers) {
+		this.consumers = consumers;
+		return this;
+	}
+
+	/**
+	 * Sets the message size threshold of the extended client, above which
+	 * payloads are stored in Amazon S3.
+	 */
+	LoadTestScenario withMessageSizeThreshold(int messageSizeThreshold) {
+		this.messageSizeThreshold = messageSizeThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads of the S3 upload and download executors of
+	 * the extended client, or 0 to transfer payloads on the calling threads.
+	 */
+	LoadTestScenario withS3Threads(int s3Threads) {
+		this.s3Threads = s3Threads;
+		return this;
+	}
+
+	LoadTestScenario withSqsModel(ServiceModel sqsModel) {
+		this.sqsModel = sqsModel;
+		return this;
+	}
+
+	LoadTestScenario withS3Model(ServiceModel s3Model) {
+		this.s3Model = s3Model;
+		return this;
+	}
+
+	/**
+	 * Sets the time after which a received message which was not deleted is
+	 * delivered again.
+	 */
+	LoadTestScenario withVisibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+		this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+		return this;
+	}
+
+	/**
+	 * Sets how long the consumers keep receiving after the producers have
+	 * finished, if not all sent messages have been consumed.
+	 */
+	LoadTestScenario withDrainTimeoutSeconds(int drainTimeoutSeconds) {
+		this.drainTimeoutSeconds = drainTimeoutSeconds;
+		return this;
+	}
+
+	MessageSizeDistribution getMessageSizes() {
+		return messageSizes;
+	}
+
+	int getMessagesPerProducer() {
+		return messagesPerProducer;
+	}
+
+	int getProducers() {
+		return producers;
+	}
+
+	int getConsumers() {
+		return consumers;
+	}
+
+	int getMessageSizeThreshold() {
+		return messageSizeThreshold;
+	}
+
+	int getS3Threads() {
+		return s3Threads;
+	}
+
+	ServiceModel getSqsModel() {
+		return sqsModel;
+	}
+
+	ServiceModel getS3Model() {
+		return s3Model;
+	}
+
+	int getVisibilityTimeoutSeconds() {
+		return visibilityTimeoutSeconds;
+	}
+
+	int getDrainTimeoutSeconds() {
+		return drainTimeoutSeconds;
+	}
+}
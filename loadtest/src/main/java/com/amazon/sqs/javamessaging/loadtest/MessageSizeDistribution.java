@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import java.util.Random;
+
+/**
+ * A distribution of message body sizes in bytes, parsed from one of these
+ * specifications:
+ *
+ * <ul>
+ * <li><code>fixed:SIZE</code> - every message has the same size.</li>
+ * <li><code>uniform:MIN-MAX</code> - sizes are uniformly distributed between
+ * the bounds, inclusive.</li>
+ * <li><code>mix:SIZE@WEIGHT,SIZE@WEIGHT,...</code> - each size is chosen in
+ * proportion to its weight, for example <code>mix:4096@90,1048576@10</code>
+ * for mostly small messages with some large ones.</li>
+ * </ul>
+ *
+ * Sizes may have a <code>k</code> or <code>m</code> suffix for KiB and MiB.
+ */
+class MessageSizeDistribution {
+	private final String specification;
+	private final int[] sizes;
+	private final double[] cumulativeWeights;
+	private final boolean uniform;
+
+	private MessageSizeDistribution(String specification, int[] sizes, double[] cumulativeWeights, boolean uniform) {
+		this.specification = specification;
+		this.sizes = sizes;
+		this.cumulativeWeights = cumulativeWeights;
+		this.uniform = uniform;
+	}
+
+	static MessageSizeDistribution parse(String specification) {
+		int colon = specification.indexOf(':');
+		if (colon < 0) {
+			throw new IllegalArgumentException("Invalid message size distribution " + specification + ".");
+		}
+		String type = specification.substring(0, colon);
+		String arguments = specification.substring(colon + 1);
+		if ("fixed".equals(type)) {
+			return new MessageSizeDistribution(specification, new int[] { parseSize(arguments) }, new double[] { 1 },
+					false);
+		}
+		if ("uniform".equals(type)) {
+			String[] bounds = arguments.split("-");
+			if (bounds.length != 2 || parseSize(bounds[0]) > parseSize(bounds[1])) {
+				throw new IllegalArgumentException("Invalid uniform message size distribution " + specification
+						+ ".");
+			}
+			return new MessageSizeDistribution(specification,
+					new int[] { parseSize(bounds[0]), parseSize(bounds[1]) }, null, true);
+		}
+		if ("mix".equals(type)) {
+			String[] entries = arguments.split(",");
+			int[] sizes = new int[entries.length];
+			double[] cumulativeWeights = new double[entries.length];
+			double totalWeight = 0;
+			for (int i = 0; i < entries.length; i++) {
+				String[] sizeAndWeight = entries[i].split("@");
+				if (sizeAndWeight.length != 2) {
+					throw new IllegalArgumentException("Invalid entry " + entries[i]
+							+ " of a mixed message size distribution, expected SIZE@WEIGHT.");
+				}
+				sizes[i] = parseSize(sizeAndWeight[0]);
+				double weight = Double.parseDouble(sizeAndWeight[1]);
+				if (weight < 0) {
+					throw new IllegalArgumentException("Invalid weight " + weight + ".");
+				}
+				totalWeight += weight;
+				cumulativeWeights[i] = totalWeight;
+			}
+			if (totalWeight <= 0) {
+				throw new IllegalArgumentException("The weights of a mixed message size distribution cannot all "
+						+ "be 0.");
+			}
+			for (int i = 0; i < cumulativeWeights.length; i++) {
+				cumulativeWeights[i] /= totalWeight;
+			}
+			return new MessageSizeDistribution(specification, sizes, cumulativeWeights, false);
+		}
+		throw new IllegalArgumentException("Unknown message size distribution " + type
+				+ ", expected fixed, uniform or mix.");
+	}
+
+	/**
+	 * Draws a message size.
+	 */
+	int next(Random random) {
+		if (uniform) {
+			return sizes[0] + random.nextInt(sizes[1] - sizes[0] + 1);
+		}
+		double point = random.nextDouble();
+		for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+			if (point < cumulativeWeights[i]) {
+				return sizes[i];
+			}
+		}
+		return sizes[sizes.length - 1];
+	}
+
+	/**
+	 * Gets the largest size which can be drawn.
+	 */
+	int getMaxSize() {
+		int maxSize = 0;
+		for (int size : sizes) {
+			maxSize = Math.max(maxSize, size);
+		}
+		return maxSize;
+	}
+
+	@Override
+	public String toString() {
+		return specification;
+	}
+
+	private static int parseSize(String size) {
+		String lowerCaseSize = size.trim().toLowerCase();
+		int multiplier = 1;
+		if (lowerCaseSize.endsWith("k")) {
+			multiplier = 1024;
+		} else if (lowerCaseSize.endsWith("m")) {
+			multiplier = 1024 * 1024;
+		}
+		if (multiplier != 1) {
+			lowerCaseSize = lowerCaseSize.substring(0, lowerCaseSize.length() - 1);
+		}
+		int parsed = Integer.parseInt(lowerCaseSize) * multiplier;
+		if (parsed < 1) {
+			throw new IllegalArgumentException("Invalid message size " + size + ", it must be at least 1 byte.");
+		}
+		return parsed;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+/**
+ * The behavior of a simulated service: how long its requests take, how many
+ * requests it serves per second, and how often they fail.
+ */
+class ServiceModel {
+	private final double latencyMillis;
+	private final double jitterMillis;
+	private final double bandwidthMegabytesPerSecond;
+	private final double maxRequestsPerSecond;
+	private final double errorRate;
+
+	/**
+	 * @param latencyMillis
+	 *            The fixed latency of every request.
+	 * @param jitterMillis
+	 *            The upper bound of a uniformly distributed latency added to
+	 *            every request.
+	 * @param bandwidthMegabytesPerSecond
+	 *            The rate at which the content of a request or response is
+	 *            transferred, or 0 to transfer it instantly.
+	 * @param maxRequestsPerSecond
+	 *            The number of requests started per second, beyond which
+	 *            requests are queued, or 0 for no limit.
+	 * @param errorRate
+	 *            The probability, from 0 to 1, that a request fails with an
+	 *            internal error after its latency has passed.
+	 */
+	ServiceModel(double latencyMillis, double jitterMillis, double bandwidthMegabytesPerSecond,
+			double maxRequestsPerSecond, double errorRate) {
+		if (latencyMillis < 0 || jitterMillis < 0 || bandwidthMegabytesPerSecond < 0 || maxRequestsPerSecond < 0
+				|| errorRate < 0 || errorRate > 1) {
+			throw new IllegalArgumentException("Invalid service model: latency, jitter, bandwidth and request rate "
+					+ "cannot be negative, and the error rate must be from 0 to 1.");
+		}
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+		this.bandwidthMegabytesPerSecond = bandwidthMegabytesPerSecond;
+		this.maxRequestsPerSecond = maxRequestsPerSecond;
+		this.errorRate = errorRate;
+	}
+
+	double getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	double getJitterMillis() {
+		return jitterMillis;
+	}
+
+	double getBandwidthMegabytesPerSecond() {
+		return bandwidthMegabytesPerSecond;
+	}
+
+	double getMaxRequestsPerSecond() {
+		return maxRequestsPerSecond;
+	}
+
+	double getErrorRate() {
+		return errorRate;
+	}
+
+	@Override
+	public String toString() {
+		return "latency " + latencyMillis + "+" + jitterMillis + " ms, bandwidth "
+				+ (bandwidthMegabytesPerSecond == 0 ? "unlimited" : bandwidthMegabytesPerSecond + " MB/s")
+				+ ", max rate " + (maxRequestsPerSecond == 0 ? "unlimited" : maxRequestsPerSecond + " req/s")
+				+ ", error rate " + errorRate;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.DeleteObjectsResult.DeletedObject;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for Amazon S3 which keeps objects in memory. It
+ * supports single and multipart uploads, whole and ranged reads, and single
+ * and multi-object deletes, which is what the extended client uses.
+ */
+class SimulatedAmazonS3 extends AbstractAmazonS3 {
+	private final SimulatedService service;
+	private final ConcurrentMap<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+	private final ConcurrentMap<String, ConcurrentSkipListMap<Integer, byte[]>> uploads;
+	private final AtomicLong nextUploadId = new AtomicLong();
+	private final AtomicLong storedBytes = new AtomicLong();
+
+	SimulatedAmazonS3(SimulatedService service) {
+		this.service = service;
+		this.uploads = new ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, byte[]>>();
+	}
+
+	@Override
+	public PutObjectResult putObject(PutObjectRequest putObjectRequest) {
+		byte[] content;
+		try {
+			InputStream input = putObjectRequest.getFile() != null ? new FileInputStream(putObjectRequest
+					.getFile()) : putObjectRequest.getInputStream();
+			try {
+				content = readAll(input);
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed to read the object content.", e);
+		}
+		service.request(content.length);
+		store(toKey(putObjectRequest.getBucketName(), putObjectRequest.getKey()), content);
+		return new PutObjectResult();
+	}
+
+	@Override
+	public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+		service.request(0);
+		String uploadId = Long.toString(nextUploadId.incrementAndGet());
+		uploads.put(uploadId, new ConcurrentSkipListMap<Integer, byte[]>());
+		InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+		result.setBucketName(request.getBucketName());
+		result.setKey(request.getKey());
+		result.setUploadId(uploadId);
+		return result;
+	}
+
+	@Override
+	public UploadPartResult uploadPart(UploadPartRequest uploadPartRequest) {
+		byte[] content;
+		try {
+			content = readAll(uploadPartRequest.getInputStream());
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed to read the part content.", e);
+		}
+		service.request(content.length);
+		getUpload(uploadPartRequest.getUploadId()).put(uploadPartRequest.getPartNumber(), content);
+		UploadPartResult result = new UploadPartResult();
+		result.setPartNumber(uploadPartRequest.getPartNumber());
+		result.setETag("etag-" + uploadPartRequest.getPartNumber());
+		return result;
+	}
+
+	@Override
+	public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+		service.request(0);
+		ConcurrentSkipListMap<Integer, byte[]> parts = getUpload(request.getUploadId());
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (PartETag partETag : request.getPartETags()) {
+			byte[] part = parts.get(partETag.getPartNumber());
+			content.write(part, 0, part.length);
+		}
+		uploads.remove(request.getUploadId());
+		store(toKey(request.getBucketName(), request.getKey()), content.toByteArray());
+		CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+		result.setBucketName(request.getBucketName());
+		result.setKey(request.getKey());
+		return result;
+	}
+
+	@Override
+	public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+		service.request(0);
+		uploads.remove(request.getUploadId());
+	}
+
+	@Override
+	public S3Object getObject(GetObjectRequest getObjectRequest) {
+		byte[] content = objects.get(toKey(getObjectRequest.getBucketName(), getObjectRequest.getKey()));
+		if (content == null) {
+			service.request(0);
+			throw newNotFoundException("NoSuchKey", "The specified key does not exist.");
+		}
+		int start = 0;
+		int end = content.length - 1;
+		long[] range = getObjectRequest.getRange();
+		if (range != null) {
+			start = (int) range[0];
+			end = (int) Math.min(range[1], end);
+		}
+		service.request(end - start + 1);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(end - start + 1);
+		S3Object s3Object = new S3Object();
+		s3Object.setBucketName(getObjectRequest.getBucketName());
+		s3Object.setKey(getObjectRequest.getKey());
+		s3Object.setObjectMetadata(metadata);
+		s3Object.setObjectContent(new ByteArrayInputStream(content, start, end - start + 1));
+		return s3Object;
+	}
+
+	@Override
+	public boolean doesObjectExist(String bucketName, String objectName) {
+		service.request(0);
+		return objects.containsKey(toKey(bucketName, objectName));
+	}
+
+	@Override
+	public void deleteObject(DeleteObjectRequest deleteObjectRequest) {
+		service.request(0);
+		remove(toKey(deleteObjectRequest.getBucketName(), deleteObjectRequest.getKey()));
+	}
+
+	@Override
+	public DeleteObjectsResult deleteObjects(DeleteObjectsRequest deleteObjectsRequest) {
+		service.request(0);
+		List<DeletedObject> deletedObjects = new ArrayList<DeletedObject>();
+		for (KeyVersion key : deleteObjectsRequest.getKeys()) {
+			remove(toKey(deleteObjectsRequest.getBucketName(), key.getKey()));
+			DeletedObject deletedObject = new DeletedObject();
+			deletedObject.setKey(key.getKey());
+			deletedObjects.add(deletedObject);
+		}
+		return new DeleteObjectsResult(deletedObjects);
+	}
+
+	/**
+	 * Gets the number of objects which are stored.
+	 */
+	int getObjectCount() {
+		return objects.size();
+	}
+
+	/**
+	 * Gets the number of bytes which are stored.
+	 */
+	long getStoredBytes() {
+		return storedBytes.get();
+	}
+
+	private void store(String key, byte[] content) {
+		byte[] previous = objects.put(key, content);
+		storedBytes.addAndGet(content.length - (previous == null ? 0 : previous.length));
+	}
+
+	private void remove(String key) {
+		byte[] previous = objects.remove(key);
+		if (previous != null) {
+			storedBytes.addAndGet(-previous.length);
+		}
+	}
+
+	private ConcurrentSkipListMap<Integer, byte[]> getUpload(String uploadId) {
+		ConcurrentSkipListMap<Integer, byte[]> parts = uploads.get(uploadId);
+		if (parts == null) {
+			throw newNotFoundException("NoSuchUpload", "The specified upload does not exist.");
+		}
+		return parts;
+	}
+
+	private static AmazonServiceException newNotFoundException(String errorCode, String errorMessage) {
+		AmazonServiceException e = new AmazonServiceException(errorMessage);
+		e.setServiceName("Amazon S3");
+		e.setErrorCode(errorCode);
+		e.setErrorType(ErrorType.Client);
+		e.setStatusCode(404);
+		return e;
+	}
+
+	private static byte[] readAll(InputStream input) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) >= 0) {
+			content.write(buffer, 0, read);
+		}
+		return content.toByteArray();
+	}
+
+	private static String toKey(String bucketName, String key) {
+		return bucketName + "/" + key;
+	}
+}
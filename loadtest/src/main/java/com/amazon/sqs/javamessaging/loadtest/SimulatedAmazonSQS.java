@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for Amazon SQS with a single queue behind any queue
+ * URL. Received messages stay in flight until they are deleted, and become
+ * visible again with a new receipt handle once their visibility timeout
+ * expires, so that messages whose processing failed are redelivered as they
+ * would be by Amazon SQS. Receive requests wait for messages up to their wait
+ * time, like long polling, before the latency of the request is simulated.
+ */
+class SimulatedAmazonSQS extends AbstractAmazonSQS {
+	private final SimulatedService service;
+	private final long visibilityTimeoutNanos;
+	private final LinkedBlockingQueue<StoredMessage> visible = new LinkedBlockingQueue<StoredMessage>();
+	private final ConcurrentMap<String, StoredMessage> inFlight = new ConcurrentHashMap<String, StoredMessage>();
+	private final DelayQueue<InFlightExpiry> expiries = new DelayQueue<InFlightExpiry>();
+	private final AtomicLong nextMessageId = new AtomicLong();
+	private final AtomicLong nextReceiptHandle = new AtomicLong();
+	private final AtomicLong redeliveryCount = new AtomicLong();
+
+	SimulatedAmazonSQS(SimulatedService service, int visibilityTimeoutSeconds) {
+		this.service = service;
+		this.visibilityTimeoutNanos = TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+	}
+
+	@Override
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest) {
+		service.request(sendMessageRequest.getMessageBody().length());
+		String messageId = enqueue(sendMessageRequest.getMessageBody(), sendMessageRequest.getMessageAttributes());
+		return new SendMessageResult().withMessageId(messageId);
+	}
+
+	@Override
+	public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+		long bytes = 0;
+		for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.getEntries()) {
+			bytes += entry.getMessageBody().length();
+		}
+		service.request(bytes);
+		List<SendMessageBatchResultEntry> successful = new ArrayList<SendMessageBatchResultEntry>();
+		for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.getEntries()) {
+			String messageId = enqueue(entry.getMessageBody(), entry.getMessageAttributes());
+			successful.add(new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(messageId));
+		}
+		return new SendMessageBatchResult().withSuccessful(successful);
+	}
+
+	@Override
+	public ReceiveMessageResult receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+		expireInFlightMessages();
+		int maxNumberOfMessages = receiveMessageRequest.getMaxNumberOfMessages() == null ? 1
+				: receiveMessageRequest.getMaxNumberOfMessages();
+		int waitTimeSeconds = receiveMessageRequest.getWaitTimeSeconds() == null ? 0 : receiveMessageRequest
+				.getWaitTimeSeconds();
+
+		List<StoredMessage> received = new ArrayList<StoredMessage>();
+		try {
+			StoredMessage first = visible.poll(waitTimeSeconds, TimeUnit.SECONDS);
+			if (first != null) {
+				received.add(first);
+				visible.drainTo(received, maxNumberOfMessages - 1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		List<Message> messages = new ArrayList<Message>(received.size());
+		long bytes = 0;
+		for (StoredMessage storedMessage : received) {
+			String receiptHandle = "receipt-handle-" + nextReceiptHandle.incrementAndGet();
+			inFlight.put(receiptHandle, storedMessage);
+			expiries.add(new InFlightExpiry(receiptHandle, System.nanoTime() + visibilityTimeoutNanos));
+			messages.add(new Message().withMessageId(storedMessage.messageId).withReceiptHandle(receiptHandle)
+					.withBody(storedMessage.body).withMessageAttributes(new HashMap<String, MessageAttributeValue>(
+							storedMessage.messageAttributes)));
+			bytes += storedMessage.body.length();
+		}
+		// A failed response leaves the messages in flight, as a lost
+		// response does.
+		service.request(bytes);
+		return new ReceiveMessageResult().withMessages(messages);
+	}
+
+	@Override
+	public DeleteMessageResult deleteMessage(DeleteMessageRequest deleteMessageRequest) {
+		service.request(0);
+		inFlight.remove(deleteMessageRequest.getReceiptHandle());
+		return new DeleteMessageResult();
+	}
+
+	@Override
+	public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+		service.request(0);
+		List<DeleteMessageBatchResultEntry> successful = new ArrayList<DeleteMessageBatchResultEntry>();
+		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
+			inFlight.remove(entry.getReceiptHandle());
+			successful.add(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+		}
+		return new DeleteMessageBatchResult().withSuccessful(successful);
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	/**
+	 * Gets the number of messages which became visible again because they
+	 * were not deleted in time.
+	 */
+	long getRedeliveryCount() {
+		return redeliveryCount.get();
+	}
+
+	private String enqueue(String messageBody, Map<String, MessageAttributeValue> messageAttributes) {
+		String messageId = Long.toString(nextMessageId.incrementAndGet());
+		visible.add(new StoredMessage(messageId, messageBody, new HashMap<String, MessageAttributeValue>(
+				messageAttributes)));
+		return messageId;
+	}
+
+	private void expireInFlightMessages() {
+		InFlightExpiry expiry;
+		while ((expiry = expiries.poll()) != null) {
+			StoredMessage storedMessage = inFlight.remove(expiry.receiptHandle);
+			if (storedMessage != null) {
+				redeliveryCount.incrementAndGet();
+				visible.add(storedMessage);
+			}
+		}
+	}
+
+	private static class StoredMessage {
+		final String messageId;
+		final String body;
+		final Map<String, MessageAttributeValue> messageAttributes;
+
+		StoredMessage(String messageId, String body, Map<String, MessageAttributeValue> messageAttributes) {
+			this.messageId = messageId;
+			this.body = body;
+			this.messageAttributes = messageAttributes;
+		}
+	}
+
+	private static class InFlightExpiry implements Delayed {
+		final String receiptHandle;
+		final long deadlineNanos;
+
+		InFlightExpiry(String receiptHandle, long deadlineNanos) {
+			this.receiptHandle = receiptHandle;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			long difference = deadlineNanos - ((InFlightExpiry) other).deadlineNanos;
+			return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.loadtest;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies a {@link ServiceModel} to the requests of a simulated service. A
+ * request waits for its turn if the service is at its request rate, then for
+ * its latency and transfer time, and then fails at the configured error rate.
+ */
+class SimulatedService {
+	private final String serviceName;
+	private final ServiceModel model;
+	private final long requestIntervalNanos;
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong injectedErrorCount = new AtomicLong();
+	private long nextRequestNanos;
+
+	SimulatedService(String serviceName, ServiceModel model) {
+		this.serviceName = serviceName;
+		this.model = model;
+		this.requestIntervalNanos = model.getMaxRequestsPerSecond() == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1)
+				/ model.getMaxRequestsPerSecond());
+		this.nextRequestNanos = System.nanoTime();
+	}
+
+	/**
+	 * Simulates a request.
+	 *
+	 * @param bytes
+	 *            The number of bytes transferred by the request.
+	 * @throws AmazonServiceException
+	 *             If the request fails.
+	 */
+	void request(long bytes) {
+		requestCount.incrementAndGet();
+		long startNanos = reserveRequestSlot();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double latencyMillis = model.getLatencyMillis() + random.nextDouble() * model.getJitterMillis();
+		if (model.getBandwidthMegabytesPerSecond() > 0) {
+			latencyMillis += bytes / (model.getBandwidthMegabytesPerSecond() * 1024 * 1024) * 1000;
+		}
+		sleepUntil(startNanos + (long) (latencyMillis * 1000000));
+
+		if (model.getErrorRate() > 0 && random.nextDouble() < model.getErrorRate()) {
+			injectedErrorCount.incrementAndGet();
+			AmazonServiceException e = new AmazonServiceException("Simulated internal error of " + serviceName + ".");
+			e.setServiceName(serviceName);
+			e.setErrorCode("InternalError");
+			e.setErrorType(ErrorType.Service);
+			e.setStatusCode(500);
+			throw e;
+		}
+	}
+
+	long getRequestCount() {
+		return requestCount.get();
+	}
+
+	long getInjectedErrorCount() {
+		return injectedErrorCount.get();
+	}
+
+	/**
+	 * Reserves the next free slot under the request rate.
+	 *
+	 * @return The time at which the request starts.
+	 */
+	private long reserveRequestSlot() {
+		long now = System.nanoTime();
+		if (requestIntervalNanos == 0) {
+			return now;
+		}
+		long slot;
+		synchronized (this) {
+			slot = Math.max(now, nextRequestNanos);
+			nextRequestNanos = slot + requestIntervalNanos;
+		}
+		return slot;
+	}
+
+	private static void sleepUntil(long deadlineNanos) {
+		long remaining;
+		while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+}
@@ -0,0 +1,705 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazon.sqs.javamessaging.MetricsCollector.Operation;
+import com.amazon.sqs.javamessaging.ReceiptHandleCodec.S3ReceiptHandle;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Amazon SQS Extended Async Client extends the functionality of the Amazon SQS
+ * async client. Asynchronous service calls return immediately with a future
+ * and optionally notify an {@link AsyncHandler} when they complete.
+ *
+ * <p>
+ * For messages with payloads in Amazon S3, the Amazon S3 step of an
+ * asynchronous call runs on the executor of this client and is chained with
+ * the asynchronous call to Amazon SQS, so no caller thread waits for either
+ * of them. The latencies and errors of the asynchronous calls to Amazon SQS
+ * and Amazon S3 are recorded with the metrics collector of the configuration.
+ * </p>
+ *
+ * <p>
+ * Asynchronous sends are not combined by send batching, and asynchronous
+ * receives do not take messages from the prefetch buffers; both go to Amazon
+ * SQS directly, since batching and prefetching would hold a thread of this
+ * client for the linger or wait time. The synchronous methods behave like
+ * those of {@link AmazonSQSExtendedClient}, including batching and
+ * prefetching.
+ * </p>
+ */
+public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBase {
+	private static final Log LOG = LogFactory.getLog(AmazonSQSExtendedAsyncClient.class);
+
+	private static final int DEFAULT_THREAD_POOL_SIZE = 50;
+
+	private final boolean ownsExecutorService;
+	private ExecutorService executorService;
+	private boolean shutDown;
+
+	/**
+	 * Constructs a new Amazon SQS extended async client to invoke service
+	 * methods on Amazon SQS with extended functionality using the specified
+	 * Amazon SQS async client object.
+	 *
+	 * @param sqsAsyncClient
+	 *            The Amazon SQS async client to use to connect to Amazon SQS.
+	 */
+	public AmazonSQSExtendedAsyncClient(AmazonSQSAsync sqsAsyncClient) {
+		this(sqsAsyncClient, new ExtendedClientConfiguration());
+	}
+
+	/**
+	 * Constructs a new Amazon SQS extended async client to invoke service
+	 * methods on Amazon SQS with extended functionality using the specified
+	 * Amazon SQS async client object. The Amazon S3 steps of asynchronous calls
+	 * run on a fixed thread pool of 50 threads which is created when it is
+	 * first needed and shut down together with this client.
+	 *
+	 * @param sqsAsyncClient
+	 *            The Amazon SQS async client to use to connect to Amazon SQS.
+	 * @param extendedClientConfig
+	 *            The extended client configuration options controlling the
+	 *            functionality of this client.
+	 */
+	public AmazonSQSExtendedAsyncClient(AmazonSQSAsync sqsAsyncClient,
+			ExtendedClientConfiguration extendedClientConfig) {
+		this(sqsAsyncClient, extendedClientConfig, null, true);
+	}
+
+	/**
+	 * Constructs a new Amazon SQS extended async client to invoke service
+	 * methods on Amazon SQS with extended functionality using the specified
+	 * Amazon SQS async client object.
+	 *
+	 * @param sqsAsyncClient
+	 *            The Amazon SQS async client to use to connect to Amazon SQS.
+	 * @param extendedClientConfig
+	 *            The extended client configuration options controlling the
+	 *            functionality of this client.
+	 * @param executorService
+	 *            The executor which runs the Amazon S3 steps of asynchronous
+	 *            calls. It is owned by the caller and is not shut down by this
+	 *            client.
+	 */
+	public AmazonSQSExtendedAsyncClient(AmazonSQSAsync sqsAsyncClient,
+			ExtendedClientConfiguration extendedClientConfig, ExecutorService executorService) {
+		this(sqsAsyncClient, extendedClientConfig, executorService, false);
+	}
+
+	private AmazonSQSExtendedAsyncClient(AmazonSQSAsync sqsAsyncClient,
+			ExtendedClientConfiguration extendedClientConfig, ExecutorService executorService,
+			boolean ownsExecutorService) {
+		super(sqsAsyncClient, extendedClientConfig);
+		this.executorService = executorService;
+		this.ownsExecutorService = ownsExecutorService;
+	}
+
+	/**
+	 * Asynchronously delivers a message to the specified queue and uploads the
+	 * message payload to Amazon S3 if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessage(SendMessageRequest)
+	 */
+	public Future<SendMessageResult> sendMessageAsync(SendMessageRequest sendMessageRequest) {
+		return sendMessageAsync(sendMessageRequest, null);
+	}
+
+	/**
+	 * Asynchronously delivers a message to the specified queue and uploads the
+	 * message payload to Amazon S3 if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessage(SendMessageRequest)
+	 */
+	public Future<SendMessageResult> sendMessageAsync(SendMessageRequest sendMessageRequest,
+			AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+		ChainedOperation<SendMessageRequest, SendMessageResult> operation;
+		operation = new ChainedOperation<SendMessageRequest, SendMessageResult>(sendMessageRequest, asyncHandler) {
+			void start() {
+				SendMessageRequest sqsRequest = prepareSendMessage(request);
+				startSqsCall(Operation.SEND);
+				AmazonSQSExtendedAsyncClient.super.sendMessageAsync(sqsRequest, this);
+			}
+		};
+		// Without large payloads there is no Amazon S3 step to run on the
+		// executor.
+		return getExtendedClientConfiguration().isLargePayloadSupportEnabled() ? operation.submit() : operation
+				.runNow();
+	}
+
+	/**
+	 * Asynchronously delivers a message to the specified queue and uploads the
+	 * message payload to Amazon S3 if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessage(String, String)
+	 */
+	public Future<SendMessageResult> sendMessageAsync(String queueUrl, String messageBody) {
+		return sendMessageAsync(new SendMessageRequest(queueUrl, messageBody), null);
+	}
+
+	/**
+	 * Asynchronously delivers a message to the specified queue and uploads the
+	 * message payload to Amazon S3 if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessage(String, String)
+	 */
+	public Future<SendMessageResult> sendMessageAsync(String queueUrl, String messageBody,
+			AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+		return sendMessageAsync(new SendMessageRequest(queueUrl, messageBody), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously retrieves one or more messages from the specified queue
+	 * and downloads the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#receiveMessage(ReceiveMessageRequest)
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest receiveMessageRequest) {
+		return receiveMessageAsync(receiveMessageRequest, null);
+	}
+
+	/**
+	 * Asynchronously retrieves one or more messages from the specified queue
+	 * and downloads the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#receiveMessage(ReceiveMessageRequest)
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest receiveMessageRequest,
+			AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+		final boolean resolveMessages = getExtendedClientConfiguration().isLargePayloadSupportEnabled()
+				|| getExtendedClientConfiguration().isVisibilityHeartbeatEnabled();
+		ChainedOperation<ReceiveMessageRequest, ReceiveMessageResult> operation;
+		operation = new ChainedOperation<ReceiveMessageRequest, ReceiveMessageResult>(receiveMessageRequest,
+				asyncHandler) {
+			private long receivedNanos;
+
+			void start() {
+				ReceiveMessageRequest sqsRequest = prepareReceiveMessage(request);
+				receivedNanos = System.nanoTime();
+				startSqsCall(Operation.RECEIVE);
+				AmazonSQSExtendedAsyncClient.super.receiveMessageAsync(sqsRequest, this);
+			}
+
+			@Override
+			void onSqsSuccess(final ReceiveMessageRequest sqsRequest, final ReceiveMessageResult result) {
+				if (!resolveMessages) {
+					complete(result);
+					return;
+				}
+				// The payloads are downloaded on the executor rather than on the
+				// thread of the Amazon SQS client.
+				execute(new Runnable() {
+					public void run() {
+						resolveReceivedMessages(result);
+						trackInFlightMessages(sqsRequest.getQueueUrl(), result.getMessages(), receivedNanos,
+								sqsRequest.getVisibilityTimeout());
+						complete(result);
+					}
+				});
+			}
+		};
+		// Receive starts with Amazon SQS, so the call is started right away.
+		return operation.runNow();
+	}
+
+	/**
+	 * Asynchronously retrieves one or more messages from the specified queue
+	 * and downloads the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#receiveMessage(String)
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(String queueUrl) {
+		return receiveMessageAsync(new ReceiveMessageRequest(queueUrl), null);
+	}
+
+	/**
+	 * Asynchronously retrieves one or more messages from the specified queue
+	 * and downloads the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#receiveMessage(String)
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(String queueUrl,
+			AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+		return receiveMessageAsync(new ReceiveMessageRequest(queueUrl), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously deletes the specified message from the specified queue
+	 * and deletes the message payload from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessage(DeleteMessageRequest)
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest deleteMessageRequest) {
+		return deleteMessageAsync(deleteMessageRequest, null);
+	}
+
+	/**
+	 * Asynchronously deletes the specified message from the specified queue
+	 * and deletes the message payload from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessage(DeleteMessageRequest)
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest deleteMessageRequest,
+			AsyncHandler<DeleteMessageRequest, DeleteMessageResult> asyncHandler) {
+		if (!getExtendedClientConfiguration().isLargePayloadSupportEnabled()) {
+			return super.deleteMessageAsync(prepareDeleteMessage(deleteMessageRequest), asyncHandler);
+		}
+		return new ChainedOperation<DeleteMessageRequest, DeleteMessageResult>(deleteMessageRequest, asyncHandler) {
+			private String receiptHandle;
+
+			void start() {
+				receiptHandle = request.getReceiptHandle();
+				AmazonSQSExtendedAsyncClient.super.deleteMessageAsync(prepareDeleteMessage(request), this);
+			}
+
+			@Override
+			void onSqsSuccess(DeleteMessageRequest sqsRequest, DeleteMessageResult result) {
+				scheduleDeferredPayloadDeletion(receiptHandle);
+				complete(result);
+			}
+		}.submit();
+	}
+
+	/**
+	 * Asynchronously deletes the specified message from the specified queue
+	 * and deletes the message payload from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessage(String, String)
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(String queueUrl, String receiptHandle) {
+		return deleteMessageAsync(new DeleteMessageRequest(queueUrl, receiptHandle), null);
+	}
+
+	/**
+	 * Asynchronously deletes the specified message from the specified queue
+	 * and deletes the message payload from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessage(String, String)
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(String queueUrl, String receiptHandle,
+			AsyncHandler<DeleteMessageRequest, DeleteMessageResult> asyncHandler) {
+		return deleteMessageAsync(new DeleteMessageRequest(queueUrl, receiptHandle), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously delivers up to ten messages to the specified queue and
+	 * uploads message payloads to Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessageBatch(SendMessageBatchRequest)
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(SendMessageBatchRequest sendMessageBatchRequest) {
+		return sendMessageBatchAsync(sendMessageBatchRequest, null);
+	}
+
+	/**
+	 * Asynchronously delivers up to ten messages to the specified queue and
+	 * uploads message payloads to Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessageBatch(SendMessageBatchRequest)
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(SendMessageBatchRequest sendMessageBatchRequest,
+			AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+		ChainedOperation<SendMessageBatchRequest, SendMessageBatchResult> operation;
+		operation = new ChainedOperation<SendMessageBatchRequest, SendMessageBatchResult>(sendMessageBatchRequest,
+				asyncHandler) {
+			void start() {
+				SendMessageBatchRequest sqsRequest = prepareSendMessageBatch(request);
+				startSqsCall(Operation.SEND);
+				AmazonSQSExtendedAsyncClient.super.sendMessageBatchAsync(sqsRequest, this);
+			}
+		};
+		return getExtendedClientConfiguration().isLargePayloadSupportEnabled() ? operation.submit() : operation
+				.runNow();
+	}
+
+	/**
+	 * Asynchronously delivers up to ten messages to the specified queue and
+	 * uploads message payloads to Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessageBatch(String, List)
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(String queueUrl,
+			List<SendMessageBatchRequestEntry> entries) {
+		return sendMessageBatchAsync(new SendMessageBatchRequest(queueUrl, entries), null);
+	}
+
+	/**
+	 * Asynchronously delivers up to ten messages to the specified queue and
+	 * uploads message payloads to Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#sendMessageBatch(String, List)
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(String queueUrl,
+			List<SendMessageBatchRequestEntry> entries,
+			AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+		return sendMessageBatchAsync(new SendMessageBatchRequest(queueUrl, entries), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously deletes up to ten messages from the specified queue and
+	 * deletes the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessageBatch(DeleteMessageBatchRequest)
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(
+			DeleteMessageBatchRequest deleteMessageBatchRequest) {
+		return deleteMessageBatchAsync(deleteMessageBatchRequest, null);
+	}
+
+	/**
+	 * Asynchronously deletes up to ten messages from the specified queue and
+	 * deletes the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessageBatch(DeleteMessageBatchRequest)
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(
+			DeleteMessageBatchRequest deleteMessageBatchRequest,
+			AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+		if (!getExtendedClientConfiguration().isLargePayloadSupportEnabled()) {
+			prepareDeleteMessageBatch(deleteMessageBatchRequest);
+			return super.deleteMessageBatchAsync(deleteMessageBatchRequest, asyncHandler);
+		}
+		return new ChainedOperation<DeleteMessageBatchRequest, DeleteMessageBatchResult>(deleteMessageBatchRequest,
+				asyncHandler) {
+			private List<BatchResultErrorEntry> failedEntries;
+			private Map<String, S3ReceiptHandle> receiptHandles;
+
+			void start() {
+				receiptHandles = getDeferredPayloadReceiptHandles(request);
+				failedEntries = prepareDeleteMessageBatch(request);
+				if (!failedEntries.isEmpty() && request.getEntries().isEmpty()) {
+					complete(new DeleteMessageBatchResult().withFailed(failedEntries));
+					return;
+				}
+				AmazonSQSExtendedAsyncClient.super.deleteMessageBatchAsync(request, this);
+			}
+
+			@Override
+			void onSqsSuccess(DeleteMessageBatchRequest sqsRequest, DeleteMessageBatchResult result) {
+				scheduleDeferredPayloadDeletions(receiptHandles, result);
+				result.getFailed().addAll(failedEntries);
+				complete(result);
+			}
+		}.submit();
+	}
+
+	/**
+	 * Asynchronously deletes up to ten messages from the specified queue and
+	 * deletes the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessageBatch(String, List)
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(String queueUrl,
+			List<DeleteMessageBatchRequestEntry> entries) {
+		return deleteMessageBatchAsync(new DeleteMessageBatchRequest(queueUrl, entries), null);
+	}
+
+	/**
+	 * Asynchronously deletes up to ten messages from the specified queue and
+	 * deletes the message payloads from Amazon S3 when necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#deleteMessageBatch(String, List)
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(String queueUrl,
+			List<DeleteMessageBatchRequestEntry> entries,
+			AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+		return deleteMessageBatchAsync(new DeleteMessageBatchRequest(queueUrl, entries), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of a specified message in
+	 * a queue, removing the location of the message payload from the receipt
+	 * handle first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibility(ChangeMessageVisibilityRequest)
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+			ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+		return changeMessageVisibilityAsync(changeMessageVisibilityRequest, null);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of a specified message in
+	 * a queue, removing the location of the message payload from the receipt
+	 * handle first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibility(ChangeMessageVisibilityRequest)
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+			ChangeMessageVisibilityRequest changeMessageVisibilityRequest,
+			AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> asyncHandler) {
+		return super.changeMessageVisibilityAsync(prepareChangeMessageVisibility(changeMessageVisibilityRequest),
+				asyncHandler);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of a specified message in
+	 * a queue, removing the location of the message payload from the receipt
+	 * handle first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibility(String, String, Integer)
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(String queueUrl, String receiptHandle,
+			Integer visibilityTimeout) {
+		return changeMessageVisibilityAsync(new ChangeMessageVisibilityRequest(queueUrl, receiptHandle,
+				visibilityTimeout), null);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of a specified message in
+	 * a queue, removing the location of the message payload from the receipt
+	 * handle first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibility(String, String, Integer)
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(String queueUrl, String receiptHandle,
+			Integer visibilityTimeout,
+			AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> asyncHandler) {
+		return changeMessageVisibilityAsync(new ChangeMessageVisibilityRequest(queueUrl, receiptHandle,
+				visibilityTimeout), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of up to ten messages in
+	 * a queue, removing the locations of the message payloads from the
+	 * receipt handles first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest)
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+			ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
+		return changeMessageVisibilityBatchAsync(changeMessageVisibilityBatchRequest, null);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of up to ten messages in
+	 * a queue, removing the locations of the message payloads from the
+	 * receipt handles first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest)
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+			ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest,
+			AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+		return super.changeMessageVisibilityBatchAsync(prepareChangeMessageVisibilityBatch(
+				changeMessageVisibilityBatchRequest), asyncHandler);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of up to ten messages in
+	 * a queue, removing the locations of the message payloads from the
+	 * receipt handles first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibilityBatch(String, List)
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(String queueUrl,
+			List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		return changeMessageVisibilityBatchAsync(new ChangeMessageVisibilityBatchRequest(queueUrl, entries), null);
+	}
+
+	/**
+	 * Asynchronously changes the visibility timeout of up to ten messages in
+	 * a queue, removing the locations of the message payloads from the
+	 * receipt handles first if necessary.
+	 *
+	 * @see AmazonSQSExtendedClient#changeMessageVisibilityBatch(String, List)
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(String queueUrl,
+			List<ChangeMessageVisibilityBatchRequestEntry> entries,
+			AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+		return changeMessageVisibilityBatchAsync(new ChangeMessageVisibilityBatchRequest(queueUrl, entries),
+				asyncHandler);
+	}
+
+	/**
+	 * Shuts down this client and the Amazon SQS client it extends. The
+	 * executor of this client is shut down as well unless it was supplied by
+	 * the caller.
+	 */
+	public void shutdown() {
+		super.shutdown();
+		synchronized (this) {
+			shutDown = true;
+			if (ownsExecutorService && executorService != null) {
+				executorService.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Gets the executor which runs the Amazon S3 steps, creating the thread
+	 * pool of this client on first use.
+	 */
+	private synchronized ExecutorService getExecutorService() {
+		if (executorService == null) {
+			if (shutDown) {
+				throw new RejectedExecutionException("The client has been shut down.");
+			}
+			executorService = Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE);
+		}
+		return executorService;
+	}
+
+	/**
+	 * An asynchronous operation whose Amazon S3 step runs on the executor of
+	 * this client and which then continues with an asynchronous call to Amazon
+	 * SQS. The operation is the handler of that call and completes its own
+	 * future and the handler of the caller.
+	 */
+	private abstract class ChainedOperation<REQUEST extends AmazonWebServiceRequest, RESULT> implements Runnable,
+			AsyncHandler<REQUEST, RESULT> {
+		final REQUEST request;
+		final SettableFuture<RESULT> future = new SettableFuture<RESULT>();
+		private final AsyncHandler<REQUEST, RESULT> asyncHandler;
+		// Set while the call to Amazon SQS is in flight.
+		private volatile Operation sqsOperation;
+		private long sqsStartNanos;
+
+		ChainedOperation(REQUEST request, AsyncHandler<REQUEST, RESULT> asyncHandler) {
+			this.request = request;
+			this.asyncHandler = asyncHandler;
+		}
+
+		/**
+		 * Does the Amazon S3 step of the operation and starts the call to
+		 * Amazon SQS with this operation as its handler.
+		 */
+		abstract void start();
+
+		Future<RESULT> submit() {
+			execute(this);
+			return future;
+		}
+
+		/**
+		 * Starts the operation on the calling thread.
+		 */
+		Future<RESULT> runNow() {
+			run();
+			return future;
+		}
+
+		/**
+		 * Marks the start of the call to Amazon SQS, whose latency or error is
+		 * recorded for the given operation.
+		 */
+		void startSqsCall(Operation operation) {
+			sqsStartNanos = System.nanoTime();
+			sqsOperation = operation;
+		}
+
+		void execute(final Runnable step) {
+			Runnable guardedStep = new Runnable() {
+				public void run() {
+					if (future.isCancelled()) {
+						return;
+					}
+					try {
+						step.run();
+					} catch (Exception e) {
+						onError(e);
+					}
+				}
+			};
+			try {
+				getExecutorService().execute(guardedStep);
+			} catch (RejectedExecutionException e) {
+				onError(e);
+			}
+		}
+
+		public void run() {
+			try {
+				start();
+			} catch (Exception e) {
+				onError(e);
+			}
+		}
+
+		public void onSuccess(REQUEST sqsRequest, RESULT result) {
+			Operation operation = sqsOperation;
+			if (operation != null) {
+				sqsOperation = null;
+				getExtendedClientConfiguration().getMetricsCollector().recordLatency(operation,
+						System.nanoTime() - sqsStartNanos);
+			}
+			onSqsSuccess(sqsRequest, result);
+		}
+
+		/**
+		 * Continues the operation once the call to Amazon SQS has succeeded.
+		 */
+		void onSqsSuccess(REQUEST sqsRequest, RESULT result) {
+			complete(result);
+		}
+
+		void complete(RESULT result) {
+			if (asyncHandler != null) {
+				try {
+					asyncHandler.onSuccess(request, result);
+				} catch (RuntimeException e) {
+					LOG.warn("AsyncHandler.onSuccess failed.", e);
+				}
+			}
+			future.set(result);
+		}
+
+		public void onError(Exception exception) {
+			Operation operation = sqsOperation;
+			if (operation != null) {
+				sqsOperation = null;
+				getExtendedClientConfiguration().getMetricsCollector().recordError(operation, exception);
+			}
+			if (asyncHandler != null) {
+				try {
+					asyncHandler.onError(exception);
+				} catch (RuntimeException e) {
+					LOG.warn("AsyncHandler.onError failed.", e);
+				}
+			}
+			future.setException(exception);
+		}
+	}
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.AddPermissionRequest;
+import com.amazonaws.services.sqs.model.AddPermissionResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.DeleteQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteQueueResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.ListDeadLetterSourceQueuesRequest;
+import com.amazonaws.services.sqs.model.ListDeadLetterSourceQueuesResult;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesResult;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
+import com.amazonaws.services.sqs.model.PurgeQueueResult;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.RemovePermissionRequest;
+import com.amazonaws.services.sqs.model.RemovePermissionResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.SetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.SetQueueAttributesResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+abstract class AmazonSQSExtendedAsyncClientBase extends AmazonSQSExtendedClient implements AmazonSQSAsync {
+	private final AmazonSQSAsync amazonSqsAsyncToBeExtended;
+
+	AmazonSQSExtendedAsyncClientBase(AmazonSQSAsync sqsAsyncClient, ExtendedClientConfiguration extendedClientConfig) {
+		super(sqsAsyncClient, extendedClientConfig);
+		amazonSqsAsyncToBeExtended = sqsAsyncClient;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<AddPermissionResult> addPermissionAsync(AddPermissionRequest addPermissionRequest) {
+		return amazonSqsAsyncToBeExtended.addPermissionAsync(addPermissionRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<AddPermissionResult> addPermissionAsync(AddPermissionRequest addPermissionRequest,
+			AsyncHandler<AddPermissionRequest, AddPermissionResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.addPermissionAsync(addPermissionRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<AddPermissionResult> addPermissionAsync(String queueUrl, String label, List<String> aWSAccountIds,
+			List<String> actions) {
+		return amazonSqsAsyncToBeExtended.addPermissionAsync(queueUrl, label, aWSAccountIds, actions);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<AddPermissionResult> addPermissionAsync(String queueUrl, String label, List<String> aWSAccountIds,
+			List<String> actions, AsyncHandler<AddPermissionRequest, AddPermissionResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.addPermissionAsync(queueUrl, label, aWSAccountIds, actions, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+			ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityAsync(changeMessageVisibilityRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+			ChangeMessageVisibilityRequest changeMessageVisibilityRequest,
+			AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityAsync(changeMessageVisibilityRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(String queueUrl, String receiptHandle,
+			Integer visibilityTimeout) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityAsync(queueUrl, receiptHandle, visibilityTimeout);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(String queueUrl, String receiptHandle,
+			Integer visibilityTimeout,
+			AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityAsync(queueUrl, receiptHandle, visibilityTimeout,
+				asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+			ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityBatchAsync(changeMessageVisibilityBatchRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+			ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest,
+			AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityBatchAsync(changeMessageVisibilityBatchRequest,
+				asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(String queueUrl,
+			List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityBatchAsync(queueUrl, entries);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(String queueUrl,
+			List<ChangeMessageVisibilityBatchRequestEntry> entries,
+			AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.changeMessageVisibilityBatchAsync(queueUrl, entries, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<CreateQueueResult> createQueueAsync(CreateQueueRequest createQueueRequest) {
+		return amazonSqsAsyncToBeExtended.createQueueAsync(createQueueRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<CreateQueueResult> createQueueAsync(CreateQueueRequest createQueueRequest,
+			AsyncHandler<CreateQueueRequest, CreateQueueResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.createQueueAsync(createQueueRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<CreateQueueResult> createQueueAsync(String queueName) {
+		return amazonSqsAsyncToBeExtended.createQueueAsync(queueName);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<CreateQueueResult> createQueueAsync(String queueName,
+			AsyncHandler<CreateQueueRequest, CreateQueueResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.createQueueAsync(queueName, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest deleteMessageRequest) {
+		return amazonSqsAsyncToBeExtended.deleteMessageAsync(deleteMessageRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest deleteMessageRequest,
+			AsyncHandler<DeleteMessageRequest, DeleteMessageResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.deleteMessageAsync(deleteMessageRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(String queueUrl, String receiptHandle) {
+		return amazonSqsAsyncToBeExtended.deleteMessageAsync(queueUrl, receiptHandle);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageResult> deleteMessageAsync(String queueUrl, String receiptHandle,
+			AsyncHandler<DeleteMessageRequest, DeleteMessageResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.deleteMessageAsync(queueUrl, receiptHandle, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(
+			DeleteMessageBatchRequest deleteMessageBatchRequest) {
+		return amazonSqsAsyncToBeExtended.deleteMessageBatchAsync(deleteMessageBatchRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(DeleteMessageBatchRequest deleteMessageBatchRequest,
+			AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.deleteMessageBatchAsync(deleteMessageBatchRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(String queueUrl,
+			List<DeleteMessageBatchRequestEntry> entries) {
+		return amazonSqsAsyncToBeExtended.deleteMessageBatchAsync(queueUrl, entries);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(String queueUrl,
+			List<DeleteMessageBatchRequestEntry> entries,
+			AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.deleteMessageBatchAsync(queueUrl, entries, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteQueueResult> deleteQueueAsync(DeleteQueueRequest deleteQueueRequest) {
+		return amazonSqsAsyncToBeExtended.deleteQueueAsync(deleteQueueRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteQueueResult> deleteQueueAsync(DeleteQueueRequest deleteQueueRequest,
+			AsyncHandler<DeleteQueueRequest, DeleteQueueResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.deleteQueueAsync(deleteQueueRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteQueueResult> deleteQueueAsync(String queueUrl) {
+		return amazonSqsAsyncToBeExtended.deleteQueueAsync(queueUrl);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<DeleteQueueResult> deleteQueueAsync(String queueUrl,
+			AsyncHandler<DeleteQueueRequest, DeleteQueueResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.deleteQueueAsync(queueUrl, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueAttributesResult> getQueueAttributesAsync(
+			GetQueueAttributesRequest getQueueAttributesRequest) {
+		return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(getQueueAttributesRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueAttributesResult> getQueueAttributesAsync(GetQueueAttributesRequest getQueueAttributesRequest,
+			AsyncHandler<GetQueueAttributesRequest, GetQueueAttributesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(getQueueAttributesRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueAttributesResult> getQueueAttributesAsync(String queueUrl, List<String> attributeNames) {
+		return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(queueUrl, attributeNames);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueAttributesResult> getQueueAttributesAsync(String queueUrl, List<String> attributeNames,
+			AsyncHandler<GetQueueAttributesRequest, GetQueueAttributesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(queueUrl, attributeNames, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueUrlResult> getQueueUrlAsync(GetQueueUrlRequest getQueueUrlRequest) {
+		return amazonSqsAsyncToBeExtended.getQueueUrlAsync(getQueueUrlRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueUrlResult> getQueueUrlAsync(GetQueueUrlRequest getQueueUrlRequest,
+			AsyncHandler<GetQueueUrlRequest, GetQueueUrlResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.getQueueUrlAsync(getQueueUrlRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueUrlResult> getQueueUrlAsync(String queueName) {
+		return amazonSqsAsyncToBeExtended.getQueueUrlAsync(queueName);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<GetQueueUrlResult> getQueueUrlAsync(String queueName,
+			AsyncHandler<GetQueueUrlRequest, GetQueueUrlResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.getQueueUrlAsync(queueName, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListDeadLetterSourceQueuesResult> listDeadLetterSourceQueuesAsync(
+			ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest) {
+		return amazonSqsAsyncToBeExtended.listDeadLetterSourceQueuesAsync(listDeadLetterSourceQueuesRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListDeadLetterSourceQueuesResult> listDeadLetterSourceQueuesAsync(
+			ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest,
+			AsyncHandler<ListDeadLetterSourceQueuesRequest, ListDeadLetterSourceQueuesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.listDeadLetterSourceQueuesAsync(listDeadLetterSourceQueuesRequest,
+				asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListQueuesResult> listQueuesAsync(ListQueuesRequest listQueuesRequest) {
+		return amazonSqsAsyncToBeExtended.listQueuesAsync(listQueuesRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListQueuesResult> listQueuesAsync(ListQueuesRequest listQueuesRequest,
+			AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.listQueuesAsync(listQueuesRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListQueuesResult> listQueuesAsync() {
+		return amazonSqsAsyncToBeExtended.listQueuesAsync();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListQueuesResult> listQueuesAsync(AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.listQueuesAsync(asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListQueuesResult> listQueuesAsync(String queueNamePrefix) {
+		return amazonSqsAsyncToBeExtended.listQueuesAsync(queueNamePrefix);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ListQueuesResult> listQueuesAsync(String queueNamePrefix,
+			AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.listQueuesAsync(queueNamePrefix, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<PurgeQueueResult> purgeQueueAsync(PurgeQueueRequest purgeQueueRequest) {
+		return amazonSqsAsyncToBeExtended.purgeQueueAsync(purgeQueueRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<PurgeQueueResult> purgeQueueAsync(PurgeQueueRequest purgeQueueRequest,
+			AsyncHandler<PurgeQueueRequest, PurgeQueueResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.purgeQueueAsync(purgeQueueRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest receiveMessageRequest) {
+		return amazonSqsAsyncToBeExtended.receiveMessageAsync(receiveMessageRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest receiveMessageRequest,
+			AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.receiveMessageAsync(receiveMessageRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(String queueUrl) {
+		return amazonSqsAsyncToBeExtended.receiveMessageAsync(queueUrl);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<ReceiveMessageResult> receiveMessageAsync(String queueUrl,
+			AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.receiveMessageAsync(queueUrl, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<RemovePermissionResult> removePermissionAsync(RemovePermissionRequest removePermissionRequest) {
+		return amazonSqsAsyncToBeExtended.removePermissionAsync(removePermissionRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<RemovePermissionResult> removePermissionAsync(RemovePermissionRequest removePermissionRequest,
+			AsyncHandler<RemovePermissionRequest, RemovePermissionResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.removePermissionAsync(removePermissionRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<RemovePermissionResult> removePermissionAsync(String queueUrl, String label) {
+		return amazonSqsAsyncToBeExtended.removePermissionAsync(queueUrl, label);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<RemovePermissionResult> removePermissionAsync(String queueUrl, String label,
+			AsyncHandler<RemovePermissionRequest, RemovePermissionResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.removePermissionAsync(queueUrl, label, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageResult> sendMessageAsync(SendMessageRequest sendMessageRequest) {
+		return amazonSqsAsyncToBeExtended.sendMessageAsync(sendMessageRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageResult> sendMessageAsync(SendMessageRequest sendMessageRequest,
+			AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.sendMessageAsync(sendMessageRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageResult> sendMessageAsync(String queueUrl, String messageBody) {
+		return amazonSqsAsyncToBeExtended.sendMessageAsync(queueUrl, messageBody);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageResult> sendMessageAsync(String queueUrl, String messageBody,
+			AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.sendMessageAsync(queueUrl, messageBody, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(SendMessageBatchRequest sendMessageBatchRequest) {
+		return amazonSqsAsyncToBeExtended.sendMessageBatchAsync(sendMessageBatchRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(SendMessageBatchRequest sendMessageBatchRequest,
+			AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.sendMessageBatchAsync(sendMessageBatchRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(String queueUrl,
+			List<SendMessageBatchRequestEntry> entries) {
+		return amazonSqsAsyncToBeExtended.sendMessageBatchAsync(queueUrl, entries);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(String queueUrl,
+			List<SendMessageBatchRequestEntry> entries,
+			AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.sendMessageBatchAsync(queueUrl, entries, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SetQueueAttributesResult> setQueueAttributesAsync(
+			SetQueueAttributesRequest setQueueAttributesRequest) {
+		return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(setQueueAttributesRequest);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SetQueueAttributesResult> setQueueAttributesAsync(SetQueueAttributesRequest setQueueAttributesRequest,
+			AsyncHandler<SetQueueAttributesRequest, SetQueueAttributesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(setQueueAttributesRequest, asyncHandler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SetQueueAttributesResult> setQueueAttributesAsync(String queueUrl, Map<String, String> attributes) {
+		return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(queueUrl, attributes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Future<SetQueueAttributesResult> setQueueAttributesAsync(String queueUrl, Map<String, String> attributes,
+			AsyncHandler<SetQueueAttributesRequest, SetQueueAttributesResult> asyncHandler) {
+		return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(queueUrl, attributes, asyncHandler);
+	}
+}
@@ -15,18 +15,23 @@
 
 package com.amazon.sqs.javamessaging;
 
+import com.amazon.sqs.javamessaging.MetricsCollector.Operation;
+import com.amazon.sqs.javamessaging.ReceiptHandleCodec.S3ReceiptHandle;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.BatchEntryIdsNotDistinctException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
 import com.amazonaws.services.sqs.model.BatchRequestTooLongException;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
 import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageResult;
 import com.amazonaws.services.sqs.model.EmptyBatchRequestException;
@@ -35,6 +40,7 @@ import com.amazonaws.services.sqs.model.InvalidIdFormatException;
 import com.amazonaws.services.sqs.model.InvalidMessageContentsException;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageNotInflightException;
 import com.amazonaws.services.sqs.model.OverLimitException;
 import com.amazonaws.services.sqs.model.PurgeQueueRequest;
 import com.amazonaws.services.sqs.model.PurgeQueueResult;
@@ -47,20 +53,40 @@ import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.amazonaws.services.sqs.model.TooManyEntriesInBatchRequestException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Amazon SQS Extended Client extends the functionality of Amazon SQS client.
@@ -83,8 +109,18 @@ import java.util.UUID;
  */
 public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	private static final Log LOG = LogFactory.getLog(AmazonSQSExtendedClient.class);
+	// An upper bound for the S3 pointer and the attribute which replace an
+	// offloaded message body.
+	private static final int OFFLOADED_MESSAGE_SIZE_ESTIMATE = 512;
 
 	private ExtendedClientConfiguration clientConfiguration;
+	private final ConcurrentMap<String, PrefetchingReceiveBuffer> receiveBuffers;
+	private final ConcurrentMap<String, SendMessageBatcher> sendBatchers;
+	private final PayloadStore payloadStore;
+	private final DeferredPayloadDeleter payloadDeleter;
+	private final VisibilityHeartbeat visibilityHeartbeat;
+	private final PayloadSpool payloadSpool;
+	private volatile boolean shutDown;
 
 	/**
 	 * Constructs a new Amazon SQS extended client to invoke service methods on
@@ -120,6 +156,31 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	public AmazonSQSExtendedClient(AmazonSQS sqsClient, ExtendedClientConfiguration extendedClientConfig) {
 		super(sqsClient);
 		this.clientConfiguration = new ExtendedClientConfiguration(extendedClientConfig);
+		this.receiveBuffers = new ConcurrentHashMap<String, PrefetchingReceiveBuffer>();
+		this.sendBatchers = new ConcurrentHashMap<String, SendMessageBatcher>();
+		if (clientConfiguration.getPayloadStore() != null) {
+			this.payloadStore = clientConfiguration.getPayloadStore();
+		} else if (clientConfiguration.getAmazonS3Client() != null) {
+			this.payloadStore = new S3PayloadStore(clientConfiguration.getAmazonS3Client(), clientConfiguration);
+		} else {
+			this.payloadStore = null;
+		}
+		if (clientConfiguration.isLargePayloadSupportEnabled()
+				&& clientConfiguration.isDeferredPayloadDeletionEnabled()) {
+			this.payloadDeleter = new DeferredPayloadDeleter(payloadStore, clientConfiguration
+					.getPayloadReferenceStore(), clientConfiguration.getPayloadDeletionSpillFile(),
+					clientConfiguration.getMetricsCollector());
+		} else {
+			this.payloadDeleter = null;
+		}
+		if (clientConfiguration.isVisibilityHeartbeatEnabled()) {
+			this.visibilityHeartbeat = new VisibilityHeartbeat(this, clientConfiguration
+					.getVisibilityHeartbeatTimeout(), clientConfiguration.getVisibilityHeartbeatMaxLifetime());
+		} else {
+			this.visibilityHeartbeat = null;
+		}
+		this.payloadSpool = new PayloadSpool(clientConfiguration.getPayloadSpoolDirectory(), clientConfiguration
+				.getPayloadSpoolQuota());
 	}
 
 	/**
@@ -157,29 +218,80 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 *             side issue.
 	 */
 	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest) {
-
-		if (sendMessageRequest == null) {
-			String errorMessage = "sendMessageRequest cannot be null.";
-			LOG.error(errorMessage);
-			throw new AmazonClientException(errorMessage);
+		SendMessageRequest preparedRequest = prepareSendMessage(sendMessageRequest);
+		if (clientConfiguration.isSendBatchingEnabled() && !shutDown && preparedRequest.getMessageBody() != null) {
+			long messageSize = Utf8Length.of(preparedRequest.getMessageBody())
+					+ getMsgAttributesSize(preparedRequest.getMessageAttributes());
+			// A message which SQS rejects must not fail a whole batch.
+			if (messageSize <= SQSExtendedClientConstants.MAX_BATCH_REQUEST_SIZE) {
+				return getSendBatcher(preparedRequest.getQueueUrl()).send(preparedRequest, (int) messageSize);
+			}
 		}
+		return sendMessageToSqs(preparedRequest);
+	}
 
-		sendMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+	private SendMessageResult sendMessageToSqs(SendMessageRequest sendMessageRequest) {
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		long startNanos = System.nanoTime();
+		SendMessageResult sendMessageResult;
+		try {
+			sendMessageResult = super.sendMessage(sendMessageRequest);
+		} catch (RuntimeException e) {
+			metricsCollector.recordError(Operation.SEND, e);
+			throw e;
+		}
+		metricsCollector.recordLatency(Operation.SEND, System.nanoTime() - startNanos);
+		return sendMessageResult;
+	}
 
-		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
-			return super.sendMessage(sendMessageRequest);
+	private SendMessageBatchResult sendMessageBatchToSqs(SendMessageBatchRequest sendMessageBatchRequest) {
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		long startNanos = System.nanoTime();
+		SendMessageBatchResult sendMessageBatchResult;
+		try {
+			sendMessageBatchResult = super.sendMessageBatch(sendMessageBatchRequest);
+		} catch (RuntimeException e) {
+			metricsCollector.recordError(Operation.SEND, e);
+			throw e;
 		}
+		metricsCollector.recordLatency(Operation.SEND, System.nanoTime() - startNanos);
+		return sendMessageBatchResult;
+	}
 
-		if (sendMessageRequest.getMessageBody() == null || "".equals(sendMessageRequest.getMessageBody())) {
-			String errorMessage = "messageBody cannot be null or empty.";
-			LOG.error(errorMessage);
-			throw new AmazonClientException(errorMessage);
+	private ReceiveMessageResult receiveMessageFromSqs(ReceiveMessageRequest receiveMessageRequest) {
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		long startNanos = System.nanoTime();
+		ReceiveMessageResult receiveMessageResult;
+		try {
+			receiveMessageResult = super.receiveMessage(receiveMessageRequest);
+		} catch (RuntimeException e) {
+			metricsCollector.recordError(Operation.RECEIVE, e);
+			throw e;
 		}
+		metricsCollector.recordLatency(Operation.RECEIVE, System.nanoTime() - startNanos);
+		return receiveMessageResult;
+	}
 
-		if (clientConfiguration.isAlwaysThroughS3() || isLarge(sendMessageRequest)) {
-			sendMessageRequest = storeMessageInS3(sendMessageRequest);
+	private SendMessageBatcher getSendBatcher(String queueUrl) {
+		SendMessageBatcher sendBatcher = sendBatchers.get(queueUrl);
+		if (sendBatcher == null) {
+			sendBatcher = new SendMessageBatcher(this, queueUrl, clientConfiguration.getSendBatchMaxEntries(),
+					SQSExtendedClientConstants.MAX_BATCH_REQUEST_SIZE, clientConfiguration.getSendBatchLingerMillis());
+			SendMessageBatcher existing = sendBatchers.putIfAbsent(queueUrl, sendBatcher);
+			if (existing != null) {
+				sendBatcher = existing;
+			}
 		}
-		return super.sendMessage(sendMessageRequest);
+		return sendBatcher;
+	}
+
+	/**
+	 * Sends a batch of messages which have already been prepared, without
+	 * storing any payloads in Amazon S3.
+	 */
+	SendMessageBatchResult sendPreparedMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+		sendMessageBatchRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+		return sendMessageBatchToSqs(sendMessageBatchRequest);
 	}
 
 	/**
@@ -221,6 +333,319 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 		return sendMessage(sendMessageRequest);
 	}
 
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and streams its payload from an
+	 * input stream of known length to Amazon S3, without holding the payload in
+	 * memory. The stream is read to the end but not closed.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param sendMessageRequest
+	 *            Container for the queue URL, message attributes and delay of
+	 *            the message. The message body is ignored.
+	 * @param payload
+	 *            The stream to read the message payload from.
+	 * @param payloadLength
+	 *            The number of bytes of the message payload.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, InputStream payload,
+			long payloadLength) {
+		checkStreamingSendMessageRequest(sendMessageRequest, payload);
+
+		String s3Key = UUID.randomUUID().toString();
+		storeStreamInS3(s3Key, payload, payloadLength);
+		LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName() + ", Object key: " + s3Key
+				+ ".");
+
+		return sendMessageToSqs(attachS3Pointer(sendMessageRequest, s3Key, payloadLength));
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and streams its payload from an
+	 * input stream of unknown length to Amazon S3. Only one part of the
+	 * payload is held in memory at a time; payloads larger than a part are
+	 * stored with a multipart upload. The stream is read to the end but not
+	 * closed.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param sendMessageRequest
+	 *            Container for the queue URL, message attributes and delay of
+	 *            the message. The message body is ignored.
+	 * @param payload
+	 *            The stream to read the message payload from.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, InputStream payload) {
+		checkStreamingSendMessageRequest(sendMessageRequest, payload);
+
+		String s3Key = UUID.randomUUID().toString();
+		long payloadLength = storeStreamInS3(s3Key, payload, -1);
+		LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName() + ", Object key: " + s3Key
+				+ ".");
+
+		return sendMessageToSqs(attachS3Pointer(sendMessageRequest, s3Key, payloadLength));
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and uploads its payload from a
+	 * file to Amazon S3, without reading the file into memory.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param sendMessageRequest
+	 *            Container for the queue URL, message attributes and delay of
+	 *            the message. The message body is ignored.
+	 * @param payload
+	 *            The file which contains the message payload.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, File payload) {
+		checkStreamingSendMessageRequest(sendMessageRequest, payload);
+
+		String s3Key = UUID.randomUUID().toString();
+		long payloadLength = payload.length();
+		InputStream payloadStream = null;
+		try {
+			payloadStream = new FileInputStream(payload);
+		} catch (IOException e) {
+			String errorMessage = "Failed to read the message payload. SQS message was not sent.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+		try {
+			storeStreamInS3(s3Key, payloadStream, payloadLength);
+		} finally {
+			closeQuietly(payloadStream);
+		}
+		LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName() + ", Object key: " + s3Key
+				+ ".");
+
+		return sendMessageToSqs(attachS3Pointer(sendMessageRequest, s3Key, payloadLength));
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and uploads its payload from a
+	 * file to Amazon S3, without reading the file into memory.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param sendMessageRequest
+	 *            Container for the queue URL, message attributes and delay of
+	 *            the message. The message body is ignored.
+	 * @param payload
+	 *            The path of the file which contains the message payload.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, Path payload) {
+		checkStreamingSendMessageRequest(sendMessageRequest, payload);
+
+		if (payload.getFileSystem() == FileSystems.getDefault()) {
+			return sendMessage(sendMessageRequest, payload.toFile());
+		}
+		InputStream payloadStream = null;
+		try {
+			payloadStream = Files.newInputStream(payload);
+			return sendMessage(sendMessageRequest, payloadStream, Files.size(payload));
+		} catch (IOException e) {
+			String errorMessage = "Failed to read the message payload. SQS message was not sent.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		} finally {
+			closeQuietly(payloadStream);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and streams its payload from an
+	 * input stream of known length to Amazon S3, without holding the payload in
+	 * memory. The stream is read to the end but not closed.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 * @param payload
+	 *            The stream to read the message payload from.
+	 * @param payloadLength
+	 *            The number of bytes of the message payload.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(String queueUrl, InputStream payload, long payloadLength) {
+		return sendMessage(new SendMessageRequest().withQueueUrl(queueUrl), payload, payloadLength);
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and streams its payload from an
+	 * input stream of unknown length to Amazon S3. Only one part of the
+	 * payload is held in memory at a time. The stream is read to the end but
+	 * not closed.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 * @param payload
+	 *            The stream to read the message payload from.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(String queueUrl, InputStream payload) {
+		return sendMessage(new SendMessageRequest().withQueueUrl(queueUrl), payload);
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and uploads its payload from a
+	 * file to Amazon S3, without reading the file into memory.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 * @param payload
+	 *            The file which contains the message payload.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(String queueUrl, File payload) {
+		return sendMessage(new SendMessageRequest().withQueueUrl(queueUrl), payload);
+	}
+
+	/**
+	 * <p>
+	 * Delivers a message to the specified queue and uploads its payload from a
+	 * file to Amazon S3, without reading the file into memory.
+	 * </p>
+	 * <p>
+	 * Large-payload support must be enabled. The payload is always stored in
+	 * Amazon S3, whatever its size, and the message body of the request is
+	 * replaced by the pointer to the S3 object.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 * @param payload
+	 *            The path of the file which contains the message payload.
+	 * @return The response from the SendMessage service method, as returned by
+	 *         AmazonSQS.
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public SendMessageResult sendMessage(String queueUrl, Path payload) {
+		return sendMessage(new SendMessageRequest().withQueueUrl(queueUrl), payload);
+	}
+
 	/**
 	 * <p>
 	 * Retrieves one or more messages, with a maximum limit of 10 messages, from
@@ -232,6 +657,11 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 * > Amazon SQS Long Poll </a> in the <i>Amazon SQS Developer Guide</i> .
 	 * </p>
 	 * <p>
+	 * The payloads of the received messages are downloaded in parallel when an
+	 * S3 download executor is configured. The messages are returned in the
+	 * order in which Amazon SQS returned them.
+	 * </p>
+	 * <p>
 	 * Short poll is the default behavior where a weighted random set of
 	 * machines is sampled on a <code>ReceiveMessage</code> call. This means
 	 * only the messages on the sampled machines are returned. If the number of
@@ -322,56 +752,21 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 *             side issue.
 	 */
 	public ReceiveMessageResult receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
-
-		if (receiveMessageRequest == null) {
-			String errorMessage = "receiveMessageRequest cannot be null.";
-			LOG.error(errorMessage);
-			throw new AmazonClientException(errorMessage);
-		}
-
-		receiveMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
-
-		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
-			return super.receiveMessage(receiveMessageRequest);
+		long receivedNanos = System.nanoTime();
+		if (clientConfiguration.isReceivePrefetchEnabled() && receiveMessageRequest != null
+				&& receiveMessageRequest.getVisibilityTimeout() == null) {
+			ReceiveMessageResult receiveMessageResult = receiveMessageFromBuffer(receiveMessageRequest);
+			// Prefetched messages may have little of their visibility timeout
+			// left.
+			trackInFlightMessages(receiveMessageRequest.getQueueUrl(), receiveMessageResult.getMessages(),
+					receivedNanos, 0);
+			return receiveMessageResult;
 		}
-
-		receiveMessageRequest.getMessageAttributeNames().add(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
-
-		ReceiveMessageResult receiveMessageResult = super.receiveMessage(receiveMessageRequest);
-
-		List<Message> messages = receiveMessageResult.getMessages();
-		for (Message message : messages) {
-
-			// for each received message check if they are stored in S3.
-			MessageAttributeValue largePayloadAttributeValue = message.getMessageAttributes().get(
-					SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
-			if (largePayloadAttributeValue != null) {
-				String messageBody = message.getBody();
-
-				// read the S3 pointer from the message body JSON string.
-				MessageS3Pointer s3Pointer = readMessageS3PointerFromJSON(messageBody);
-
-				String s3MsgBucketName = s3Pointer.getS3BucketName();
-				String s3MsgKey = s3Pointer.getS3Key();
-
-				String origMsgBody = getTextFromS3(s3MsgBucketName, s3MsgKey);
-				LOG.info("S3 object read, Bucket name: " + s3MsgBucketName + ", Object key: " + s3MsgKey + ".");
-
-				message.setBody(origMsgBody);
-
-				// remove the additional attribute before returning the message
-				// to user.
-				message.getMessageAttributes().remove(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
-
-				// Embed s3 object pointer in the receipt handle.
-				String modifiedReceiptHandle = embedS3PointerInReceiptHandle(message.getReceiptHandle(),
-						s3MsgBucketName, s3MsgKey);
-
-				message.setReceiptHandle(modifiedReceiptHandle);
-			}
-		}
-		return receiveMessageResult;
-	}
+		ReceiveMessageResult receiveMessageResult = receiveMessageUnbuffered(receiveMessageRequest);
+		trackInFlightMessages(receiveMessageRequest.getQueueUrl(), receiveMessageResult.getMessages(), receivedNanos,
+				receiveMessageRequest.getVisibilityTimeout());
+		return receiveMessageResult;
+	}
 
 	/**
 	 * <p>
@@ -477,6 +872,358 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 		return receiveMessage(receiveMessageRequest);
 	}
 
+	/**
+	 * Receives messages from Amazon SQS and reads their payloads, bypassing
+	 * the prefetch buffer.
+	 */
+	ReceiveMessageResult receiveMessageUnbuffered(ReceiveMessageRequest receiveMessageRequest) {
+		ReceiveMessageResult receiveMessageResult = receiveMessageFromSqs(prepareReceiveMessage(receiveMessageRequest));
+		return resolveReceivedMessages(receiveMessageResult);
+	}
+
+	private ReceiveMessageResult receiveMessageFromBuffer(ReceiveMessageRequest receiveMessageRequest) {
+		String queueUrl = receiveMessageRequest.getQueueUrl();
+		PrefetchingReceiveBuffer receiveBuffer = receiveBuffers.get(queueUrl);
+		if (receiveBuffer == null) {
+			PrefetchingReceiveBuffer newBuffer = new PrefetchingReceiveBuffer(this, queueUrl,
+					clientConfiguration.getReceivePrefetchDepth(), clientConfiguration.getReceivePrefetchPollers(),
+					clientConfiguration.getReceivePrefetchVisibilityTimeout());
+			receiveBuffer = receiveBuffers.putIfAbsent(queueUrl, newBuffer);
+			if (receiveBuffer == null) {
+				receiveBuffer = newBuffer;
+				receiveBuffer.start();
+			}
+		}
+
+		Integer maxNumberOfMessages = receiveMessageRequest.getMaxNumberOfMessages();
+		Integer waitTimeSeconds = receiveMessageRequest.getWaitTimeSeconds();
+		try {
+			return new ReceiveMessageResult().withMessages(receiveBuffer.receive(maxNumberOfMessages == null ? 1
+					: maxNumberOfMessages, waitTimeSeconds == null ? 0 : waitTimeSeconds));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			String errorMessage = "Interrupted while waiting for prefetched messages.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+	}
+
+	/**
+	 * Makes received messages visible again right away, so that messages
+	 * which were prefetched but never handed out are not held back until
+	 * their visibility timeout runs out.
+	 */
+	void releaseMessages(String queueUrl, List<Message> messages) {
+		for (int start = 0; start < messages.size(); start += 10) {
+			List<ChangeMessageVisibilityBatchRequestEntry> entries;
+			entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>();
+			for (int i = start; i < Math.min(start + 10, messages.size()); i++) {
+				String receiptHandle = ReceiptHandleCodec.getOriginalReceiptHandle(messages.get(i).getReceiptHandle());
+				entries.add(new ChangeMessageVisibilityBatchRequestEntry(Integer.toString(i), receiptHandle)
+						.withVisibilityTimeout(0));
+			}
+			try {
+				super.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+			} catch (AmazonClientException e) {
+				LOG.warn("Failed to release " + entries.size() + " received messages of " + queueUrl
+						+ ". They will be delivered again once their visibility timeout runs out.", e);
+			}
+		}
+	}
+
+	/**
+	 * Extends the visibility timeouts of in-flight messages for the
+	 * visibility heartbeat. The receipt handles are the original ones.
+	 */
+	ChangeMessageVisibilityBatchResult extendVisibility(String queueUrl,
+			List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		return super.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+	}
+
+	/**
+	 * Starts extending the visibility timeouts of messages handed out to the
+	 * caller, if the visibility heartbeat is enabled.
+	 *
+	 * @param receivedNanos
+	 *            When the messages were received, from
+	 *            <code>System.nanoTime()</code>.
+	 * @param visibilityTimeout
+	 *            The visibility timeout in seconds which the messages were
+	 *            received with, or 0 or null if it is not known.
+	 */
+	void trackInFlightMessages(String queueUrl, List<Message> messages, long receivedNanos,
+			Integer visibilityTimeout) {
+		if (visibilityHeartbeat != null && !messages.isEmpty()) {
+			visibilityHeartbeat.track(queueUrl, messages, receivedNanos, visibilityTimeout == null ? 0
+					: visibilityTimeout);
+		}
+	}
+
+	/**
+	 * Stops extending the visibility timeout of a message.
+	 */
+	private void untrackInFlightMessage(String receiptHandle) {
+		if (visibilityHeartbeat != null) {
+			visibilityHeartbeat.untrack(receiptHandle);
+		}
+	}
+
+	/**
+	 * Sends the messages which are waiting in send batches, stops the prefetch
+	 * pollers and the visibility heartbeat, releases the prefetched messages
+	 * which were not handed out, deletes or spills the payloads queued for
+	 * deferred deletion, closes the spooled messages which are still open, and
+	 * shuts down the wrapped Amazon SQS client. Messages sent after shutdown
+	 * are not batched.
+	 */
+	@Override
+	public void shutdown() {
+		shutDown = true;
+		for (SendMessageBatcher sendBatcher : sendBatchers.values()) {
+			sendBatcher.shutdown();
+		}
+		sendBatchers.clear();
+		if (visibilityHeartbeat != null) {
+			visibilityHeartbeat.shutdown();
+		}
+		for (PrefetchingReceiveBuffer receiveBuffer : receiveBuffers.values()) {
+			receiveBuffer.shutdown();
+		}
+		receiveBuffers.clear();
+		if (payloadDeleter != null) {
+			payloadDeleter.shutdown();
+		}
+		payloadSpool.shutdown();
+		super.shutdown();
+	}
+
+	/**
+	 * <p>
+	 * Retrieves one or more messages, with a maximum limit of 10 messages, from
+	 * the specified queue without downloading the message payloads from Amazon
+	 * S3. Each message is returned with a payload stream which opens the S3
+	 * object only when it is first read, so that a large payload can be
+	 * processed without holding it in memory.
+	 * </p>
+	 * <p>
+	 * The receipt handles of the returned messages are the same as those
+	 * returned by <code>receiveMessage</code> and can be used to delete the
+	 * messages and their payloads. Each returned message should be closed once
+	 * its payload has been read.
+	 * </p>
+	 *
+	 * @param receiveMessageRequest
+	 *            Container for the necessary parameters to execute the
+	 *            ReceiveMessage service method on AmazonSQS.
+	 *
+	 * @return The received messages, in the order returned by AmazonSQS.
+	 *
+	 * @throws OverLimitException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public List<StreamedMessage> receiveMessageWithPayloadStreams(ReceiveMessageRequest receiveMessageRequest) {
+		long receivedNanos = System.nanoTime();
+		ReceiveMessageResult receiveMessageResult = receiveMessageFromSqs(prepareReceiveMessage(receiveMessageRequest));
+		trackInFlightMessages(receiveMessageRequest.getQueueUrl(), receiveMessageResult.getMessages(), receivedNanos,
+				receiveMessageRequest.getVisibilityTimeout());
+
+		List<StreamedMessage> streamedMessages = new ArrayList<StreamedMessage>(receiveMessageResult.getMessages()
+				.size());
+		for (Message message : receiveMessageResult.getMessages()) {
+			if (clientConfiguration.isLargePayloadSupportEnabled()) {
+				decodeInlinePayload(message);
+			}
+			MessageAttributeValue largePayloadAttributeValue = message.getMessageAttributes().get(
+					SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
+			if (!clientConfiguration.isLargePayloadSupportEnabled() || largePayloadAttributeValue == null) {
+				streamedMessages.add(new StreamedMessage(message));
+				continue;
+			}
+
+			MessageS3Pointer s3Pointer = readMessageS3PointerFromJSON(message.getBody());
+			String s3MsgBucketName = s3Pointer.getS3BucketName();
+			String s3MsgKey = s3Pointer.getS3Key();
+			long payloadSize = getPayloadSize(largePayloadAttributeValue);
+
+			message.setBody(null);
+			message.getMessageAttributes().remove(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
+			message.setReceiptHandle(embedS3PointerInReceiptHandle(message.getReceiptHandle(), s3MsgBucketName,
+					s3MsgKey));
+			streamedMessages.add(new StreamedMessage(message, s3MsgBucketName, s3MsgKey, payloadSize,
+					getPayloadCodec(s3Pointer), payloadStore));
+		}
+		return streamedMessages;
+	}
+
+	/**
+	 * <p>
+	 * Retrieves one or more messages, with a maximum limit of 10 messages, from
+	 * the specified queue without downloading the message payloads from Amazon
+	 * S3. See {@link #receiveMessageWithPayloadStreams(ReceiveMessageRequest)}.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 *
+	 * @return The received messages, in the order returned by AmazonSQS.
+	 *
+	 * @throws OverLimitException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public List<StreamedMessage> receiveMessageWithPayloadStreams(String queueUrl) {
+		ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl);
+		return receiveMessageWithPayloadStreams(receiveMessageRequest);
+	}
+
+	/**
+	 * <p>
+	 * Retrieves one or more messages, with a maximum limit of 10 messages, from
+	 * the specified queue and writes each payload stored in Amazon S3 to a
+	 * spool file instead of the heap. The payload of a returned message is
+	 * read through a read-only memory mapping or file channel of its spool
+	 * file, so that payloads of hundreds of megabytes do not put pressure on
+	 * the garbage collector.
+	 * </p>
+	 * <p>
+	 * The spool files are written to the configured spool directory, and
+	 * their total size is limited by the spool quota. Messages whose payloads
+	 * do not fit into the quota are made visible again and are not returned.
+	 * A spool file is deleted when its message is deleted through this client
+	 * or when the returned message is closed.
+	 * </p>
+	 *
+	 * @param receiveMessageRequest
+	 *            Container for the necessary parameters to execute the
+	 *            ReceiveMessage service method on AmazonSQS.
+	 *
+	 * @return The received messages whose payloads were spooled or are in the
+	 *         message body, in the order returned by AmazonSQS.
+	 *
+	 * @throws OverLimitException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public List<SpooledMessage> receiveMessageWithSpooledPayloads(ReceiveMessageRequest receiveMessageRequest) {
+		List<StreamedMessage> streamedMessages = receiveMessageWithPayloadStreams(receiveMessageRequest);
+		List<SpooledMessage> spooledMessages = new ArrayList<SpooledMessage>(streamedMessages.size());
+		List<Message> unspooledMessages = new ArrayList<Message>();
+		try {
+			for (StreamedMessage streamedMessage : streamedMessages) {
+				if (!streamedMessage.isPayloadInS3()) {
+					spooledMessages.add(new SpooledMessage(streamedMessage.getMessage()));
+				} else if (!unspooledMessages.isEmpty()) {
+					// Keeps later messages from overtaking one which did not fit.
+					unspooledMessages.add(streamedMessage.getMessage());
+				} else {
+					SpooledMessage spooledMessage = spoolPayload(streamedMessage);
+					if (spooledMessage != null) {
+						spooledMessages.add(spooledMessage);
+					} else {
+						unspooledMessages.add(streamedMessage.getMessage());
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			for (SpooledMessage spooledMessage : spooledMessages) {
+				spooledMessage.close();
+			}
+			throw e;
+		} finally {
+			for (StreamedMessage streamedMessage : streamedMessages) {
+				closeQuietly(streamedMessage);
+			}
+		}
+
+		if (!unspooledMessages.isEmpty()) {
+			for (Message message : unspooledMessages) {
+				untrackInFlightMessage(message.getReceiptHandle());
+			}
+			releaseMessages(receiveMessageRequest.getQueueUrl(), unspooledMessages);
+		}
+		return spooledMessages;
+	}
+
+	/**
+	 * <p>
+	 * Retrieves one or more messages, with a maximum limit of 10 messages, from
+	 * the specified queue and writes each payload stored in Amazon S3 to a
+	 * spool file. See
+	 * {@link #receiveMessageWithSpooledPayloads(ReceiveMessageRequest)}.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 *
+	 * @return The received messages whose payloads were spooled or are in the
+	 *         message body, in the order returned by AmazonSQS.
+	 *
+	 * @throws OverLimitException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public List<SpooledMessage> receiveMessageWithSpooledPayloads(String queueUrl) {
+		ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl);
+		return receiveMessageWithSpooledPayloads(receiveMessageRequest);
+	}
+
+	/**
+	 * Writes the payload of a message to a spool file.
+	 *
+	 * @return The spooled message, or null if the payload does not fit into
+	 *         the spool quota.
+	 */
+	private SpooledMessage spoolPayload(StreamedMessage streamedMessage) {
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		long startNanos = System.nanoTime();
+		SpooledMessage spooledMessage;
+		try {
+			spooledMessage = payloadSpool.spool(streamedMessage.getMessage(), streamedMessage.getPayloadStream());
+		} catch (IOException e) {
+			metricsCollector.recordError(Operation.PAYLOAD_GET, e);
+			String errorMessage = "Failed to write the message payload to a spool file. Message was not received.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		} catch (AmazonClientException e) {
+			metricsCollector.recordError(Operation.PAYLOAD_GET, e);
+			throw e;
+		}
+		if (spooledMessage != null) {
+			metricsCollector.recordLatency(Operation.PAYLOAD_GET, System.nanoTime() - startNanos);
+			metricsCollector.recordBytesFetched(spooledMessage.getPayloadSize());
+		}
+		return spooledMessage;
+	}
+
 	/**
 	 * <p>
 	 * Deletes the specified message from the specified queue and deletes the
@@ -524,27 +1271,10 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 *             side issue.
 	 */
 	public DeleteMessageResult deleteMessage(DeleteMessageRequest deleteMessageRequest) {
-
-		if (deleteMessageRequest == null) {
-			String errorMessage = "deleteMessageRequest cannot be null.";
-			LOG.error(errorMessage);
-			throw new AmazonClientException(errorMessage);
-		}
-
-		deleteMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
-
-		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
-			return super.deleteMessage(deleteMessageRequest);
-		}
-
-		String receiptHandle = deleteMessageRequest.getReceiptHandle();
-		String origReceiptHandle = receiptHandle;
-		if (isS3ReceiptHandle(receiptHandle)) {
-			deleteMessagePayloadFromS3(receiptHandle);
-			origReceiptHandle = getOrigReceiptHandle(receiptHandle);
-		}
-		deleteMessageRequest.setReceiptHandle(origReceiptHandle);
-		return super.deleteMessage(deleteMessageRequest);
+		String receiptHandle = deleteMessageRequest == null ? null : deleteMessageRequest.getReceiptHandle();
+		DeleteMessageResult deleteMessageResult = super.deleteMessage(prepareDeleteMessage(deleteMessageRequest));
+		scheduleDeferredPayloadDeletion(receiptHandle);
+		return deleteMessageResult;
 	}
 
 	/**
@@ -609,6 +1339,11 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 * S3 when necessary.
 	 * </p>
 	 * <p>
+	 * The payloads are uploaded in parallel when an S3 upload executor is
+	 * configured. If one of the uploads fails, the payloads which were already
+	 * uploaded are deleted from Amazon S3 and no message is sent.
+	 * </p>
+	 * <p>
 	 * If the <code>DelaySeconds</code> parameter is not specified for an entry,
 	 * the default for the queue is used.
 	 * </p>
@@ -662,30 +1397,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 *             side issue.
 	 */
 	public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
-
-		if (sendMessageBatchRequest == null) {
-			String errorMessage = "sendMessageBatchRequest cannot be null.";
-			LOG.error(errorMessage);
-			throw new AmazonClientException(errorMessage);
-		}
-
-		sendMessageBatchRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
-
-		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
-			return super.sendMessageBatch(sendMessageBatchRequest);
-		}
-
-		List<SendMessageBatchRequestEntry> batchEntries = sendMessageBatchRequest.getEntries();
-
-		int index = 0;
-		for (SendMessageBatchRequestEntry entry : batchEntries) {
-			if (clientConfiguration.isAlwaysThroughS3() || isLarge(entry)) {
-				batchEntries.set(index, storeMessageInS3(entry));
-			}
-			++index;
-		}
-
-		return super.sendMessageBatch(sendMessageBatchRequest);
+		return sendMessageBatchToSqs(prepareSendMessageBatch(sendMessageBatchRequest));
 	}
 
 	/**
@@ -761,6 +1473,11 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 * payloads from Amazon S3 when necessary.
 	 * </p>
 	 * <p>
+	 * The message payloads are deleted with one multi-object delete request
+	 * per Amazon S3 bucket. A message whose payload could not be deleted is
+	 * not deleted from the queue and is reported as failed in the response.
+	 * </p>
+	 * <p>
 	 * <b>IMPORTANT:</b> Because the batch request can result in a combination
 	 * of successful and unsuccessful actions, you should check for batch errors
 	 * even when the call returns an HTTP status code of 200.
@@ -799,30 +1516,15 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	 *             side issue.
 	 */
 	public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
-
-		if (deleteMessageBatchRequest == null) {
-			String errorMessage = "deleteMessageBatchRequest cannot be null.";
-			LOG.error(errorMessage);
-			throw new AmazonClientException(errorMessage);
-		}
-
-		deleteMessageBatchRequest.getRequestClientOptions().appendUserAgent(
-				SQSExtendedClientConstants.USER_AGENT_HEADER);
-
-		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
-			return super.deleteMessageBatch(deleteMessageBatchRequest);
-		}
-
-		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
-			String receiptHandle = entry.getReceiptHandle();
-			String origReceiptHandle = receiptHandle;
-			if (isS3ReceiptHandle(receiptHandle)) {
-				deleteMessagePayloadFromS3(receiptHandle);
-				origReceiptHandle = getOrigReceiptHandle(receiptHandle);
-			}
-			entry.setReceiptHandle(origReceiptHandle);
+		Map<String, S3ReceiptHandle> receiptHandles = getDeferredPayloadReceiptHandles(deleteMessageBatchRequest);
+		List<BatchResultErrorEntry> failedEntries = prepareDeleteMessageBatch(deleteMessageBatchRequest);
+		if (!failedEntries.isEmpty() && deleteMessageBatchRequest.getEntries().isEmpty()) {
+			return new DeleteMessageBatchResult().withFailed(failedEntries);
 		}
-		return super.deleteMessageBatch(deleteMessageBatchRequest);
+		DeleteMessageBatchResult deleteMessageBatchResult = super.deleteMessageBatch(deleteMessageBatchRequest);
+		scheduleDeferredPayloadDeletions(receiptHandles, deleteMessageBatchResult);
+		deleteMessageBatchResult.getFailed().addAll(failedEntries);
+		return deleteMessageBatchResult;
 	}
 
 	/**
@@ -876,36 +1578,202 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 		return deleteMessageBatch(deleteMessageBatchRequest);
 	}
 
-    /**
-     * <p>
-     * Deletes the messages in a queue specified by the <b>queue URL</b> .
-     * </p>
-     * <p>
-     * <b>IMPORTANT:</b>When you use the PurgeQueue API, the deleted messages in
-     * the queue cannot be retrieved.
-     * </p>
-     * <p>
-     * <b>IMPORTANT:</b> This does not delete the message payloads from Amazon S3.
-     * </p>
-     * <p>
-     * When you purge a queue, the message deletion process takes up to 60
-     * seconds. All messages sent to the queue before calling
-     * <code>PurgeQueue</code> will be deleted; messages sent to the queue while
-     * it is being purged may be deleted. While the queue is being purged,
-     * messages sent to the queue before <code>PurgeQueue</code> was called may
-     * be received, but will be deleted within the next minute.
-     * </p>
-     *
-     * @param purgeQueueRequest
-     *            Container for the necessary parameters to execute the
-     *            PurgeQueue service method on AmazonSQS.
-     *
-     *
-     * @throws PurgeQueueInProgressException
-     * @throws QueueDoesNotExistException
-     *
-     * @throws AmazonClientException
-     *             If any internal errors are encountered inside the client
+	/**
+	 * <p>
+	 * Changes the visibility timeout of a specified message in a queue to a new
+	 * value. The maximum allowed timeout value you can set the value to is 12
+	 * hours. This means you can't extend the timeout of a message in an
+	 * existing queue to more than a total visibility timeout of 12 hours.
+	 * </p>
+	 * <p>
+	 * The receipt handle may be the one returned by
+	 * <code>receiveMessage</code> for a message whose payload is in Amazon S3;
+	 * the location of the payload is removed from it before it is sent to
+	 * Amazon SQS.
+	 * </p>
+	 *
+	 * @param changeMessageVisibilityRequest
+	 *            Container for the necessary parameters to execute the
+	 *            ChangeMessageVisibility service method on AmazonSQS.
+	 *
+	 * @return The response from the ChangeMessageVisibility service method,
+	 *         as returned by AmazonSQS.
+	 *
+	 * @throws ReceiptHandleIsInvalidException
+	 * @throws MessageNotInflightException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public ChangeMessageVisibilityResult changeMessageVisibility(
+			ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+		return super.changeMessageVisibility(prepareChangeMessageVisibility(changeMessageVisibilityRequest));
+	}
+
+	/**
+	 * <p>
+	 * Changes the visibility timeout of a specified message in a queue to a new
+	 * value. The maximum allowed timeout value you can set the value to is 12
+	 * hours. This means you can't extend the timeout of a message in an
+	 * existing queue to more than a total visibility timeout of 12 hours.
+	 * </p>
+	 * <p>
+	 * The receipt handle may be the one returned by
+	 * <code>receiveMessage</code> for a message whose payload is in Amazon S3;
+	 * the location of the payload is removed from it before it is sent to
+	 * Amazon SQS.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 * @param receiptHandle
+	 *            The receipt handle associated with the message whose
+	 *            visibility timeout should be changed.
+	 * @param visibilityTimeout
+	 *            The new value (in seconds - from 0 to 43200 - maximum 12
+	 *            hours) for the message's visibility timeout.
+	 *
+	 * @return The response from the ChangeMessageVisibility service method,
+	 *         as returned by AmazonSQS.
+	 *
+	 * @throws ReceiptHandleIsInvalidException
+	 * @throws MessageNotInflightException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public ChangeMessageVisibilityResult changeMessageVisibility(String queueUrl, String receiptHandle,
+			Integer visibilityTimeout) {
+		return changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, receiptHandle, visibilityTimeout));
+	}
+
+	/**
+	 * <p>
+	 * Changes the visibility timeout of multiple messages. This is a batch
+	 * version of ChangeMessageVisibility. The result of the action on each
+	 * message is reported individually in the response. You can send up to 10
+	 * ChangeMessageVisibility requests with each ChangeMessageVisibilityBatch
+	 * action.
+	 * </p>
+	 * <p>
+	 * The receipt handles may be the ones returned by
+	 * <code>receiveMessage</code> for messages whose payloads are in Amazon
+	 * S3; the locations of the payloads are removed from them before they are
+	 * sent to Amazon SQS.
+	 * </p>
+	 *
+	 * @param changeMessageVisibilityBatchRequest
+	 *            Container for the necessary parameters to execute the
+	 *            ChangeMessageVisibilityBatch service method on AmazonSQS.
+	 *
+	 * @return The response from the ChangeMessageVisibilityBatch service
+	 *         method, as returned by AmazonSQS.
+	 *
+	 * @throws BatchEntryIdsNotDistinctException
+	 * @throws TooManyEntriesInBatchRequestException
+	 * @throws InvalidBatchEntryIdException
+	 * @throws EmptyBatchRequestException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(
+			ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
+		return super.changeMessageVisibilityBatch(prepareChangeMessageVisibilityBatch(
+				changeMessageVisibilityBatchRequest));
+	}
+
+	/**
+	 * <p>
+	 * Changes the visibility timeout of multiple messages. This is a batch
+	 * version of ChangeMessageVisibility. The result of the action on each
+	 * message is reported individually in the response. You can send up to 10
+	 * ChangeMessageVisibility requests with each ChangeMessageVisibilityBatch
+	 * action.
+	 * </p>
+	 * <p>
+	 * The receipt handles may be the ones returned by
+	 * <code>receiveMessage</code> for messages whose payloads are in Amazon
+	 * S3; the locations of the payloads are removed from them before they are
+	 * sent to Amazon SQS.
+	 * </p>
+	 *
+	 * @param queueUrl
+	 *            The URL of the Amazon SQS queue to take action on.
+	 * @param entries
+	 *            A list of receipt handles of the messages for which the
+	 *            visibility timeout must be changed.
+	 *
+	 * @return The response from the ChangeMessageVisibilityBatch service
+	 *         method, as returned by AmazonSQS.
+	 *
+	 * @throws BatchEntryIdsNotDistinctException
+	 * @throws TooManyEntriesInBatchRequestException
+	 * @throws InvalidBatchEntryIdException
+	 * @throws EmptyBatchRequestException
+	 *
+	 * @throws AmazonClientException
+	 *             If any internal errors are encountered inside the client
+	 *             while attempting to make the request or handle the response.
+	 *             For example if a network connection is not available.
+	 * @throws AmazonServiceException
+	 *             If an error response is returned by AmazonSQS indicating
+	 *             either a problem with the data in the request, or a server
+	 *             side issue.
+	 */
+	public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(String queueUrl,
+			List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		return changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+	}
+
+    /**
+     * <p>
+     * Deletes the messages in a queue specified by the <b>queue URL</b> .
+     * </p>
+     * <p>
+     * <b>IMPORTANT:</b>When you use the PurgeQueue API, the deleted messages in
+     * the queue cannot be retrieved.
+     * </p>
+     * <p>
+     * <b>IMPORTANT:</b> This does not delete the message payloads from Amazon S3.
+     * </p>
+     * <p>
+     * When you purge a queue, the message deletion process takes up to 60
+     * seconds. All messages sent to the queue before calling
+     * <code>PurgeQueue</code> will be deleted; messages sent to the queue while
+     * it is being purged may be deleted. While the queue is being purged,
+     * messages sent to the queue before <code>PurgeQueue</code> was called may
+     * be received, but will be deleted within the next minute.
+     * </p>
+     *
+     * @param purgeQueueRequest
+     *            Container for the necessary parameters to execute the
+     *            PurgeQueue service method on AmazonSQS.
+     *
+     *
+     * @throws PurgeQueueInProgressException
+     * @throws QueueDoesNotExistException
+     *
+     * @throws AmazonClientException
+     *             If any internal errors are encountered inside the client
      *             while attempting to make the request or handle the response.
      *             For example if a network connection is not available.
      * @throws AmazonServiceException
@@ -916,37 +1784,779 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 	public PurgeQueueResult purgeQueue(PurgeQueueRequest purgeQueueRequest) throws AmazonClientException {
 		LOG.warn("Calling purgeQueue deletes SQS messages without deleting their payload from S3.");
 
-		if (purgeQueueRequest == null) {
-			String errorMessage = "purgeQueueRequest cannot be null.";
+		if (purgeQueueRequest == null) {
+			String errorMessage = "purgeQueueRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		purgeQueueRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+
+		return super.purgeQueue(purgeQueueRequest);
+	}
+
+	ExtendedClientConfiguration getExtendedClientConfiguration() {
+		return clientConfiguration;
+	}
+
+	/**
+	 * Validates a send request and uploads its payload to Amazon S3 if
+	 * necessary.
+	 *
+	 * @return The request to be sent to Amazon SQS.
+	 */
+	SendMessageRequest prepareSendMessage(SendMessageRequest sendMessageRequest) {
+
+		if (sendMessageRequest == null) {
+			String errorMessage = "sendMessageRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		sendMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			clientConfiguration.getMetricsCollector().recordMessageSent(sendMessageRequest.getQueueUrl(), false);
+			return sendMessageRequest;
+		}
+
+		if (sendMessageRequest.getMessageBody() == null || "".equals(sendMessageRequest.getMessageBody())) {
+			String errorMessage = "messageBody cannot be null or empty.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		int msgAttributesSize = getMsgAttributesSize(sendMessageRequest.getMessageAttributes());
+		if (clientConfiguration.isAlwaysThroughS3()
+				|| isLarge(sendMessageRequest.getMessageBody(), msgAttributesSize)) {
+			sendMessageRequest = storeMessageInS3(sendMessageRequest, msgAttributesSize);
+		}
+		recordMessageSent(sendMessageRequest.getQueueUrl(), sendMessageRequest.getMessageAttributes());
+		return sendMessageRequest;
+	}
+
+	private void recordMessageSent(String queueUrl, Map<String, MessageAttributeValue> messageAttributes) {
+		clientConfiguration.getMetricsCollector().recordMessageSent(queueUrl,
+				messageAttributes.containsKey(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+	}
+
+	/**
+	 * Validates a receive request and asks for the attributes which mark
+	 * messages with payloads in Amazon S3.
+	 *
+	 * @return The request to be sent to Amazon SQS.
+	 */
+	ReceiveMessageRequest prepareReceiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+
+		if (receiveMessageRequest == null) {
+			String errorMessage = "receiveMessageRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		receiveMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+
+		if (visibilityHeartbeat != null && receiveMessageRequest.getVisibilityTimeout() == null) {
+			receiveMessageRequest.setVisibilityTimeout(clientConfiguration.getVisibilityHeartbeatTimeout());
+		}
+
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			return receiveMessageRequest;
+		}
+
+		receiveMessageRequest.getMessageAttributeNames().add(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
+		receiveMessageRequest.getMessageAttributeNames().add(
+				SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
+		return receiveMessageRequest;
+	}
+
+	/**
+	 * Replaces the bodies of received messages whose payloads are stored in
+	 * Amazon S3 with the payloads, and embeds the S3 pointers in their receipt
+	 * handles. Inline compressed bodies are decoded.
+	 */
+	ReceiveMessageResult resolveReceivedMessages(ReceiveMessageResult receiveMessageResult) {
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			return receiveMessageResult;
+		}
+
+		List<Callable<Void>> downloads = new ArrayList<Callable<Void>>();
+		for (final Message message : receiveMessageResult.getMessages()) {
+			decodeInlinePayload(message);
+
+			// for each received message check if they are stored in S3.
+			MessageAttributeValue largePayloadAttributeValue = message.getMessageAttributes().get(
+					SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
+			if (largePayloadAttributeValue != null) {
+				downloads.add(new Callable<Void>() {
+					public Void call() {
+						readMessagePayloadFromS3(message);
+						return null;
+					}
+				});
+			}
+		}
+
+		// The messages are updated in place, so the SQS order is kept.
+		for (Future<Void> download : PayloadTasks.runAll(clientConfiguration.getS3DownloadExecutor(), downloads)) {
+			PayloadTasks.getResult(download);
+		}
+		return receiveMessageResult;
+	}
+
+	/**
+	 * Validates a delete request, deletes the message payload from Amazon S3
+	 * if necessary and restores the original receipt handle.
+	 *
+	 * @return The request to be sent to Amazon SQS.
+	 */
+	DeleteMessageRequest prepareDeleteMessage(DeleteMessageRequest deleteMessageRequest) {
+
+		if (deleteMessageRequest == null) {
+			String errorMessage = "deleteMessageRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		deleteMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+		untrackInFlightMessage(deleteMessageRequest.getReceiptHandle());
+		payloadSpool.release(deleteMessageRequest.getReceiptHandle());
+
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			return deleteMessageRequest;
+		}
+
+		S3ReceiptHandle s3ReceiptHandle = ReceiptHandleCodec.decode(deleteMessageRequest.getReceiptHandle());
+		if (s3ReceiptHandle != null) {
+			// A deferred payload deletion is scheduled once the message is
+			// deleted.
+			if (payloadDeleter == null) {
+				deleteMessagePayloadFromS3(s3ReceiptHandle);
+			}
+			deleteMessageRequest.setReceiptHandle(s3ReceiptHandle.getOriginalReceiptHandle());
+		}
+		return deleteMessageRequest;
+	}
+
+	/**
+	 * Validates a batch send request and uploads the payloads of its entries
+	 * to Amazon S3 if necessary.
+	 *
+	 * @return The request to be sent to Amazon SQS.
+	 */
+	SendMessageBatchRequest prepareSendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+
+		if (sendMessageBatchRequest == null) {
+			String errorMessage = "sendMessageBatchRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		sendMessageBatchRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.getEntries()) {
+				recordMessageSent(sendMessageBatchRequest.getQueueUrl(), entry.getMessageAttributes());
+			}
+			return sendMessageBatchRequest;
+		}
+
+		List<SendMessageBatchRequestEntry> batchEntries = sendMessageBatchRequest.getEntries();
+		// The entries are updated in place, and restored if the batch fails.
+		List<String> originalBodies = new ArrayList<String>(batchEntries.size());
+		List<Map<String, MessageAttributeValue>> originalAttributes;
+		originalAttributes = new ArrayList<Map<String, MessageAttributeValue>>(batchEntries.size());
+		for (SendMessageBatchRequestEntry entry : batchEntries) {
+			originalBodies.add(entry.getMessageBody());
+			originalAttributes.add(new HashMap<String, MessageAttributeValue>(entry.getMessageAttributes()));
+		}
+
+		List<Integer> largeEntryIndexes = new ArrayList<Integer>();
+		List<Callable<SendMessageBatchRequestEntry>> uploads = new ArrayList<Callable<SendMessageBatchRequestEntry>>();
+		final AtomicBoolean uploadFailed = new AtomicBoolean(false);
+		int index = 0;
+		for (final SendMessageBatchRequestEntry entry : batchEntries) {
+			final int msgAttributesSize = getMsgAttributesSize(entry.getMessageAttributes());
+			if (clientConfiguration.isAlwaysThroughS3() || isLarge(entry.getMessageBody(), msgAttributesSize)) {
+				largeEntryIndexes.add(index);
+				uploads.add(new Callable<SendMessageBatchRequestEntry>() {
+					public SendMessageBatchRequestEntry call() {
+						if (uploadFailed.get()) {
+							return null;
+						}
+						try {
+							return storeMessageInS3(entry, msgAttributesSize, true);
+						} catch (RuntimeException e) {
+							uploadFailed.set(true);
+							throw e;
+						}
+					}
+				});
+			}
+			++index;
+		}
+
+		List<Future<SendMessageBatchRequestEntry>> uploadResults = PayloadTasks.runAll(
+				clientConfiguration.getS3UploadExecutor(), uploads);
+		if (uploadFailed.get()) {
+			RuntimeException failure = deleteUploadedPayloads(uploadResults);
+			restoreBatchEntries(batchEntries, originalBodies, originalAttributes);
+			throw failure;
+		}
+		for (int i = 0; i < uploadResults.size(); ++i) {
+			batchEntries.set(largeEntryIndexes.get(i), PayloadTasks.getResult(uploadResults.get(i)));
+		}
+
+		List<Callable<SendMessageBatchRequestEntry>> fitUploads = planBatchOffloads(batchEntries, originalBodies,
+				uploadFailed);
+		if (!fitUploads.isEmpty()) {
+			List<Future<SendMessageBatchRequestEntry>> fitUploadResults = PayloadTasks.runAll(
+					clientConfiguration.getS3UploadExecutor(), fitUploads);
+			if (uploadFailed.get()) {
+				uploadResults = new ArrayList<Future<SendMessageBatchRequestEntry>>(uploadResults);
+				uploadResults.addAll(fitUploadResults);
+				RuntimeException failure = deleteUploadedPayloads(uploadResults);
+				restoreBatchEntries(batchEntries, originalBodies, originalAttributes);
+				throw failure;
+			}
+		}
+
+		for (SendMessageBatchRequestEntry entry : batchEntries) {
+			recordMessageSent(sendMessageBatchRequest.getQueueUrl(), entry.getMessageAttributes());
+		}
+		return sendMessageBatchRequest;
+	}
+
+	/**
+	 * Restores the bodies and attributes of the entries of a batch which was
+	 * not sent, so that the caller can send them again.
+	 */
+	private static void restoreBatchEntries(List<SendMessageBatchRequestEntry> batchEntries,
+			List<String> originalBodies, List<Map<String, MessageAttributeValue>> originalAttributes) {
+		for (int i = 0; i < batchEntries.size(); i++) {
+			SendMessageBatchRequestEntry entry = batchEntries.get(i);
+			entry.setMessageBody(originalBodies.get(i));
+			entry.getMessageAttributes().clear();
+			entry.getMessageAttributes().putAll(originalAttributes.get(i));
+		}
+	}
+
+	/**
+	 * Plans which further payloads of a batch are stored in Amazon S3 so that
+	 * the batch fits into a single request. Entries can each be under the
+	 * threshold while their total is not, so the largest remaining entries
+	 * are offloaded until the estimated total fits, which offloads as few
+	 * entries as possible. An entry whose body was compressed inline is
+	 * offloaded from its original body.
+	 *
+	 * @return The uploads which store the chosen entries in Amazon S3. They
+	 *         update the entries in place.
+	 */
+	private List<Callable<SendMessageBatchRequestEntry>> planBatchOffloads(
+			List<SendMessageBatchRequestEntry> batchEntries, List<String> originalBodies,
+			final AtomicBoolean uploadFailed) {
+		final long[] entrySizes = new long[batchEntries.size()];
+		long batchSize = 0;
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int i = 0; i < batchEntries.size(); i++) {
+			SendMessageBatchRequestEntry entry = batchEntries.get(i);
+			entrySizes[i] = Utf8Length.of(entry.getMessageBody()) + getMsgAttributesSize(entry.getMessageAttributes());
+			batchSize += entrySizes[i];
+			if (!entry.getMessageAttributes().containsKey(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME)) {
+				candidates.add(i);
+			}
+		}
+
+		List<Callable<SendMessageBatchRequestEntry>> uploads = new ArrayList<Callable<SendMessageBatchRequestEntry>>();
+		if (batchSize <= SQSExtendedClientConstants.MAX_BATCH_REQUEST_SIZE) {
+			return uploads;
+		}
+		Collections.sort(candidates, new Comparator<Integer>() {
+			public int compare(Integer left, Integer right) {
+				return Long.compare(entrySizes[right], entrySizes[left]);
+			}
+		});
+		for (int index : candidates) {
+			if (batchSize <= SQSExtendedClientConstants.MAX_BATCH_REQUEST_SIZE) {
+				break;
+			}
+			final SendMessageBatchRequestEntry entry = batchEntries.get(index);
+			if (entry.getMessageAttributes().remove(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME) != null) {
+				entry.setMessageBody(originalBodies.get(index));
+			}
+			final int msgAttributesSize = getMsgAttributesSize(entry.getMessageAttributes());
+			batchSize -= entrySizes[index] - (msgAttributesSize + OFFLOADED_MESSAGE_SIZE_ESTIMATE);
+			uploads.add(new Callable<SendMessageBatchRequestEntry>() {
+				public SendMessageBatchRequestEntry call() {
+					if (uploadFailed.get()) {
+						return null;
+					}
+					try {
+						return storeMessageInS3(entry, msgAttributesSize, false);
+					} catch (RuntimeException e) {
+						uploadFailed.set(true);
+						throw e;
+					}
+				}
+			});
+		}
+		LOG.info("Storing " + uploads.size() + " more payloads of a batch in S3 so that the batch fits into "
+				+ SQSExtendedClientConstants.MAX_BATCH_REQUEST_SIZE + " bytes.");
+		return uploads;
+	}
+
+	/**
+	 * Validates a batch delete request, deletes the message payloads from
+	 * Amazon S3 if necessary and restores the original receipt handles. Entries
+	 * whose payloads could not be deleted are removed from the request.
+	 *
+	 * @return The entries which failed because their payloads could not be
+	 *         deleted.
+	 */
+	List<BatchResultErrorEntry> prepareDeleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+
+		if (deleteMessageBatchRequest == null) {
+			String errorMessage = "deleteMessageBatchRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		deleteMessageBatchRequest.getRequestClientOptions().appendUserAgent(
+				SQSExtendedClientConstants.USER_AGENT_HEADER);
+		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
+			untrackInFlightMessage(entry.getReceiptHandle());
+			payloadSpool.release(entry.getReceiptHandle());
+		}
+
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			return new ArrayList<BatchResultErrorEntry>();
+		}
+
+		// Group the S3 payloads by bucket and key; several entries may point
+		// to the same object.
+		Map<String, Map<String, List<DeleteMessageBatchRequestEntry>>> entriesByS3Object;
+		entriesByS3Object = new LinkedHashMap<String, Map<String, List<DeleteMessageBatchRequestEntry>>>();
+		Map<DeleteMessageBatchRequestEntry, S3ReceiptHandle> s3ReceiptHandles;
+		s3ReceiptHandles = new IdentityHashMap<DeleteMessageBatchRequestEntry, S3ReceiptHandle>();
+		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
+			S3ReceiptHandle s3ReceiptHandle = ReceiptHandleCodec.decode(entry.getReceiptHandle());
+			if (s3ReceiptHandle == null) {
+				continue;
+			}
+			s3ReceiptHandles.put(entry, s3ReceiptHandle);
+			if (payloadDeleter == null) {
+				String s3MsgBucketName = s3ReceiptHandle.getS3BucketName();
+				String s3MsgKey = s3ReceiptHandle.getS3Key();
+				Map<String, List<DeleteMessageBatchRequestEntry>> entriesByKey = entriesByS3Object.get(s3MsgBucketName);
+				if (entriesByKey == null) {
+					entriesByKey = new LinkedHashMap<String, List<DeleteMessageBatchRequestEntry>>();
+					entriesByS3Object.put(s3MsgBucketName, entriesByKey);
+				}
+				List<DeleteMessageBatchRequestEntry> keyEntries = entriesByKey.get(s3MsgKey);
+				if (keyEntries == null) {
+					keyEntries = new ArrayList<DeleteMessageBatchRequestEntry>();
+					entriesByKey.put(s3MsgKey, keyEntries);
+				}
+				keyEntries.add(entry);
+			}
+		}
+
+		String errorMessage = "Failed to delete the S3 object which contains the SQS message payload. SQS message was not deleted.";
+		List<BatchResultErrorEntry> failedEntries = new ArrayList<BatchResultErrorEntry>();
+		Set<DeleteMessageBatchRequestEntry> failedEntrySet = Collections
+				.newSetFromMap(new IdentityHashMap<DeleteMessageBatchRequestEntry, Boolean>());
+		for (Entry<String, Map<String, List<DeleteMessageBatchRequestEntry>>> bucketEntries : entriesByS3Object
+				.entrySet()) {
+			// Content-addressed payloads are kept while other messages refer
+			// to them.
+			Iterator<Entry<String, List<DeleteMessageBatchRequestEntry>>> keyEntries = bucketEntries.getValue()
+					.entrySet().iterator();
+			while (keyEntries.hasNext()) {
+				Entry<String, List<DeleteMessageBatchRequestEntry>> keyEntry = keyEntries.next();
+				boolean unreferenced = false;
+				for (int i = 0; i < keyEntry.getValue().size(); i++) {
+					unreferenced = releasePayload(bucketEntries.getKey(), keyEntry.getKey());
+				}
+				if (!unreferenced) {
+					keyEntries.remove();
+				}
+			}
+			if (bucketEntries.getValue().isEmpty()) {
+				continue;
+			}
+			Map<String, String> errorsByKey = deleteMessagePayloadsFromS3(bucketEntries.getKey(), bucketEntries
+					.getValue().keySet());
+			// The messages of payloads which could not be deleted stay in the
+			// queue, so their references are restored for a retry.
+			for (Entry<String, List<DeleteMessageBatchRequestEntry>> keyEntry : bucketEntries.getValue().entrySet()) {
+				finishPayloadDeletion(bucketEntries.getKey(), keyEntry.getKey(), errorsByKey.containsKey(keyEntry
+						.getKey()) ? keyEntry.getValue().size() : 0);
+			}
+			for (Entry<String, String> error : errorsByKey.entrySet()) {
+				for (DeleteMessageBatchRequestEntry entry : bucketEntries.getValue().get(error.getKey())) {
+					failedEntrySet.add(entry);
+					failedEntries.add(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(false)
+							.withCode(error.getValue()).withMessage(errorMessage));
+				}
+			}
+		}
+
+		List<DeleteMessageBatchRequestEntry> remainingEntries = new ArrayList<DeleteMessageBatchRequestEntry>();
+		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
+			if (failedEntrySet.contains(entry)) {
+				continue;
+			}
+			S3ReceiptHandle s3ReceiptHandle = s3ReceiptHandles.get(entry);
+			if (s3ReceiptHandle != null) {
+				entry.setReceiptHandle(s3ReceiptHandle.getOriginalReceiptHandle());
+			}
+			remainingEntries.add(entry);
+		}
+
+		deleteMessageBatchRequest.setEntries(remainingEntries);
+		return failedEntries;
+	}
+
+	/**
+	 * Validates a visibility change request and restores the original
+	 * receipt handle.
+	 *
+	 * @return The request to be sent to Amazon SQS.
+	 */
+	ChangeMessageVisibilityRequest prepareChangeMessageVisibility(
+			ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+
+		if (changeMessageVisibilityRequest == null) {
+			String errorMessage = "changeMessageVisibilityRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		changeMessageVisibilityRequest.getRequestClientOptions().appendUserAgent(
+				SQSExtendedClientConstants.USER_AGENT_HEADER);
+
+		// The caller takes over the visibility of the message.
+		untrackInFlightMessage(changeMessageVisibilityRequest.getReceiptHandle());
+		changeMessageVisibilityRequest.setReceiptHandle(ReceiptHandleCodec
+				.getOriginalReceiptHandle(changeMessageVisibilityRequest.getReceiptHandle()));
+		return changeMessageVisibilityRequest;
+	}
+
+	/**
+	 * Validates a batch visibility change request and restores the original
+	 * receipt handles of its entries.
+	 *
+	 * @return The request to be sent to Amazon SQS.
+	 */
+	ChangeMessageVisibilityBatchRequest prepareChangeMessageVisibilityBatch(
+			ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
+
+		if (changeMessageVisibilityBatchRequest == null) {
+			String errorMessage = "changeMessageVisibilityBatchRequest cannot be null.";
 			LOG.error(errorMessage);
 			throw new AmazonClientException(errorMessage);
 		}
 
-		purgeQueueRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+		changeMessageVisibilityBatchRequest.getRequestClientOptions().appendUserAgent(
+				SQSExtendedClientConstants.USER_AGENT_HEADER);
 
-		return super.purgeQueue(purgeQueueRequest);
+		for (ChangeMessageVisibilityBatchRequestEntry entry : changeMessageVisibilityBatchRequest.getEntries()) {
+			untrackInFlightMessage(entry.getReceiptHandle());
+			entry.setReceiptHandle(ReceiptHandleCodec.getOriginalReceiptHandle(entry.getReceiptHandle()));
+		}
+		return changeMessageVisibilityBatchRequest;
+	}
+
+	/**
+	 * Decodes the body of a message which was sent inline compressed, and
+	 * removes the attribute which marks the encoding.
+	 */
+	private void decodeInlinePayload(Message message) {
+		MessageAttributeValue encodingAttributeValue = message.getMessageAttributes().remove(
+				SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
+		if (encodingAttributeValue == null) {
+			return;
+		}
+
+		String codecName = encodingAttributeValue.getStringValue();
+		PayloadCodec payloadCodec = PayloadCodecs.forName(codecName, clientConfiguration.getPayloadCodec());
+		if (payloadCodec == null) {
+			String errorMessage = "Unknown payload codec " + codecName + ". Message was not received.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		if (message.getBody() == null || !Base64.isBase64(message.getBody())) {
+			String errorMessage = "Failed to decode the inline message payload. Message was not received.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		byte[] payload = Base64.decodeBase64(message.getBody());
+		message.setBody(new String(decompressPayload(payloadCodec, payload, -1), StandardCharsets.UTF_8));
+	}
+
+	private void readMessagePayloadFromS3(Message message) {
+		String messageBody = message.getBody();
+
+		// read the S3 pointer from the message body JSON string.
+		MessageS3Pointer s3Pointer = readMessageS3PointerFromJSON(messageBody);
+
+		String s3MsgBucketName = s3Pointer.getS3BucketName();
+		String s3MsgKey = s3Pointer.getS3Key();
+
+		PayloadCodec payloadCodec = getPayloadCodec(s3Pointer);
+		// The attribute records the length of the original payload.
+		MessageAttributeValue largePayloadAttributeValue = message.getMessageAttributes().get(
+				SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
+		long payloadSize = largePayloadAttributeValue == null ? -1 : getPayloadSize(largePayloadAttributeValue);
+		long storedSize = s3Pointer.getPayloadSize();
+		if (storedSize < 0) {
+			storedSize = payloadSize;
+		}
+		byte[] payload = getCachedPayload(s3MsgBucketName, s3MsgKey);
+		if (payload == null) {
+			payload = getPayloadFromS3(s3MsgBucketName, s3MsgKey, storedSize);
+			cachePayload(s3MsgBucketName, s3MsgKey, payload);
+		}
+		if (payloadCodec != null) {
+			payload = decompressPayload(payloadCodec, payload, payloadSize);
+		}
+		String origMsgBody = new String(payload, StandardCharsets.UTF_8);
+		LOG.info("S3 object read, Bucket name: " + s3MsgBucketName + ", Object key: " + s3MsgKey + ".");
+
+		message.setBody(origMsgBody);
+
+		// remove the additional attribute before returning the message
+		// to user.
+		message.getMessageAttributes().remove(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
+
+		// Embed s3 object pointer in the receipt handle.
+		String modifiedReceiptHandle = embedS3PointerInReceiptHandle(message.getReceiptHandle(),
+				s3MsgBucketName, s3MsgKey);
+
+		message.setReceiptHandle(modifiedReceiptHandle);
+	}
+
+	/**
+	 * Gets the codec a payload was compressed with.
+	 *
+	 * @return The codec, or null if the payload is not compressed.
+	 */
+	private PayloadCodec getPayloadCodec(MessageS3Pointer s3Pointer) {
+		if (s3Pointer.getCodec() == null) {
+			return null;
+		}
+		PayloadCodec payloadCodec = PayloadCodecs.forName(s3Pointer.getCodec(), clientConfiguration.getPayloadCodec());
+		if (payloadCodec == null) {
+			String errorMessage = "Unknown payload codec " + s3Pointer.getCodec() + ". Message was not received.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		return payloadCodec;
+	}
+
+	private byte[] decompressPayload(PayloadCodec payloadCodec, byte[] payload, long payloadSize) {
+		try {
+			return PayloadCompressor.decompress(payloadCodec, payload, payloadSize);
+		} catch (IOException e) {
+			String errorMessage = "Failed to decompress the message payload with codec " + payloadCodec.getName()
+					+ ". Message was not received.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+	}
+
+	private static long getPayloadSize(MessageAttributeValue largePayloadAttributeValue) {
+		try {
+			return Long.parseLong(largePayloadAttributeValue.getStringValue());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets the receipt handles of the entries of a batch delete request by
+	 * entry id, so that the payloads of the messages can be queued for
+	 * deletion once Amazon SQS has deleted the messages.
+	 *
+	 * @return The receipt handles, or an empty map if payloads are deleted
+	 *         right away.
+	 */
+	Map<String, S3ReceiptHandle> getDeferredPayloadReceiptHandles(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+		Map<String, S3ReceiptHandle> receiptHandles = new HashMap<String, S3ReceiptHandle>();
+		if (payloadDeleter == null || deleteMessageBatchRequest == null) {
+			return receiptHandles;
+		}
+		for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
+			S3ReceiptHandle s3ReceiptHandle = ReceiptHandleCodec.decode(entry.getReceiptHandle());
+			if (s3ReceiptHandle != null) {
+				receiptHandles.put(entry.getId(), s3ReceiptHandle);
+			}
+		}
+		return receiptHandles;
+	}
+
+	/**
+	 * Queues the payloads of the messages which a batch delete request
+	 * deleted for deletion.
+	 */
+	void scheduleDeferredPayloadDeletions(Map<String, S3ReceiptHandle> receiptHandles,
+			DeleteMessageBatchResult deleteMessageBatchResult) {
+		for (DeleteMessageBatchResultEntry entry : deleteMessageBatchResult.getSuccessful()) {
+			S3ReceiptHandle s3ReceiptHandle = receiptHandles.get(entry.getId());
+			if (s3ReceiptHandle != null) {
+				scheduleDeferredPayloadDeletion(s3ReceiptHandle);
+			}
+		}
+	}
+
+	/**
+	 * Queues the payload of a deleted message for deletion if deferred
+	 * payload deletion is enabled.
+	 *
+	 * @param receiptHandle
+	 *            The receipt handle which the message was deleted with, as
+	 *            returned by <code>receiveMessage</code>.
+	 */
+	void scheduleDeferredPayloadDeletion(String receiptHandle) {
+		if (payloadDeleter == null) {
+			return;
+		}
+		S3ReceiptHandle s3ReceiptHandle = ReceiptHandleCodec.decode(receiptHandle);
+		if (s3ReceiptHandle != null) {
+			scheduleDeferredPayloadDeletion(s3ReceiptHandle);
+		}
+	}
+
+	private void scheduleDeferredPayloadDeletion(S3ReceiptHandle s3ReceiptHandle) {
+		String s3MsgBucketName = s3ReceiptHandle.getS3BucketName();
+		String s3MsgKey = s3ReceiptHandle.getS3Key();
+		if (releasePayload(s3MsgBucketName, s3MsgKey)) {
+			invalidateCachedPayload(s3MsgBucketName, s3MsgKey);
+			payloadDeleter.delete(s3MsgBucketName, s3MsgKey);
+		}
 	}
 
-	private void deleteMessagePayloadFromS3(String receiptHandle) {
-		String s3MsgBucketName = getFromReceiptHandleByMarker(receiptHandle,
-				SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER);
-		String s3MsgKey = getFromReceiptHandleByMarker(receiptHandle, SQSExtendedClientConstants.S3_KEY_MARKER);
+	private void deleteMessagePayloadFromS3(S3ReceiptHandle s3ReceiptHandle) {
+		String s3MsgBucketName = s3ReceiptHandle.getS3BucketName();
+		String s3MsgKey = s3ReceiptHandle.getS3Key();
+		if (!releasePayload(s3MsgBucketName, s3MsgKey)) {
+			return;
+		}
+		invalidateCachedPayload(s3MsgBucketName, s3MsgKey);
+		long startNanos = System.nanoTime();
 		try {
-			clientConfiguration.getAmazonS3Client().deleteObject(s3MsgBucketName, s3MsgKey);
+			payloadStore.deletePayload(s3MsgBucketName, s3MsgKey);
 		} catch (AmazonServiceException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_DELETE, e);
+			finishPayloadDeletion(s3MsgBucketName, s3MsgKey, 1);
 			String errorMessage = "Failed to delete the S3 object which contains the SQS message payload. SQS message was not deleted.";
 			LOG.error(errorMessage, e);
 			throw new AmazonServiceException(errorMessage, e);
 		} catch (AmazonClientException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_DELETE, e);
+			finishPayloadDeletion(s3MsgBucketName, s3MsgKey, 1);
 			String errorMessage = "Failed to delete the S3 object which contains the SQS message payload. SQS message was not deleted.";
 			LOG.error(errorMessage, e);
 			throw new AmazonClientException(errorMessage, e);
 		}
+		finishPayloadDeletion(s3MsgBucketName, s3MsgKey, 0);
+		clientConfiguration.getMetricsCollector().recordLatency(Operation.PAYLOAD_DELETE,
+				System.nanoTime() - startNanos);
 		LOG.info("S3 object deleted, Bucket name: " + s3MsgBucketName + ", Object key: " + s3MsgKey + ".");
 	}
 
+	/**
+	 * Deletes the S3 objects which were uploaded for a batch before one of its
+	 * uploads failed, and returns the exception of the failed upload.
+	 */
+	private RuntimeException deleteUploadedPayloads(List<Future<SendMessageBatchRequestEntry>> uploadResults) {
+		RuntimeException failure = null;
+		for (Future<SendMessageBatchRequestEntry> uploadResult : uploadResults) {
+			SendMessageBatchRequestEntry storedEntry;
+			try {
+				storedEntry = PayloadTasks.getResult(uploadResult);
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+				continue;
+			}
+			if (storedEntry == null) {
+				continue;
+			}
+			MessageS3Pointer s3Pointer = readMessageS3PointerFromJSON(storedEntry.getMessageBody());
+			if (!releasePayload(s3Pointer.getS3BucketName(), s3Pointer.getS3Key())) {
+				continue;
+			}
+			invalidateCachedPayload(s3Pointer.getS3BucketName(), s3Pointer.getS3Key());
+			long startNanos = System.nanoTime();
+			try {
+				payloadStore.deletePayload(s3Pointer.getS3BucketName(), s3Pointer.getS3Key());
+				clientConfiguration.getMetricsCollector().recordLatency(Operation.PAYLOAD_DELETE,
+						System.nanoTime() - startNanos);
+				LOG.info("S3 object deleted, Bucket name: " + s3Pointer.getS3BucketName() + ", Object key: "
+						+ s3Pointer.getS3Key() + ".");
+			} catch (AmazonClientException e) {
+				clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_DELETE, e);
+				LOG.warn("Failed to delete the S3 object of a batch entry which was not sent. Bucket name: "
+						+ s3Pointer.getS3BucketName() + ", Object key: " + s3Pointer.getS3Key() + ".", e);
+			}
+			// No message refers to the object, whether or not it was deleted.
+			finishPayloadDeletion(s3Pointer.getS3BucketName(), s3Pointer.getS3Key(), 0);
+		}
+		return failure;
+	}
+
+	/**
+	 * Deletes S3 objects with one multi-object delete request.
+	 *
+	 * @return The error code for each key which could not be deleted.
+	 */
+	private Map<String, String> deleteMessagePayloadsFromS3(String s3MsgBucketName, Collection<String> s3MsgKeys) {
+		for (String s3MsgKey : s3MsgKeys) {
+			invalidateCachedPayload(s3MsgBucketName, s3MsgKey);
+		}
+
+		Map<String, String> errorsByKey = new HashMap<String, String>();
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		long startNanos = System.nanoTime();
+		try {
+			errorsByKey.putAll(payloadStore.deletePayloads(s3MsgBucketName, s3MsgKeys));
+			if (errorsByKey.isEmpty()) {
+				metricsCollector.recordLatency(Operation.PAYLOAD_DELETE, System.nanoTime() - startNanos);
+			} else {
+				String errorMessage = "Failed to delete " + errorsByKey.size() + " of " + s3MsgKeys.size()
+						+ " S3 objects which contain SQS message payloads, Bucket name: " + s3MsgBucketName + ".";
+				AmazonServiceException error = new AmazonServiceException(errorMessage);
+				error.setErrorCode(errorsByKey.values().iterator().next());
+				metricsCollector.recordError(Operation.PAYLOAD_DELETE, error);
+				LOG.error(errorMessage + " Error codes by key: " + errorsByKey + ".");
+			}
+		} catch (AmazonServiceException e) {
+			metricsCollector.recordError(Operation.PAYLOAD_DELETE, e);
+			LOG.error("Failed to delete the S3 objects which contain SQS message payloads, Bucket name: "
+					+ s3MsgBucketName + ".", e);
+			for (String s3MsgKey : s3MsgKeys) {
+				errorsByKey.put(s3MsgKey, e.getErrorCode());
+			}
+		} catch (AmazonClientException e) {
+			metricsCollector.recordError(Operation.PAYLOAD_DELETE, e);
+			LOG.error("Failed to delete the S3 objects which contain SQS message payloads, Bucket name: "
+					+ s3MsgBucketName + ".", e);
+			for (String s3MsgKey : s3MsgKeys) {
+				errorsByKey.put(s3MsgKey, e.getClass().getSimpleName());
+			}
+		}
+		LOG.info((s3MsgKeys.size() - errorsByKey.size()) + " S3 objects deleted, Bucket name: " + s3MsgBucketName
+				+ ".");
+		return errorsByKey;
+	}
+
 	private void checkMessageAttributes(Map<String, MessageAttributeValue> messageAttributes) {
-		int msgAttributesSize = getMsgAttributesSize(messageAttributes);
+		checkMessageAttributes(messageAttributes, getMsgAttributesSize(messageAttributes));
+	}
+
+	private void checkMessageAttributes(Map<String, MessageAttributeValue> messageAttributes, int msgAttributesSize) {
 		if (msgAttributesSize > clientConfiguration.getMessageSizeThreshold()) {
 			String errorMessage = "Total size of Message attributes is " + msgAttributesSize
 					+ " bytes which is larger than the threshold of " + clientConfiguration.getMessageSizeThreshold()
@@ -973,21 +2583,26 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 			throw new AmazonClientException(errorMessage);
 		}
 
+		if (messageAttributes.containsKey(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME)) {
+			String errorMessage = "Message attribute name "
+					+ SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME
+					+ " is reserved for use by SQS extended client.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
 	}
 
-	private String embedS3PointerInReceiptHandle(String receiptHandle, String s3MsgBucketName, String s3MsgKey) {
-		String modifiedReceiptHandle = SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + s3MsgBucketName
-				+ SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + SQSExtendedClientConstants.S3_KEY_MARKER
-				+ s3MsgKey + SQSExtendedClientConstants.S3_KEY_MARKER + receiptHandle;
-		return modifiedReceiptHandle;
+	String embedS3PointerInReceiptHandle(String receiptHandle, String s3MsgBucketName, String s3MsgKey) {
+		return ReceiptHandleCodec.encode(receiptHandle, s3MsgBucketName, s3MsgKey,
+				clientConfiguration.isCompactReceiptHandleEnabled());
 	}
 
 	private MessageS3Pointer readMessageS3PointerFromJSON(String messageBody) {
 
 		MessageS3Pointer s3Pointer = null;
 		try {
-			JsonDataConverter jsonDataConverter = new JsonDataConverter();
-			s3Pointer = jsonDataConverter.deserializeFromJson(messageBody, MessageS3Pointer.class);
+			s3Pointer = MessageS3PointerCodec.decode(messageBody);
 		} catch (Exception e) {
 			String errorMessage = "Failed to read the S3 object pointer from an SQS message. Message was not received.";
 			LOG.error(errorMessage, e);
@@ -996,162 +2611,449 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 		return s3Pointer;
 	}
 
-	private String getOrigReceiptHandle(String receiptHandle) {
-		int secondOccurence = receiptHandle.indexOf(SQSExtendedClientConstants.S3_KEY_MARKER,
-				receiptHandle.indexOf(SQSExtendedClientConstants.S3_KEY_MARKER) + 1);
-		return receiptHandle.substring(secondOccurence + SQSExtendedClientConstants.S3_KEY_MARKER.length());
+	/**
+	 * Gets the content of an S3 object from the payload cache, if one is
+	 * configured.
+	 *
+	 * @return The content as stored in S3, or null if it is not cached.
+	 */
+	private byte[] getCachedPayload(String s3BucketName, String s3Key) {
+		PayloadCache payloadCache = clientConfiguration.getPayloadCache();
+		return payloadCache == null ? null : payloadCache.get(s3BucketName, s3Key);
+	}
+
+	private void cachePayload(String s3BucketName, String s3Key, byte[] storedContent) {
+		PayloadCache payloadCache = clientConfiguration.getPayloadCache();
+		if (payloadCache != null) {
+			payloadCache.put(s3BucketName, s3Key, storedContent);
+		}
 	}
 
-	private String getFromReceiptHandleByMarker(String receiptHandle, String marker) {
-		int firstOccurence = receiptHandle.indexOf(marker);
-		int secondOccurence = receiptHandle.indexOf(marker, firstOccurence + 1);
-		return receiptHandle.substring(firstOccurence + marker.length(), secondOccurence);
+	private void invalidateCachedPayload(String s3BucketName, String s3Key) {
+		PayloadCache payloadCache = clientConfiguration.getPayloadCache();
+		if (payloadCache != null) {
+			payloadCache.invalidate(s3BucketName, s3Key);
+		}
 	}
 
-	private boolean isS3ReceiptHandle(String receiptHandle) {
-		return receiptHandle.contains(SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER)
-				&& receiptHandle.contains(SQSExtendedClientConstants.S3_KEY_MARKER);
+	private byte[] getPayloadFromS3(String s3BucketName, String s3Key, long payloadSize) {
+		long startNanos = System.nanoTime();
+		byte[] payload;
+		if (payloadSize > clientConfiguration.getRangedDownloadThreshold() && payloadSize <= Integer.MAX_VALUE
+				&& clientConfiguration.getS3DownloadExecutor() != null) {
+			payload = getPayloadFromS3InRanges(s3BucketName, s3Key, (int) payloadSize);
+		} else {
+			payload = getPayloadFromS3InOneRequest(s3BucketName, s3Key);
+		}
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		metricsCollector.recordLatency(Operation.PAYLOAD_GET, System.nanoTime() - startNanos);
+		metricsCollector.recordBytesFetched(payload.length);
+		return payload;
 	}
 
-	private String getTextFromS3(String s3BucketName, String s3Key) {
-		GetObjectRequest getObjectRequest = new GetObjectRequest(s3BucketName, s3Key);
-		String embeddedText = null;
-		S3Object obj = null;
+	private byte[] getPayloadFromS3InOneRequest(String s3BucketName, String s3Key) {
+		byte[] embeddedContent = null;
+		InputStream objContent;
 		try {
-			obj = clientConfiguration.getAmazonS3Client().getObject(getObjectRequest);
+			objContent = payloadStore.getPayload(s3BucketName, s3Key);
 		} catch (AmazonServiceException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_GET, e);
 			String errorMessage = "Failed to get the S3 object which contains the message payload. Message was not received.";
 			LOG.error(errorMessage, e);
 			throw new AmazonServiceException(errorMessage, e);
 		} catch (AmazonClientException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_GET, e);
 			String errorMessage = "Failed to get the S3 object which contains the message payload. Message was not received.";
 			LOG.error(errorMessage, e);
 			throw new AmazonClientException(errorMessage, e);
 		}
 		try {
-			InputStream objContent = obj.getObjectContent();
-			java.util.Scanner objContentScanner = new java.util.Scanner(objContent, "UTF-8");
-			objContentScanner.useDelimiter("\\A");
-			embeddedText = objContentScanner.hasNext() ? objContentScanner.next() : "";
-			objContentScanner.close();
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = objContent.read(buffer)) >= 0) {
+				payload.write(buffer, 0, read);
+			}
+			embeddedContent = payload.toByteArray();
 			objContent.close();
 		} catch (IOException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_GET, e);
 			String errorMessage = "Failure when handling the message which was read from S3 object. Message was not received.";
 			LOG.error(errorMessage, e);
 			throw new AmazonClientException(errorMessage, e);
 		}
-		return embeddedText;
+		return embeddedContent;
 	}
 
-	private boolean isLarge(SendMessageRequest sendMessageRequest) {
-		int msgAttributesSize = getMsgAttributesSize(sendMessageRequest.getMessageAttributes());
-		long msgBodySize = getStringSizeInBytes(sendMessageRequest.getMessageBody());
-		long totalMsgSize = msgAttributesSize + msgBodySize;
-		return (totalMsgSize > clientConfiguration.getMessageSizeThreshold());
+	private byte[] getPayloadFromS3InRanges(String s3BucketName, String s3Key, int payloadSize) {
+		RangedPayloadDownloader downloader = new RangedPayloadDownloader(payloadStore,
+				clientConfiguration.getRangedDownloadPartSize(), clientConfiguration.getS3DownloadExecutor());
+		byte[] payload;
+		try {
+			payload = downloader.download(s3BucketName, s3Key, payloadSize);
+		} catch (AmazonServiceException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_GET, e);
+			String errorMessage = "Failed to get the S3 object which contains the message payload. Message was not received.";
+			LOG.error(errorMessage, e);
+			throw new AmazonServiceException(errorMessage, e);
+		} catch (AmazonClientException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_GET, e);
+			String errorMessage = "Failed to get the S3 object which contains the message payload. Message was not received.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+		return payload;
 	}
 
-	private boolean isLarge(SendMessageBatchRequestEntry batchEntry) {
-		int msgAttributesSize = getMsgAttributesSize(batchEntry.getMessageAttributes());
-		long msgBodySize = getStringSizeInBytes(batchEntry.getMessageBody());
-		long totalMsgSize = msgAttributesSize + msgBodySize;
-		return (totalMsgSize > clientConfiguration.getMessageSizeThreshold());
+	boolean isLarge(String messageBody, int msgAttributesSize) {
+		return Utf8Length.exceeds(messageBody, clientConfiguration.getMessageSizeThreshold() - msgAttributesSize);
 	}
 
-	private int getMsgAttributesSize(Map<String, MessageAttributeValue> msgAttributes) {
+	int getMsgAttributesSize(Map<String, MessageAttributeValue> msgAttributes) {
 		int totalMsgAttributesSize = 0;
 		for (Entry<String, MessageAttributeValue> entry : msgAttributes.entrySet()) {
-			totalMsgAttributesSize += getStringSizeInBytes(entry.getKey());
+			totalMsgAttributesSize += Utf8Length.of(entry.getKey());
 
 			MessageAttributeValue entryVal = entry.getValue();
 			if (entryVal.getDataType() != null) {
-				totalMsgAttributesSize += getStringSizeInBytes(entryVal.getDataType());
+				totalMsgAttributesSize += Utf8Length.of(entryVal.getDataType());
 			}
 
 			String stringVal = entryVal.getStringValue();
 			if (stringVal != null) {
-				totalMsgAttributesSize += getStringSizeInBytes(entryVal.getStringValue());
+				totalMsgAttributesSize += Utf8Length.of(stringVal);
 			}
 
 			ByteBuffer binaryVal = entryVal.getBinaryValue();
 			if (binaryVal != null) {
-				totalMsgAttributesSize += binaryVal.array().length;
+				totalMsgAttributesSize += binaryVal.remaining();
 			}
 		}
 		return totalMsgAttributesSize;
 	}
 
-	private SendMessageBatchRequestEntry storeMessageInS3(SendMessageBatchRequestEntry batchEntry) {
+	private SendMessageBatchRequestEntry storeMessageInS3(SendMessageBatchRequestEntry batchEntry,
+			int msgAttributesSize, boolean allowInline) {
 
-		checkMessageAttributes(batchEntry.getMessageAttributes());
+		checkMessageAttributes(batchEntry.getMessageAttributes(), msgAttributesSize);
 
-		String s3Key = UUID.randomUUID().toString();
+		String messageBody = encodeLargeMessageBody(batchEntry.getMessageBody(), batchEntry.getMessageAttributes(),
+				msgAttributesSize, allowInline);
+		batchEntry.setMessageBody(messageBody);
 
-		// Read the content of the message from message body
-		String messageContentStr = batchEntry.getMessageBody();
+		return batchEntry;
+	}
+
+	private SendMessageRequest storeMessageInS3(SendMessageRequest sendMessageRequest, int msgAttributesSize) {
+
+		checkMessageAttributes(sendMessageRequest.getMessageAttributes(), msgAttributesSize);
+
+		String messageBody = encodeLargeMessageBody(sendMessageRequest.getMessageBody(),
+				sendMessageRequest.getMessageAttributes(), msgAttributesSize, true);
+		sendMessageRequest.setMessageBody(messageBody);
+
+		return sendMessageRequest;
+	}
 
-		Long messageContentSize = getStringSizeInBytes(messageContentStr);
+	/**
+	 * Encodes the body of a message which is too large to be sent as is. The
+	 * body is compressed and sent inline if inline compression is enabled and
+	 * it then fits under the threshold, and is stored in Amazon S3 otherwise.
+	 * The reserved attribute which marks the encoding is added to the message
+	 * attributes.
+	 *
+	 * @param allowInline
+	 *            false to store the body in Amazon S3 even if it could be
+	 *            sent inline.
+	 * @return The message body to be sent to Amazon SQS.
+	 */
+	private String encodeLargeMessageBody(String messageBody, Map<String, MessageAttributeValue> messageAttributes,
+			int msgAttributesSize, boolean allowInline) {
+
+		// Read the content of the message from message body
+		byte[] messageContent = messageBody.getBytes(StandardCharsets.UTF_8);
+
+		long messageContentSize = messageContent.length;
+
+		PayloadCodec inlineCodec = null;
+		byte[] compressedContent = null;
+		if (allowInline && clientConfiguration.isInlineCompressionEnabled()
+				&& !clientConfiguration.isAlwaysThroughS3()) {
+			inlineCodec = getInlinePayloadCodec();
+			compressedContent = new PayloadCompressor(inlineCodec, clientConfiguration.getMaxCompressionRatio())
+					.compress(messageContent);
+			if (compressedContent != null) {
+				MessageAttributeValue encodingAttributeValue = new MessageAttributeValue().withDataType("String")
+						.withStringValue(inlineCodec.getName());
+				long inlineSize = msgAttributesSize + getInlineEncodingAttributeSize(encodingAttributeValue) + 4L
+						* ((compressedContent.length + 2) / 3);
+				if (inlineSize <= clientConfiguration.getMessageSizeThreshold()) {
+					messageAttributes.put(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME,
+							encodingAttributeValue);
+					return Base64.encodeBase64String(compressedContent);
+				}
+			}
+		}
 
 		// Add a new message attribute as a flag
 		MessageAttributeValue messageAttributeValue = new MessageAttributeValue();
 		messageAttributeValue.setDataType("Number");
-		messageAttributeValue.setStringValue(messageContentSize.toString());
-		batchEntry.addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, messageAttributeValue);
-
-		// Store the message content in S3.
-		storeTextInS3(s3Key, messageContentStr, messageContentSize);
-
-		LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName() + ", Object key: " + s3Key
-				+ ".");
+		messageAttributeValue.setStringValue(Long.toString(messageContentSize));
+		messageAttributes.put(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, messageAttributeValue);
+
+		// Store the message content in S3, reusing the compressed content if
+		// it was compressed with the same codec.
+		MessageS3Pointer s3Pointer;
+		if (inlineCodec != null && inlineCodec == clientConfiguration.getPayloadCodec()) {
+			s3Pointer = storeMessageContentInS3(messageContent, inlineCodec, compressedContent);
+		} else {
+			s3Pointer = storeMessageContentInS3(messageContent);
+		}
 
 		// Convert S3 pointer (bucket name, key, etc) to JSON string
-		MessageS3Pointer s3Pointer = new MessageS3Pointer(clientConfiguration.getS3BucketName(), s3Key);
-		String s3PointerStr = getJSONFromS3Pointer(s3Pointer);
+		return getJSONFromS3Pointer(s3Pointer);
+	}
 
-		// Storing S3 pointer in the message body.
-		batchEntry.setMessageBody(s3PointerStr);
+	private PayloadCodec getInlinePayloadCodec() {
+		PayloadCodec payloadCodec = clientConfiguration.getPayloadCodec();
+		return payloadCodec != null ? payloadCodec : PayloadCodecs.GZIP;
+	}
 
-		return batchEntry;
+	private static int getInlineEncodingAttributeSize(MessageAttributeValue encodingAttributeValue) {
+		return (int) (Utf8Length.of(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME)
+				+ Utf8Length.of(encodingAttributeValue.getDataType())
+				+ Utf8Length.of(encodingAttributeValue.getStringValue()));
 	}
 
-	private SendMessageRequest storeMessageInS3(SendMessageRequest sendMessageRequest) {
+	/**
+	 * Stores the content of a message in a new S3 object, compressed with the
+	 * configured payload codec if it compresses well enough.
+	 *
+	 * @return The pointer to the S3 object.
+	 */
+	private MessageS3Pointer storeMessageContentInS3(byte[] messageContent) {
+		PayloadCodec payloadCodec = clientConfiguration.getPayloadCodec();
+		byte[] compressedContent = null;
+		if (payloadCodec != null) {
+			compressedContent = new PayloadCompressor(payloadCodec, clientConfiguration.getMaxCompressionRatio())
+					.compress(messageContent);
+		}
+		return storeMessageContentInS3(messageContent, payloadCodec, compressedContent);
+	}
 
-		checkMessageAttributes(sendMessageRequest.getMessageAttributes());
+	/**
+	 * Stores the content of a message in a new S3 object.
+	 *
+	 * @param compressedContent
+	 *            The content compressed with the codec, or null to store the
+	 *            content uncompressed.
+	 * @return The pointer to the S3 object.
+	 */
+	private MessageS3Pointer storeMessageContentInS3(byte[] messageContent, PayloadCodec payloadCodec,
+			byte[] compressedContent) {
+		byte[] storedContent = messageContent;
+		if (compressedContent != null) {
+			storedContent = compressedContent;
+		}
 
-		String s3Key = UUID.randomUUID().toString();
+		PayloadReferenceStore referenceStore = clientConfiguration.getPayloadReferenceStore();
+		String s3Key;
+		String checksum = null;
+		if (referenceStore == null) {
+			s3Key = UUID.randomUUID().toString();
+			storeContentInS3(s3Key, storedContent);
+			LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName() + ", Object key: "
+					+ s3Key + ".");
+		} else {
+			checksum = DigestUtils.sha256Hex(storedContent);
+			s3Key = checksum;
+			if (!storeContentAddressedContentInS3(referenceStore, s3Key, storedContent)) {
+				// The shared object is being deleted, so it cannot be reused
+				// or overwritten.
+				s3Key = UUID.randomUUID().toString();
+				storeContentInS3(s3Key, storedContent);
+				LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName()
+						+ ", Object key: " + s3Key + ".");
+			}
+		}
+		cachePayload(clientConfiguration.getS3BucketName(), s3Key, storedContent);
 
-		// Read the content of the message from message body
-		String messageContentStr = sendMessageRequest.getMessageBody();
+		MessageS3Pointer s3Pointer = new MessageS3Pointer(clientConfiguration.getS3BucketName(), s3Key);
+		if (compressedContent != null) {
+			s3Pointer.setCodec(payloadCodec.getName());
+		}
+		s3Pointer.setPayloadSize(storedContent.length);
+		s3Pointer.setChecksum(checksum);
+		return s3Pointer;
+	}
+
+	/**
+	 * Adds a reference to a content-addressed payload and uploads it unless
+	 * it is already stored. A payload which other messages refer to is still
+	 * uploaded if its object does not exist yet, because the upload for the
+	 * first reference may not have completed.
+	 *
+	 * @return false if the object is being deleted, in which case no
+	 *         reference was added and nothing was uploaded.
+	 */
+	private boolean storeContentAddressedContentInS3(PayloadReferenceStore referenceStore, String s3Key,
+			byte[] storedContent) {
+		String s3BucketName = clientConfiguration.getS3BucketName();
+		long referenceCount = referenceStore.addReference(s3BucketName, s3Key);
+		if (referenceCount < 0) {
+			LOG.info("S3 object is being deleted and is not reused, Bucket name: " + s3BucketName
+					+ ", Object key: " + s3Key + ".");
+			return false;
+		}
+		try {
+			if (referenceCount > 1 && payloadStore.doesPayloadExist(s3BucketName, s3Key)) {
+				LOG.info("S3 object reused, Bucket name: " + s3BucketName + ", Object key: " + s3Key
+						+ ", References: " + referenceCount + ".");
+				return true;
+			}
+			storeContentInS3(s3Key, storedContent);
+		} catch (RuntimeException e) {
+			if (referenceStore.removeReference(s3BucketName, s3Key) == 0) {
+				// Nothing refers to the object, whether or not part of it was stored.
+				referenceStore.completeDeletion(s3BucketName, s3Key);
+			}
+			throw e;
+		}
+		LOG.info("S3 object created, Bucket name: " + s3BucketName + ", Object key: " + s3Key + ".");
+		return true;
+	}
+
+	/**
+	 * Removes a message's reference to its payload if the payload is
+	 * content-addressed.
+	 *
+	 * @return true if no message refers to the S3 object any more, so that it
+	 *         can be deleted. Always true for payloads which are not
+	 *         content-addressed.
+	 */
+	private boolean releasePayload(String s3BucketName, String s3Key) {
+		PayloadReferenceStore referenceStore = clientConfiguration.getPayloadReferenceStore();
+		if (referenceStore == null || !isContentAddressedKey(s3Key)) {
+			return true;
+		}
+		long remainingReferences = referenceStore.removeReference(s3BucketName, s3Key);
+		if (remainingReferences < 0) {
+			LOG.warn("The reference store has no reference to the S3 object, so it is not deleted. Bucket name: "
+					+ s3BucketName + ", Object key: " + s3Key + ".");
+			return false;
+		}
+		if (remainingReferences > 0) {
+			LOG.info("S3 object kept, Bucket name: " + s3BucketName + ", Object key: " + s3Key + ", References: "
+					+ remainingReferences + ".");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells the reference store how the deletion of a content-addressed
+	 * payload whose last reference was released ended.
+	 *
+	 * @param restoredReferences
+	 *            The number of references to restore because the object could
+	 *            not be deleted and the messages stay in the queue, or 0 if
+	 *            nothing refers to the object any more.
+	 */
+	private void finishPayloadDeletion(String s3BucketName, String s3Key, long restoredReferences) {
+		PayloadReferenceStore referenceStore = clientConfiguration.getPayloadReferenceStore();
+		if (referenceStore == null || !isContentAddressedKey(s3Key)) {
+			return;
+		}
+		if (restoredReferences > 0) {
+			referenceStore.cancelDeletion(s3BucketName, s3Key, restoredReferences);
+		} else {
+			referenceStore.completeDeletion(s3BucketName, s3Key);
+		}
+	}
 
-		Long messageContentSize = getStringSizeInBytes(messageContentStr);
+	/**
+	 * Checks whether an S3 key is the hex-encoded SHA-256 hash of a payload
+	 * rather than a random UUID.
+	 */
+	static boolean isContentAddressedKey(String s3Key) {
+		if (s3Key.length() != 64) {
+			return false;
+		}
+		for (int i = 0; i < s3Key.length(); i++) {
+			char c = s3Key.charAt(i);
+			if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+				return false;
+			}
+		}
+		return true;
+	}
 
+	/**
+	 * Replaces the message body with the pointer to the S3 object which holds
+	 * the payload, and flags the message with the payload size.
+	 */
+	private SendMessageRequest attachS3Pointer(SendMessageRequest sendMessageRequest, String s3Key,
+			long messageContentSize) {
 		// Add a new message attribute as a flag
 		MessageAttributeValue messageAttributeValue = new MessageAttributeValue();
 		messageAttributeValue.setDataType("Number");
-		messageAttributeValue.setStringValue(messageContentSize.toString());
+		messageAttributeValue.setStringValue(Long.toString(messageContentSize));
 		sendMessageRequest.addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME,
 				messageAttributeValue);
 
-		// Store the message content in S3.
-		storeTextInS3(s3Key, messageContentStr, messageContentSize);
-		LOG.info("S3 object created, Bucket name: " + clientConfiguration.getS3BucketName() + ", Object key: " + s3Key
-				+ ".");
-
 		// Convert S3 pointer (bucket name, key, etc) to JSON string
 		MessageS3Pointer s3Pointer = new MessageS3Pointer(clientConfiguration.getS3BucketName(), s3Key);
-
+		s3Pointer.setPayloadSize(messageContentSize);
 		String s3PointerStr = getJSONFromS3Pointer(s3Pointer);
 
 		// Storing S3 pointer in the message body.
 		sendMessageRequest.setMessageBody(s3PointerStr);
 
+		clientConfiguration.getMetricsCollector().recordMessageSent(sendMessageRequest.getQueueUrl(), true);
 		return sendMessageRequest;
 	}
 
+	private void checkStreamingSendMessageRequest(SendMessageRequest sendMessageRequest, Object payload) {
+		if (sendMessageRequest == null) {
+			String errorMessage = "sendMessageRequest cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		if (payload == null) {
+			String errorMessage = "payload cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		sendMessageRequest.getRequestClientOptions().appendUserAgent(SQSExtendedClientConstants.USER_AGENT_HEADER);
+
+		if (!clientConfiguration.isLargePayloadSupportEnabled()) {
+			String errorMessage = "Large-payload support must be enabled to send a message payload from a stream or file.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+
+		checkMessageAttributes(sendMessageRequest.getMessageAttributes());
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			LOG.warn("Failed to close a message payload stream.", e);
+		}
+	}
+
 	private String getJSONFromS3Pointer(MessageS3Pointer s3Pointer) {
 		String s3PointerStr = null;
 		try {
-			JsonDataConverter jsonDataConverter = new JsonDataConverter();
-			s3PointerStr = jsonDataConverter.serializeToJson(s3Pointer);
+			// Only the compact format can record the codec.
+			boolean compact = clientConfiguration.isCompactS3PointerEnabled() || s3Pointer.getCodec() != null;
+			s3PointerStr = MessageS3PointerCodec.encode(s3Pointer, compact);
 		} catch (Exception e) {
 			String errorMessage = "Failed to convert S3 object pointer to text. Message was not sent.";
 			LOG.error(errorMessage, e);
@@ -1160,38 +3062,60 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase {
 		return s3PointerStr;
 	}
 
-	private void storeTextInS3(String s3Key, String messageContentStr, Long messageContentSize) {
-		InputStream messageContentStream = new ByteArrayInputStream(messageContentStr.getBytes(StandardCharsets.UTF_8));
-		ObjectMetadata messageContentStreamMetadata = new ObjectMetadata();
-		messageContentStreamMetadata.setContentLength(messageContentSize);
-		PutObjectRequest putObjectRequest = new PutObjectRequest(clientConfiguration.getS3BucketName(), s3Key,
-				messageContentStream, messageContentStreamMetadata);
+	private void storeContentInS3(String s3Key, byte[] messageContent) {
+		long startNanos = System.nanoTime();
 		try {
-			clientConfiguration.getAmazonS3Client().putObject(putObjectRequest);
+			payloadStore.putPayload(clientConfiguration.getS3BucketName(), s3Key, messageContent);
 		} catch (AmazonServiceException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_PUT, e);
 			String errorMessage = "Failed to store the message content in an S3 object. SQS message was not sent.";
 			LOG.error(errorMessage, e);
 			throw new AmazonServiceException(errorMessage, e);
 		} catch (AmazonClientException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_PUT, e);
 			String errorMessage = "Failed to store the message content in an S3 object. SQS message was not sent.";
 			LOG.error(errorMessage, e);
 			throw new AmazonClientException(errorMessage, e);
 		}
+		recordPayloadStored(startNanos, messageContent.length);
 	}
 
-	private static long getStringSizeInBytes(String str) {
-		CountingOutputStream counterOutputStream = new CountingOutputStream();
+	/**
+	 * Stores the remaining content of a stream, of the given length or -1 if
+	 * unknown.
+	 *
+	 * @return The number of bytes stored.
+	 */
+	private long storeStreamInS3(String s3Key, InputStream payload, long payloadLength) {
+		long storedLength;
+		long startNanos = System.nanoTime();
 		try {
-			Writer writer = new OutputStreamWriter(counterOutputStream, "UTF-8");
-			writer.write(str);
-			writer.flush();
-			writer.close();
+			storedLength = payloadStore.putPayload(clientConfiguration.getS3BucketName(), s3Key, payload,
+					payloadLength);
 		} catch (IOException e) {
-			String errorMessage = "Failed to calculate the size of message payload.";
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_PUT, e);
+			String errorMessage = "Failed to read the message payload. SQS message was not sent.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		} catch (AmazonServiceException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_PUT, e);
+			String errorMessage = "Failed to store the message content in an S3 object. SQS message was not sent.";
+			LOG.error(errorMessage, e);
+			throw new AmazonServiceException(errorMessage, e);
+		} catch (AmazonClientException e) {
+			clientConfiguration.getMetricsCollector().recordError(Operation.PAYLOAD_PUT, e);
+			String errorMessage = "Failed to store the message content in an S3 object. SQS message was not sent.";
 			LOG.error(errorMessage, e);
 			throw new AmazonClientException(errorMessage, e);
 		}
-		return counterOutputStream.getTotalSize();
+		recordPayloadStored(startNanos, storedLength);
+		return storedLength;
+	}
+
+	private void recordPayloadStored(long startNanos, long payloadLength) {
+		MetricsCollector metricsCollector = clientConfiguration.getMetricsCollector();
+		metricsCollector.recordLatency(Operation.PAYLOAD_PUT, System.nanoTime() - startNanos);
+		metricsCollector.recordBytesOffloaded(payloadLength);
 	}
 
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metrics collector which keeps its measurements in memory, with lock-free
+ * counters and a {@link LatencyHistogram} per operation, so that it can be
+ * read by the application or exported to a monitoring system.
+ *
+ * <p>
+ * Errors are counted by operation and type. The type of an error returned by
+ * an AWS service is its error code, and the type of any other error is the
+ * simple name of its exception class.
+ * </p>
+ */
+public class DefaultMetricsCollector implements MetricsCollector {
+
+	private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(
+			Operation.class);
+	private final Map<Operation, ConcurrentMap<String, AtomicLong>> errors;
+	private final AtomicLong bytesOffloaded = new AtomicLong();
+	private final AtomicLong bytesFetched = new AtomicLong();
+	private final ConcurrentMap<String, QueueCounters> queues = new ConcurrentHashMap<String, QueueCounters>();
+
+	public DefaultMetricsCollector() {
+		errors = new EnumMap<Operation, ConcurrentMap<String, AtomicLong>>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new LatencyHistogram());
+			errors.put(operation, new ConcurrentHashMap<String, AtomicLong>());
+		}
+	}
+
+	public void recordLatency(Operation operation, long latencyNanos) {
+		latencies.get(operation).record(latencyNanos);
+	}
+
+	public void recordError(Operation operation, Exception error) {
+		String type = getErrorType(error);
+		ConcurrentMap<String, AtomicLong> operationErrors = errors.get(operation);
+		AtomicLong errorCount = operationErrors.get(type);
+		if (errorCount == null) {
+			AtomicLong newErrorCount = new AtomicLong();
+			errorCount = operationErrors.putIfAbsent(type, newErrorCount);
+			if (errorCount == null) {
+				errorCount = newErrorCount;
+			}
+		}
+		errorCount.incrementAndGet();
+	}
+
+	public void recordBytesOffloaded(long bytes) {
+		bytesOffloaded.addAndGet(bytes);
+	}
+
+	public void recordBytesFetched(long bytes) {
+		bytesFetched.addAndGet(bytes);
+	}
+
+	public void recordMessageSent(String queueUrl, boolean offloaded) {
+		QueueCounters queueCounters = queues.get(queueUrl);
+		if (queueCounters == null) {
+			QueueCounters newQueueCounters = new QueueCounters();
+			queueCounters = queues.putIfAbsent(queueUrl, newQueueCounters);
+			if (queueCounters == null) {
+				queueCounters = newQueueCounters;
+			}
+		}
+		queueCounters.sent.incrementAndGet();
+		if (offloaded) {
+			queueCounters.offloaded.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the histogram of the latencies of an operation, in nanoseconds.
+	 * The histogram keeps being updated.
+	 */
+	public LatencyHistogram getLatencyHistogram(Operation operation) {
+		return latencies.get(operation);
+	}
+
+	/**
+	 * Gets the number of errors of a type which an operation failed with.
+	 */
+	public long getErrorCount(Operation operation, String type) {
+		AtomicLong errorCount = errors.get(operation).get(type);
+		return errorCount == null ? 0 : errorCount.get();
+	}
+
+	/**
+	 * Gets the number of errors of each type which an operation failed with.
+	 *
+	 * @return A copy of the error counts, by error type.
+	 */
+	public Map<String, Long> getErrorCounts(Operation operation) {
+		Map<String, Long> errorCounts = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> errorCount : errors.get(operation).entrySet()) {
+			errorCounts.put(errorCount.getKey(), errorCount.getValue().get());
+		}
+		return errorCounts;
+	}
+
+	/**
+	 * Gets the number of payload bytes stored in Amazon S3.
+	 */
+	public long getBytesOffloaded() {
+		return bytesOffloaded.get();
+	}
+
+	/**
+	 * Gets the number of payload bytes read from Amazon S3.
+	 */
+	public long getBytesFetched() {
+		return bytesFetched.get();
+	}
+
+	/**
+	 * Gets the number of messages sent to a queue.
+	 */
+	public long getMessagesSent(String queueUrl) {
+		QueueCounters queueCounters = queues.get(queueUrl);
+		return queueCounters == null ? 0 : queueCounters.sent.get();
+	}
+
+	/**
+	 * Gets the number of messages sent to a queue whose payload is stored in
+	 * Amazon S3.
+	 */
+	public long getMessagesOffloaded(String queueUrl) {
+		QueueCounters queueCounters = queues.get(queueUrl);
+		return queueCounters == null ? 0 : queueCounters.offloaded.get();
+	}
+
+	/**
+	 * Gets the share of the messages sent to a queue whose payload is stored
+	 * in Amazon S3.
+	 *
+	 * @return The offload ratio, from 0 to 1, or 0 if no message has been
+	 *         sent to the queue.
+	 */
+	public double getOffloadRatio(String queueUrl) {
+		QueueCounters queueCounters = queues.get(queueUrl);
+		if (queueCounters == null) {
+			return 0;
+		}
+		long sent = queueCounters.sent.get();
+		return sent == 0 ? 0 : (double) queueCounters.offloaded.get() / sent;
+	}
+
+	private static String getErrorType(Exception error) {
+		if (error instanceof AmazonServiceException && ((AmazonServiceException) error).getErrorCode() != null) {
+			return ((AmazonServiceException) error).getErrorCode();
+		}
+		return error.getClass().getSimpleName();
+	}
+
+	private static class QueueCounters {
+		final AtomicLong sent = new AtomicLong();
+		final AtomicLong offloaded = new AtomicLong();
+	}
+}
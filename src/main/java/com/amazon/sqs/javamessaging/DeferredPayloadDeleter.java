@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazon.sqs.javamessaging.MetricsCollector.Operation;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes message payloads from Amazon S3 in the background, after their
+ * messages have been deleted from Amazon SQS. Queued payloads are deleted
+ * with multi-object delete requests, and payloads which could not be deleted
+ * are retried with a growing delay.
+ *
+ * <p>
+ * On shutdown the queued payloads are deleted once more. Payloads which still
+ * cannot be deleted are appended to the spill file, if one is configured, and
+ * the next deleter created with the same spill file deletes them.
+ * </p>
+ */
+class DeferredPayloadDeleter {
+	private static final Log LOG = LogFactory.getLog(DeferredPayloadDeleter.class);
+	private static final int MAX_KEYS_PER_REQUEST = 1000;
+	private static final int MAX_ATTEMPTS = 4;
+	private static final long RETRY_BASE_DELAY_MILLIS = 500;
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+	private static final String UNEXPECTED_STOP_MESSAGE = "The payload deleter stopped before shutdown. Queued "
+			+ "payloads are only deleted or spilled on shutdown.";
+
+	private final PayloadStore payloadStore;
+	private final PayloadReferenceStore referenceStore;
+	private final File spillFile;
+	private final MetricsCollector metricsCollector;
+	private final LinkedBlockingQueue<PendingDeletion> queue = new LinkedBlockingQueue<PendingDeletion>();
+	private final CountDownLatch stopRequested = new CountDownLatch(1);
+	private final Thread worker;
+
+	DeferredPayloadDeleter(PayloadStore payloadStore, PayloadReferenceStore referenceStore, File spillFile,
+			MetricsCollector metricsCollector) {
+		this.payloadStore = payloadStore;
+		this.referenceStore = referenceStore;
+		this.spillFile = spillFile;
+		this.metricsCollector = metricsCollector;
+		loadSpillFile();
+		worker = new Thread(new Runnable() {
+			public void run() {
+				try {
+					work();
+				} catch (RuntimeException e) {
+					LOG.error(UNEXPECTED_STOP_MESSAGE, e);
+				} catch (Error e) {
+					LOG.error(UNEXPECTED_STOP_MESSAGE, e);
+					throw e;
+				}
+			}
+		}, "sqs-extended-payload-deleter");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Queues a payload for deletion.
+	 */
+	void delete(String s3BucketName, String s3Key) {
+		queue.add(new PendingDeletion(s3BucketName, s3Key));
+	}
+
+	/**
+	 * Deletes the queued payloads and stops the deleter. Payloads which cannot
+	 * be deleted are spilled to the spill file.
+	 */
+	void shutdown() {
+		stopRequested.countDown();
+		try {
+			worker.join(SHUTDOWN_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// Left over if the worker did not finish in time.
+		List<PendingDeletion> remaining = new ArrayList<PendingDeletion>();
+		queue.drainTo(remaining);
+		spill(remaining);
+	}
+
+	private void work() {
+		List<PendingDeletion> retries = new ArrayList<PendingDeletion>();
+		while (true) {
+			boolean stopping = stopRequested.getCount() == 0;
+			List<PendingDeletion> pending = new ArrayList<PendingDeletion>(retries);
+			retries.clear();
+			try {
+				if (pending.isEmpty() && !stopping) {
+					PendingDeletion first = queue.poll(1, TimeUnit.SECONDS);
+					if (first == null) {
+						continue;
+					}
+					pending.add(first);
+				}
+			} catch (InterruptedException e) {
+				stopRequested.countDown();
+				continue;
+			}
+			queue.drainTo(pending);
+			if (pending.isEmpty()) {
+				return;
+			}
+
+			List<PendingDeletion> failed = deleteAll(pending);
+			int attempts = 0;
+			for (PendingDeletion deletion : failed) {
+				if (stopping || ++deletion.attempts >= MAX_ATTEMPTS) {
+					spill(deletion);
+				} else {
+					retries.add(deletion);
+					attempts = Math.max(attempts, deletion.attempts);
+				}
+			}
+			if (!retries.isEmpty()) {
+				try {
+					stopRequested.await(RETRY_BASE_DELAY_MILLIS << (attempts - 1), TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					stopRequested.countDown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes payloads with one multi-object delete request per bucket and
+	 * up to 1000 keys.
+	 *
+	 * @return The payloads which could not be deleted.
+	 */
+	private List<PendingDeletion> deleteAll(List<PendingDeletion> pending) {
+		Map<String, List<PendingDeletion>> pendingByBucket = new LinkedHashMap<String, List<PendingDeletion>>();
+		for (PendingDeletion deletion : pending) {
+			List<PendingDeletion> bucketDeletions = pendingByBucket.get(deletion.s3BucketName);
+			if (bucketDeletions == null) {
+				bucketDeletions = new ArrayList<PendingDeletion>();
+				pendingByBucket.put(deletion.s3BucketName, bucketDeletions);
+			}
+			bucketDeletions.add(deletion);
+		}
+
+		List<PendingDeletion> failed = new ArrayList<PendingDeletion>();
+		for (Entry<String, List<PendingDeletion>> bucketDeletions : pendingByBucket.entrySet()) {
+			List<PendingDeletion> deletions = bucketDeletions.getValue();
+			for (int start = 0; start < deletions.size(); start += MAX_KEYS_PER_REQUEST) {
+				failed.addAll(deleteFromBucket(bucketDeletions.getKey(), deletions.subList(start, Math.min(start
+						+ MAX_KEYS_PER_REQUEST, deletions.size()))));
+			}
+		}
+		return failed;
+	}
+
+	private List<PendingDeletion> deleteFromBucket(String s3BucketName, List<PendingDeletion> deletions) {
+		List<String> keys = new ArrayList<String>(deletions.size());
+		for (PendingDeletion deletion : deletions) {
+			keys.add(deletion.s3Key);
+		}
+		long startNanos = System.nanoTime();
+		try {
+			Map<String, String> errorsByKey = payloadStore.deletePayloads(s3BucketName, keys);
+			for (PendingDeletion deletion : deletions) {
+				if (!errorsByKey.containsKey(deletion.s3Key)) {
+					completeDeletion(deletion);
+				}
+			}
+			if (errorsByKey.isEmpty()) {
+				metricsCollector.recordLatency(Operation.PAYLOAD_DELETE, System.nanoTime() - startNanos);
+				LOG.info(keys.size() + " S3 objects deleted, Bucket name: " + s3BucketName + ".");
+				return new ArrayList<PendingDeletion>();
+			}
+			String errorMessage = "Failed to delete " + errorsByKey.size() + " of " + keys.size()
+					+ " S3 objects which contain SQS message payloads, Bucket name: " + s3BucketName + ".";
+			AmazonServiceException error = new AmazonServiceException(errorMessage);
+			error.setErrorCode(errorsByKey.values().iterator().next());
+			metricsCollector.recordError(Operation.PAYLOAD_DELETE, error);
+			LOG.warn(errorMessage + " Error codes by key: " + errorsByKey + ".");
+			List<PendingDeletion> failed = new ArrayList<PendingDeletion>();
+			for (PendingDeletion deletion : deletions) {
+				if (errorsByKey.containsKey(deletion.s3Key)) {
+					failed.add(deletion);
+				}
+			}
+			return failed;
+		} catch (RuntimeException e) {
+			// A payload store may fail with any runtime exception, which must
+			// not stop the worker.
+			metricsCollector.recordError(Operation.PAYLOAD_DELETE, e);
+			LOG.warn("Failed to delete the S3 objects which contain SQS message payloads, Bucket name: "
+					+ s3BucketName + ".", e);
+			return new ArrayList<PendingDeletion>(deletions);
+		}
+	}
+
+	/**
+	 * Lets senders share a content-addressed payload again once its object
+	 * has been deleted. A payload which is given up on stays marked as being
+	 * deleted, since its object may still be deleted from the spill file.
+	 */
+	private void completeDeletion(PendingDeletion deletion) {
+		if (referenceStore != null && AmazonSQSExtendedClient.isContentAddressedKey(deletion.s3Key)) {
+			referenceStore.completeDeletion(deletion.s3BucketName, deletion.s3Key);
+		}
+	}
+
+	private void spill(PendingDeletion deletion) {
+		List<PendingDeletion> deletions = new ArrayList<PendingDeletion>(1);
+		deletions.add(deletion);
+		spill(deletions);
+	}
+
+	private synchronized void spill(List<PendingDeletion> deletions) {
+		if (deletions.isEmpty()) {
+			return;
+		}
+		if (spillFile == null) {
+			for (PendingDeletion deletion : deletions) {
+				LOG.error("Gave up deleting the S3 object which contains an SQS message payload, Bucket name: "
+						+ deletion.s3BucketName + ", Object key: " + deletion.s3Key + ".");
+			}
+			return;
+		}
+		try {
+			BufferedWriter writer = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			try {
+				for (PendingDeletion deletion : deletions) {
+					writer.write(deletion.s3BucketName + "\t" + deletion.s3Key);
+					writer.newLine();
+				}
+			} finally {
+				writer.close();
+			}
+			LOG.warn(deletions.size() + " S3 objects which could not be deleted were written to " + spillFile + ".");
+		} catch (IOException e) {
+			LOG.error("Failed to write " + deletions.size() + " S3 objects which could not be deleted to "
+					+ spillFile + ".", e);
+		}
+	}
+
+	private void loadSpillFile() {
+		if (spillFile == null || !spillFile.exists()) {
+			return;
+		}
+		try {
+			for (String line : Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8)) {
+				int separator = line.indexOf('\t');
+				if (separator > 0) {
+					delete(line.substring(0, separator), line.substring(separator + 1));
+				}
+			}
+			Files.delete(spillFile.toPath());
+		} catch (IOException e) {
+			String errorMessage = "Failed to read the S3 objects to be deleted from " + spillFile + ".";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+		LOG.info(queue.size() + " S3 objects to be deleted were read from " + spillFile + ".");
+	}
+
+	private static class PendingDeletion {
+		final String s3BucketName;
+		final String s3Key;
+		int attempts;
+
+		PendingDeletion(String s3BucketName, String s3Key) {
+			this.s3BucketName = s3BucketName;
+			this.s3Key = s3Key;
+		}
+	}
+}
@@ -21,7 +21,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.annotation.NotThreadSafe;
 
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Amazon SQS extended client configuration options such as Amazon S3 client,
@@ -32,10 +34,38 @@ public class ExtendedClientConfiguration {
 	private static final Log LOG = LogFactory.getLog(ExtendedClientConfiguration.class);
 
 	private AmazonS3 s3;
+	private PayloadStore payloadStore;
 	private String s3BucketName;
 	private boolean largePayloadSupport = false;
 	private boolean alwaysThroughS3 = false;
+	private boolean compactS3Pointer = false;
+	private boolean compactReceiptHandle = false;
+	private boolean inlineCompression = false;
 	private int messageSizeThreshold = SQSExtendedClientConstants.DEFAULT_MESSAGE_SIZE_THRESHOLD;
+	private ExecutorService s3UploadExecutor;
+	private ExecutorService s3DownloadExecutor;
+	private long multipartUploadThreshold = SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_THRESHOLD;
+	private int multipartUploadPartSize = SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PART_SIZE;
+	private int multipartUploadParallelism = SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PARALLELISM;
+	private int multipartUploadPartRetries = SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PART_RETRIES;
+	private long rangedDownloadThreshold = SQSExtendedClientConstants.DEFAULT_RANGED_DOWNLOAD_THRESHOLD;
+	private int rangedDownloadPartSize = SQSExtendedClientConstants.DEFAULT_RANGED_DOWNLOAD_PART_SIZE;
+	private PayloadCodec payloadCodec;
+	private double maxCompressionRatio = SQSExtendedClientConstants.DEFAULT_MAX_COMPRESSION_RATIO;
+	private PayloadCache payloadCache;
+	private PayloadReferenceStore payloadReferenceStore;
+	private int receivePrefetchDepth = 0;
+	private int receivePrefetchPollers = SQSExtendedClientConstants.DEFAULT_RECEIVE_PREFETCH_POLLERS;
+	private int receivePrefetchVisibilityTimeout = SQSExtendedClientConstants.DEFAULT_RECEIVE_PREFETCH_VISIBILITY_TIMEOUT;
+	private long sendBatchLingerMillis = 0;
+	private int sendBatchMaxEntries = SQSExtendedClientConstants.MAX_BATCH_ENTRIES;
+	private boolean deferredPayloadDeletion = false;
+	private File payloadDeletionSpillFile;
+	private MetricsCollector metricsCollector = new NoOpMetricsCollector();
+	private int visibilityHeartbeatTimeout = 0;
+	private int visibilityHeartbeatMaxLifetime = SQSExtendedClientConstants.DEFAULT_VISIBILITY_HEARTBEAT_MAX_LIFETIME;
+	private File payloadSpoolDirectory;
+	private long payloadSpoolQuota = SQSExtendedClientConstants.DEFAULT_PAYLOAD_SPOOL_QUOTA;
 
 	public ExtendedClientConfiguration() {
 		s3 = null;
@@ -44,10 +74,38 @@ public class ExtendedClientConfiguration {
 
 	public ExtendedClientConfiguration(ExtendedClientConfiguration other) {
 		this.s3 = other.s3;
+		this.payloadStore = other.payloadStore;
 		this.s3BucketName = other.s3BucketName;
 		this.largePayloadSupport = other.largePayloadSupport;
 		this.alwaysThroughS3 = other.alwaysThroughS3;
+		this.compactS3Pointer = other.compactS3Pointer;
+		this.compactReceiptHandle = other.compactReceiptHandle;
+		this.inlineCompression = other.inlineCompression;
 		this.messageSizeThreshold = other.messageSizeThreshold;
+		this.s3UploadExecutor = other.s3UploadExecutor;
+		this.s3DownloadExecutor = other.s3DownloadExecutor;
+		this.multipartUploadThreshold = other.multipartUploadThreshold;
+		this.multipartUploadPartSize = other.multipartUploadPartSize;
+		this.multipartUploadParallelism = other.multipartUploadParallelism;
+		this.multipartUploadPartRetries = other.multipartUploadPartRetries;
+		this.rangedDownloadThreshold = other.rangedDownloadThreshold;
+		this.rangedDownloadPartSize = other.rangedDownloadPartSize;
+		this.payloadCodec = other.payloadCodec;
+		this.maxCompressionRatio = other.maxCompressionRatio;
+		this.payloadCache = other.payloadCache;
+		this.payloadReferenceStore = other.payloadReferenceStore;
+		this.receivePrefetchDepth = other.receivePrefetchDepth;
+		this.receivePrefetchPollers = other.receivePrefetchPollers;
+		this.receivePrefetchVisibilityTimeout = other.receivePrefetchVisibilityTimeout;
+		this.sendBatchLingerMillis = other.sendBatchLingerMillis;
+		this.sendBatchMaxEntries = other.sendBatchMaxEntries;
+		this.deferredPayloadDeletion = other.deferredPayloadDeletion;
+		this.payloadDeletionSpillFile = other.payloadDeletionSpillFile;
+		this.metricsCollector = other.metricsCollector;
+		this.visibilityHeartbeatTimeout = other.visibilityHeartbeatTimeout;
+		this.visibilityHeartbeatMaxLifetime = other.visibilityHeartbeatMaxLifetime;
+		this.payloadSpoolDirectory = other.payloadSpoolDirectory;
+		this.payloadSpoolQuota = other.payloadSpoolQuota;
 	}
 
 	/**
@@ -71,6 +129,7 @@ public class ExtendedClientConfiguration {
 			LOG.warn("Large-payload support is already enabled. Overwriting AmazonS3Client and S3BucketName.");
 		}
 		this.s3 = s3;
+		this.payloadStore = null;
 		this.s3BucketName = s3BucketName;
 		largePayloadSupport = true;
 		LOG.info("Large-payload support enabled.");
@@ -93,11 +152,60 @@ public class ExtendedClientConfiguration {
 		return this;
 	}
 
+	/**
+	 * Enables support for large-payload messages, with the payloads stored in
+	 * a payload store other than Amazon S3, such as a
+	 * {@link FileSystemPayloadStore}. The multipart upload options only apply
+	 * to payloads stored in Amazon S3.
+	 *
+	 * @param payloadStore
+	 *            The payload store which is going to be used for storing
+	 *            large-payload messages.
+	 * @param s3BucketName
+	 *            Name of the bucket which is going to be used for storing
+	 *            large-payload messages. It is carried in the message pointers
+	 *            like the name of an S3 bucket.
+	 */
+	public void setLargePayloadSupportEnabled(PayloadStore payloadStore, String s3BucketName) {
+		if (payloadStore == null || s3BucketName == null) {
+			String errorMessage = "Payload store and/or bucket name cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		if (isLargePayloadSupportEnabled()) {
+			LOG.warn("Large-payload support is already enabled. Overwriting payload store and S3BucketName.");
+		}
+		this.s3 = null;
+		this.payloadStore = payloadStore;
+		this.s3BucketName = s3BucketName;
+		largePayloadSupport = true;
+		LOG.info("Large-payload support enabled.");
+	}
+
+	/**
+	 * Enables support for large-payload messages, with the payloads stored in
+	 * a payload store other than Amazon S3.
+	 *
+	 * @param payloadStore
+	 *            The payload store which is going to be used for storing
+	 *            large-payload messages.
+	 * @param s3BucketName
+	 *            Name of the bucket which is going to be used for storing
+	 *            large-payload messages.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withLargePayloadSupportEnabled(PayloadStore payloadStore,
+			String s3BucketName) {
+		setLargePayloadSupportEnabled(payloadStore, s3BucketName);
+		return this;
+	}
+
 	/**
 	 * Disables support for large-payload messages.
 	 */
 	public void setLargePayloadSupportDisabled() {
 		s3 = null;
+		payloadStore = null;
 		s3BucketName = null;
 		largePayloadSupport = false;
 		LOG.info("Large-payload support disabled.");
@@ -131,6 +239,17 @@ public class ExtendedClientConfiguration {
 		return s3;
 	}
 
+	/**
+	 * Gets the payload store which is being used for storing large-payload
+	 * messages, if it was set instead of an Amazon S3 client.
+	 *
+	 * @return The payload store, or null if the payloads are stored with the
+	 *         Amazon S3 client.
+	 */
+	public PayloadStore getPayloadStore() {
+		return payloadStore;
+	}
+
 	/**
 	 * Gets the name of the S3 bucket which is being used for storing
 	 * large-payload messages.
@@ -214,4 +333,1192 @@ public class ExtendedClientConfiguration {
 	public boolean isAlwaysThroughS3() {
 		return alwaysThroughS3;
 	}
+
+	/**
+	 * Sets whether the pointers to message payloads in Amazon S3 are sent in
+	 * the compact, versioned format instead of the legacy format. The compact
+	 * format is shorter and also records the payload size, but can only be
+	 * read by consumers using a version of this library which supports it.
+	 * Both formats are always read.
+	 *
+	 * @param compactS3Pointer
+	 *            Whether to send S3 pointers in the compact format. Default:
+	 *            false
+	 */
+	public void setCompactS3PointerEnabled(boolean compactS3Pointer) {
+		this.compactS3Pointer = compactS3Pointer;
+	}
+
+	/**
+	 * Sets whether the pointers to message payloads in Amazon S3 are sent in
+	 * the compact, versioned format instead of the legacy format. The compact
+	 * format is shorter and also records the payload size, but can only be
+	 * read by consumers using a version of this library which supports it.
+	 * Both formats are always read.
+	 *
+	 * @param compactS3Pointer
+	 *            Whether to send S3 pointers in the compact format. Default:
+	 *            false
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withCompactS3PointerEnabled(boolean compactS3Pointer) {
+		setCompactS3PointerEnabled(compactS3Pointer);
+		return this;
+	}
+
+	/**
+	 * Checks whether the pointers to message payloads in Amazon S3 are sent
+	 * in the compact format.
+	 *
+	 * @return True if S3 pointers are sent in the compact format. Default:
+	 *         false
+	 */
+	public boolean isCompactS3PointerEnabled() {
+		return compactS3Pointer;
+	}
+
+	/**
+	 * Sets whether the location of a message payload in Amazon S3 is embedded
+	 * in the receipt handles of received messages in the compact, versioned
+	 * format instead of the legacy format. The compact format is faster to
+	 * read, but receipt handles in it can only be used with a version of this
+	 * library which supports it. Both formats are always read.
+	 *
+	 * @param compactReceiptHandle
+	 *            Whether to embed payload locations in the compact format.
+	 *            Default: false
+	 */
+	public void setCompactReceiptHandleEnabled(boolean compactReceiptHandle) {
+		this.compactReceiptHandle = compactReceiptHandle;
+	}
+
+	/**
+	 * Sets whether the location of a message payload in Amazon S3 is embedded
+	 * in the receipt handles of received messages in the compact, versioned
+	 * format instead of the legacy format. The compact format is faster to
+	 * read, but receipt handles in it can only be used with a version of this
+	 * library which supports it. Both formats are always read.
+	 *
+	 * @param compactReceiptHandle
+	 *            Whether to embed payload locations in the compact format.
+	 *            Default: false
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withCompactReceiptHandleEnabled(boolean compactReceiptHandle) {
+		setCompactReceiptHandleEnabled(compactReceiptHandle);
+		return this;
+	}
+
+	/**
+	 * Checks whether the location of a message payload in Amazon S3 is
+	 * embedded in receipt handles in the compact format.
+	 *
+	 * @return True if receipt handles are written in the compact format.
+	 *         Default: false
+	 */
+	public boolean isCompactReceiptHandleEnabled() {
+		return compactReceiptHandle;
+	}
+
+	/**
+	 * Sets whether message payloads over the message size threshold are first
+	 * compressed and sent inline, Base64 encoded, if they then fit under the
+	 * threshold. Such messages are marked with a reserved message attribute
+	 * and never touch Amazon S3; only payloads which still do not fit are
+	 * stored in Amazon S3. The payloads are compressed with the payload codec,
+	 * see {@link #setPayloadCodec(PayloadCodec)}, or with GZIP if no codec is
+	 * set. Consumers must use a version of this library which supports inline
+	 * compression to read such messages.
+	 *
+	 * @param inlineCompression
+	 *            Whether to send compressed payloads inline when they fit.
+	 *            Default: false
+	 */
+	public void setInlineCompressionEnabled(boolean inlineCompression) {
+		this.inlineCompression = inlineCompression;
+	}
+
+	/**
+	 * Sets whether message payloads over the message size threshold are first
+	 * compressed and sent inline, Base64 encoded, if they then fit under the
+	 * threshold. Such messages are marked with a reserved message attribute
+	 * and never touch Amazon S3; only payloads which still do not fit are
+	 * stored in Amazon S3. The payloads are compressed with the payload codec,
+	 * see {@link #setPayloadCodec(PayloadCodec)}, or with GZIP if no codec is
+	 * set. Consumers must use a version of this library which supports inline
+	 * compression to read such messages.
+	 *
+	 * @param inlineCompression
+	 *            Whether to send compressed payloads inline when they fit.
+	 *            Default: false
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withInlineCompressionEnabled(boolean inlineCompression) {
+		setInlineCompressionEnabled(inlineCompression);
+		return this;
+	}
+
+	/**
+	 * Checks whether compressed message payloads are sent inline when they
+	 * fit under the message size threshold.
+	 *
+	 * @return True if inline compression is enabled. Default: false
+	 */
+	public boolean isInlineCompressionEnabled() {
+		return inlineCompression;
+	}
+
+	/**
+	 * Sets the executor which is used for uploading the message payloads of a
+	 * batch to Amazon S3 in parallel. The executor is owned by the caller and
+	 * is not shut down by the client. Use a bounded executor; uploads which
+	 * the executor has not started yet when they are needed are run on the
+	 * calling thread.
+	 *
+	 * @param s3UploadExecutor
+	 *            Executor to be used for parallel uploads to Amazon S3.
+	 *            Default: null, payloads are uploaded one after another on
+	 *            the calling thread.
+	 */
+	public void setS3UploadExecutor(ExecutorService s3UploadExecutor) {
+		this.s3UploadExecutor = s3UploadExecutor;
+	}
+
+	/**
+	 * Sets the executor which is used for uploading the message payloads of a
+	 * batch to Amazon S3 in parallel. The executor is owned by the caller and
+	 * is not shut down by the client. Use a bounded executor; uploads which
+	 * the executor has not started yet when they are needed are run on the
+	 * calling thread.
+	 *
+	 * @param s3UploadExecutor
+	 *            Executor to be used for parallel uploads to Amazon S3.
+	 *            Default: null, payloads are uploaded one after another on
+	 *            the calling thread.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withS3UploadExecutor(ExecutorService s3UploadExecutor) {
+		setS3UploadExecutor(s3UploadExecutor);
+		return this;
+	}
+
+	/**
+	 * Gets the executor which is used for uploading the message payloads of a
+	 * batch to Amazon S3 in parallel.
+	 *
+	 * @return The executor used for parallel uploads, or null if payloads are
+	 *         uploaded on the calling thread. Default: null
+	 */
+	public ExecutorService getS3UploadExecutor() {
+		return s3UploadExecutor;
+	}
+
+	/**
+	 * Sets the executor which is used for downloading the message payloads of
+	 * one receive from Amazon S3 in parallel. The executor is owned by the
+	 * caller and is not shut down by the client. Downloads which the executor
+	 * has not started yet when they are needed are run on the calling thread.
+	 *
+	 * @param s3DownloadExecutor
+	 *            Executor to be used for parallel downloads from Amazon S3.
+	 *            Default: null, payloads are downloaded one after another on
+	 *            the calling thread.
+	 */
+	public void setS3DownloadExecutor(ExecutorService s3DownloadExecutor) {
+		this.s3DownloadExecutor = s3DownloadExecutor;
+	}
+
+	/**
+	 * Sets the executor which is used for downloading the message payloads of
+	 * one receive from Amazon S3 in parallel. The executor is owned by the
+	 * caller and is not shut down by the client. Downloads which the executor
+	 * has not started yet when they are needed are run on the calling thread.
+	 *
+	 * @param s3DownloadExecutor
+	 *            Executor to be used for parallel downloads from Amazon S3.
+	 *            Default: null, payloads are downloaded one after another on
+	 *            the calling thread.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withS3DownloadExecutor(ExecutorService s3DownloadExecutor) {
+		setS3DownloadExecutor(s3DownloadExecutor);
+		return this;
+	}
+
+	/**
+	 * Gets the executor which is used for downloading the message payloads of
+	 * one receive from Amazon S3 in parallel.
+	 *
+	 * @return The executor used for parallel downloads, or null if payloads
+	 *         are downloaded on the calling thread. Default: null
+	 */
+	public ExecutorService getS3DownloadExecutor() {
+		return s3DownloadExecutor;
+	}
+
+	/**
+	 * Sets the payload size above which message payloads are stored in Amazon
+	 * S3 with a multipart upload instead of a single put request.
+	 *
+	 * @param multipartUploadThreshold
+	 *            Payload size in bytes above which multipart uploads are
+	 *            used. Default: 16MB.
+	 */
+	public void setMultipartUploadThreshold(long multipartUploadThreshold) {
+		this.multipartUploadThreshold = multipartUploadThreshold;
+	}
+
+	/**
+	 * Sets the payload size above which message payloads are stored in Amazon
+	 * S3 with a multipart upload instead of a single put request.
+	 *
+	 * @param multipartUploadThreshold
+	 *            Payload size in bytes above which multipart uploads are
+	 *            used. Default: 16MB.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withMultipartUploadThreshold(long multipartUploadThreshold) {
+		setMultipartUploadThreshold(multipartUploadThreshold);
+		return this;
+	}
+
+	/**
+	 * Gets the payload size above which message payloads are stored in Amazon
+	 * S3 with a multipart upload.
+	 *
+	 * @return Payload size in bytes above which multipart uploads are used.
+	 *         Default: 16MB.
+	 */
+	public long getMultipartUploadThreshold() {
+		return multipartUploadThreshold;
+	}
+
+	/**
+	 * Sets the size of the parts of a multipart upload. Amazon S3 requires
+	 * parts of at least 5MB.
+	 *
+	 * @param multipartUploadPartSize
+	 *            Part size in bytes. Default: 8MB.
+	 */
+	public void setMultipartUploadPartSize(int multipartUploadPartSize) {
+		if (multipartUploadPartSize < SQSExtendedClientConstants.MIN_MULTIPART_UPLOAD_PART_SIZE) {
+			String errorMessage = "Multipart upload part size cannot be less than "
+					+ SQSExtendedClientConstants.MIN_MULTIPART_UPLOAD_PART_SIZE + " bytes.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.multipartUploadPartSize = multipartUploadPartSize;
+	}
+
+	/**
+	 * Sets the size of the parts of a multipart upload. Amazon S3 requires
+	 * parts of at least 5MB.
+	 *
+	 * @param multipartUploadPartSize
+	 *            Part size in bytes. Default: 8MB.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withMultipartUploadPartSize(int multipartUploadPartSize) {
+		setMultipartUploadPartSize(multipartUploadPartSize);
+		return this;
+	}
+
+	/**
+	 * Gets the size of the parts of a multipart upload.
+	 *
+	 * @return Part size in bytes. Default: 8MB.
+	 */
+	public int getMultipartUploadPartSize() {
+		return multipartUploadPartSize;
+	}
+
+	/**
+	 * Sets the number of parts of one multipart upload which are uploaded at
+	 * the same time. The parts are uploaded on the S3 upload executor, see
+	 * {@link #setS3UploadExecutor(ExecutorService)}; without an executor they
+	 * are uploaded one after another. Each part in flight holds one part
+	 * buffer in memory.
+	 *
+	 * @param multipartUploadParallelism
+	 *            Number of parts uploaded at the same time. Default: 4.
+	 */
+	public void setMultipartUploadParallelism(int multipartUploadParallelism) {
+		if (multipartUploadParallelism < 1) {
+			String errorMessage = "Multipart upload parallelism must be at least 1.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.multipartUploadParallelism = multipartUploadParallelism;
+	}
+
+	/**
+	 * Sets the number of parts of one multipart upload which are uploaded at
+	 * the same time. The parts are uploaded on the S3 upload executor, see
+	 * {@link #setS3UploadExecutor(ExecutorService)}; without an executor they
+	 * are uploaded one after another. Each part in flight holds one part
+	 * buffer in memory.
+	 *
+	 * @param multipartUploadParallelism
+	 *            Number of parts uploaded at the same time. Default: 4.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withMultipartUploadParallelism(int multipartUploadParallelism) {
+		setMultipartUploadParallelism(multipartUploadParallelism);
+		return this;
+	}
+
+	/**
+	 * Gets the number of parts of one multipart upload which are uploaded at
+	 * the same time.
+	 *
+	 * @return Number of parts uploaded at the same time. Default: 4.
+	 */
+	public int getMultipartUploadParallelism() {
+		return multipartUploadParallelism;
+	}
+
+	/**
+	 * Sets how many times the upload of a single part is retried before the
+	 * whole multipart upload is aborted.
+	 *
+	 * @param multipartUploadPartRetries
+	 *            Number of retries per part. Default: 2.
+	 */
+	public void setMultipartUploadPartRetries(int multipartUploadPartRetries) {
+		if (multipartUploadPartRetries < 0) {
+			String errorMessage = "Multipart upload part retries cannot be negative.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.multipartUploadPartRetries = multipartUploadPartRetries;
+	}
+
+	/**
+	 * Sets how many times the upload of a single part is retried before the
+	 * whole multipart upload is aborted.
+	 *
+	 * @param multipartUploadPartRetries
+	 *            Number of retries per part. Default: 2.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withMultipartUploadPartRetries(int multipartUploadPartRetries) {
+		setMultipartUploadPartRetries(multipartUploadPartRetries);
+		return this;
+	}
+
+	/**
+	 * Gets how many times the upload of a single part is retried.
+	 *
+	 * @return Number of retries per part. Default: 2.
+	 */
+	public int getMultipartUploadPartRetries() {
+		return multipartUploadPartRetries;
+	}
+
+	/**
+	 * Sets the payload size above which message payloads are downloaded from
+	 * Amazon S3 with parallel byte-range requests. The ranges are downloaded
+	 * on the S3 download executor, see
+	 * {@link #setS3DownloadExecutor(ExecutorService)}; without an executor
+	 * payloads are always downloaded with a single request.
+	 *
+	 * @param rangedDownloadThreshold
+	 *            Payload size in bytes above which ranged downloads are used.
+	 *            Default: 16MB.
+	 */
+	public void setRangedDownloadThreshold(long rangedDownloadThreshold) {
+		this.rangedDownloadThreshold = rangedDownloadThreshold;
+	}
+
+	/**
+	 * Sets the payload size above which message payloads are downloaded from
+	 * Amazon S3 with parallel byte-range requests. The ranges are downloaded
+	 * on the S3 download executor, see
+	 * {@link #setS3DownloadExecutor(ExecutorService)}; without an executor
+	 * payloads are always downloaded with a single request.
+	 *
+	 * @param rangedDownloadThreshold
+	 *            Payload size in bytes above which ranged downloads are used.
+	 *            Default: 16MB.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withRangedDownloadThreshold(long rangedDownloadThreshold) {
+		setRangedDownloadThreshold(rangedDownloadThreshold);
+		return this;
+	}
+
+	/**
+	 * Gets the payload size above which message payloads are downloaded from
+	 * Amazon S3 with parallel byte-range requests.
+	 *
+	 * @return Payload size in bytes above which ranged downloads are used.
+	 *         Default: 16MB.
+	 */
+	public long getRangedDownloadThreshold() {
+		return rangedDownloadThreshold;
+	}
+
+	/**
+	 * Sets the size of the byte ranges of a ranged download.
+	 *
+	 * @param rangedDownloadPartSize
+	 *            Range size in bytes. Default: 8MB.
+	 */
+	public void setRangedDownloadPartSize(int rangedDownloadPartSize) {
+		if (rangedDownloadPartSize < 1) {
+			String errorMessage = "Ranged download part size must be positive.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.rangedDownloadPartSize = rangedDownloadPartSize;
+	}
+
+	/**
+	 * Sets the size of the byte ranges of a ranged download.
+	 *
+	 * @param rangedDownloadPartSize
+	 *            Range size in bytes. Default: 8MB.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withRangedDownloadPartSize(int rangedDownloadPartSize) {
+		setRangedDownloadPartSize(rangedDownloadPartSize);
+		return this;
+	}
+
+	/**
+	 * Gets the size of the byte ranges of a ranged download.
+	 *
+	 * @return Range size in bytes. Default: 8MB.
+	 */
+	public int getRangedDownloadPartSize() {
+		return rangedDownloadPartSize;
+	}
+
+	/**
+	 * Sets the codec which compresses message payloads before they are stored
+	 * in Amazon S3. Payloads which do not compress well enough, see
+	 * {@link #setMaxCompressionRatio(double)}, are stored uncompressed. A
+	 * compressed payload is sent with an S3 pointer in the compact format,
+	 * which records the codec, so consumers must use a version of this
+	 * library which supports it. Received payloads are decompressed whatever
+	 * codec is set.
+	 *
+	 * @param payloadCodec
+	 *            Codec to compress payloads with, for example
+	 *            {@link PayloadCodecs#GZIP}. Default: null, payloads are not
+	 *            compressed.
+	 */
+	public void setPayloadCodec(PayloadCodec payloadCodec) {
+		this.payloadCodec = payloadCodec;
+	}
+
+	/**
+	 * Sets the codec which compresses message payloads before they are stored
+	 * in Amazon S3. Payloads which do not compress well enough, see
+	 * {@link #setMaxCompressionRatio(double)}, are stored uncompressed. A
+	 * compressed payload is sent with an S3 pointer in the compact format,
+	 * which records the codec, so consumers must use a version of this
+	 * library which supports it. Received payloads are decompressed whatever
+	 * codec is set.
+	 *
+	 * @param payloadCodec
+	 *            Codec to compress payloads with, for example
+	 *            {@link PayloadCodecs#GZIP}. Default: null, payloads are not
+	 *            compressed.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withPayloadCodec(PayloadCodec payloadCodec) {
+		setPayloadCodec(payloadCodec);
+		return this;
+	}
+
+	/**
+	 * Gets the codec which compresses message payloads.
+	 *
+	 * @return The codec payloads are compressed with, or null if payloads are
+	 *         not compressed. Default: null
+	 */
+	public PayloadCodec getPayloadCodec() {
+		return payloadCodec;
+	}
+
+	/**
+	 * Sets the highest ratio of compressed to original size at which a
+	 * payload is stored compressed. Payloads larger than 64KB are judged by a
+	 * sample of their first 64KB, so incompressible payloads are not
+	 * compressed in full.
+	 *
+	 * @param maxCompressionRatio
+	 *            Ratio between 0 and 1. Default: 0.9
+	 */
+	public void setMaxCompressionRatio(double maxCompressionRatio) {
+		if (!(maxCompressionRatio > 0 && maxCompressionRatio <= 1)) {
+			String errorMessage = "Maximum compression ratio must be greater than 0 and at most 1.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.maxCompressionRatio = maxCompressionRatio;
+	}
+
+	/**
+	 * Sets the highest ratio of compressed to original size at which a
+	 * payload is stored compressed. Payloads larger than 64KB are judged by a
+	 * sample of their first 64KB, so incompressible payloads are not
+	 * compressed in full.
+	 *
+	 * @param maxCompressionRatio
+	 *            Ratio between 0 and 1. Default: 0.9
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withMaxCompressionRatio(double maxCompressionRatio) {
+		setMaxCompressionRatio(maxCompressionRatio);
+		return this;
+	}
+
+	/**
+	 * Gets the highest ratio of compressed to original size at which a
+	 * payload is stored compressed.
+	 *
+	 * @return Ratio between 0 and 1. Default: 0.9
+	 */
+	public double getMaxCompressionRatio() {
+		return maxCompressionRatio;
+	}
+
+	/**
+	 * Sets the cache of message payloads stored in Amazon S3. Sent payloads
+	 * are added to the cache, received payloads are read from it before
+	 * Amazon S3 is asked, and deleted payloads are removed from it. The cache
+	 * can be shared by several clients.
+	 *
+	 * @param payloadCache
+	 *            The cache, or null to read every payload from Amazon S3.
+	 */
+	public void setPayloadCache(PayloadCache payloadCache) {
+		this.payloadCache = payloadCache;
+	}
+
+	/**
+	 * Sets the cache of message payloads stored in Amazon S3. Sent payloads
+	 * are added to the cache, received payloads are read from it before
+	 * Amazon S3 is asked, and deleted payloads are removed from it. The cache
+	 * can be shared by several clients.
+	 *
+	 * @param payloadCache
+	 *            The cache, or null to read every payload from Amazon S3.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withPayloadCache(PayloadCache payloadCache) {
+		setPayloadCache(payloadCache);
+		return this;
+	}
+
+	/**
+	 * Gets the cache of message payloads stored in Amazon S3.
+	 *
+	 * @return The cache, or null if payloads are not cached. Default: null
+	 */
+	public PayloadCache getPayloadCache() {
+		return payloadCache;
+	}
+
+	/**
+	 * Enables content-addressed payloads. Payloads are stored under the
+	 * SHA-256 hash of their content, a payload which is already stored is not
+	 * uploaded again, and its S3 object is only deleted once the reference
+	 * store has no reference to it left. All clients which use the bucket must
+	 * share the reference store.
+	 *
+	 * @param payloadReferenceStore
+	 *            The store which counts the references to each payload, or
+	 *            null to store each payload in an S3 object of its own.
+	 */
+	public void setPayloadReferenceStore(PayloadReferenceStore payloadReferenceStore) {
+		this.payloadReferenceStore = payloadReferenceStore;
+	}
+
+	/**
+	 * Enables content-addressed payloads. Payloads are stored under the
+	 * SHA-256 hash of their content, a payload which is already stored is not
+	 * uploaded again, and its S3 object is only deleted once the reference
+	 * store has no reference to it left. All clients which use the bucket must
+	 * share the reference store.
+	 *
+	 * @param payloadReferenceStore
+	 *            The store which counts the references to each payload, or
+	 *            null to store each payload in an S3 object of its own.
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withPayloadReferenceStore(PayloadReferenceStore payloadReferenceStore) {
+		setPayloadReferenceStore(payloadReferenceStore);
+		return this;
+	}
+
+	/**
+	 * Gets the store which counts the references to content-addressed
+	 * payloads.
+	 *
+	 * @return The reference store, or null if payloads are not
+	 *         content-addressed. Default: null
+	 */
+	public PayloadReferenceStore getPayloadReferenceStore() {
+		return payloadReferenceStore;
+	}
+
+	/**
+	 * Sets the number of messages per queue which are received ahead of
+	 * demand. When prefetching is enabled, background pollers keep a buffer of
+	 * received messages, with their payloads already read from Amazon S3, and
+	 * <code>receiveMessage</code> is served from that buffer. Requests which
+	 * set a visibility timeout are not served from the buffer. Buffered
+	 * messages are received with all attributes and message attributes.
+	 *
+	 * @param receivePrefetchDepth
+	 *            The maximum number of messages buffered per queue, or 0 to
+	 *            disable prefetching. Default: 0
+	 */
+	public void setReceivePrefetchDepth(int receivePrefetchDepth) {
+		if (receivePrefetchDepth < 0) {
+			String errorMessage = "Receive prefetch depth cannot be negative.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.receivePrefetchDepth = receivePrefetchDepth;
+	}
+
+	/**
+	 * Sets the number of messages per queue which are received ahead of
+	 * demand. When prefetching is enabled, background pollers keep a buffer of
+	 * received messages, with their payloads already read from Amazon S3, and
+	 * <code>receiveMessage</code> is served from that buffer. Requests which
+	 * set a visibility timeout are not served from the buffer. Buffered
+	 * messages are received with all attributes and message attributes.
+	 *
+	 * @param receivePrefetchDepth
+	 *            The maximum number of messages buffered per queue, or 0 to
+	 *            disable prefetching. Default: 0
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withReceivePrefetchDepth(int receivePrefetchDepth) {
+		setReceivePrefetchDepth(receivePrefetchDepth);
+		return this;
+	}
+
+	/**
+	 * Gets the number of messages per queue which are received ahead of
+	 * demand.
+	 *
+	 * @return The maximum number of messages buffered per queue, or 0 if
+	 *         prefetching is disabled. Default: 0
+	 */
+	public int getReceivePrefetchDepth() {
+		return receivePrefetchDepth;
+	}
+
+	/**
+	 * Checks whether received messages are prefetched.
+	 *
+	 * @return true if the receive prefetch depth is greater than 0.
+	 */
+	public boolean isReceivePrefetchEnabled() {
+		return receivePrefetchDepth > 0;
+	}
+
+	/**
+	 * Sets the number of background pollers per queue which fill the
+	 * prefetch buffer.
+	 *
+	 * @param receivePrefetchPollers
+	 *            Number of pollers, at least 1. Default: 1
+	 */
+	public void setReceivePrefetchPollers(int receivePrefetchPollers) {
+		if (receivePrefetchPollers < 1) {
+			String errorMessage = "There must be at least one receive prefetch poller.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.receivePrefetchPollers = receivePrefetchPollers;
+	}
+
+	/**
+	 * Sets the number of background pollers per queue which fill the
+	 * prefetch buffer.
+	 *
+	 * @param receivePrefetchPollers
+	 *            Number of pollers, at least 1. Default: 1
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withReceivePrefetchPollers(int receivePrefetchPollers) {
+		setReceivePrefetchPollers(receivePrefetchPollers);
+		return this;
+	}
+
+	/**
+	 * Gets the number of background pollers per queue which fill the
+	 * prefetch buffer.
+	 *
+	 * @return Number of pollers. Default: 1
+	 */
+	public int getReceivePrefetchPollers() {
+		return receivePrefetchPollers;
+	}
+
+	/**
+	 * Sets the visibility timeout which messages are prefetched with. A
+	 * buffered message is dropped, to be delivered again, once less than five
+	 * seconds of it remain, or half of it for timeouts below ten seconds.
+	 *
+	 * @param receivePrefetchVisibilityTimeout
+	 *            Visibility timeout in seconds, between 1 and 43200. Default:
+	 *            30
+	 */
+	public void setReceivePrefetchVisibilityTimeout(int receivePrefetchVisibilityTimeout) {
+		if (receivePrefetchVisibilityTimeout < 1
+				|| receivePrefetchVisibilityTimeout > SQSExtendedClientConstants.MAX_VISIBILITY_TIMEOUT) {
+			String errorMessage = "Receive prefetch visibility timeout must be between 1 and "
+					+ SQSExtendedClientConstants.MAX_VISIBILITY_TIMEOUT + " seconds.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.receivePrefetchVisibilityTimeout = receivePrefetchVisibilityTimeout;
+	}
+
+	/**
+	 * Sets the visibility timeout which messages are prefetched with. A
+	 * buffered message is dropped, to be delivered again, once less than five
+	 * seconds of it remain, or half of it for timeouts below ten seconds.
+	 *
+	 * @param receivePrefetchVisibilityTimeout
+	 *            Visibility timeout in seconds, between 1 and 43200. Default:
+	 *            30
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withReceivePrefetchVisibilityTimeout(int receivePrefetchVisibilityTimeout) {
+		setReceivePrefetchVisibilityTimeout(receivePrefetchVisibilityTimeout);
+		return this;
+	}
+
+	/**
+	 * Gets the visibility timeout which messages are prefetched with.
+	 *
+	 * @return Visibility timeout in seconds. Default: 30
+	 */
+	public int getReceivePrefetchVisibilityTimeout() {
+		return receivePrefetchVisibilityTimeout;
+	}
+
+	/**
+	 * Enables client-side batching of <code>sendMessage</code> calls. Messages
+	 * which concurrent callers send to the same queue are collected into
+	 * <code>sendMessageBatch</code> requests; the first message of a batch
+	 * waits up to the linger time for others, and a batch is sent as soon as
+	 * it is full. Large payloads are stored in Amazon S3 before a message
+	 * joins a batch.
+	 *
+	 * @param sendBatchLingerMillis
+	 *            How long the first message of a batch waits for others, in
+	 *            milliseconds, or 0 to send each message on its own. Default:
+	 *            0
+	 */
+	public void setSendBatchLingerMillis(long sendBatchLingerMillis) {
+		if (sendBatchLingerMillis < 0) {
+			String errorMessage = "Send batch linger time cannot be negative.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.sendBatchLingerMillis = sendBatchLingerMillis;
+	}
+
+	/**
+	 * Enables client-side batching of <code>sendMessage</code> calls. Messages
+	 * which concurrent callers send to the same queue are collected into
+	 * <code>sendMessageBatch</code> requests; the first message of a batch
+	 * waits up to the linger time for others, and a batch is sent as soon as
+	 * it is full. Large payloads are stored in Amazon S3 before a message
+	 * joins a batch.
+	 *
+	 * @param sendBatchLingerMillis
+	 *            How long the first message of a batch waits for others, in
+	 *            milliseconds, or 0 to send each message on its own. Default:
+	 *            0
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withSendBatchLingerMillis(long sendBatchLingerMillis) {
+		setSendBatchLingerMillis(sendBatchLingerMillis);
+		return this;
+	}
+
+	/**
+	 * Gets how long the first message of a client-side batch waits for
+	 * others.
+	 *
+	 * @return Linger time in milliseconds, or 0 if batching is disabled.
+	 *         Default: 0
+	 */
+	public long getSendBatchLingerMillis() {
+		return sendBatchLingerMillis;
+	}
+
+	/**
+	 * Checks whether <code>sendMessage</code> calls are batched.
+	 *
+	 * @return true if the send batch linger time is greater than 0.
+	 */
+	public boolean isSendBatchingEnabled() {
+		return sendBatchLingerMillis > 0;
+	}
+
+	/**
+	 * Sets the number of messages at which a client-side batch is sent
+	 * without waiting for the rest of the linger time. A batch is also sent
+	 * early when the next message would take it over the 256 KB request
+	 * limit.
+	 *
+	 * @param sendBatchMaxEntries
+	 *            Number of messages, between 1 and 10. Default: 10
+	 */
+	public void setSendBatchMaxEntries(int sendBatchMaxEntries) {
+		if (sendBatchMaxEntries < 1 || sendBatchMaxEntries > SQSExtendedClientConstants.MAX_BATCH_ENTRIES) {
+			String errorMessage = "Send batch size must be between 1 and "
+					+ SQSExtendedClientConstants.MAX_BATCH_ENTRIES + " messages.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.sendBatchMaxEntries = sendBatchMaxEntries;
+	}
+
+	/**
+	 * Sets the number of messages at which a client-side batch is sent
+	 * without waiting for the rest of the linger time. A batch is also sent
+	 * early when the next message would take it over the 256 KB request
+	 * limit.
+	 *
+	 * @param sendBatchMaxEntries
+	 *            Number of messages, between 1 and 10. Default: 10
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withSendBatchMaxEntries(int sendBatchMaxEntries) {
+		setSendBatchMaxEntries(sendBatchMaxEntries);
+		return this;
+	}
+
+	/**
+	 * Gets the number of messages at which a client-side batch is sent.
+	 *
+	 * @return Number of messages. Default: 10
+	 */
+	public int getSendBatchMaxEntries() {
+		return sendBatchMaxEntries;
+	}
+
+	/**
+	 * Enables deferred deletion of message payloads. <code>deleteMessage</code>
+	 * then deletes the message from Amazon SQS first and queues its payload
+	 * for deletion from Amazon S3 in the background, in multi-object delete
+	 * requests with retries, so that it does not wait for Amazon S3. Shut the
+	 * client down to delete the queued payloads.
+	 *
+	 * @param deferredPayloadDeletion
+	 *            true to delete payloads in the background. Default: false
+	 */
+	public void setDeferredPayloadDeletionEnabled(boolean deferredPayloadDeletion) {
+		this.deferredPayloadDeletion = deferredPayloadDeletion;
+	}
+
+	/**
+	 * Enables deferred deletion of message payloads. <code>deleteMessage</code>
+	 * then deletes the message from Amazon SQS first and queues its payload
+	 * for deletion from Amazon S3 in the background, in multi-object delete
+	 * requests with retries, so that it does not wait for Amazon S3. Shut the
+	 * client down to delete the queued payloads.
+	 *
+	 * @param deferredPayloadDeletion
+	 *            true to delete payloads in the background. Default: false
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withDeferredPayloadDeletionEnabled(boolean deferredPayloadDeletion) {
+		setDeferredPayloadDeletionEnabled(deferredPayloadDeletion);
+		return this;
+	}
+
+	/**
+	 * Checks whether message payloads are deleted in the background.
+	 *
+	 * @return true if payload deletion is deferred. Default: false
+	 */
+	public boolean isDeferredPayloadDeletionEnabled() {
+		return deferredPayloadDeletion;
+	}
+
+	/**
+	 * Sets the file which payloads are written to if they cannot be deleted
+	 * in the background, including those still queued when the client is
+	 * shut down. A client created with the same file deletes them.
+	 *
+	 * @param payloadDeletionSpillFile
+	 *            The spill file, or null to only log the payloads. Default:
+	 *            null
+	 */
+	public void setPayloadDeletionSpillFile(File payloadDeletionSpillFile) {
+		this.payloadDeletionSpillFile = payloadDeletionSpillFile;
+	}
+
+	/**
+	 * Sets the file which payloads are written to if they cannot be deleted
+	 * in the background, including those still queued when the client is
+	 * shut down. A client created with the same file deletes them.
+	 *
+	 * @param payloadDeletionSpillFile
+	 *            The spill file, or null to only log the payloads. Default:
+	 *            null
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withPayloadDeletionSpillFile(File payloadDeletionSpillFile) {
+		setPayloadDeletionSpillFile(payloadDeletionSpillFile);
+		return this;
+	}
+
+	/**
+	 * Gets the file which payloads are written to if they cannot be deleted
+	 * in the background.
+	 *
+	 * @return The spill file, or null if there is none. Default: null
+	 */
+	public File getPayloadDeletionSpillFile() {
+		return payloadDeletionSpillFile;
+	}
+
+	/**
+	 * Sets the collector which records the latencies, payload bytes, offload
+	 * ratios and errors of the client. The collector is shared by copies of
+	 * this configuration.
+	 *
+	 * @param metricsCollector
+	 *            The metrics collector, for example a
+	 *            {@link DefaultMetricsCollector}. Default: a
+	 *            {@link NoOpMetricsCollector}
+	 */
+	public void setMetricsCollector(MetricsCollector metricsCollector) {
+		if (metricsCollector == null) {
+			String errorMessage = "metricsCollector cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.metricsCollector = metricsCollector;
+	}
+
+	/**
+	 * Sets the collector which records the latencies, payload bytes, offload
+	 * ratios and errors of the client. The collector is shared by copies of
+	 * this configuration.
+	 *
+	 * @param metricsCollector
+	 *            The metrics collector, for example a
+	 *            {@link DefaultMetricsCollector}. Default: a
+	 *            {@link NoOpMetricsCollector}
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withMetricsCollector(MetricsCollector metricsCollector) {
+		setMetricsCollector(metricsCollector);
+		return this;
+	}
+
+	/**
+	 * Gets the collector which records the metrics of the client.
+	 *
+	 * @return The metrics collector. Default: a {@link NoOpMetricsCollector}
+	 */
+	public MetricsCollector getMetricsCollector() {
+		return metricsCollector;
+	}
+
+	/**
+	 * Enables the visibility heartbeat. The client then keeps the messages it
+	 * has handed out invisible until they are deleted: a shared background
+	 * thread extends their visibility timeouts to this value with batched
+	 * <code>changeMessageVisibilityBatch</code> calls, each time half of it
+	 * has passed. Receive requests without a visibility timeout are sent with
+	 * this one. A message is no longer extended once it is deleted, once its
+	 * visibility is changed through the client, or once it reaches the
+	 * maximum lifetime.
+	 *
+	 * @param visibilityHeartbeatTimeout
+	 *            Visibility timeout in seconds, between 2 and 43200, or 0 to
+	 *            disable the heartbeat. Default: 0
+	 */
+	public void setVisibilityHeartbeatTimeout(int visibilityHeartbeatTimeout) {
+		if (visibilityHeartbeatTimeout != 0 && (visibilityHeartbeatTimeout < 2
+				|| visibilityHeartbeatTimeout > SQSExtendedClientConstants.MAX_VISIBILITY_TIMEOUT)) {
+			String errorMessage = "Visibility heartbeat timeout must be 0 or between 2 and "
+					+ SQSExtendedClientConstants.MAX_VISIBILITY_TIMEOUT + " seconds.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.visibilityHeartbeatTimeout = visibilityHeartbeatTimeout;
+	}
+
+	/**
+	 * Enables the visibility heartbeat. The client then keeps the messages it
+	 * has handed out invisible until they are deleted: a shared background
+	 * thread extends their visibility timeouts to this value with batched
+	 * <code>changeMessageVisibilityBatch</code> calls, each time half of it
+	 * has passed. Receive requests without a visibility timeout are sent with
+	 * this one. A message is no longer extended once it is deleted, once its
+	 * visibility is changed through the client, or once it reaches the
+	 * maximum lifetime.
+	 *
+	 * @param visibilityHeartbeatTimeout
+	 *            Visibility timeout in seconds, between 2 and 43200, or 0 to
+	 *            disable the heartbeat. Default: 0
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withVisibilityHeartbeatTimeout(int visibilityHeartbeatTimeout) {
+		setVisibilityHeartbeatTimeout(visibilityHeartbeatTimeout);
+		return this;
+	}
+
+	/**
+	 * Gets the visibility timeout which the visibility heartbeat extends
+	 * messages to.
+	 *
+	 * @return Visibility timeout in seconds, or 0 if the heartbeat is
+	 *         disabled. Default: 0
+	 */
+	public int getVisibilityHeartbeatTimeout() {
+		return visibilityHeartbeatTimeout;
+	}
+
+	/**
+	 * Checks whether the visibility heartbeat is enabled.
+	 *
+	 * @return true if the visibility heartbeat timeout is greater than 0.
+	 */
+	public boolean isVisibilityHeartbeatEnabled() {
+		return visibilityHeartbeatTimeout > 0;
+	}
+
+	/**
+	 * Sets how long the visibility heartbeat keeps a message invisible in
+	 * total, counted from when it was received. The last extension is
+	 * shortened to end at this lifetime, after which the message becomes
+	 * visible again unless it has been deleted.
+	 *
+	 * @param visibilityHeartbeatMaxLifetime
+	 *            Maximum lifetime in seconds, between 1 and 43200. Default:
+	 *            3600
+	 */
+	public void setVisibilityHeartbeatMaxLifetime(int visibilityHeartbeatMaxLifetime) {
+		if (visibilityHeartbeatMaxLifetime < 1
+				|| visibilityHeartbeatMaxLifetime > SQSExtendedClientConstants.MAX_VISIBILITY_TIMEOUT) {
+			String errorMessage = "Visibility heartbeat maximum lifetime must be between 1 and "
+					+ SQSExtendedClientConstants.MAX_VISIBILITY_TIMEOUT + " seconds.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.visibilityHeartbeatMaxLifetime = visibilityHeartbeatMaxLifetime;
+	}
+
+	/**
+	 * Sets how long the visibility heartbeat keeps a message invisible in
+	 * total, counted from when it was received. The last extension is
+	 * shortened to end at this lifetime, after which the message becomes
+	 * visible again unless it has been deleted.
+	 *
+	 * @param visibilityHeartbeatMaxLifetime
+	 *            Maximum lifetime in seconds, between 1 and 43200. Default:
+	 *            3600
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withVisibilityHeartbeatMaxLifetime(int visibilityHeartbeatMaxLifetime) {
+		setVisibilityHeartbeatMaxLifetime(visibilityHeartbeatMaxLifetime);
+		return this;
+	}
+
+	/**
+	 * Gets how long the visibility heartbeat keeps a message invisible in
+	 * total.
+	 *
+	 * @return Maximum lifetime in seconds. Default: 3600
+	 */
+	public int getVisibilityHeartbeatMaxLifetime() {
+		return visibilityHeartbeatMaxLifetime;
+	}
+
+	/**
+	 * Sets the directory which <code>receiveMessageWithSpooledPayloads</code>
+	 * writes the payloads of large-payload messages to. The spool files are
+	 * deleted when their messages are deleted or closed.
+	 *
+	 * @param payloadSpoolDirectory
+	 *            The spool directory, or null for the temporary directory of
+	 *            the JVM. Default: null
+	 */
+	public void setPayloadSpoolDirectory(File payloadSpoolDirectory) {
+		this.payloadSpoolDirectory = payloadSpoolDirectory;
+	}
+
+	/**
+	 * Sets the directory which <code>receiveMessageWithSpooledPayloads</code>
+	 * writes the payloads of large-payload messages to. The spool files are
+	 * deleted when their messages are deleted or closed.
+	 *
+	 * @param payloadSpoolDirectory
+	 *            The spool directory, or null for the temporary directory of
+	 *            the JVM. Default: null
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withPayloadSpoolDirectory(File payloadSpoolDirectory) {
+		setPayloadSpoolDirectory(payloadSpoolDirectory);
+		return this;
+	}
+
+	/**
+	 * Gets the directory which spooled payloads are written to.
+	 *
+	 * @return The spool directory, or null for the temporary directory of the
+	 *         JVM. Default: null
+	 */
+	public File getPayloadSpoolDirectory() {
+		return payloadSpoolDirectory;
+	}
+
+	/**
+	 * Sets how many bytes the spool files of a client may hold together.
+	 * Messages whose payloads do not fit are made visible again instead of
+	 * being returned.
+	 *
+	 * @param payloadSpoolQuota
+	 *            The quota in bytes, greater than 0. Default: 1073741824
+	 */
+	public void setPayloadSpoolQuota(long payloadSpoolQuota) {
+		if (payloadSpoolQuota <= 0) {
+			String errorMessage = "Payload spool quota must be greater than 0 bytes.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.payloadSpoolQuota = payloadSpoolQuota;
+	}
+
+	/**
+	 * Sets how many bytes the spool files of a client may hold together.
+	 * Messages whose payloads do not fit are made visible again instead of
+	 * being returned.
+	 *
+	 * @param payloadSpoolQuota
+	 *            The quota in bytes, greater than 0. Default: 1073741824
+	 * @return the updated ExtendedClientConfiguration object.
+	 */
+	public ExtendedClientConfiguration withPayloadSpoolQuota(long payloadSpoolQuota) {
+		setPayloadSpoolQuota(payloadSpoolQuota);
+		return this;
+	}
+
+	/**
+	 * Gets how many bytes the spool files of a client may hold together.
+	 *
+	 * @return The quota in bytes. Default: 1073741824
+	 */
+	public long getPayloadSpoolQuota() {
+		return payloadSpoolQuota;
+	}
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link PayloadStore} which stores payloads as files on a local or mounted
+ * file system, for deployments without access to Amazon S3. Each bucket is a
+ * directory under the root directory and each key a file in it.
+ *
+ * <p>
+ * A payload is written to a temporary file, forced to the device and then
+ * moved into place, so readers never see a partially written payload. All
+ * clients which send or receive the messages must see the same file system.
+ * </p>
+ */
+public class FileSystemPayloadStore implements PayloadStore {
+	private static final Log LOG = LogFactory.getLog(FileSystemPayloadStore.class);
+	private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+	private final Path rootDirectory;
+
+	/**
+	 * Creates a store under a root directory.
+	 *
+	 * @param rootDirectory
+	 *            The directory which contains the bucket directories. Missing
+	 *            directories are created when a payload is stored.
+	 */
+	public FileSystemPayloadStore(Path rootDirectory) {
+		if (rootDirectory == null) {
+			String errorMessage = "The root directory of the payload store cannot be null.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Gets the directory which contains the bucket directories.
+	 *
+	 * @return The root directory of the store.
+	 */
+	public Path getRootDirectory() {
+		return rootDirectory;
+	}
+
+	public void putPayload(String s3BucketName, String s3Key, byte[] content) {
+		Path file = resolve(s3BucketName, s3Key);
+		try {
+			Path tempFile = createTempFile(file);
+			try {
+				FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+				try {
+					ByteBuffer buffer = ByteBuffer.wrap(content);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					channel.force(false);
+				} finally {
+					channel.close();
+				}
+				Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException e) {
+			throw storeFailure("Failed to write the payload file " + file + ".", e);
+		}
+	}
+
+	public long putPayload(String s3BucketName, String s3Key, InputStream content, long contentLength)
+			throws IOException {
+		Path file = resolve(s3BucketName, s3Key);
+		ReadableByteChannel source = Channels.newChannel(content);
+		Path tempFile;
+		try {
+			tempFile = createTempFile(file);
+		} catch (IOException e) {
+			throw storeFailure("Failed to create a temporary file for the payload file " + file + ".", e);
+		}
+		try {
+			long length = 0;
+			FileChannel channel;
+			try {
+				channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				throw storeFailure("Failed to open the payload file " + tempFile + ".", e);
+			}
+			try {
+				// A transfer which stops short of its count has reached the end of the stream.
+				while (contentLength < 0 || length < contentLength) {
+					long count = contentLength < 0 ? TRANSFER_CHUNK_SIZE : Math.min(TRANSFER_CHUNK_SIZE,
+							contentLength - length);
+					long transferred = channel.transferFrom(source, length, count);
+					length += transferred;
+					if (transferred < count) {
+						break;
+					}
+				}
+				if (contentLength >= 0 && length < contentLength) {
+					throw new IOException("The payload stream ended after " + length + " of " + contentLength
+							+ " bytes.");
+				}
+				channel.force(false);
+			} finally {
+				channel.close();
+			}
+			try {
+				Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				throw storeFailure("Failed to move the payload file " + tempFile + " to " + file + ".", e);
+			}
+			return length;
+		} finally {
+			try {
+				Files.deleteIfExists(tempFile);
+			} catch (IOException e) {
+				LOG.warn("Failed to delete the temporary payload file " + tempFile + ".", e);
+			}
+		}
+	}
+
+	public InputStream getPayload(String s3BucketName, String s3Key) {
+		return Channels.newInputStream(open(s3BucketName, s3Key));
+	}
+
+	public InputStream getPayloadRange(String s3BucketName, String s3Key, long start, long length) {
+		FileChannel channel = open(s3BucketName, s3Key);
+		try {
+			channel.position(start);
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw storeFailure("Failed to read the payload file " + resolve(s3BucketName, s3Key) + ".", e);
+		}
+		return new RangeInputStream(Channels.newInputStream(channel), length);
+	}
+
+	public boolean doesPayloadExist(String s3BucketName, String s3Key) {
+		return Files.isRegularFile(resolve(s3BucketName, s3Key));
+	}
+
+	public void deletePayload(String s3BucketName, String s3Key) {
+		Path file = resolve(s3BucketName, s3Key);
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			throw storeFailure("Failed to delete the payload file " + file + ".", e);
+		}
+	}
+
+	public Map<String, String> deletePayloads(String s3BucketName, Collection<String> s3Keys) {
+		Map<String, String> errorsByKey = new HashMap<String, String>();
+		for (String s3Key : s3Keys) {
+			try {
+				Files.deleteIfExists(resolve(s3BucketName, s3Key));
+			} catch (IOException e) {
+				LOG.warn("Failed to delete the payload file " + resolve(s3BucketName, s3Key) + ".", e);
+				errorsByKey.put(s3Key, e.getClass().getSimpleName());
+			} catch (AmazonClientException e) {
+				errorsByKey.put(s3Key, e.getClass().getSimpleName());
+			}
+		}
+		return errorsByKey;
+	}
+
+	/**
+	 * Maps a bucket and key to a file, rejecting names which would lead out of
+	 * the bucket directory.
+	 */
+	private Path resolve(String s3BucketName, String s3Key) {
+		if (s3BucketName == null || s3Key == null || s3BucketName.isEmpty() || s3Key.isEmpty()) {
+			String errorMessage = "The bucket name and key of a payload cannot be null or empty.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		Path bucketDirectory = rootDirectory.resolve(s3BucketName).normalize();
+		Path file = bucketDirectory.resolve(s3Key).normalize();
+		if (!rootDirectory.equals(bucketDirectory.getParent()) || !file.startsWith(bucketDirectory)
+				|| file.equals(bucketDirectory)) {
+			String errorMessage = "Invalid payload location, Bucket name: " + s3BucketName + ", Object key: "
+					+ s3Key + ".";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		return file;
+	}
+
+	private static Path createTempFile(Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		return Files.createTempFile(file.getParent(), ".payload-", ".tmp");
+	}
+
+	private FileChannel open(String s3BucketName, String s3Key) {
+		Path file = resolve(s3BucketName, s3Key);
+		try {
+			return FileChannel.open(file, StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			AmazonServiceException notFound = new AmazonServiceException("The payload file " + file
+					+ " does not exist.", e);
+			notFound.setErrorCode("NoSuchKey");
+			notFound.setErrorType(ErrorType.Client);
+			notFound.setStatusCode(404);
+			throw notFound;
+		} catch (IOException e) {
+			throw storeFailure("Failed to open the payload file " + file + ".", e);
+		}
+	}
+
+	private static AmazonClientException storeFailure(String errorMessage, IOException e) {
+		LOG.error(errorMessage, e);
+		return new AmazonClientException(errorMessage, e);
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing was read from the channel.
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link PayloadReferenceStore} which keeps the reference counts in memory.
+ * The counts are lost when the JVM exits and are not seen by other processes,
+ * so this store is only correct when every producer and consumer of the
+ * messages runs in the same JVM and shares this store, as in tests.
+ */
+public class InMemoryPayloadReferenceStore implements PayloadReferenceStore {
+
+	private final Map<String, Long> referenceCounts = new HashMap<String, Long>();
+	private final Set<String> deletions = new HashSet<String>();
+
+	public synchronized long addReference(String s3BucketName, String s3Key) {
+		String key = s3BucketName + "/" + s3Key;
+		if (deletions.contains(key)) {
+			return -1;
+		}
+		Long count = referenceCounts.get(key);
+		long newCount = count == null ? 1 : count + 1;
+		referenceCounts.put(key, newCount);
+		return newCount;
+	}
+
+	public synchronized long removeReference(String s3BucketName, String s3Key) {
+		String key = s3BucketName + "/" + s3Key;
+		Long count = referenceCounts.get(key);
+		if (count == null) {
+			return -1;
+		}
+		long newCount = count - 1;
+		if (newCount == 0) {
+			referenceCounts.remove(key);
+			deletions.add(key);
+		} else {
+			referenceCounts.put(key, newCount);
+		}
+		return newCount;
+	}
+
+	public synchronized void completeDeletion(String s3BucketName, String s3Key) {
+		deletions.remove(s3BucketName + "/" + s3Key);
+	}
+
+	public synchronized void cancelDeletion(String s3BucketName, String s3Key, long references) {
+		String key = s3BucketName + "/" + s3Key;
+		if (deletions.remove(key) && references > 0) {
+			referenceCounts.put(key, references);
+		}
+	}
+
+	/**
+	 * Checks whether a payload is being deleted.
+	 *
+	 * @return true if the last reference to the payload has been removed and
+	 *         its deletion has been neither completed nor cancelled.
+	 */
+	public synchronized boolean isBeingDeleted(String s3BucketName, String s3Key) {
+		return deletions.contains(s3BucketName + "/" + s3Key);
+	}
+
+	/**
+	 * Gets the number of references to a payload.
+	 *
+	 * @return The number of references, or 0 if the payload is unknown.
+	 */
+	public synchronized long getReferenceCount(String s3BucketName, String s3Key) {
+		Long count = referenceCounts.get(s3BucketName + "/" + s3Key);
+		return count == null ? 0 : count;
+	}
+}
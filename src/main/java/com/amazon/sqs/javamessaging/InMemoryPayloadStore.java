@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link PayloadStore} which keeps the payloads in memory. The payloads are
+ * lost when the JVM exits, so this store only suits a single process which
+ * both sends and receives the messages, tests and benchmarks.
+ */
+public class InMemoryPayloadStore implements PayloadStore {
+
+	private final ConcurrentHashMap<String, byte[]> payloads = new ConcurrentHashMap<String, byte[]>();
+
+	public void putPayload(String s3BucketName, String s3Key, byte[] content) {
+		payloads.put(s3BucketName + "/" + s3Key, content.clone());
+	}
+
+	public long putPayload(String s3BucketName, String s3Key, InputStream content, long contentLength)
+			throws IOException {
+		ByteArrayOutputStream stored = new ByteArrayOutputStream(contentLength < 0 ? 8192
+				: (int) Math.min(contentLength, Integer.MAX_VALUE));
+		byte[] buffer = new byte[8192];
+		long remaining = contentLength < 0 ? Long.MAX_VALUE : contentLength;
+		while (remaining > 0) {
+			int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read < 0) {
+				if (contentLength >= 0) {
+					throw new IOException("The payload stream ended after " + stored.size() + " of " + contentLength
+							+ " bytes.");
+				}
+				break;
+			}
+			stored.write(buffer, 0, read);
+			remaining -= read;
+		}
+		payloads.put(s3BucketName + "/" + s3Key, stored.toByteArray());
+		return stored.size();
+	}
+
+	public InputStream getPayload(String s3BucketName, String s3Key) {
+		return new ByteArrayInputStream(getContent(s3BucketName, s3Key));
+	}
+
+	public InputStream getPayloadRange(String s3BucketName, String s3Key, long start, long length) {
+		byte[] content = getContent(s3BucketName, s3Key);
+		int offset = (int) Math.min(start, content.length);
+		return new ByteArrayInputStream(content, offset, (int) Math.min(length, content.length - offset));
+	}
+
+	public boolean doesPayloadExist(String s3BucketName, String s3Key) {
+		return payloads.containsKey(s3BucketName + "/" + s3Key);
+	}
+
+	public void deletePayload(String s3BucketName, String s3Key) {
+		payloads.remove(s3BucketName + "/" + s3Key);
+	}
+
+	public Map<String, String> deletePayloads(String s3BucketName, Collection<String> s3Keys) {
+		for (String s3Key : s3Keys) {
+			payloads.remove(s3BucketName + "/" + s3Key);
+		}
+		return new HashMap<String, String>();
+	}
+
+	/**
+	 * Gets the number of payloads in the store.
+	 *
+	 * @return The number of payloads, over all buckets.
+	 */
+	public int getPayloadCount() {
+		return payloads.size();
+	}
+
+	private byte[] getContent(String s3BucketName, String s3Key) {
+		byte[] content = payloads.get(s3BucketName + "/" + s3Key);
+		if (content == null) {
+			AmazonServiceException e = new AmazonServiceException("The payload does not exist, Bucket name: "
+					+ s3BucketName + ", Object key: " + s3Key + ".");
+			e.setErrorCode("NoSuchKey");
+			e.setErrorType(ErrorType.Client);
+			e.setStatusCode(404);
+			throw e;
+		}
+		return content;
+	}
+}
@@ -24,6 +24,9 @@ package com.amazon.sqs.javamessaging;
 class MessageS3Pointer {
 	private String s3BucketName;
 	private String s3Key;
+	private long payloadSize = -1;
+	private String codec;
+	private String checksum;
 
 	public MessageS3Pointer() {
 	}
@@ -49,4 +52,40 @@ class MessageS3Pointer {
 		this.s3Key = s3Key;
 	}
 
+	/**
+	 * Gets the size in bytes of the stored payload, or -1 if the pointer does
+	 * not record it.
+	 */
+	public long getPayloadSize() {
+		return payloadSize;
+	}
+
+	public void setPayloadSize(long payloadSize) {
+		this.payloadSize = payloadSize;
+	}
+
+	/**
+	 * Gets the name of the codec the stored payload is encoded with, or null
+	 * if it is stored as is.
+	 */
+	public String getCodec() {
+		return codec;
+	}
+
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Gets the checksum of the stored payload, or null if the pointer does not
+	 * record one.
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	public void setChecksum(String checksum) {
+		this.checksum = checksum;
+	}
+
 }
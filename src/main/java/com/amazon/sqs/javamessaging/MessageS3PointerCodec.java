@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * This class converts {@link MessageS3Pointer} instances to and from the JSON
+ * message body which is sent through Amazon SQS. It uses the Jackson streaming
+ * API on a single shared factory, so it is thread-safe and does not build an
+ * object mapper per message.
+ *
+ * <p>
+ * Two formats are supported. The legacy format is the type-tagged JSON
+ * written by earlier versions of this library:
+ * </p>
+ *
+ * <pre>
+ * ["com.amazon.sqs.javamessaging.MessageS3Pointer",{"s3BucketName":"bucket","s3Key":"key"}]
+ * </pre>
+ *
+ * <p>
+ * The compact format is a versioned object with short field names, and
+ * records the payload size, codec and checksum when they are known:
+ * </p>
+ *
+ * <pre>
+ * {"v":2,"b":"bucket","k":"key","s":1048576,"c":"gzip","h":"..."}
+ * </pre>
+ *
+ * <p>
+ * Both formats are always read; unknown fields are ignored so that later
+ * versions can add fields.
+ * </p>
+ */
+class MessageS3PointerCodec {
+	static final int COMPACT_FORMAT_VERSION = 2;
+
+	private static final String LEGACY_TYPE_NAME = MessageS3Pointer.class.getName();
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private MessageS3PointerCodec() {
+	}
+
+	/**
+	 * Converts a pointer to its JSON message body.
+	 *
+	 * @param compact
+	 *            Whether to write the compact format instead of the legacy
+	 *            format. The legacy format only carries the bucket name and
+	 *            key.
+	 */
+	static String encode(MessageS3Pointer s3Pointer, boolean compact) throws IOException {
+		StringWriter writer = new StringWriter(128);
+		JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+		try {
+			if (compact) {
+				writeCompact(generator, s3Pointer);
+			} else {
+				writeLegacy(generator, s3Pointer);
+			}
+		} finally {
+			generator.close();
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Reads a pointer from a JSON message body in either format.
+	 *
+	 * @throws IOException
+	 *             If the body is not a valid pointer.
+	 */
+	static MessageS3Pointer decode(String json) throws IOException {
+		JsonParser parser = JSON_FACTORY.createParser(json);
+		try {
+			JsonToken token = parser.nextToken();
+			MessageS3Pointer s3Pointer;
+			if (token == JsonToken.START_ARRAY) {
+				s3Pointer = readLegacy(parser);
+			} else if (token == JsonToken.START_OBJECT) {
+				s3Pointer = readCompact(parser);
+			} else {
+				throw new JsonParseException("Expected an S3 pointer.", parser.getCurrentLocation());
+			}
+			if (s3Pointer.getS3BucketName() == null || s3Pointer.getS3Key() == null) {
+				throw new JsonParseException("The S3 pointer has no bucket name or key.", parser
+						.getCurrentLocation());
+			}
+			return s3Pointer;
+		} finally {
+			parser.close();
+		}
+	}
+
+	private static void writeLegacy(JsonGenerator generator, MessageS3Pointer s3Pointer) throws IOException {
+		generator.writeStartArray();
+		generator.writeString(LEGACY_TYPE_NAME);
+		generator.writeStartObject();
+		generator.writeStringField("s3BucketName", s3Pointer.getS3BucketName());
+		generator.writeStringField("s3Key", s3Pointer.getS3Key());
+		generator.writeEndObject();
+		generator.writeEndArray();
+	}
+
+	private static void writeCompact(JsonGenerator generator, MessageS3Pointer s3Pointer) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("v", COMPACT_FORMAT_VERSION);
+		generator.writeStringField("b", s3Pointer.getS3BucketName());
+		generator.writeStringField("k", s3Pointer.getS3Key());
+		if (s3Pointer.getPayloadSize() >= 0) {
+			generator.writeNumberField("s", s3Pointer.getPayloadSize());
+		}
+		if (s3Pointer.getCodec() != null) {
+			generator.writeStringField("c", s3Pointer.getCodec());
+		}
+		if (s3Pointer.getChecksum() != null) {
+			generator.writeStringField("h", s3Pointer.getChecksum());
+		}
+		generator.writeEndObject();
+	}
+
+	private static MessageS3Pointer readLegacy(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.VALUE_STRING || !LEGACY_TYPE_NAME.equals(parser.getText())) {
+			throw new JsonParseException("Unexpected type of the S3 pointer.", parser.getCurrentLocation());
+		}
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new JsonParseException("Expected the fields of the S3 pointer.", parser.getCurrentLocation());
+		}
+		MessageS3Pointer s3Pointer = new MessageS3Pointer();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("s3BucketName".equals(field)) {
+				s3Pointer.setS3BucketName(readString(parser, value));
+			} else if ("s3Key".equals(field)) {
+				s3Pointer.setS3Key(readString(parser, value));
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return s3Pointer;
+	}
+
+	private static MessageS3Pointer readCompact(JsonParser parser) throws IOException {
+		MessageS3Pointer s3Pointer = new MessageS3Pointer();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("v".equals(field)) {
+				int version = parser.getIntValue();
+				if (version > COMPACT_FORMAT_VERSION) {
+					throw new JsonParseException("Unsupported S3 pointer version " + version + ".", parser
+							.getCurrentLocation());
+				}
+			} else if ("b".equals(field)) {
+				s3Pointer.setS3BucketName(readString(parser, value));
+			} else if ("k".equals(field)) {
+				s3Pointer.setS3Key(readString(parser, value));
+			} else if ("s".equals(field)) {
+				s3Pointer.setPayloadSize(parser.getLongValue());
+			} else if ("c".equals(field)) {
+				s3Pointer.setCodec(readString(parser, value));
+			} else if ("h".equals(field)) {
+				s3Pointer.setChecksum(readString(parser, value));
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return s3Pointer;
+	}
+
+	private static String readString(JsonParser parser, JsonToken value) throws IOException {
+		return value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * Receives measurements of the work done by the extended client: the latency
+ * of payload and message operations, the number of payload bytes which are
+ * stored in and read from Amazon S3, the share of messages sent to each queue
+ * whose payload is offloaded, and the errors of each operation.
+ *
+ * <p>
+ * The client calls the collector on the threads which do the work, so
+ * implementations must be thread-safe and should not block. Latencies are
+ * only recorded for operations which succeed; an operation which fails is
+ * recorded as an error instead.
+ * </p>
+ */
+public interface MetricsCollector {
+
+	/**
+	 * The operations whose latency and errors are recorded.
+	 */
+	enum Operation {
+		/** Storing a message payload in Amazon S3. */
+		PAYLOAD_PUT,
+		/** Reading a message payload from Amazon S3. */
+		PAYLOAD_GET,
+		/** Deleting one or more message payloads from Amazon S3. */
+		PAYLOAD_DELETE,
+		/** Sending one message or a batch of messages to Amazon SQS. */
+		SEND,
+		/** Receiving messages from Amazon SQS. */
+		RECEIVE
+	}
+
+	/**
+	 * Records the latency of an operation which succeeded.
+	 *
+	 * @param latencyNanos
+	 *            The latency in nanoseconds.
+	 */
+	void recordLatency(Operation operation, long latencyNanos);
+
+	/**
+	 * Records an operation which failed.
+	 *
+	 * @param error
+	 *            The exception which the operation failed with.
+	 */
+	void recordError(Operation operation, Exception error);
+
+	/**
+	 * Records the number of payload bytes stored in Amazon S3, as stored,
+	 * that is after compression.
+	 */
+	void recordBytesOffloaded(long bytes);
+
+	/**
+	 * Records the number of payload bytes read from Amazon S3, as stored,
+	 * that is before decompression.
+	 */
+	void recordBytesFetched(long bytes);
+
+	/**
+	 * Records a message which is sent to a queue.
+	 *
+	 * @param offloaded
+	 *            true if the payload of the message is stored in Amazon S3.
+	 */
+	void recordMessageSent(String queueUrl, boolean offloaded);
+}
@@ -13,36 +13,27 @@
  * permissions and limitations under the License.
  */
 
-package com.amazon.sqs.javamessaging;
 
-import java.io.OutputStream;
+package com.amazon.sqs.javamessaging;
 
 /**
- * This class is used for checking the size of a string without copying the
- * whole string into memory and converting it to bytes array. Compared to
- * String.getBytes().length, it is more efficient and reliable for large
- * strings.
+ * A metrics collector which discards all measurements. This is the collector
+ * used unless another one is configured.
  */
-class CountingOutputStream extends OutputStream {
-	private long totalSize;
+public class NoOpMetricsCollector implements MetricsCollector {
 
-	@Override
-	public void write(int b) {
-		++totalSize;
+	public void recordLatency(Operation operation, long latencyNanos) {
 	}
 
-	@Override
-	public void write(byte[] b) {
-		totalSize += b.length;
+	public void recordError(Operation operation, Exception error) {
 	}
 
-	@Override
-	public void write(byte[] b, int offset, int len) {
+	public void recordBytesOffloaded(long bytes) {
+	}
 
-		totalSize += len;
+	public void recordBytesFetched(long bytes) {
 	}
 
-	public long getTotalSize() {
-		return totalSize;
+	public void recordMessageSent(String queueUrl, boolean offloaded) {
 	}
 }
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of message payloads stored in Amazon S3, keyed by bucket name and
+ * object key. Payloads which are sent are added to the cache, received
+ * payloads are read from it, and deleted payloads are removed from it, so a
+ * redelivered message, or a message consumed in the JVM which sent it, does
+ * not download its payload again.
+ *
+ * <p>
+ * The cache has a heap tier and an optional local disk tier, each bounded by
+ * the number of bytes it holds. Payloads are evicted from the heap tier in
+ * least-recently-used order and moved to the disk tier, where they are
+ * evicted in least-recently-used order as well. A payload which is read from
+ * the disk tier is moved back to the heap tier.
+ * </p>
+ *
+ * <p>
+ * The cache is thread-safe and may be shared by several clients.
+ * </p>
+ */
+public class PayloadCache {
+	private static final Log LOG = LogFactory.getLog(PayloadCache.class);
+
+	private final long heapCapacity;
+	private final File diskDirectory;
+	private final long diskCapacity;
+
+	private final LinkedHashMap<String, byte[]> heapEntries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	private final LinkedHashMap<String, DiskEntry> diskEntries = new LinkedHashMap<String, DiskEntry>(16, 0.75f, true);
+	private long heapSize;
+	private long diskSize;
+	private long nextFileNumber;
+
+	private final AtomicLong heapHitCount = new AtomicLong();
+	private final AtomicLong diskHitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Creates a cache which only holds payloads on the heap.
+	 *
+	 * @param heapCapacity
+	 *            The maximum number of payload bytes held on the heap.
+	 */
+	public PayloadCache(long heapCapacity) {
+		this(heapCapacity, null, 0);
+	}
+
+	/**
+	 * Creates a cache with a heap tier and a local disk tier.
+	 *
+	 * @param heapCapacity
+	 *            The maximum number of payload bytes held on the heap.
+	 * @param diskDirectory
+	 *            The directory to store the files of the disk tier in. It is
+	 *            created if it does not exist.
+	 * @param diskCapacity
+	 *            The maximum number of payload bytes held on disk.
+	 */
+	public PayloadCache(long heapCapacity, File diskDirectory, long diskCapacity) {
+		if (heapCapacity < 0 || diskCapacity < 0) {
+			String errorMessage = "Payload cache capacity cannot be negative.";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		if (diskDirectory != null && !diskDirectory.isDirectory() && !diskDirectory.mkdirs()) {
+			String errorMessage = "Failed to create the payload cache directory " + diskDirectory + ".";
+			LOG.error(errorMessage);
+			throw new AmazonClientException(errorMessage);
+		}
+		this.heapCapacity = heapCapacity;
+		this.diskDirectory = diskDirectory;
+		this.diskCapacity = diskDirectory == null ? 0 : diskCapacity;
+	}
+
+	/**
+	 * Gets a cached payload.
+	 *
+	 * @return The payload, or null if it is not cached.
+	 */
+	public byte[] get(String s3BucketName, String s3Key) {
+		String key = toKey(s3BucketName, s3Key);
+		DiskWork diskWork = new DiskWork();
+		DiskEntry diskEntry;
+		byte[] payload;
+		synchronized (this) {
+			payload = heapEntries.get(key);
+			if (payload != null) {
+				heapHitCount.incrementAndGet();
+				return payload;
+			}
+			diskEntry = diskEntries.get(key);
+			if (diskEntry != null && diskEntry.pendingPayload != null) {
+				// The file is still being written, so the payload is at hand.
+				payload = diskEntry.pendingPayload;
+				removeDiskEntry(key, diskWork);
+				addToHeap(key, payload, diskWork);
+			}
+		}
+		if (payload == null && diskEntry != null) {
+			payload = diskEntry.read();
+			if (payload != null) {
+				synchronized (this) {
+					if (diskEntries.get(key) == diskEntry) {
+						removeDiskEntry(key, diskWork);
+						addToHeap(key, payload, diskWork);
+					}
+				}
+			}
+		}
+		perform(diskWork);
+		if (payload != null) {
+			diskHitCount.incrementAndGet();
+			return payload;
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Adds a payload to the cache. A payload larger than the capacity of both
+	 * tiers is not cached. The array must not be modified afterwards.
+	 */
+	public void put(String s3BucketName, String s3Key, byte[] payload) {
+		String key = toKey(s3BucketName, s3Key);
+		DiskWork diskWork = new DiskWork();
+		synchronized (this) {
+			invalidate(key, diskWork);
+			if (payload.length <= heapCapacity) {
+				addToHeap(key, payload, diskWork);
+			} else if (payload.length <= diskCapacity) {
+				addToDisk(key, payload, diskWork);
+			}
+		}
+		perform(diskWork);
+	}
+
+	/**
+	 * Removes a payload from the cache.
+	 */
+	public void invalidate(String s3BucketName, String s3Key) {
+		String key = toKey(s3BucketName, s3Key);
+		DiskWork diskWork = new DiskWork();
+		synchronized (this) {
+			invalidate(key, diskWork);
+		}
+		perform(diskWork);
+	}
+
+	/**
+	 * Removes all payloads from the cache and deletes the files of the disk
+	 * tier.
+	 */
+	public void invalidateAll() {
+		DiskWork diskWork = new DiskWork();
+		synchronized (this) {
+			heapEntries.clear();
+			heapSize = 0;
+			diskWork.deletes.addAll(diskEntries.values());
+			diskEntries.clear();
+			diskSize = 0;
+		}
+		perform(diskWork);
+	}
+
+	/**
+	 * Gets the number of reads which were served from the heap tier.
+	 */
+	public long getHeapHitCount() {
+		return heapHitCount.get();
+	}
+
+	/**
+	 * Gets the number of reads which were served from the disk tier.
+	 */
+	public long getDiskHitCount() {
+		return diskHitCount.get();
+	}
+
+	/**
+	 * Gets the number of reads which found no cached payload.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Gets the number of payloads which were evicted from the cache
+	 * altogether to make room for others.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Gets the number of payload bytes held on the heap.
+	 */
+	public synchronized long getHeapSize() {
+		return heapSize;
+	}
+
+	/**
+	 * Gets the number of payload bytes held on disk.
+	 */
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	private void invalidate(String key, DiskWork diskWork) {
+		byte[] payload = heapEntries.remove(key);
+		if (payload != null) {
+			heapSize -= payload.length;
+		}
+		removeDiskEntry(key, diskWork);
+	}
+
+	private void addToHeap(String key, byte[] payload, DiskWork diskWork) {
+		heapEntries.put(key, payload);
+		heapSize += payload.length;
+		Iterator<Map.Entry<String, byte[]>> eldest = heapEntries.entrySet().iterator();
+		while (heapSize > heapCapacity) {
+			Map.Entry<String, byte[]> entry = eldest.next();
+			eldest.remove();
+			heapSize -= entry.getValue().length;
+			if (entry.getValue().length <= diskCapacity) {
+				addToDisk(entry.getKey(), entry.getValue(), diskWork);
+			} else {
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Reserves room and a file for a payload on disk. The file is written by
+	 * {@link #perform} once the lock is released.
+	 */
+	private void addToDisk(String key, byte[] payload, DiskWork diskWork) {
+		File file = new File(diskDirectory, "payload-" + (nextFileNumber++) + ".bin");
+		DiskEntry diskEntry = new DiskEntry(key, file, payload.length);
+		diskEntry.pendingPayload = payload;
+		diskEntries.put(key, diskEntry);
+		diskSize += payload.length;
+		diskWork.writes.add(diskEntry);
+		Iterator<Map.Entry<String, DiskEntry>> eldest = diskEntries.entrySet().iterator();
+		while (diskSize > diskCapacity) {
+			Map.Entry<String, DiskEntry> entry = eldest.next();
+			eldest.remove();
+			diskSize -= entry.getValue().size;
+			diskWork.deletes.add(entry.getValue());
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private void removeDiskEntry(String key, DiskWork diskWork) {
+		DiskEntry diskEntry = diskEntries.remove(key);
+		if (diskEntry != null) {
+			diskSize -= diskEntry.size;
+			diskWork.deletes.add(diskEntry);
+		}
+	}
+
+	/**
+	 * Deletes and writes the files of the disk tier without holding the lock,
+	 * so that readers of the heap tier do not wait for the disk. A file is
+	 * written under a temporary name and renamed, so that a reader never sees
+	 * a partial payload; one whose entry was removed meanwhile is deleted
+	 * again.
+	 */
+	private void perform(DiskWork diskWork) {
+		for (DiskEntry diskEntry : diskWork.deletes) {
+			diskEntry.delete();
+		}
+		for (DiskEntry diskEntry : diskWork.writes) {
+			byte[] payload;
+			synchronized (this) {
+				if (diskEntries.get(diskEntry.key) != diskEntry) {
+					continue;
+				}
+				payload = diskEntry.pendingPayload;
+			}
+			File tempFile = new File(diskEntry.file.getPath() + ".tmp");
+			try {
+				Files.write(tempFile.toPath(), payload);
+				Files.move(tempFile.toPath(), diskEntry.file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				LOG.warn("Failed to write a payload to the cache directory " + diskDirectory + ".", e);
+				tempFile.delete();
+				synchronized (this) {
+					if (diskEntries.get(diskEntry.key) == diskEntry) {
+						diskEntries.remove(diskEntry.key);
+						diskSize -= diskEntry.size;
+					}
+				}
+				continue;
+			}
+			synchronized (this) {
+				if (diskEntries.get(diskEntry.key) == diskEntry) {
+					diskEntry.pendingPayload = null;
+					continue;
+				}
+			}
+			diskEntry.delete();
+		}
+	}
+
+	private static String toKey(String s3BucketName, String s3Key) {
+		return s3BucketName + "/" + s3Key;
+	}
+
+	/**
+	 * The files of the disk tier to delete and to write once the lock is
+	 * released.
+	 */
+	private static class DiskWork {
+		final List<DiskEntry> deletes = new ArrayList<DiskEntry>();
+		final List<DiskEntry> writes = new ArrayList<DiskEntry>();
+	}
+
+	private static class DiskEntry {
+		final String key;
+		final File file;
+		final long size;
+		// The payload until its file is written; guarded by the cache.
+		byte[] pendingPayload;
+
+		DiskEntry(String key, File file, long size) {
+			this.key = key;
+			this.file = file;
+			this.size = size;
+		}
+
+		/**
+		 * @return The payload, or null if the file has been evicted or
+		 *         failed to be written meanwhile.
+		 */
+		byte[] read() {
+			try {
+				return Files.readAllBytes(file.toPath());
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		void delete() {
+			if (!file.delete() && file.exists()) {
+				LOG.warn("Failed to delete the payload cache file " + file + ".");
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A compression codec for message payloads. The name of the codec is sent
+ * with each message whose payload it encoded, so consumers must be configured
+ * with a codec of the same name, or use one of the codecs in
+ * {@link PayloadCodecs}, to read the message. Implementations must be
+ * thread-safe.
+ */
+public interface PayloadCodec {
+
+	/**
+	 * Gets the name which identifies the codec in messages.
+	 *
+	 * @return The name of the codec.
+	 */
+	String getName();
+
+	/**
+	 * Compresses a payload.
+	 *
+	 * @param payload
+	 *            The bytes to compress.
+	 * @return The compressed bytes.
+	 */
+	byte[] encode(byte[] payload) throws IOException;
+
+	/**
+	 * Wraps a stream of compressed bytes into a stream of the original bytes.
+	 *
+	 * @param encoded
+	 *            The stream of compressed bytes.
+	 * @return The stream of decompressed bytes. Closing it closes the
+	 *         wrapped stream.
+	 */
+	InputStream decode(InputStream encoded) throws IOException;
+}
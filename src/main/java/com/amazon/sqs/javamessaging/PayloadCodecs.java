@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The payload codecs which are built into the client. They are based on the
+ * compression support of the JDK and need no further libraries.
+ */
+public final class PayloadCodecs {
+
+	/**
+	 * GZIP with the default compression level.
+	 */
+	public static final PayloadCodec GZIP = new PayloadCodec() {
+		public String getName() {
+			return "gzip";
+		}
+
+		public byte[] encode(byte[] payload) throws IOException {
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream(payload.length / 4 + 64);
+			GZIPOutputStream gzip = new GZIPOutputStream(encoded);
+			gzip.write(payload);
+			gzip.close();
+			return encoded.toByteArray();
+		}
+
+		public InputStream decode(InputStream encoded) throws IOException {
+			return new GZIPInputStream(encoded);
+		}
+	};
+
+	/**
+	 * Deflate (zlib format) with the default compression level.
+	 */
+	public static final PayloadCodec DEFLATE = new DeflateCodec("deflate", Deflater.DEFAULT_COMPRESSION);
+
+	/**
+	 * Deflate (zlib format) with the fastest compression level. It compresses
+	 * several times faster than {@link #DEFLATE} at a somewhat lower ratio,
+	 * and is decoded the same way.
+	 */
+	public static final PayloadCodec FAST_DEFLATE = new DeflateCodec("deflate-fast", Deflater.BEST_SPEED);
+
+	private static final PayloadCodec[] BUILT_IN_CODECS = { GZIP, DEFLATE, FAST_DEFLATE };
+
+	private PayloadCodecs() {
+	}
+
+	/**
+	 * Looks up a codec by the name it is sent with.
+	 *
+	 * @param name
+	 *            The name of the codec.
+	 * @param configuredCodec
+	 *            The codec configured for the client, which is used if its
+	 *            name matches. May be null.
+	 * @return The codec, or null if there is no codec with the name.
+	 */
+	static PayloadCodec forName(String name, PayloadCodec configuredCodec) {
+		if (configuredCodec != null && configuredCodec.getName().equals(name)) {
+			return configuredCodec;
+		}
+		for (PayloadCodec codec : BUILT_IN_CODECS) {
+			if (codec.getName().equals(name)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	private static class DeflateCodec implements PayloadCodec {
+		private final String name;
+		private final int level;
+
+		DeflateCodec(String name, int level) {
+			this.name = name;
+			this.level = level;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public byte[] encode(byte[] payload) throws IOException {
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream(payload.length / 4 + 64);
+			Deflater deflater = new Deflater(level);
+			try {
+				DeflaterOutputStream deflate = new DeflaterOutputStream(encoded, deflater);
+				deflate.write(payload);
+				deflate.close();
+			} finally {
+				deflater.end();
+			}
+			return encoded.toByteArray();
+		}
+
+		public InputStream decode(InputStream encoded) throws IOException {
+			return new InflaterInputStream(encoded);
+		}
+	}
+}
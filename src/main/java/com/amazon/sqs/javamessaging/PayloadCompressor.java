@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * This class compresses message payloads with the configured codec, unless
+ * they do not compress well enough to be worth it. Payloads larger than the
+ * sample size are judged by compressing a sample of their first bytes, so
+ * incompressible payloads, such as already compressed or encrypted data, are
+ * skipped without compressing them in full.
+ */
+class PayloadCompressor {
+	private static final Log LOG = LogFactory.getLog(PayloadCompressor.class);
+	static final int SAMPLE_SIZE = 64 * 1024;
+	// The initial buffer size when the decompressed length is not known.
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final PayloadCodec codec;
+	private final double maxCompressionRatio;
+
+	PayloadCompressor(PayloadCodec codec, double maxCompressionRatio) {
+		this.codec = codec;
+		this.maxCompressionRatio = maxCompressionRatio;
+	}
+
+	/**
+	 * Compresses a payload.
+	 *
+	 * @return The compressed payload, or null if the payload is left
+	 *         uncompressed.
+	 */
+	byte[] compress(byte[] payload) {
+		try {
+			if (payload.length > SAMPLE_SIZE) {
+				byte[] sample = codec.encode(Arrays.copyOf(payload, SAMPLE_SIZE));
+				if (sample.length > SAMPLE_SIZE * maxCompressionRatio) {
+					return null;
+				}
+			}
+			byte[] compressed = codec.encode(payload);
+			return compressed.length > payload.length * maxCompressionRatio ? null : compressed;
+		} catch (IOException e) {
+			String errorMessage = "Failed to compress the message payload with codec " + codec.getName()
+					+ ". SQS message was not sent.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+	}
+
+	/**
+	 * Decompresses a payload which was compressed with a codec.
+	 *
+	 * @param expectedLength
+	 *            The length of the decompressed payload, or -1 if it is not
+	 *            known.
+	 * @throws IOException
+	 *             If the payload cannot be decoded, or does not have the
+	 *             expected length.
+	 */
+	static byte[] decompress(PayloadCodec codec, byte[] payload, long expectedLength) throws IOException {
+		if (expectedLength > MAX_ARRAY_LENGTH) {
+			throw new IOException("The decompressed payload of " + expectedLength
+					+ " bytes is larger than the maximum array size.");
+		}
+		InputStream decoded = codec.decode(new ByteArrayInputStream(payload));
+		try {
+			if (expectedLength >= 0) {
+				byte[] decompressed = new byte[(int) expectedLength];
+				int length = 0;
+				while (length < decompressed.length) {
+					int read = decoded.read(decompressed, length, decompressed.length - length);
+					if (read < 0) {
+						break;
+					}
+					length += read;
+				}
+				if (length < decompressed.length || decoded.read() >= 0) {
+					throw new IOException("The decompressed payload does not have the expected length of "
+							+ expectedLength + " bytes.");
+				}
+				return decompressed;
+			}
+			ByteArrayOutputStream decompressed = new ByteArrayOutputStream((int) Math.min(payload.length * 4L,
+					DEFAULT_BUFFER_SIZE));
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = decoded.read(buffer)) >= 0) {
+				decompressed.write(buffer, 0, read);
+			}
+			return decompressed.toByteArray();
+		} finally {
+			decoded.close();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * Counts the messages which refer to each content-addressed payload in Amazon
+ * S3. When a reference store is configured, payloads are stored under a key
+ * derived from their content, so identical payloads share one S3 object, and
+ * the object is only deleted once the last message referring to it is
+ * deleted.
+ *
+ * <p>
+ * All clients which send or delete messages with payloads in the same bucket
+ * must share the same reference store, otherwise an object may be deleted
+ * while messages still refer to it. Implementations must be thread-safe.
+ * </p>
+ *
+ * <p>
+ * Removing the last reference and deleting the object is not atomic, so a
+ * payload whose last reference has been removed is marked as being deleted
+ * until the deletion is completed or cancelled. While it is being deleted, no
+ * reference can be added to it, and a sender stores its payload under a key
+ * of its own instead of sharing an object which is about to disappear.
+ * </p>
+ */
+public interface PayloadReferenceStore {
+
+	/**
+	 * Adds a reference to a payload.
+	 *
+	 * @return The number of references to the payload, including the new one,
+	 *         or a negative number if the payload is being deleted and no
+	 *         reference was added.
+	 */
+	long addReference(String s3BucketName, String s3Key);
+
+	/**
+	 * Removes a reference to a payload. Once the payload has no references
+	 * left, it is marked as being deleted until {@link #completeDeletion} or
+	 * {@link #cancelDeletion} is called.
+	 *
+	 * @return The number of references left, or a negative number if the
+	 *         store has no reference to the payload.
+	 */
+	long removeReference(String s3BucketName, String s3Key);
+
+	/**
+	 * Forgets a payload which was being deleted, once its object has been
+	 * deleted. Has no effect on a payload which is not being deleted.
+	 */
+	void completeDeletion(String s3BucketName, String s3Key);
+
+	/**
+	 * Restores the references to a payload which was being deleted, because
+	 * its object could not be deleted and the messages which referred to it
+	 * are still in the queue. Has no effect on a payload which is not being
+	 * deleted.
+	 *
+	 * @param references
+	 *            The number of references to restore.
+	 */
+	void cancelDeletion(String s3BucketName, String s3Key, long references);
+}
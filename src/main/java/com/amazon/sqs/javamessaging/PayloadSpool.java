@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.sqs.model.Message;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class writes received message payloads to temporary files, so that
+ * large payloads are read through a file mapping instead of from the heap.
+ * The bytes of all spool files together are limited by a quota. Spool files
+ * are registered by the original receipt handle of their message and deleted
+ * when the message is deleted or closed.
+ */
+class PayloadSpool {
+	private static final Log LOG = LogFactory.getLog(PayloadSpool.class);
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final File directory;
+	private final long quota;
+	private final AtomicLong spooledBytes = new AtomicLong();
+	private final ConcurrentHashMap<String, SpooledMessage> spooledMessages;
+
+	PayloadSpool(File directory, long quota) {
+		this.directory = directory != null ? directory : new File(System.getProperty("java.io.tmpdir"));
+		this.quota = quota;
+		this.spooledMessages = new ConcurrentHashMap<String, SpooledMessage>();
+	}
+
+	/**
+	 * Writes a payload to a new spool file. The payload stream is not closed.
+	 *
+	 * @return The message with its spooled payload, or null if the payload
+	 *         does not fit into the remaining quota.
+	 * @throws IOException
+	 *             If the payload cannot be read or written.
+	 */
+	SpooledMessage spool(Message message, InputStream payload) throws IOException {
+		Files.createDirectories(directory.toPath());
+		Path file = Files.createTempFile(directory.toPath(), "sqs-payload-", ".spool");
+		long size = 0;
+		boolean spooled = false;
+		try {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			try {
+				byte[] buffer = new byte[COPY_BUFFER_SIZE];
+				int read;
+				while ((read = payload.read(buffer)) >= 0) {
+					if (!reserve(read)) {
+						LOG.warn("The payload spool quota of " + quota + " bytes is used up, the payload of message "
+								+ message.getMessageId() + " was not spooled.");
+						return null;
+					}
+					size += read;
+					ByteBuffer content = ByteBuffer.wrap(buffer, 0, read);
+					while (content.hasRemaining()) {
+						channel.write(content);
+					}
+				}
+			} finally {
+				channel.close();
+			}
+			SpooledMessage spooledMessage = new SpooledMessage(message, file, size, this);
+			spooledMessages.put(ReceiptHandleCodec.getOriginalReceiptHandle(message.getReceiptHandle()),
+					spooledMessage);
+			spooled = true;
+			return spooledMessage;
+		} finally {
+			if (!spooled) {
+				spooledBytes.addAndGet(-size);
+				deleteFile(file);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the spool file of a message, if it has one.
+	 */
+	void release(String receiptHandle) {
+		if (receiptHandle == null) {
+			return;
+		}
+		SpooledMessage spooledMessage = spooledMessages.get(ReceiptHandleCodec.getOriginalReceiptHandle(
+				receiptHandle));
+		if (spooledMessage != null) {
+			spooledMessage.close();
+		}
+	}
+
+	/**
+	 * Deletes the spool files of all messages.
+	 */
+	void shutdown() {
+		for (SpooledMessage spooledMessage : new ArrayList<SpooledMessage>(spooledMessages.values())) {
+			spooledMessage.close();
+		}
+	}
+
+	/**
+	 * Gets the number of bytes in spool files.
+	 */
+	long getSpooledBytes() {
+		return spooledBytes.get();
+	}
+
+	/**
+	 * Called by a spooled message when it is closed.
+	 */
+	void closed(SpooledMessage spooledMessage, Path file, long size) {
+		spooledMessages.remove(ReceiptHandleCodec.getOriginalReceiptHandle(spooledMessage.getMessage()
+				.getReceiptHandle()), spooledMessage);
+		spooledBytes.addAndGet(-size);
+		deleteFile(file);
+	}
+
+	private boolean reserve(long bytes) {
+		while (true) {
+			long current = spooledBytes.get();
+			if (current + bytes > quota) {
+				return false;
+			}
+			if (spooledBytes.compareAndSet(current, current + bytes)) {
+				return true;
+			}
+		}
+	}
+
+	private static void deleteFile(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// A file which is still mapped cannot be deleted on some platforms.
+			LOG.warn("Failed to delete the payload spool file " + file + ", it is deleted when the JVM exits.", e);
+			file.toFile().deleteOnExit();
+		}
+	}
+}
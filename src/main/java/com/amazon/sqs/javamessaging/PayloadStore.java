@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Stores the payloads of large-payload messages. Payloads are addressed by the
+ * bucket name and key which the message pointer carries; stores other than
+ * Amazon S3 treat the bucket name as a namespace.
+ *
+ * <p>
+ * Failures of the store are reported as {@link com.amazonaws.AmazonClientException};
+ * a payload which does not exist is reported as an
+ * {@link com.amazonaws.AmazonServiceException} with the error code
+ * <code>NoSuchKey</code> and status code 404. Implementations must be
+ * thread-safe.
+ * </p>
+ */
+public interface PayloadStore {
+
+	/**
+	 * Stores a payload which is already in memory.
+	 */
+	void putPayload(String s3BucketName, String s3Key, byte[] content);
+
+	/**
+	 * Stores the remaining content of a stream. The stream is not closed.
+	 *
+	 * @param contentLength
+	 *            The number of bytes to store, or -1 to read the stream to the
+	 *            end.
+	 * @return The number of bytes stored.
+	 * @throws IOException
+	 *             If the content cannot be read from the stream.
+	 */
+	long putPayload(String s3BucketName, String s3Key, InputStream content, long contentLength)
+			throws IOException;
+
+	/**
+	 * Opens a payload for reading. The caller must close the stream.
+	 */
+	InputStream getPayload(String s3BucketName, String s3Key);
+
+	/**
+	 * Opens a range of a payload for reading. The caller must close the
+	 * stream.
+	 *
+	 * @param start
+	 *            The offset of the first byte of the range.
+	 * @param length
+	 *            The number of bytes in the range.
+	 */
+	InputStream getPayloadRange(String s3BucketName, String s3Key, long start, long length);
+
+	/**
+	 * Checks whether a payload exists.
+	 */
+	boolean doesPayloadExist(String s3BucketName, String s3Key);
+
+	/**
+	 * Deletes a payload. Deleting a payload which does not exist succeeds.
+	 */
+	void deletePayload(String s3BucketName, String s3Key);
+
+	/**
+	 * Deletes payloads from one bucket.
+	 *
+	 * @return The error code for each key which could not be deleted.
+	 * @throws com.amazonaws.AmazonClientException
+	 *             If none of the payloads could be deleted because the request
+	 *             failed as a whole.
+	 */
+	Map<String, String> deletePayloads(String s3BucketName, Collection<String> s3Keys);
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This class runs a group of payload transfers, such as the S3 uploads of one
+ * batch, on an optional executor. A task which the executor has not started
+ * by the time the calling thread waits for it is run on the calling thread
+ * instead, so a busy or shared executor can delay the work but never
+ * deadlock it.
+ */
+class PayloadTasks {
+
+	private PayloadTasks() {
+	}
+
+	/**
+	 * Runs all tasks and waits for them to complete.
+	 *
+	 * @param executor
+	 *            Executor to run the tasks on, or null to run them one after
+	 *            another on the calling thread.
+	 * @param tasks
+	 *            The tasks to run.
+	 * @return One completed future per task, in the order of the tasks.
+	 */
+	static <T> List<Future<T>> runAll(Executor executor, List<? extends Callable<T>> tasks) {
+		List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+		for (Callable<T> task : tasks) {
+			futures.add(new FutureTask<T>(task));
+		}
+
+		// The calling thread takes the first task itself.
+		for (int i = 1; i < futures.size(); ++i) {
+			execute(executor, futures.get(i));
+		}
+
+		for (FutureTask<T> future : futures) {
+			// No-op if the task has already been started by the executor.
+			future.run();
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// Reported through the returned future.
+			} catch (InterruptedException e) {
+				for (FutureTask<T> pending : futures) {
+					pending.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				throw new AmazonClientException("Interrupted while waiting for message payload transfers.", e);
+			}
+		}
+		return new ArrayList<Future<T>>(futures);
+	}
+
+	/**
+	 * Hands a task to the executor. A task which the executor rejects, or any
+	 * task if there is no executor, is left to be run by {@link #await}.
+	 */
+	static void execute(Executor executor, FutureTask<?> task) {
+		if (executor == null) {
+			return;
+		}
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			// Run on the calling thread when awaited.
+		}
+	}
+
+	/**
+	 * Waits for a task handed to {@link #execute}, running it on the calling
+	 * thread if the executor has not started it yet.
+	 */
+	static <T> T await(FutureTask<T> task) {
+		// No-op if the task has already been started by the executor.
+		task.run();
+		return getResult(task);
+	}
+
+	/**
+	 * Gets the result of a completed future, unwrapping the exception which
+	 * caused it to fail.
+	 */
+	static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while waiting for a message payload transfer.", e);
+		}
+	}
+
+	static RuntimeException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new AmazonClientException(cause);
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A bounded buffer of received messages of one queue, kept full by background
+ * pollers. The pollers receive messages through the extended client, so the
+ * payloads of buffered messages have already been read from Amazon S3 when a
+ * caller takes them.
+ *
+ * <p>
+ * The pollers receive with an explicit visibility timeout, so the buffer
+ * knows when each message becomes visible again. A message is only handed out
+ * while some of its visibility timeout remains; messages which stayed in the
+ * buffer for too long are dropped, and Amazon SQS delivers them again. When
+ * the buffer is shut down, the messages still in it are made visible again
+ * right away.
+ * </p>
+ */
+class PrefetchingReceiveBuffer {
+	private static final Log LOG = LogFactory.getLog(PrefetchingReceiveBuffer.class);
+	private static final int MAX_MESSAGES_PER_RECEIVE = 10;
+	private static final int LONG_POLL_WAIT_SECONDS = 20;
+	private static final long MAX_VISIBILITY_MARGIN_MILLIS = 5000;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+
+	private final AmazonSQSExtendedClient client;
+	private final String queueUrl;
+	private final int depth;
+	private final int visibilityTimeout;
+	private final long visibilityMarginMillis;
+	private final List<Thread> pollers = new ArrayList<Thread>();
+
+	private final LinkedList<BufferedMessage> messages = new LinkedList<BufferedMessage>();
+	private int reserved;
+	private boolean shutdown;
+
+	/**
+	 * @param depth
+	 *            The maximum number of messages buffered or being received.
+	 * @param visibilityTimeout
+	 *            The visibility timeout in seconds which the pollers receive
+	 *            messages with.
+	 */
+	PrefetchingReceiveBuffer(AmazonSQSExtendedClient client, String queueUrl, int depth, int pollerCount,
+			int visibilityTimeout) {
+		this.client = client;
+		this.queueUrl = queueUrl;
+		this.depth = depth;
+		this.visibilityTimeout = visibilityTimeout;
+		// Leave the caller some of the visibility timeout to process the
+		// message in.
+		this.visibilityMarginMillis = Math.min(MAX_VISIBILITY_MARGIN_MILLIS, visibilityTimeout * 500L);
+		for (int i = 0; i < pollerCount; i++) {
+			Thread poller = new Thread(new Runnable() {
+				public void run() {
+					poll();
+				}
+			}, "sqs-extended-prefetch-" + i + "-" + queueUrl);
+			poller.setDaemon(true);
+			pollers.add(poller);
+		}
+	}
+
+	void start() {
+		for (Thread poller : pollers) {
+			poller.start();
+		}
+	}
+
+	/**
+	 * Takes messages from the buffer, waiting for the pollers if it is
+	 * empty.
+	 *
+	 * @param maxNumberOfMessages
+	 *            The maximum number of messages to take.
+	 * @param waitTimeSeconds
+	 *            How long to wait for a message if the buffer is empty.
+	 * @return The messages, or an empty list if none arrived in time.
+	 */
+	synchronized List<Message> receive(int maxNumberOfMessages, int waitTimeSeconds) throws InterruptedException {
+		long waitUntil = System.currentTimeMillis() + waitTimeSeconds * 1000L;
+		while (true) {
+			long now = System.currentTimeMillis();
+			dropExpiredMessages(now);
+			if (!messages.isEmpty() || shutdown || now >= waitUntil) {
+				break;
+			}
+			wait(waitUntil - now);
+		}
+
+		List<Message> received = new ArrayList<Message>();
+		while (received.size() < maxNumberOfMessages && !messages.isEmpty()) {
+			received.add(messages.removeFirst().message);
+		}
+		if (!received.isEmpty()) {
+			notifyAll();
+		}
+		return received;
+	}
+
+	/**
+	 * Stops the pollers and makes the buffered messages visible again.
+	 */
+	void shutdown() {
+		List<Message> released;
+		synchronized (this) {
+			shutdown = true;
+			released = takeAll();
+			notifyAll();
+		}
+		for (Thread poller : pollers) {
+			poller.interrupt();
+		}
+		client.releaseMessages(queueUrl, released);
+	}
+
+	private void poll() {
+		while (true) {
+			int count;
+			synchronized (this) {
+				while (!shutdown && messages.size() + reserved >= depth) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// Checked against the shutdown flag.
+					}
+				}
+				if (shutdown) {
+					return;
+				}
+				count = Math.min(MAX_MESSAGES_PER_RECEIVE, depth - messages.size() - reserved);
+				reserved += count;
+			}
+
+			long receiveStart = System.currentTimeMillis();
+			List<Message> received = null;
+			try {
+				ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
+						.withMaxNumberOfMessages(count).withWaitTimeSeconds(LONG_POLL_WAIT_SECONDS)
+						.withVisibilityTimeout(visibilityTimeout).withAttributeNames("All")
+						.withMessageAttributeNames("All");
+				received = client.receiveMessageUnbuffered(receiveMessageRequest).getMessages();
+			} catch (RuntimeException e) {
+				LOG.warn("Failed to prefetch messages from " + queueUrl + ", retrying.", e);
+			}
+
+			List<Message> released = null;
+			synchronized (this) {
+				reserved -= count;
+				if (received != null) {
+					long deadline = receiveStart + visibilityTimeout * 1000L - visibilityMarginMillis;
+					for (Message message : received) {
+						messages.add(new BufferedMessage(message, deadline));
+					}
+				}
+				if (shutdown) {
+					released = takeAll();
+				}
+				notifyAll();
+			}
+			if (released != null) {
+				client.releaseMessages(queueUrl, released);
+				return;
+			}
+			if (received == null) {
+				try {
+					Thread.sleep(RETRY_DELAY_MILLIS);
+				} catch (InterruptedException e) {
+					// Checked against the shutdown flag.
+				}
+			}
+		}
+	}
+
+	private void dropExpiredMessages(long now) {
+		// Several pollers may add messages out of deadline order.
+		int dropped = 0;
+		Iterator<BufferedMessage> bufferedMessages = messages.iterator();
+		while (bufferedMessages.hasNext()) {
+			if (bufferedMessages.next().deadline <= now) {
+				bufferedMessages.remove();
+				++dropped;
+			}
+		}
+		if (dropped > 0) {
+			LOG.warn(dropped + " prefetched messages from " + queueUrl
+					+ " were not taken before their visibility timeout ran out and will be delivered again.");
+		}
+	}
+
+	private List<Message> takeAll() {
+		List<Message> taken = new ArrayList<Message>(messages.size());
+		for (BufferedMessage bufferedMessage : messages) {
+			taken.add(bufferedMessage.message);
+		}
+		messages.clear();
+		return taken;
+	}
+
+	private static class BufferedMessage {
+		final Message message;
+		final long deadline;
+
+		BufferedMessage(Message message, long deadline) {
+			this.message = message;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * This class downloads a message payload of known size from a payload store
+ * with parallel byte-range requests. Each range is read straight into its
+ * slice of the result array, so the payload is reassembled in order without copying.
+ */
+class RangedPayloadDownloader {
+
+	private final PayloadStore payloadStore;
+	private final int rangeSize;
+	private final Executor executor;
+
+	RangedPayloadDownloader(PayloadStore payloadStore, int rangeSize, Executor executor) {
+		this.payloadStore = payloadStore;
+		this.rangeSize = rangeSize;
+		this.executor = executor;
+	}
+
+	/**
+	 * Downloads the whole payload.
+	 *
+	 * @param size
+	 *            The size of the payload in bytes, as recorded when the payload
+	 *            was stored.
+	 * @return The content of the payload.
+	 */
+	byte[] download(final String s3BucketName, final String s3Key, int size) {
+		final byte[] content = new byte[size];
+		List<Callable<Void>> ranges = new ArrayList<Callable<Void>>();
+		for (int offset = 0; offset < size; offset += rangeSize) {
+			final int start = offset;
+			final int length = Math.min(rangeSize, size - offset);
+			ranges.add(new Callable<Void>() {
+				public Void call() throws IOException {
+					downloadRange(s3BucketName, s3Key, content, start, length);
+					return null;
+				}
+			});
+		}
+
+		for (Future<Void> range : PayloadTasks.runAll(executor, ranges)) {
+			PayloadTasks.getResult(range);
+		}
+		return content;
+	}
+
+	private void downloadRange(String s3BucketName, String s3Key, byte[] content, int start, int length)
+			throws IOException {
+		InputStream rangeContent = payloadStore.getPayloadRange(s3BucketName, s3Key, start, length);
+		try {
+			int read = 0;
+			while (read < length) {
+				int n = rangeContent.read(content, start + read, length - read);
+				if (n < 0) {
+					throw new AmazonClientException("The message payload is shorter than its recorded size, "
+							+ "Bucket name: " + s3BucketName + ", Object key: " + s3Key + ".");
+				}
+				read += n;
+			}
+		} finally {
+			rangeContent.close();
+		}
+	}
+}
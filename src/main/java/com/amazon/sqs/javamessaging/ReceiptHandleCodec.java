@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * This class embeds the location of a message payload in Amazon S3 in the
+ * receipt handle of a received message, and reads the location and the
+ * original receipt handle back in a single pass when the message is deleted
+ * or its visibility is changed.
+ *
+ * <p>
+ * Two formats are supported. The legacy format (version 1) encloses the
+ * bucket name and the key in markers, as written by earlier versions of this
+ * library:
+ * </p>
+ *
+ * <pre>
+ * -..s3BucketName..-bucket-..s3BucketName..--..s3Key..-key-..s3Key..-receipthandle
+ * </pre>
+ *
+ * <p>
+ * The compact format (version 2) carries its version and prefixes the bucket
+ * name and the key with their lengths, so decoding never searches for a
+ * marker and keys may contain any character:
+ * </p>
+ *
+ * <pre>
+ * -..s3rh..-2:6:bucket3:keyreceipthandle
+ * </pre>
+ *
+ * <p>
+ * Both formats are always read. A receipt handle in neither format, or in a
+ * later version, is treated as an original receipt handle and passed to
+ * Amazon SQS unchanged.
+ * </p>
+ */
+class ReceiptHandleCodec {
+	static final int LEGACY_FORMAT_VERSION = 1;
+	static final int COMPACT_FORMAT_VERSION = 2;
+
+	private static final String BUCKET_NAME_MARKER = SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER;
+	private static final String KEY_MARKER = SQSExtendedClientConstants.S3_KEY_MARKER;
+	private static final String COMPACT_MARKER = SQSExtendedClientConstants.S3_RECEIPT_HANDLE_MARKER;
+
+	private ReceiptHandleCodec() {
+	}
+
+	/**
+	 * Embeds the location of a message payload in a receipt handle.
+	 *
+	 * @param compact
+	 *            Whether to write the compact format instead of the legacy
+	 *            format.
+	 */
+	static String encode(String receiptHandle, String s3BucketName, String s3Key, boolean compact) {
+		if (compact) {
+			String bucketLength = Integer.toString(s3BucketName.length());
+			String keyLength = Integer.toString(s3Key.length());
+			return new StringBuilder(COMPACT_MARKER.length() + bucketLength.length() + keyLength.length()
+					+ s3BucketName.length() + s3Key.length() + receiptHandle.length() + 4).append(COMPACT_MARKER)
+					.append(COMPACT_FORMAT_VERSION).append(':').append(bucketLength).append(':')
+					.append(s3BucketName).append(keyLength).append(':').append(s3Key).append(receiptHandle)
+					.toString();
+		}
+		return new StringBuilder(2 * BUCKET_NAME_MARKER.length() + 2 * KEY_MARKER.length() + s3BucketName.length()
+				+ s3Key.length() + receiptHandle.length()).append(BUCKET_NAME_MARKER).append(s3BucketName)
+				.append(BUCKET_NAME_MARKER).append(KEY_MARKER).append(s3Key).append(KEY_MARKER)
+				.append(receiptHandle).toString();
+	}
+
+	/**
+	 * Reads the payload location and the original receipt handle from a
+	 * receipt handle in either format.
+	 *
+	 * @return The decoded receipt handle, or null if the receipt handle does
+	 *         not carry the location of a payload.
+	 */
+	static S3ReceiptHandle decode(String receiptHandle) {
+		if (receiptHandle == null) {
+			return null;
+		}
+		if (receiptHandle.startsWith(COMPACT_MARKER)) {
+			return decodeCompact(receiptHandle);
+		}
+		if (receiptHandle.startsWith(BUCKET_NAME_MARKER)) {
+			return decodeLegacy(receiptHandle);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the receipt handle which Amazon SQS issued for a message.
+	 *
+	 * @return The original receipt handle, or the given receipt handle if it
+	 *         does not carry the location of a payload.
+	 */
+	static String getOriginalReceiptHandle(String receiptHandle) {
+		S3ReceiptHandle s3ReceiptHandle = decode(receiptHandle);
+		return s3ReceiptHandle == null ? receiptHandle : s3ReceiptHandle.getOriginalReceiptHandle();
+	}
+
+	private static S3ReceiptHandle decodeLegacy(String receiptHandle) {
+		int bucketStart = BUCKET_NAME_MARKER.length();
+		int bucketEnd = receiptHandle.indexOf(BUCKET_NAME_MARKER, bucketStart);
+		if (bucketEnd < 0) {
+			return null;
+		}
+		int keyStart = bucketEnd + BUCKET_NAME_MARKER.length();
+		if (!receiptHandle.startsWith(KEY_MARKER, keyStart)) {
+			return null;
+		}
+		keyStart += KEY_MARKER.length();
+		int keyEnd = receiptHandle.indexOf(KEY_MARKER, keyStart);
+		if (keyEnd < 0) {
+			return null;
+		}
+		return new S3ReceiptHandle(LEGACY_FORMAT_VERSION, receiptHandle.substring(bucketStart, bucketEnd),
+				receiptHandle.substring(keyStart, keyEnd), receiptHandle.substring(keyEnd + KEY_MARKER.length()));
+	}
+
+	private static S3ReceiptHandle decodeCompact(String receiptHandle) {
+		int[] position = { COMPACT_MARKER.length() };
+		int version = readNumber(receiptHandle, position);
+		if (version != COMPACT_FORMAT_VERSION) {
+			return null;
+		}
+		int bucketLength = readNumber(receiptHandle, position);
+		if (bucketLength < 0 || position[0] + bucketLength > receiptHandle.length()) {
+			return null;
+		}
+		String s3BucketName = receiptHandle.substring(position[0], position[0] + bucketLength);
+		position[0] += bucketLength;
+		int keyLength = readNumber(receiptHandle, position);
+		if (keyLength < 0 || position[0] + keyLength > receiptHandle.length()) {
+			return null;
+		}
+		String s3Key = receiptHandle.substring(position[0], position[0] + keyLength);
+		return new S3ReceiptHandle(COMPACT_FORMAT_VERSION, s3BucketName, s3Key, receiptHandle.substring(position[0]
+				+ keyLength));
+	}
+
+	/**
+	 * Reads a decimal number terminated by a colon and moves the position
+	 * past the colon.
+	 *
+	 * @return The number, or -1 if there is no such number at the position.
+	 */
+	private static int readNumber(String receiptHandle, int[] position) {
+		int value = 0;
+		int digits = 0;
+		for (int i = position[0]; i < receiptHandle.length(); i++) {
+			char c = receiptHandle.charAt(i);
+			if (c == ':' && digits > 0) {
+				position[0] = i + 1;
+				return value;
+			}
+			if (c < '0' || c > '9' || digits == 9) {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+			digits++;
+		}
+		return -1;
+	}
+
+	/**
+	 * A receipt handle which carries the location of a message payload in
+	 * Amazon S3.
+	 */
+	static final class S3ReceiptHandle {
+		private final int version;
+		private final String s3BucketName;
+		private final String s3Key;
+		private final String originalReceiptHandle;
+
+		S3ReceiptHandle(int version, String s3BucketName, String s3Key, String originalReceiptHandle) {
+			this.version = version;
+			this.s3BucketName = s3BucketName;
+			this.s3Key = s3Key;
+			this.originalReceiptHandle = originalReceiptHandle;
+		}
+
+		int getVersion() {
+			return version;
+		}
+
+		String getS3BucketName() {
+			return s3BucketName;
+		}
+
+		String getS3Key() {
+			return s3Key;
+		}
+
+		String getOriginalReceiptHandle() {
+			return originalReceiptHandle;
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class uploads a message payload to Amazon S3 with a multipart upload.
+ * Up to <code>parallelism</code> parts are uploaded at the same time on the
+ * executor, and a part whose upload fails is retried on its own. If the
+ * upload fails anyway, it is aborted so that no parts are left behind in the
+ * bucket.
+ *
+ * <p>
+ * A payload read from a stream of unknown length is buffered one part at a
+ * time, and a payload which fits into a single part is stored with a single
+ * put request.
+ * </p>
+ */
+class S3MultipartUploader {
+	private static final Log LOG = LogFactory.getLog(S3MultipartUploader.class);
+	private static final long RETRY_BASE_DELAY_MILLIS = 100;
+
+	private final AmazonS3 s3;
+	private final int partSize;
+	private final int parallelism;
+	private final int partRetries;
+	private final Executor executor;
+
+	S3MultipartUploader(AmazonS3 s3, int partSize, int parallelism, int partRetries, Executor executor) {
+		this.s3 = s3;
+		this.partSize = partSize;
+		this.parallelism = parallelism;
+		this.partRetries = partRetries;
+		this.executor = executor;
+	}
+
+	S3MultipartUploader(AmazonS3 s3, ExtendedClientConfiguration clientConfiguration) {
+		this(s3, clientConfiguration.getMultipartUploadPartSize(), clientConfiguration
+				.getMultipartUploadParallelism(), clientConfiguration.getMultipartUploadPartRetries(),
+				clientConfiguration.getS3UploadExecutor());
+	}
+
+	/**
+	 * Uploads the remaining content of a stream. The stream is not closed.
+	 *
+	 * @return The number of bytes uploaded.
+	 */
+	long upload(String s3BucketName, String s3Key, final InputStream content) throws IOException {
+		byte[] firstPart = new byte[partSize];
+		int length = readFully(content, firstPart);
+		if (length < partSize) {
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setContentLength(length);
+			s3.putObject(new PutObjectRequest(s3BucketName, s3Key, new ByteArrayInputStream(firstPart, 0, length),
+					metadata));
+			return length;
+		}
+
+		final byte[] firstBuffer = firstPart;
+		return uploadParts(s3BucketName, s3Key, new PartSource() {
+			private boolean first = true;
+
+			@Override
+			boolean next() throws IOException {
+				if (first) {
+					first = false;
+					buffer = firstBuffer;
+					length = firstBuffer.length;
+					return true;
+				}
+				// Every part in flight holds its own buffer.
+				buffer = new byte[partSize];
+				length = readFully(content, buffer);
+				return length > 0;
+			}
+		});
+	}
+
+	/**
+	 * Uploads a payload which is already in memory. The parts are uploaded
+	 * from slices of the array, without copying it.
+	 */
+	void upload(String s3BucketName, String s3Key, final byte[] content) {
+		try {
+			uploadParts(s3BucketName, s3Key, new PartSource() {
+				@Override
+				boolean next() {
+					offset += length;
+					buffer = content;
+					length = Math.min(partSize, content.length - offset);
+					return length > 0;
+				}
+			});
+		} catch (IOException e) {
+			// Not thrown when reading from an array.
+			throw new AmazonClientException(e);
+		}
+	}
+
+	private long uploadParts(String s3BucketName, String s3Key, PartSource source) throws IOException {
+		String uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(s3BucketName, s3Key))
+				.getUploadId();
+		AtomicBoolean aborted = new AtomicBoolean(false);
+		List<FutureTask<PartETag>> parts = new ArrayList<FutureTask<PartETag>>();
+		try {
+			LinkedList<FutureTask<PartETag>> inFlight = new LinkedList<FutureTask<PartETag>>();
+			long totalLength = 0;
+			int partNumber = 1;
+			while (source.next()) {
+				FutureTask<PartETag> part = new FutureTask<PartETag>(new PartUpload(s3BucketName, s3Key, uploadId,
+						partNumber++, source.buffer, source.offset, source.length, aborted));
+				parts.add(part);
+				inFlight.add(part);
+				totalLength += source.length;
+				PayloadTasks.execute(executor, part);
+				if (inFlight.size() >= parallelism) {
+					PayloadTasks.await(inFlight.removeFirst());
+				}
+			}
+
+			List<PartETag> partETags = new ArrayList<PartETag>(parts.size());
+			for (FutureTask<PartETag> part : parts) {
+				partETags.add(PayloadTasks.await(part));
+			}
+			s3.completeMultipartUpload(new CompleteMultipartUploadRequest(s3BucketName, s3Key, uploadId, partETags));
+			return totalLength;
+		} catch (IOException e) {
+			abort(s3BucketName, s3Key, uploadId, aborted, parts);
+			throw e;
+		} catch (RuntimeException e) {
+			abort(s3BucketName, s3Key, uploadId, aborted, parts);
+			throw e;
+		}
+	}
+
+	/**
+	 * Aborts the upload once no part upload is running any more, so that a
+	 * part which completes late is not left behind.
+	 */
+	private void abort(String s3BucketName, String s3Key, String uploadId, AtomicBoolean aborted,
+			List<FutureTask<PartETag>> parts) {
+		aborted.set(true);
+		boolean interrupted = false;
+		for (FutureTask<PartETag> part : parts) {
+			// Parts which have not started yet return right away.
+			part.run();
+			while (!part.isDone()) {
+				try {
+					part.get();
+				} catch (ExecutionException e) {
+					// Already reported or irrelevant once the upload is aborted.
+				} catch (InterruptedException e) {
+					// The part is still waited for; the interrupt is restored
+					// afterwards.
+					interrupted = true;
+				}
+			}
+		}
+		// The Amazon S3 client does not send requests from an interrupted
+		// thread, so the interrupt is only restored after the abort.
+		if (Thread.interrupted()) {
+			interrupted = true;
+		}
+		try {
+			s3.abortMultipartUpload(new AbortMultipartUploadRequest(s3BucketName, s3Key, uploadId));
+		} catch (AmazonClientException e) {
+			LOG.warn("Failed to abort the multipart upload of a message payload, Bucket name: " + s3BucketName
+					+ ", Object key: " + s3Key + ", Upload id: " + uploadId + ".", e);
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static boolean isRetryable(AmazonClientException e) {
+		if (e instanceof AmazonServiceException) {
+			AmazonServiceException serviceException = (AmazonServiceException) e;
+			return serviceException.getErrorType() != ErrorType.Client || serviceException.getStatusCode() == 408
+					|| serviceException.getStatusCode() == 429;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads until the buffer is full or the stream ends.
+	 *
+	 * @return The number of bytes read, which is less than the buffer size
+	 *         only at the end of the stream.
+	 */
+	private static int readFully(InputStream content, byte[] buffer) throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int read = content.read(buffer, length, buffer.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+
+	/**
+	 * Yields the parts of a payload one after another.
+	 */
+	private abstract static class PartSource {
+		byte[] buffer;
+		int offset;
+		int length;
+
+		/**
+		 * Moves to the next part.
+		 *
+		 * @return false if there are no more parts.
+		 */
+		abstract boolean next() throws IOException;
+	}
+
+	private class PartUpload implements Callable<PartETag> {
+		private final String s3BucketName;
+		private final String s3Key;
+		private final String uploadId;
+		private final int partNumber;
+		private final byte[] buffer;
+		private final int offset;
+		private final int length;
+		private final AtomicBoolean aborted;
+
+		PartUpload(String s3BucketName, String s3Key, String uploadId, int partNumber, byte[] buffer, int offset,
+				int length, AtomicBoolean aborted) {
+			this.s3BucketName = s3BucketName;
+			this.s3Key = s3Key;
+			this.uploadId = uploadId;
+			this.partNumber = partNumber;
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+			this.aborted = aborted;
+		}
+
+		public PartETag call() {
+			for (int attempt = 0;; ++attempt) {
+				if (aborted.get()) {
+					return null;
+				}
+				UploadPartRequest uploadPartRequest = new UploadPartRequest().withBucketName(s3BucketName)
+						.withKey(s3Key).withUploadId(uploadId).withPartNumber(partNumber).withPartSize(length)
+						.withInputStream(new ByteArrayInputStream(buffer, offset, length));
+				try {
+					return s3.uploadPart(uploadPartRequest).getPartETag();
+				} catch (AmazonClientException e) {
+					if (attempt >= partRetries || !isRetryable(e)) {
+						throw e;
+					}
+					LOG.warn("Failed to upload part " + partNumber + " of a message payload, retrying. Bucket name: "
+							+ s3BucketName + ", Object key: " + s3Key + ".", e);
+					try {
+						Thread.sleep(RETRY_BASE_DELAY_MILLIS << attempt);
+					} catch (InterruptedException interrupted) {
+						// Fails the part, which aborts the upload.
+						Thread.currentThread().interrupt();
+						throw new AmazonClientException("Interrupted while retrying the upload of part "
+								+ partNumber + " of a message payload.", interrupted);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PayloadStore} which stores payloads as objects in Amazon S3.
+ * Payloads larger than the multipart upload threshold are stored with a
+ * multipart upload, and multi-object deletes are split into requests of up
+ * to 1000 keys.
+ */
+public class S3PayloadStore implements PayloadStore {
+	private static final int MAX_KEYS_PER_DELETE_REQUEST = 1000;
+	private static final int MAX_DRAIN_BYTES = 16 * 1024;
+
+	private final AmazonS3 s3;
+	private final long multipartUploadThreshold;
+	private final S3MultipartUploader uploader;
+
+	/**
+	 * Creates a store with the default multipart upload settings.
+	 *
+	 * @param s3
+	 *            The Amazon S3 client to store the payloads with.
+	 */
+	public S3PayloadStore(AmazonS3 s3) {
+		this(s3, new ExtendedClientConfiguration());
+	}
+
+	S3PayloadStore(AmazonS3 s3, ExtendedClientConfiguration clientConfiguration) {
+		this.s3 = s3;
+		this.multipartUploadThreshold = clientConfiguration.getMultipartUploadThreshold();
+		this.uploader = new S3MultipartUploader(s3, clientConfiguration);
+	}
+
+	/**
+	 * Gets the Amazon S3 client which the payloads are stored with.
+	 *
+	 * @return The Amazon S3 client.
+	 */
+	public AmazonS3 getAmazonS3Client() {
+		return s3;
+	}
+
+	public void putPayload(String s3BucketName, String s3Key, byte[] content) {
+		if (content.length > multipartUploadThreshold) {
+			uploader.upload(s3BucketName, s3Key, content);
+			return;
+		}
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(content.length);
+		s3.putObject(new PutObjectRequest(s3BucketName, s3Key, new ByteArrayInputStream(content), metadata));
+	}
+
+	public long putPayload(String s3BucketName, String s3Key, InputStream content, long contentLength)
+			throws IOException {
+		if (contentLength < 0) {
+			return uploader.upload(s3BucketName, s3Key, content);
+		}
+		if (contentLength > multipartUploadThreshold) {
+			long uploaded = uploader.upload(s3BucketName, s3Key, new RangeInputStream(content, contentLength));
+			if (uploaded < contentLength) {
+				s3.deleteObject(s3BucketName, s3Key);
+				throw new EOFException("The stream ended after " + uploaded + " of " + contentLength + " bytes.");
+			}
+			return uploaded;
+		}
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(contentLength);
+		s3.putObject(new PutObjectRequest(s3BucketName, s3Key, content, metadata));
+		return contentLength;
+	}
+
+	public InputStream getPayload(String s3BucketName, String s3Key) {
+		return new ObjectContentStream(s3.getObject(new GetObjectRequest(s3BucketName, s3Key)).getObjectContent());
+	}
+
+	public InputStream getPayloadRange(String s3BucketName, String s3Key, long start, long length) {
+		GetObjectRequest getObjectRequest = new GetObjectRequest(s3BucketName, s3Key).withRange(start, start
+				+ length - 1);
+		return new ObjectContentStream(s3.getObject(getObjectRequest).getObjectContent());
+	}
+
+	public boolean doesPayloadExist(String s3BucketName, String s3Key) {
+		return s3.doesObjectExist(s3BucketName, s3Key);
+	}
+
+	public void deletePayload(String s3BucketName, String s3Key) {
+		s3.deleteObject(s3BucketName, s3Key);
+	}
+
+	public Map<String, String> deletePayloads(String s3BucketName, Collection<String> s3Keys) {
+		Map<String, String> errorsByKey = new HashMap<String, String>();
+		List<KeyVersion> keys = new ArrayList<KeyVersion>(Math.min(s3Keys.size(), MAX_KEYS_PER_DELETE_REQUEST));
+		for (String s3Key : s3Keys) {
+			keys.add(new KeyVersion(s3Key));
+			if (keys.size() == MAX_KEYS_PER_DELETE_REQUEST) {
+				deleteObjects(s3BucketName, keys, errorsByKey);
+				keys.clear();
+			}
+		}
+		if (!keys.isEmpty()) {
+			deleteObjects(s3BucketName, keys, errorsByKey);
+		}
+		return errorsByKey;
+	}
+
+	private void deleteObjects(String s3BucketName, List<KeyVersion> keys, Map<String, String> errorsByKey) {
+		try {
+			s3.deleteObjects(new DeleteObjectsRequest(s3BucketName).withKeys(keys).withQuiet(true));
+		} catch (MultiObjectDeleteException e) {
+			for (DeleteError error : e.getErrors()) {
+				errorsByKey.put(error.getKey(), error.getCode());
+			}
+		}
+	}
+
+	/**
+	 * Releases the connection of an S3 object when the stream is closed. An
+	 * object which has not been read to the end is drained if only a few bytes
+	 * are left, so that the connection can be reused, and aborted otherwise.
+	 */
+	private static class ObjectContentStream extends FilterInputStream {
+		private final S3ObjectInputStream objectContent;
+		private boolean endOfStream;
+
+		ObjectContentStream(S3ObjectInputStream objectContent) {
+			super(objectContent);
+			this.objectContent = objectContent;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b < 0) {
+				endOfStream = true;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read < 0) {
+				endOfStream = true;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!endOfStream && !drain()) {
+				objectContent.abort();
+				return;
+			}
+			super.close();
+		}
+
+		private boolean drain() {
+			byte[] buffer = new byte[4096];
+			int drained = 0;
+			try {
+				while (drained <= MAX_DRAIN_BYTES) {
+					int read = objectContent.read(buffer);
+					if (read < 0) {
+						return true;
+					}
+					drained += read;
+				}
+			} catch (IOException e) {
+				// The connection cannot be reused.
+			}
+			return false;
+		}
+	}
+}
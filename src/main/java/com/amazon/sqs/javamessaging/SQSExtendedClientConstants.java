@@ -19,10 +19,27 @@ import com.amazonaws.util.VersionInfoUtils;
 
 class SQSExtendedClientConstants {
 	public static final String RESERVED_ATTRIBUTE_NAME = "SQSLargePayloadSize";
+	public static final String INLINE_ENCODING_ATTRIBUTE_NAME = "SQSPayloadEncoding";
 	public static final int MAX_ALLOWED_ATTRIBUTES = 9;
 	public static final int DEFAULT_MESSAGE_SIZE_THRESHOLD = 262144;
+	public static final long DEFAULT_MULTIPART_UPLOAD_THRESHOLD = 16 * 1024 * 1024;
+	public static final int DEFAULT_MULTIPART_UPLOAD_PART_SIZE = 8 * 1024 * 1024;
+	public static final int MIN_MULTIPART_UPLOAD_PART_SIZE = 5 * 1024 * 1024;
+	public static final int DEFAULT_MULTIPART_UPLOAD_PARALLELISM = 4;
+	public static final int DEFAULT_MULTIPART_UPLOAD_PART_RETRIES = 2;
+	public static final long DEFAULT_RANGED_DOWNLOAD_THRESHOLD = 16 * 1024 * 1024;
+	public static final int DEFAULT_RANGED_DOWNLOAD_PART_SIZE = 8 * 1024 * 1024;
+	public static final double DEFAULT_MAX_COMPRESSION_RATIO = 0.9;
+	public static final int DEFAULT_RECEIVE_PREFETCH_POLLERS = 1;
+	public static final int DEFAULT_RECEIVE_PREFETCH_VISIBILITY_TIMEOUT = 30;
+	public static final int MAX_VISIBILITY_TIMEOUT = 43200;
+	public static final int DEFAULT_VISIBILITY_HEARTBEAT_MAX_LIFETIME = 3600;
+	public static final long DEFAULT_PAYLOAD_SPOOL_QUOTA = 1024L * 1024 * 1024;
+	public static final int MAX_BATCH_ENTRIES = 10;
+	public static final int MAX_BATCH_REQUEST_SIZE = 262144;
 	public static final String S3_BUCKET_NAME_MARKER = "-..s3BucketName..-";
 	public static final String S3_KEY_MARKER = "-..s3Key..-";
+	public static final String S3_RECEIPT_HANDLE_MARKER = "-..s3rh..-";
 
 	static final String USER_AGENT_HEADER = AmazonSQSExtendedClient.class.getSimpleName() + "/" + VersionInfoUtils.getVersion();
 }
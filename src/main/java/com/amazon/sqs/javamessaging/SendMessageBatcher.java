@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the messages which concurrent callers send to one queue into batch
+ * requests. The first caller of a batch waits for the linger time, or until
+ * the batch is full, and then sends the batch on behalf of all its callers;
+ * the other callers wait for their own result. No background thread is
+ * involved.
+ *
+ * <p>
+ * The messages are prepared by the extended client before they are added, so
+ * large payloads have already been stored in Amazon S3, a failed upload only
+ * fails its own caller, and the size of each message in the batch is known
+ * exactly.
+ * </p>
+ */
+class SendMessageBatcher {
+	private static final Log LOG = LogFactory.getLog(SendMessageBatcher.class);
+
+	private final AmazonSQSExtendedClient client;
+	private final String queueUrl;
+	private final int maxEntries;
+	private final int maxBatchSize;
+	private final long lingerMillis;
+
+	private Batch openBatch;
+	private int batchesInFlight;
+	private boolean shutDown;
+
+	/**
+	 * @param maxEntries
+	 *            The maximum number of messages per batch, at most 10.
+	 * @param maxBatchSize
+	 *            The maximum total size of the messages in a batch in bytes.
+	 * @param lingerMillis
+	 *            How long the first message of a batch waits for others.
+	 */
+	SendMessageBatcher(AmazonSQSExtendedClient client, String queueUrl, int maxEntries, int maxBatchSize,
+			long lingerMillis) {
+		this.client = client;
+		this.queueUrl = queueUrl;
+		this.maxEntries = maxEntries;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerMillis = lingerMillis;
+	}
+
+	/**
+	 * Sends a prepared message as part of a batch.
+	 *
+	 * @param messageSize
+	 *            The size of the message body and attributes in bytes.
+	 * @return The result for this message.
+	 */
+	SendMessageResult send(SendMessageRequest sendMessageRequest, int messageSize) {
+		Batch batch;
+		SettableFuture<SendMessageResult> result = new SettableFuture<SendMessageResult>();
+		boolean leader = false;
+		synchronized (this) {
+			if (openBatch != null && openBatch.size + messageSize > maxBatchSize) {
+				closeOpenBatch();
+			}
+			if (openBatch == null) {
+				openBatch = new Batch();
+				leader = true;
+			}
+			batch = openBatch;
+			batch.add(sendMessageRequest, messageSize, result);
+			// After shutdown a batch is sent without waiting for others.
+			if (batch.requests.size() >= maxEntries || shutDown) {
+				closeOpenBatch();
+			}
+			if (leader) {
+				batchesInFlight++;
+			}
+		}
+
+		if (leader) {
+			try {
+				awaitBatch(batch);
+				flush(batch);
+			} finally {
+				synchronized (this) {
+					batchesInFlight--;
+					notifyAll();
+				}
+			}
+		}
+		return PayloadTasks.getResult(result);
+	}
+
+	/**
+	 * Sends the open batch without waiting for its linger time, and waits
+	 * until the batches which are being sent have their results. Messages
+	 * which are added afterwards are sent without waiting for others.
+	 */
+	synchronized void shutdown() {
+		shutDown = true;
+		if (openBatch != null) {
+			closeOpenBatch();
+		}
+		while (batchesInFlight > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits until the batch is closed by another caller or its linger time
+	 * has passed, and closes it.
+	 */
+	private synchronized void awaitBatch(Batch batch) {
+		long flushAt = System.currentTimeMillis() + lingerMillis;
+		boolean interrupted = false;
+		while (!batch.closed) {
+			long remaining = flushAt - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				// The batch is sent anyway; its other callers are waiting.
+				interrupted = true;
+			}
+		}
+		if (!batch.closed) {
+			closeOpenBatch();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void closeOpenBatch() {
+		openBatch.closed = true;
+		openBatch = null;
+		notifyAll();
+	}
+
+	private void flush(Batch batch) {
+		List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>(batch.requests
+				.size());
+		for (int i = 0; i < batch.requests.size(); i++) {
+			SendMessageRequest request = batch.requests.get(i);
+			entries.add(new SendMessageBatchRequestEntry(Integer.toString(i), request.getMessageBody())
+					.withDelaySeconds(request.getDelaySeconds()).withMessageAttributes(request.getMessageAttributes()));
+		}
+
+		SendMessageBatchResult batchResult;
+		try {
+			batchResult = client.sendPreparedMessageBatch(new SendMessageBatchRequest(queueUrl, entries));
+		} catch (RuntimeException e) {
+			LOG.error("Failed to send a batch of " + entries.size() + " messages to " + queueUrl + ".", e);
+			for (SettableFuture<SendMessageResult> result : batch.results) {
+				result.setException(e);
+			}
+			return;
+		}
+
+		for (SendMessageBatchResultEntry entry : batchResult.getSuccessful()) {
+			batch.results.get(Integer.parseInt(entry.getId())).set(new SendMessageResult()
+					.withMessageId(entry.getMessageId()).withMD5OfMessageBody(entry.getMD5OfMessageBody())
+					.withMD5OfMessageAttributes(entry.getMD5OfMessageAttributes()));
+		}
+		for (BatchResultErrorEntry entry : batchResult.getFailed()) {
+			AmazonServiceException exception = new AmazonServiceException(entry.getMessage());
+			exception.setErrorCode(entry.getCode());
+			exception.setErrorType(Boolean.TRUE.equals(entry.getSenderFault()) ? ErrorType.Client
+					: ErrorType.Service);
+			exception.setServiceName("AmazonSQS");
+			batch.results.get(Integer.parseInt(entry.getId())).setException(exception);
+		}
+		for (SettableFuture<SendMessageResult> result : batch.results) {
+			if (!result.isDone()) {
+				result.setException(new AmazonClientException("The batch result did not include the message."));
+			}
+		}
+	}
+
+	private static class Batch {
+		final List<SendMessageRequest> requests = new ArrayList<SendMessageRequest>();
+		final List<SettableFuture<SendMessageResult>> results = new ArrayList<SettableFuture<SendMessageResult>>();
+		int size;
+		boolean closed;
+
+		void add(SendMessageRequest request, int messageSize, SettableFuture<SendMessageResult> result) {
+			requests.add(request);
+			results.add(result);
+			size += messageSize;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A future which is completed explicitly, for operations which are made of
+ * several asynchronous steps and therefore do not map to a single task.
+ */
+class SettableFuture<T> extends FutureTask<T> {
+
+	private static final Callable<Object> NOT_RUNNABLE = new Callable<Object>() {
+		public Object call() {
+			throw new IllegalStateException("SettableFuture is completed explicitly and cannot be run.");
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	SettableFuture() {
+		super((Callable<T>) NOT_RUNNABLE);
+	}
+
+	@Override
+	public void run() {
+		// Completed through set and setException only.
+	}
+
+	@Override
+	public void set(T result) {
+		super.set(result);
+	}
+
+	@Override
+	public void setException(Throwable t) {
+		super.setException(t);
+	}
+}
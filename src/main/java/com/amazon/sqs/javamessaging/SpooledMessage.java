@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.Message;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A received Amazon SQS message whose payload was written to a spool file
+ * instead of the heap. The payload is read through a read-only memory mapping
+ * or file channel, so that only the parts of the payload which are processed
+ * are paged in.
+ *
+ * <p>
+ * The spool file is deleted when the message is deleted through the extended
+ * client or when it is closed. A mapping returned by
+ * {@link #getPayloadBuffer()} must not be used after that. Messages without a
+ * payload in Amazon S3 are not spooled; their payload is the message body.
+ * </p>
+ */
+public class SpooledMessage implements Closeable {
+	private static final Log LOG = LogFactory.getLog(SpooledMessage.class);
+
+	private final Message message;
+	private final Path spoolFile;
+	private final long payloadSize;
+	private final PayloadSpool spool;
+	private FileChannel payloadChannel;
+	private ByteBuffer payloadBuffer;
+	private boolean closed;
+
+	SpooledMessage(Message message) {
+		this(message, null, -1, null);
+	}
+
+	SpooledMessage(Message message, Path spoolFile, long payloadSize, PayloadSpool spool) {
+		this.message = message;
+		this.spoolFile = spoolFile;
+		this.payloadSize = payloadSize;
+		this.spool = spool;
+	}
+
+	/**
+	 * Gets the received message. For a message with a spooled payload, the
+	 * body of the message is null.
+	 *
+	 * @return The received message.
+	 */
+	public Message getMessage() {
+		return message;
+	}
+
+	/**
+	 * Checks whether the payload of the message was written to a spool file.
+	 *
+	 * @return true if the payload is read from a spool file.
+	 */
+	public boolean isPayloadSpooled() {
+		return spoolFile != null;
+	}
+
+	/**
+	 * Gets the size of the payload in bytes. The payload of a spooled message
+	 * is stored decompressed.
+	 *
+	 * @return The size of the payload in bytes.
+	 */
+	public long getPayloadSize() {
+		if (isPayloadSpooled()) {
+			return payloadSize;
+		}
+		return message.getBody() == null ? 0 : Utf8Length.of(message.getBody());
+	}
+
+	/**
+	 * Gets a read-only buffer of the payload. For a spooled payload, the
+	 * buffer is a mapping of the spool file, created on the first call; later
+	 * calls return duplicates of it.
+	 *
+	 * @return A read-only buffer of the payload.
+	 * @throws AmazonClientException
+	 *             If the payload is larger than 2 GB, or the spool file
+	 *             cannot be mapped.
+	 */
+	public synchronized ByteBuffer getPayloadBuffer() {
+		checkNotClosed();
+		if (payloadBuffer == null) {
+			if (isPayloadSpooled()) {
+				if (payloadSize > Integer.MAX_VALUE) {
+					String errorMessage = "The payload of " + payloadSize + " bytes is too large to be mapped into "
+							+ "one buffer. Read it from the payload channel instead.";
+					LOG.error(errorMessage);
+					throw new AmazonClientException(errorMessage);
+				}
+				try {
+					payloadBuffer = getPayloadChannel().map(MapMode.READ_ONLY, 0, payloadSize);
+				} catch (IOException e) {
+					String errorMessage = "Failed to map the payload spool file " + spoolFile + ".";
+					LOG.error(errorMessage, e);
+					throw new AmazonClientException(errorMessage, e);
+				}
+			} else {
+				String body = message.getBody() == null ? "" : message.getBody();
+				payloadBuffer = ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+			}
+		}
+		return payloadBuffer.duplicate();
+	}
+
+	/**
+	 * Gets a read-only channel of the spool file, opened on the first call.
+	 * Later calls return the same channel; use positional reads to share it
+	 * between threads.
+	 *
+	 * @return A read-only channel of the spool file.
+	 * @throws IllegalStateException
+	 *             If the payload is not spooled.
+	 * @throws AmazonClientException
+	 *             If the spool file cannot be opened.
+	 */
+	public synchronized FileChannel getPayloadChannel() {
+		checkNotClosed();
+		if (!isPayloadSpooled()) {
+			throw new IllegalStateException("The payload of the message is not spooled.");
+		}
+		if (payloadChannel == null) {
+			try {
+				payloadChannel = FileChannel.open(spoolFile, StandardOpenOption.READ);
+			} catch (IOException e) {
+				String errorMessage = "Failed to open the payload spool file " + spoolFile + ".";
+				LOG.error(errorMessage, e);
+				throw new AmazonClientException(errorMessage, e);
+			}
+		}
+		return payloadChannel;
+	}
+
+	/**
+	 * Closes the payload channel, if it was opened, and deletes the spool
+	 * file. Closing a message does not delete it from the queue.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			payloadBuffer = null;
+			if (payloadChannel != null) {
+				try {
+					payloadChannel.close();
+				} catch (IOException e) {
+					LOG.warn("Failed to close the payload spool file " + spoolFile + ".", e);
+				}
+			}
+		}
+		if (spool != null) {
+			spool.closed(this, spoolFile, payloadSize);
+		}
+	}
+
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("The message has been closed.");
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.model.Message;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A received Amazon SQS message whose payload is read as a stream. For a
+ * message with its payload in Amazon S3 or another payload store, the payload
+ * is only opened when the payload stream is first requested, and the payload is never held in memory
+ * as a whole.
+ *
+ * <p>
+ * The receipt handle of the message can be used with the extended client like
+ * the receipt handle of a message returned by <code>receiveMessage</code>.
+ * Close the message, or the payload stream, once the payload has been read,
+ * so that the payload store can release the S3 connection or file behind it.
+ * </p>
+ */
+public class StreamedMessage implements Closeable {
+	private static final Log LOG = LogFactory.getLog(StreamedMessage.class);
+
+	private final Message message;
+	private final String s3BucketName;
+	private final String s3Key;
+	private final long payloadSize;
+	private final PayloadCodec payloadCodec;
+	private final PayloadStore payloadStore;
+	private InputStream payloadStream;
+	private boolean closed;
+
+	StreamedMessage(Message message) {
+		this(message, null, null, -1, null, null);
+	}
+
+	StreamedMessage(Message message, String s3BucketName, String s3Key, long payloadSize, PayloadCodec payloadCodec,
+			PayloadStore payloadStore) {
+		this.message = message;
+		this.s3BucketName = s3BucketName;
+		this.s3Key = s3Key;
+		this.payloadSize = payloadSize;
+		this.payloadCodec = payloadCodec;
+		this.payloadStore = payloadStore;
+	}
+
+	/**
+	 * Gets the received message. For a message with its payload in Amazon S3,
+	 * the body of the message is null; the payload is read through
+	 * {@link #getPayloadStream()}.
+	 *
+	 * @return The received message.
+	 */
+	public Message getMessage() {
+		return message;
+	}
+
+	/**
+	 * Checks whether the payload of the message is stored in Amazon S3.
+	 *
+	 * @return true if the payload is read from Amazon S3.
+	 */
+	public boolean isPayloadInS3() {
+		return s3Key != null;
+	}
+
+	/**
+	 * Gets the size of the payload in bytes, if known.
+	 *
+	 * @return The size of the payload in bytes, or -1 if it is unknown.
+	 */
+	public long getPayloadSize() {
+		if (isPayloadInS3()) {
+			return payloadSize;
+		}
+		return message.getBody() == null ? 0 : Utf8Length.of(message.getBody());
+	}
+
+	/**
+	 * Gets the stream of the message payload, opening the S3 object on the
+	 * first call. A compressed payload is decompressed while it is read.
+	 * Later calls return the same stream.
+	 *
+	 * @return The stream of the message payload.
+	 * @throws AmazonClientException
+	 *             If the S3 object which contains the payload cannot be
+	 *             opened.
+	 */
+	public synchronized InputStream getPayloadStream() {
+		if (closed) {
+			throw new IllegalStateException("The message has been closed.");
+		}
+		if (payloadStream == null) {
+			if (isPayloadInS3()) {
+				payloadStream = decode(openPayload());
+			} else {
+				String body = message.getBody() == null ? "" : message.getBody();
+				payloadStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return payloadStream;
+	}
+
+	/**
+	 * Gets the payload as a channel. The channel reads from the stream
+	 * returned by {@link #getPayloadStream()}.
+	 *
+	 * @return A channel to read the message payload from.
+	 */
+	public ReadableByteChannel getPayloadChannel() {
+		return Channels.newChannel(getPayloadStream());
+	}
+
+	/**
+	 * Closes the payload stream, if it was opened, and releases its
+	 * connection to Amazon S3 or its file.
+	 */
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (payloadStream != null) {
+			payloadStream.close();
+		}
+	}
+
+	private InputStream decode(InputStream storedContent) {
+		if (payloadCodec == null) {
+			return storedContent;
+		}
+		try {
+			return payloadCodec.decode(storedContent);
+		} catch (IOException e) {
+			try {
+				storedContent.close();
+			} catch (IOException closeException) {
+				LOG.warn("Failed to close the message payload stream.", closeException);
+			}
+			String errorMessage = "Failed to decompress the message payload with codec " + payloadCodec.getName()
+					+ ".";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+	}
+
+	private InputStream openPayload() {
+		try {
+			return payloadStore.getPayload(s3BucketName, s3Key);
+		} catch (AmazonServiceException e) {
+			String errorMessage = "Failed to get the S3 object which contains the message payload.";
+			LOG.error(errorMessage, e);
+			throw new AmazonServiceException(errorMessage, e);
+		} catch (AmazonClientException e) {
+			String errorMessage = "Failed to get the S3 object which contains the message payload.";
+			LOG.error(errorMessage, e);
+			throw new AmazonClientException(errorMessage, e);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * This class calculates the UTF-8 encoded length of strings without encoding
+ * them. The lengths match <code>String.getBytes(StandardCharsets.UTF_8)</code>,
+ * which replaces an unpaired surrogate with a single '?' byte.
+ */
+class Utf8Length {
+
+	private Utf8Length() {
+	}
+
+	/**
+	 * Gets the number of bytes of the UTF-8 encoding of a string.
+	 */
+	static long of(String str) {
+		return count(str, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Checks whether the UTF-8 encoding of a string is longer than a limit.
+	 * Every char takes one to three bytes, so most strings are decided from
+	 * their length alone, and the rest are only counted until the limit is
+	 * passed.
+	 */
+	static boolean exceeds(String str, long limit) {
+		long length = str.length();
+		if (length > limit) {
+			return true;
+		}
+		if (3 * length <= limit) {
+			return false;
+		}
+		return count(str, limit) > limit;
+	}
+
+	/**
+	 * Counts the encoded bytes, stopping once the count exceeds the limit.
+	 */
+	private static long count(String str, long limit) {
+		long bytes = 0;
+		int length = str.length();
+		for (int i = 0; i < length && bytes <= limit; ++i) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				bytes += 1;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+				bytes += 4;
+				++i;
+			} else if (Character.isSurrogate(c)) {
+				bytes += 1;
+			} else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the messages which the client has handed out invisible while they
+ * are processed, so that a slow consumer does not have them delivered, and
+ * their payloads downloaded, a second time.
+ *
+ * <p>
+ * Messages are tracked by their original receipt handle. One background
+ * thread checks them at a fixed rate and extends the visibility timeout of
+ * each message once half of its last timeout has passed, with one
+ * <code>changeMessageVisibilityBatch</code> call per queue and ten messages.
+ * A message is no longer tracked once it is untracked, once Amazon SQS
+ * rejects its extension, or once it reaches the maximum lifetime; the last
+ * extension is shortened to end at that lifetime.
+ * </p>
+ */
+class VisibilityHeartbeat {
+	private static final Log LOG = LogFactory.getLog(VisibilityHeartbeat.class);
+	private static final long MAX_TICK_MILLIS = 1000;
+
+	private final AmazonSQSExtendedClient client;
+	private final int visibilityTimeout;
+	private final long maxLifetimeNanos;
+	private final ConcurrentHashMap<String, InFlightMessage> inFlightMessages;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * @param visibilityTimeout
+	 *            The visibility timeout in seconds which messages are
+	 *            extended to.
+	 * @param maxLifetime
+	 *            How long in seconds after it was received a message is kept
+	 *            invisible at most.
+	 */
+	VisibilityHeartbeat(AmazonSQSExtendedClient client, int visibilityTimeout, int maxLifetime) {
+		this(client, visibilityTimeout, maxLifetime, Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "sqs-extended-visibility-heartbeat");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}));
+	}
+
+	/**
+	 * @param scheduler
+	 *            The scheduler which runs the heartbeat. It is shut down with
+	 *            the heartbeat.
+	 */
+	VisibilityHeartbeat(AmazonSQSExtendedClient client, int visibilityTimeout, int maxLifetime,
+			ScheduledExecutorService scheduler) {
+		this.client = client;
+		this.visibilityTimeout = visibilityTimeout;
+		this.maxLifetimeNanos = TimeUnit.SECONDS.toNanos(maxLifetime);
+		this.inFlightMessages = new ConcurrentHashMap<String, InFlightMessage>();
+		this.scheduler = scheduler;
+		// A quarter of the timeout leaves the extension time to complete.
+		long tickMillis = Math.min(MAX_TICK_MILLIS, visibilityTimeout * 250L);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					extendDueMessages(System.nanoTime());
+				} catch (RuntimeException e) {
+					LOG.warn("Failed to extend the visibility of in-flight messages.", e);
+				}
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts tracking messages which were received at the given time.
+	 *
+	 * @param receivedVisibilityTimeout
+	 *            The visibility timeout in seconds which the messages were
+	 *            received with, or 0 if only little of it may remain, for
+	 *            example for prefetched messages.
+	 */
+	void track(String queueUrl, List<Message> messages, long receivedNanos, int receivedVisibilityTimeout) {
+		long firstExtensionNanos = receivedNanos + TimeUnit.SECONDS.toNanos(receivedVisibilityTimeout) / 2;
+		for (Message message : messages) {
+			String receiptHandle = ReceiptHandleCodec.getOriginalReceiptHandle(message.getReceiptHandle());
+			if (receiptHandle != null) {
+				inFlightMessages.put(receiptHandle, new InFlightMessage(queueUrl, receiptHandle, receivedNanos,
+						firstExtensionNanos));
+			}
+		}
+	}
+
+	/**
+	 * Stops tracking a message.
+	 *
+	 * @param receiptHandle
+	 *            The receipt handle of the message, with or without the
+	 *            location of its payload.
+	 */
+	void untrack(String receiptHandle) {
+		if (receiptHandle != null) {
+			inFlightMessages.remove(ReceiptHandleCodec.getOriginalReceiptHandle(receiptHandle));
+		}
+	}
+
+	int getInFlightMessageCount() {
+		return inFlightMessages.size();
+	}
+
+	/**
+	 * Stops extending messages. Tracked messages become visible again once
+	 * their last extension runs out.
+	 */
+	void shutdown() {
+		scheduler.shutdownNow();
+		inFlightMessages.clear();
+	}
+
+	/**
+	 * Extends the messages which are due at the given time.
+	 *
+	 * @param now
+	 *            The current time, from <code>System.nanoTime()</code>.
+	 */
+	void extendDueMessages(long now) {
+		Map<String, List<InFlightMessage>> dueMessagesByQueue = new HashMap<String, List<InFlightMessage>>();
+		for (InFlightMessage inFlightMessage : inFlightMessages.values()) {
+			if (inFlightMessage.nextExtensionNanos - now > 0) {
+				continue;
+			}
+			long remainingNanos = inFlightMessage.receivedNanos + maxLifetimeNanos - now;
+			if (remainingNanos < TimeUnit.SECONDS.toNanos(1)) {
+				LOG.warn("Message " + inFlightMessage.receiptHandle + " of " + inFlightMessage.queueUrl
+						+ " reached the maximum visibility heartbeat lifetime and will be delivered again.");
+				inFlightMessages.remove(inFlightMessage.receiptHandle, inFlightMessage);
+				continue;
+			}
+			List<InFlightMessage> dueMessages = dueMessagesByQueue.get(inFlightMessage.queueUrl);
+			if (dueMessages == null) {
+				dueMessages = new ArrayList<InFlightMessage>();
+				dueMessagesByQueue.put(inFlightMessage.queueUrl, dueMessages);
+			}
+			dueMessages.add(inFlightMessage);
+		}
+
+		for (Map.Entry<String, List<InFlightMessage>> dueMessages : dueMessagesByQueue.entrySet()) {
+			List<InFlightMessage> messages = dueMessages.getValue();
+			for (int start = 0; start < messages.size(); start += SQSExtendedClientConstants.MAX_BATCH_ENTRIES) {
+				extend(dueMessages.getKey(), messages.subList(start, Math.min(messages.size(), start
+						+ SQSExtendedClientConstants.MAX_BATCH_ENTRIES)), now);
+			}
+		}
+	}
+
+	private void extend(String queueUrl, List<InFlightMessage> messages, long now) {
+		List<ChangeMessageVisibilityBatchRequestEntry> entries;
+		entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(messages.size());
+		int[] timeouts = new int[messages.size()];
+		for (int i = 0; i < messages.size(); i++) {
+			InFlightMessage message = messages.get(i);
+			long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(message.receivedNanos + maxLifetimeNanos - now);
+			timeouts[i] = (int) Math.min(visibilityTimeout, remainingSeconds);
+			entries.add(new ChangeMessageVisibilityBatchRequestEntry(Integer.toString(i), message.receiptHandle)
+					.withVisibilityTimeout(timeouts[i]));
+		}
+
+		ChangeMessageVisibilityBatchResult result;
+		try {
+			result = client.extendVisibility(queueUrl, entries);
+		} catch (AmazonClientException e) {
+			// Retried at the next tick.
+			LOG.warn("Failed to extend the visibility of " + entries.size() + " in-flight messages of " + queueUrl
+					+ ".", e);
+			return;
+		}
+
+		for (int i = 0; i < messages.size(); i++) {
+			messages.get(i).nextExtensionNanos = now + TimeUnit.SECONDS.toNanos(timeouts[i]) / 2;
+		}
+		for (BatchResultErrorEntry failed : result.getFailed()) {
+			InFlightMessage message = messages.get(Integer.parseInt(failed.getId()));
+			LOG.warn("Failed to extend the visibility of message " + message.receiptHandle + " of " + queueUrl
+					+ ": " + failed.getCode() + ". It is no longer tracked.");
+			inFlightMessages.remove(message.receiptHandle, message);
+		}
+	}
+
+	private static class InFlightMessage {
+		final String queueUrl;
+		final String receiptHandle;
+		final long receivedNanos;
+		// Only updated by the heartbeat thread.
+		long nextExtensionNanos;
+
+		InFlightMessage(String queueUrl, String receiptHandle, long receivedNanos, long nextExtensionNanos) {
+			this.queueUrl = queueUrl;
+			this.receiptHandle = receiptHandle;
+			this.receivedNanos = receivedNanos;
+			this.nextExtensionNanos = nextExtensionNanos;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the AmazonSQSExtendedAsyncClient class.
+ */
+public class AmazonSQSExtendedAsyncClientTest {
+
+    private AmazonSQSAsync sqsAsync;
+    private AmazonS3 s3;
+    private ExecutorService executor;
+    private AmazonSQSExtendedAsyncClient extendedAsyncClient;
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+    private static final int SQS_SIZE_LIMIT = 262144;
+
+    @Before
+    public void setupClient() {
+        sqsAsync = mock(AmazonSQSAsync.class);
+        s3 = mock(AmazonS3.class);
+        executor = Executors.newFixedThreadPool(2);
+
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME);
+        extendedAsyncClient = new AmazonSQSExtendedAsyncClient(sqsAsync, extendedClientConfiguration, executor);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSendLargeMessageAsyncUploadsPayloadThenSends() throws Exception {
+        when(sqsAsync.sendMessageAsync(isA(SendMessageRequest.class), any(AsyncHandler.class))).thenAnswer(
+                new Answer<Future<SendMessageResult>>() {
+                    public Future<SendMessageResult> answer(InvocationOnMock invocation) {
+                        SendMessageRequest request = (SendMessageRequest) invocation.getArguments()[0];
+                        assertTrue(request.getMessageAttributes().containsKey(
+                                SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+                        SendMessageResult result = new SendMessageResult().withMessageId("message-id");
+                        ((AsyncHandler<SendMessageRequest, SendMessageResult>) invocation.getArguments()[1])
+                                .onSuccess(request, result);
+                        return null;
+                    }
+                });
+
+        AsyncHandler<SendMessageRequest, SendMessageResult> handler = mock(AsyncHandler.class);
+        SendMessageRequest request = new SendMessageRequest(SQS_QUEUE_URL, generateString(SQS_SIZE_LIMIT + 1));
+        Future<SendMessageResult> future = extendedAsyncClient.sendMessageAsync(request, handler);
+
+        assertEquals("message-id", future.get(10, TimeUnit.SECONDS).getMessageId());
+        verify(s3, times(1)).putObject(isA(PutObjectRequest.class));
+        verify(handler, times(1)).onSuccess(request, future.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSendMessageAsyncReportsUploadFailure() throws Exception {
+        when(s3.putObject(isA(PutObjectRequest.class))).thenThrow(new AmazonServiceException("put failed"));
+
+        AsyncHandler<SendMessageRequest, SendMessageResult> handler = mock(AsyncHandler.class);
+        Future<SendMessageResult> future = extendedAsyncClient.sendMessageAsync(new SendMessageRequest(
+                SQS_QUEUE_URL, generateString(SQS_SIZE_LIMIT + 1)), handler);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the failed upload to be reported.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AmazonServiceException);
+        }
+        verify(handler, times(1)).onError(isA(AmazonServiceException.class));
+        verify(sqsAsync, never()).sendMessageAsync(isA(SendMessageRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReceiveMessageAsyncResolvesPayloads() throws Exception {
+        String pointer = "[\"com.amazon.sqs.javamessaging.MessageS3Pointer\",{\"s3BucketName\":\"" + S3_BUCKET_NAME
+                + "\",\"s3Key\":\"key\"}]";
+        final Message message = new Message().withBody(pointer).withReceiptHandle("receipt").addMessageAttributesEntry(
+                SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME,
+                new MessageAttributeValue().withDataType("Number").withStringValue("7"));
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8)));
+        when(s3.getObject(isA(GetObjectRequest.class))).thenReturn(s3Object);
+        when(sqsAsync.receiveMessageAsync(isA(ReceiveMessageRequest.class), any(AsyncHandler.class))).thenAnswer(
+                new Answer<Future<ReceiveMessageResult>>() {
+                    public Future<ReceiveMessageResult> answer(InvocationOnMock invocation) {
+                        ((AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult>) invocation.getArguments()[1])
+                                .onSuccess((ReceiveMessageRequest) invocation.getArguments()[0],
+                                        new ReceiveMessageResult().withMessages(Arrays.asList(message)));
+                        return null;
+                    }
+                });
+
+        ReceiveMessageResult result = extendedAsyncClient.receiveMessageAsync(SQS_QUEUE_URL).get(10, TimeUnit.SECONDS);
+
+        assertEquals("payload", result.getMessages().get(0).getBody());
+        assertTrue(result.getMessages().get(0).getReceiptHandle().endsWith("receipt"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsyncCallsRecordSqsMetricsWithoutLargePayloadSupport() throws Exception {
+        DefaultMetricsCollector metrics = new DefaultMetricsCollector();
+        // No executor is needed, so none is supplied.
+        AmazonSQSExtendedAsyncClient client = new AmazonSQSExtendedAsyncClient(sqsAsync,
+                new ExtendedClientConfiguration().withMetricsCollector(metrics));
+        when(sqsAsync.sendMessageAsync(isA(SendMessageRequest.class), any(AsyncHandler.class))).thenAnswer(
+                new Answer<Future<SendMessageResult>>() {
+                    public Future<SendMessageResult> answer(InvocationOnMock invocation) {
+                        ((AsyncHandler<SendMessageRequest, SendMessageResult>) invocation.getArguments()[1])
+                                .onSuccess((SendMessageRequest) invocation.getArguments()[0],
+                                        new SendMessageResult().withMessageId("message-id"));
+                        return null;
+                    }
+                });
+        final AmazonServiceException throttled = new AmazonServiceException("Rate exceeded");
+        throttled.setErrorCode("Throttling");
+        when(sqsAsync.receiveMessageAsync(isA(ReceiveMessageRequest.class), any(AsyncHandler.class))).thenAnswer(
+                new Answer<Future<ReceiveMessageResult>>() {
+                    public Future<ReceiveMessageResult> answer(InvocationOnMock invocation) {
+                        ((AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult>) invocation.getArguments()[1])
+                                .onError(throttled);
+                        return null;
+                    }
+                });
+
+        assertEquals("message-id", client.sendMessageAsync(SQS_QUEUE_URL, "small").get(10, TimeUnit.SECONDS)
+                .getMessageId());
+        try {
+            client.receiveMessageAsync(SQS_QUEUE_URL).get(10, TimeUnit.SECONDS);
+            fail("Expected the failed receive to be reported.");
+        } catch (ExecutionException e) {
+            assertEquals(throttled, e.getCause());
+        }
+        client.shutdown();
+
+        assertEquals(1, metrics.getLatencyHistogram(MetricsCollector.Operation.SEND).getCount());
+        assertEquals(0, metrics.getLatencyHistogram(MetricsCollector.Operation.RECEIVE).getCount());
+        assertEquals(1, metrics.getErrorCount(MetricsCollector.Operation.RECEIVE, "Throttling"));
+    }
+
+    private String generateString(int messageLength) {
+        char[] charArray = new char[messageLength];
+        Arrays.fill(charArray, 'x');
+        return new String(charArray);
+    }
+}
@@ -15,23 +15,89 @@
 
 package com.amazon.sqs.javamessaging;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult.DeletedObject;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
 import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -49,6 +115,9 @@ public class AmazonSQSExtendedClientTest {
     private static final String SQS_QUEUE_URL = "test-queue-url";
     private static final int SQS_SIZE_LIMIT = 262144;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setupClient() {
         s3 = mock(AmazonS3.class);
@@ -83,6 +152,385 @@ public class AmazonSQSExtendedClientTest {
 		verify(s3, never()).putObject(isA(PutObjectRequest.class));
 	}
 
+	@Test
+	public void testSendMessageSizeCountsEncodedBytesOfBodyAndAttributes() {
+		// 2-byte, 3-byte and 4-byte (surrogate pair) characters.
+		String multiByteChars = "\u00e9\u20ac\ud83d\ude00";
+		int multiByteCharsSize = 2 + 3 + 4;
+		MessageAttributeValue binaryAttribute = new MessageAttributeValue().withDataType("Binary").withBinaryValue(
+				ByteBuffer.wrap(new byte[100], 10, 20));
+		int attributesSize = "attr".length() + "Binary".length() + 20;
+		String messageBody = generateString(SQS_SIZE_LIMIT - attributesSize - multiByteCharsSize) + multiByteChars;
+
+		sqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody).addMessageAttributesEntry("attr",
+				binaryAttribute));
+		verify(s3, never()).putObject(isA(PutObjectRequest.class));
+
+		sqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "x" + messageBody).addMessageAttributesEntry("attr",
+				binaryAttribute));
+		ArgumentCaptor<PutObjectRequest> putRequest = ArgumentCaptor.forClass(PutObjectRequest.class);
+		verify(s3, times(1)).putObject(putRequest.capture());
+		assertEquals(SQS_SIZE_LIMIT - attributesSize + 1, putRequest.getValue().getMetadata().getContentLength());
+	}
+
+	@Test
+	public void testSendLargeMessageWritesLegacyS3PointerByDefault() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateString(SQS_SIZE_LIMIT + 1)));
+
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		String body = sendRequest.getValue().getMessageBody();
+		assertTrue(body.matches("\\[\"com\\.amazon\\.sqs\\.javamessaging\\.MessageS3Pointer\","
+				+ "\\{\"s3BucketName\":\"" + S3_BUCKET_NAME + "\",\"s3Key\":\"[-0-9a-f]+\"\\}\\]"));
+	}
+
+	@Test
+	public void testCompactS3PointerRoundTrip() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withCompactS3PointerEnabled(true));
+		String messageBody = generateString(SQS_SIZE_LIMIT + 1);
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		SendMessageRequest sent = sendRequest.getValue();
+		assertTrue(sent.getMessageBody().startsWith("{\"v\":2,\"b\":\"" + S3_BUCKET_NAME + "\",\"k\":"));
+		MessageS3Pointer s3Pointer = MessageS3PointerCodec.decode(sent.getMessageBody());
+		assertEquals(SQS_SIZE_LIMIT + 1, s3Pointer.getPayloadSize());
+
+		S3Object s3Object = new S3Object();
+		s3Object.setObjectContent(new ByteArrayInputStream(messageBody.getBytes(StandardCharsets.UTF_8)));
+		when(s3.getObject(argThat(hasS3Key(s3Pointer.getS3Key())))).thenReturn(s3Object);
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody(sent.getMessageBody()).withReceiptHandle("receipt")
+						.withMessageAttributes(sent.getMessageAttributes())));
+
+		assertEquals(messageBody, sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages().get(0).getBody());
+	}
+
+	@Test
+	public void testCompressedPayloadRoundTrip() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadCodec(PayloadCodecs.GZIP));
+		StringBuilder messageBody = new StringBuilder();
+		for (int i = 0; messageBody.length() <= SQS_SIZE_LIMIT; i++) {
+			messageBody.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+		}
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody.toString()));
+
+		ArgumentCaptor<PutObjectRequest> putRequest = ArgumentCaptor.forClass(PutObjectRequest.class);
+		verify(s3, times(1)).putObject(putRequest.capture());
+		byte[] storedContent = readBytes(putRequest.getValue().getInputStream());
+		assertTrue(storedContent.length < messageBody.length() / 4);
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		SendMessageRequest sent = sendRequest.getValue();
+		MessageS3Pointer s3Pointer = MessageS3PointerCodec.decode(sent.getMessageBody());
+		assertEquals("gzip", s3Pointer.getCodec());
+		assertEquals(Integer.toString(messageBody.length()), sent.getMessageAttributes().get(
+				SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME).getStringValue());
+
+		S3Object s3Object = new S3Object();
+		s3Object.setObjectContent(new ByteArrayInputStream(storedContent));
+		when(s3.getObject(argThat(hasS3Key(s3Pointer.getS3Key())))).thenReturn(s3Object);
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody(sent.getMessageBody()).withReceiptHandle("receipt")
+						.withMessageAttributes(sent.getMessageAttributes())));
+
+		assertEquals(messageBody.toString(), sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages().get(0)
+				.getBody());
+	}
+
+	@Test
+	public void testCompressedPayloadLargerThanAnArrayIsRejectedBeforeDecompressing() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadCodec(PayloadCodecs.GZIP));
+		byte[] storedContent = PayloadCodecs.GZIP.encode("payload".getBytes(StandardCharsets.UTF_8));
+		MessageS3Pointer s3Pointer = new MessageS3Pointer(S3_BUCKET_NAME, "compressed-key");
+		s3Pointer.setCodec("gzip");
+		s3Pointer.setPayloadSize(storedContent.length);
+		S3Object s3Object = new S3Object();
+		s3Object.setObjectContent(new ByteArrayInputStream(storedContent));
+		when(s3.getObject(argThat(hasS3Key("compressed-key")))).thenReturn(s3Object);
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody(MessageS3PointerCodec.encode(s3Pointer, true))
+						.withReceiptHandle("receipt").addMessageAttributesEntry(
+								SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, new MessageAttributeValue()
+										.withDataType("Number").withStringValue(Long.toString(Integer.MAX_VALUE)))));
+
+		try {
+			sqsExtended.receiveMessage(SQS_QUEUE_URL);
+			fail("Expected the oversized payload to be rejected.");
+		} catch (AmazonClientException e) {
+			assertTrue(e.getCause().getMessage().contains("larger than the maximum array size"));
+		}
+	}
+
+	@Test
+	public void testInlineCompressedPayloadRoundTripWithoutS3() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withInlineCompressionEnabled(true));
+		StringBuilder messageBody = new StringBuilder();
+		for (int i = 0; messageBody.length() <= 4 * SQS_SIZE_LIMIT; i++) {
+			messageBody.append("<item id=\"").append(i).append("\"/>");
+		}
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody.toString()));
+
+		verify(s3, never()).putObject(isA(PutObjectRequest.class));
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		SendMessageRequest sent = sendRequest.getValue();
+		assertTrue(sent.getMessageBody().length() < SQS_SIZE_LIMIT);
+		assertFalse(sent.getMessageAttributes().containsKey(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+		assertEquals("gzip", sent.getMessageAttributes().get(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME)
+				.getStringValue());
+
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody(sent.getMessageBody()).withReceiptHandle("receipt")
+						.withMessageAttributes(sent.getMessageAttributes())));
+
+		Message received = sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages().get(0);
+		assertEquals(messageBody.toString(), received.getBody());
+		assertEquals("receipt", received.getReceiptHandle());
+		assertFalse(received.getMessageAttributes().containsKey(
+				SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME));
+	}
+
+	@Test
+	public void testIncompressiblePayloadIsStoredUncompressed() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadCodec(PayloadCodecs.FAST_DEFLATE)
+				.withMaxCompressionRatio(0.5));
+		Random random = new Random(42);
+		char[] messageBody = new char[SQS_SIZE_LIMIT + 1];
+		for (int i = 0; i < messageBody.length; i++) {
+			messageBody[i] = (char) (' ' + random.nextInt(95));
+		}
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, new String(messageBody)));
+
+		ArgumentCaptor<PutObjectRequest> putRequest = ArgumentCaptor.forClass(PutObjectRequest.class);
+		verify(s3, times(1)).putObject(putRequest.capture());
+		assertEquals(messageBody.length, putRequest.getValue().getMetadata().getContentLength());
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		assertEquals(null, MessageS3PointerCodec.decode(sendRequest.getValue().getMessageBody()).getCodec());
+	}
+
+	@Test
+	public void testPayloadCacheServesReceiveUntilPayloadIsDeleted() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		PayloadCache payloadCache = new PayloadCache(4 * SQS_SIZE_LIMIT);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadCache(payloadCache));
+		String messageBody = generateString(SQS_SIZE_LIMIT + 1);
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		SendMessageRequest sent = sendRequest.getValue();
+		String s3Key = MessageS3PointerCodec.decode(sent.getMessageBody()).getS3Key();
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody(sent.getMessageBody()).withReceiptHandle("receipt")
+						.withMessageAttributes(sent.getMessageAttributes())));
+
+		Message received = sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages().get(0);
+		assertEquals(messageBody, received.getBody());
+		verify(s3, never()).getObject(isA(GetObjectRequest.class));
+		assertEquals(1, payloadCache.getHeapHitCount());
+
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, received.getReceiptHandle());
+		verify(s3, times(1)).deleteObject(S3_BUCKET_NAME, s3Key);
+		assertEquals(0, payloadCache.getHeapSize());
+		assertEquals(null, payloadCache.get(S3_BUCKET_NAME, s3Key));
+		assertEquals(1, payloadCache.getMissCount());
+	}
+
+	@Test
+	public void testContentAddressedPayloadIsUploadedOnceAndDeletedWithLastReference() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		InMemoryPayloadReferenceStore referenceStore = new InMemoryPayloadReferenceStore();
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadReferenceStore(referenceStore));
+		String messageBody = generateString(SQS_SIZE_LIMIT + 1);
+		when(s3.doesObjectExist(eq(S3_BUCKET_NAME), anyString())).thenReturn(true);
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+		verify(s3, times(1)).putObject(isA(PutObjectRequest.class));
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(2)).sendMessage(sendRequest.capture());
+		String s3Key = MessageS3PointerCodec.decode(sendRequest.getAllValues().get(0).getMessageBody()).getS3Key();
+		assertEquals(s3Key, MessageS3PointerCodec.decode(sendRequest.getAllValues().get(1).getMessageBody())
+				.getS3Key());
+		assertEquals(2, referenceStore.getReferenceCount(S3_BUCKET_NAME, s3Key));
+
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, embedS3Pointer(s3Key, "receipt1"));
+		verify(s3, never()).deleteObject(S3_BUCKET_NAME, s3Key);
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, embedS3Pointer(s3Key, "receipt2"));
+		verify(s3, times(1)).deleteObject(S3_BUCKET_NAME, s3Key);
+		assertEquals(0, referenceStore.getReferenceCount(S3_BUCKET_NAME, s3Key));
+	}
+
+	@Test
+	public void testFailedBatchDeleteRestoresPayloadReferencesForRetry() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		when(sqsClient.deleteMessageBatch(isA(DeleteMessageBatchRequest.class))).thenReturn(
+				new DeleteMessageBatchResult());
+		InMemoryPayloadReferenceStore referenceStore = new InMemoryPayloadReferenceStore();
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadReferenceStore(referenceStore));
+		when(s3.doesObjectExist(eq(S3_BUCKET_NAME), anyString())).thenReturn(true);
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateString(SQS_SIZE_LIMIT + 1)));
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		String s3Key = MessageS3PointerCodec.decode(sendRequest.getValue().getMessageBody()).getS3Key();
+		when(s3.deleteObjects(isA(DeleteObjectsRequest.class))).thenThrow(new AmazonServiceException("S3 is down"))
+				.thenReturn(null);
+		DeleteMessageBatchRequestEntry entry = new DeleteMessageBatchRequestEntry("entry", embedS3Pointer(s3Key,
+				"receipt"));
+
+		DeleteMessageBatchResult result = sqsExtended.deleteMessageBatch(SQS_QUEUE_URL, Arrays.asList(entry));
+
+		assertEquals(1, result.getFailed().size());
+		verify(sqsClient, never()).deleteMessageBatch(isA(DeleteMessageBatchRequest.class));
+		assertEquals(1, referenceStore.getReferenceCount(S3_BUCKET_NAME, s3Key));
+		assertFalse(referenceStore.isBeingDeleted(S3_BUCKET_NAME, s3Key));
+
+		result = sqsExtended.deleteMessageBatch(SQS_QUEUE_URL, Arrays.asList(entry));
+
+		assertTrue(result.getFailed().isEmpty());
+		verify(s3, times(2)).deleteObjects(isA(DeleteObjectsRequest.class));
+		verify(sqsClient, times(1)).deleteMessageBatch(isA(DeleteMessageBatchRequest.class));
+		assertEquals(0, referenceStore.getReferenceCount(S3_BUCKET_NAME, s3Key));
+		assertFalse(referenceStore.isBeingDeleted(S3_BUCKET_NAME, s3Key));
+	}
+
+	@Test
+	public void testSendDoesNotReuseContentAddressedPayloadBeingDeleted() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		InMemoryPayloadReferenceStore referenceStore = new InMemoryPayloadReferenceStore();
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withPayloadReferenceStore(referenceStore));
+		String messageBody = generateString(SQS_SIZE_LIMIT + 1);
+		when(s3.doesObjectExist(eq(S3_BUCKET_NAME), anyString())).thenReturn(true);
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		String s3Key = MessageS3PointerCodec.decode(sendRequest.getValue().getMessageBody()).getS3Key();
+		// Another consumer released the last reference and is deleting the
+		// object.
+		assertEquals(0, referenceStore.removeReference(S3_BUCKET_NAME, s3Key));
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+		verify(sqsClient, times(2)).sendMessage(sendRequest.capture());
+		String otherS3Key = MessageS3PointerCodec.decode(sendRequest.getValue().getMessageBody()).getS3Key();
+		assertFalse(s3Key.equals(otherS3Key));
+		verify(s3, times(2)).putObject(isA(PutObjectRequest.class));
+		assertTrue(referenceStore.isBeingDeleted(S3_BUCKET_NAME, s3Key));
+	}
+
+	@Test
+	public void testPayloadCacheMovesEvictedPayloadsToDisk() throws Exception {
+		File diskDirectory = temporaryFolder.newFolder();
+		PayloadCache payloadCache = new PayloadCache(10, diskDirectory, 10);
+		payloadCache.put(S3_BUCKET_NAME, "a", new byte[6]);
+		payloadCache.put(S3_BUCKET_NAME, "b", new byte[6]);
+		assertEquals(6, payloadCache.getHeapSize());
+		assertEquals(6, payloadCache.getDiskSize());
+
+		// Reading "a" from disk moves it back to the heap and "b" to disk.
+		assertEquals(6, payloadCache.get(S3_BUCKET_NAME, "a").length);
+		assertEquals(1, payloadCache.getDiskHitCount());
+		// Adding "c" moves "a" to disk, which evicts "b" altogether.
+		payloadCache.put(S3_BUCKET_NAME, "c", new byte[6]);
+		assertEquals(1, payloadCache.getEvictionCount());
+		assertEquals(null, payloadCache.get(S3_BUCKET_NAME, "b"));
+		assertEquals(6, payloadCache.get(S3_BUCKET_NAME, "a").length);
+		assertEquals(2, payloadCache.getDiskHitCount());
+		assertEquals(0, payloadCache.getHeapHitCount());
+		assertEquals(1, diskDirectory.list().length);
+
+		payloadCache.invalidateAll();
+		assertEquals(0, diskDirectory.list().length);
+	}
+
+	@Test
+	public void testMetricsCollectorRecordsPayloadAndMessageMetrics() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		DefaultMetricsCollector metrics = new DefaultMetricsCollector();
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withMetricsCollector(metrics));
+		String messageBody = generateString(SQS_SIZE_LIMIT + 1);
+
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+		sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "small"));
+
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(2)).sendMessage(sendRequest.capture());
+		SendMessageRequest sent = sendRequest.getAllValues().get(0);
+		S3Object s3Object = new S3Object();
+		s3Object.setObjectContent(new ByteArrayInputStream(messageBody.getBytes(StandardCharsets.UTF_8)));
+		when(s3.getObject(isA(GetObjectRequest.class))).thenReturn(s3Object);
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody(sent.getMessageBody()).withReceiptHandle("receipt")
+						.withMessageAttributes(sent.getMessageAttributes())));
+		Message received = sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages().get(0);
+
+		AmazonServiceException accessDenied = new AmazonServiceException("Access Denied");
+		accessDenied.setErrorCode("AccessDenied");
+		doThrow(accessDenied).when(s3).deleteObject(anyString(), anyString());
+		try {
+			sqsExtended.deleteMessage(SQS_QUEUE_URL, received.getReceiptHandle());
+			fail("The payload deletion should have failed.");
+		} catch (AmazonServiceException e) {
+			// Expected.
+		}
+
+		assertEquals(1, metrics.getLatencyHistogram(MetricsCollector.Operation.PAYLOAD_PUT).getCount());
+		assertEquals(1, metrics.getLatencyHistogram(MetricsCollector.Operation.PAYLOAD_GET).getCount());
+		assertEquals(0, metrics.getLatencyHistogram(MetricsCollector.Operation.PAYLOAD_DELETE).getCount());
+		assertEquals(2, metrics.getLatencyHistogram(MetricsCollector.Operation.SEND).getCount());
+		assertEquals(1, metrics.getLatencyHistogram(MetricsCollector.Operation.RECEIVE).getCount());
+		assertEquals(SQS_SIZE_LIMIT + 1, metrics.getBytesOffloaded());
+		assertEquals(SQS_SIZE_LIMIT + 1, metrics.getBytesFetched());
+		assertEquals(2, metrics.getMessagesSent(SQS_QUEUE_URL));
+		assertEquals(0.5, metrics.getOffloadRatio(SQS_QUEUE_URL), 0);
+		assertEquals(1, metrics.getErrorCount(MetricsCollector.Operation.PAYLOAD_DELETE, "AccessDenied"));
+	}
+
+	@Test
+	public void testLatencyHistogramReportsPercentilesWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500, histogram.getMean(), 0.001);
+		long p50 = histogram.getValueAtPercentile(50);
+		assertTrue(p50 >= 500000 && p50 <= 500000 + 500000 / 16);
+		long p99 = histogram.getValueAtPercentile(99);
+		assertTrue(p99 >= 990000 && p99 <= 990000 + 990000 / 16);
+		assertEquals(1000000, histogram.getValueAtPercentile(100));
+	}
+
     @Test
     public void testSendMessageWithLargePayloadSupportDisabled() {
         int messageLength = 300000;
@@ -129,6 +577,269 @@ public class AmazonSQSExtendedClientTest {
         verify(s3, times(1)).putObject(isA(PutObjectRequest.class));
     }
 
+	@Test
+	public void testSendMessageFromStreamWithKnownLength() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		byte[] payload = generateString(1000).getBytes(StandardCharsets.UTF_8);
+
+		sqsExtended.sendMessage(SQS_QUEUE_URL, new ByteArrayInputStream(payload),
+				payload.length);
+
+		ArgumentCaptor<PutObjectRequest> putRequest = ArgumentCaptor.forClass(PutObjectRequest.class);
+		verify(s3, times(1)).putObject(putRequest.capture());
+		assertEquals(payload.length, putRequest.getValue().getMetadata().getContentLength());
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		assertEquals("1000", sendRequest.getValue().getMessageAttributes()
+				.get(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME).getStringValue());
+		assertTrue(sendRequest.getValue().getMessageBody().contains(putRequest.getValue().getKey()));
+	}
+
+	@Test
+	public void testSendMessageFromStreamWithKnownLengthAboveThresholdUsesMultipartUpload() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		int partSize = SQSExtendedClientConstants.MIN_MULTIPART_UPLOAD_PART_SIZE;
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withMultipartUploadThreshold(partSize)
+				.withMultipartUploadPartSize(partSize));
+		when(s3.initiateMultipartUpload(isA(InitiateMultipartUploadRequest.class))).thenReturn(
+				new InitiateMultipartUploadResult());
+		UploadPartResult uploadPartResult = new UploadPartResult();
+		uploadPartResult.setETag("etag");
+		when(s3.uploadPart(isA(UploadPartRequest.class))).thenReturn(uploadPartResult);
+		int payloadLength = partSize + 1;
+		// Bytes after the payload are left in the stream.
+		ByteArrayInputStream content = new ByteArrayInputStream(new byte[payloadLength + 10]);
+
+		sqsExtended.sendMessage(SQS_QUEUE_URL, content, payloadLength);
+
+		verify(s3, never()).putObject(isA(PutObjectRequest.class));
+		ArgumentCaptor<UploadPartRequest> uploadPartRequest = ArgumentCaptor.forClass(UploadPartRequest.class);
+		verify(s3, times(2)).uploadPart(uploadPartRequest.capture());
+		assertEquals(1, uploadPartRequest.getAllValues().get(1).getPartSize());
+		verify(s3, times(1)).completeMultipartUpload(isA(CompleteMultipartUploadRequest.class));
+		assertEquals(10, content.available());
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		assertEquals(Integer.toString(payloadLength), sendRequest.getValue().getMessageAttributes()
+				.get(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME).getStringValue());
+	}
+
+	@Test
+	public void testSendMessageFromStreamWithUnknownLengthUsesMultipartUpload() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		when(s3.initiateMultipartUpload(isA(InitiateMultipartUploadRequest.class))).thenReturn(
+				new InitiateMultipartUploadResult());
+		UploadPartResult uploadPartResult = new UploadPartResult();
+		uploadPartResult.setETag("etag");
+		when(s3.uploadPart(isA(UploadPartRequest.class))).thenReturn(uploadPartResult);
+		int payloadLength = 2 * SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PART_SIZE + 1;
+
+		sqsExtended.sendMessage(SQS_QUEUE_URL, new ByteArrayInputStream(new byte[payloadLength]));
+
+		verify(s3, never()).putObject(isA(PutObjectRequest.class));
+		verify(s3, times(3)).uploadPart(isA(UploadPartRequest.class));
+		verify(s3, times(1)).completeMultipartUpload(isA(CompleteMultipartUploadRequest.class));
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+		assertEquals(Integer.toString(payloadLength), sendRequest.getValue().getMessageAttributes()
+				.get(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME).getStringValue());
+	}
+
+	@Test
+	public void testSendMessageFromStreamAbortsFailedMultipartUpload() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		when(s3.initiateMultipartUpload(isA(InitiateMultipartUploadRequest.class))).thenReturn(
+				new InitiateMultipartUploadResult());
+		when(s3.uploadPart(isA(UploadPartRequest.class))).thenThrow(new AmazonServiceException("part failed"));
+
+		try {
+			sqsExtended.sendMessage(SQS_QUEUE_URL, new ByteArrayInputStream(
+					new byte[SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PART_SIZE]));
+			fail("Expected the failed upload to be reported.");
+		} catch (AmazonServiceException e) {
+			// expected
+		}
+
+		verify(s3, times(1)).abortMultipartUpload(isA(AbortMultipartUploadRequest.class));
+		verify(sqsClient, never()).sendMessage(isA(SendMessageRequest.class));
+	}
+
+	@Test
+	public void testInterruptedPartRetryAbortsMultipartUpload() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		when(s3.initiateMultipartUpload(isA(InitiateMultipartUploadRequest.class))).thenReturn(
+				new InitiateMultipartUploadResult());
+		when(s3.uploadPart(isA(UploadPartRequest.class))).thenAnswer(new Answer<UploadPartResult>() {
+			public UploadPartResult answer(InvocationOnMock invocation) {
+				// The thread is interrupted before the part is retried.
+				Thread.currentThread().interrupt();
+				throw new AmazonServiceException("transient failure");
+			}
+		});
+		final AtomicBoolean abortedWhileInterrupted = new AtomicBoolean(false);
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) {
+				// The Amazon S3 client does not send requests from an
+				// interrupted thread.
+				abortedWhileInterrupted.set(Thread.currentThread().isInterrupted());
+				return null;
+			}
+		}).when(s3).abortMultipartUpload(isA(AbortMultipartUploadRequest.class));
+
+		try {
+			sqsExtended.sendMessage(SQS_QUEUE_URL, new ByteArrayInputStream(
+					new byte[SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PART_SIZE]));
+			fail("Expected the interrupted upload to be reported.");
+		} catch (AmazonClientException e) {
+			assertTrue(e.getCause().getCause() instanceof InterruptedException);
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+
+		verify(s3, times(1)).uploadPart(isA(UploadPartRequest.class));
+		verify(s3, times(1)).abortMultipartUpload(isA(AbortMultipartUploadRequest.class));
+		assertFalse(abortedWhileInterrupted.get());
+		verify(sqsClient, never()).sendMessage(isA(SendMessageRequest.class));
+	}
+
+	@Test
+	public void testSendLargeMessageUsesParallelMultipartUploadAndRetriesParts() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		int partSize = SQSExtendedClientConstants.MIN_MULTIPART_UPLOAD_PART_SIZE;
+		when(s3.initiateMultipartUpload(isA(InitiateMultipartUploadRequest.class))).thenReturn(
+				new InitiateMultipartUploadResult());
+		final AtomicBoolean failedOnce = new AtomicBoolean(false);
+		when(s3.uploadPart(isA(UploadPartRequest.class))).thenAnswer(new Answer<UploadPartResult>() {
+			public UploadPartResult answer(InvocationOnMock invocation) {
+				UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+				if (request.getPartNumber() == 2 && failedOnce.compareAndSet(false, true)) {
+					throw new AmazonServiceException("transient failure");
+				}
+				UploadPartResult result = new UploadPartResult();
+				result.setPartNumber(request.getPartNumber());
+				result.setETag("etag-" + request.getPartNumber());
+				return result;
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+					.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withS3UploadExecutor(executor)
+					.withMultipartUploadThreshold(partSize).withMultipartUploadPartSize(partSize)
+					.withMultipartUploadParallelism(2);
+			AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration);
+
+			sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateString(2 * partSize + 10)));
+		} finally {
+			executor.shutdown();
+		}
+
+		verify(s3, never()).putObject(isA(PutObjectRequest.class));
+		verify(s3, times(4)).uploadPart(isA(UploadPartRequest.class));
+		ArgumentCaptor<CompleteMultipartUploadRequest> completeRequest = ArgumentCaptor
+				.forClass(CompleteMultipartUploadRequest.class);
+		verify(s3, times(1)).completeMultipartUpload(completeRequest.capture());
+		List<PartETag> partETags = completeRequest.getValue().getPartETags();
+		assertEquals(3, partETags.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i + 1, partETags.get(i).getPartNumber());
+			assertEquals("etag-" + (i + 1), partETags.get(i).getETag());
+		}
+		verify(sqsClient, times(1)).sendMessage(isA(SendMessageRequest.class));
+	}
+
+	@Test
+	public void testConcurrentSendMessageCallsAreBatched() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		final AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withSendBatchLingerMillis(10000)
+				.withSendBatchMaxEntries(3));
+		when(sqsClient.sendMessageBatch(isA(SendMessageBatchRequest.class))).thenAnswer(
+				new Answer<SendMessageBatchResult>() {
+					public SendMessageBatchResult answer(InvocationOnMock invocation) {
+						SendMessageBatchRequest request = (SendMessageBatchRequest) invocation.getArguments()[0];
+						SendMessageBatchResult result = new SendMessageBatchResult();
+						for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+							if (entry.getMessageBody().equals("rejected")) {
+								result.withFailed(new BatchResultErrorEntry().withId(entry.getId())
+										.withCode("InvalidMessageContents").withSenderFault(true));
+							} else {
+								result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId())
+										.withMessageId("id-" + entry.getMessageBody()));
+							}
+						}
+						return result;
+					}
+				});
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		List<Future<SendMessageResult>> results = new ArrayList<Future<SendMessageResult>>();
+		for (final String messageBody : Arrays.asList("small", "rejected", generateString(SQS_SIZE_LIMIT + 1))) {
+			results.add(executor.submit(new Callable<SendMessageResult>() {
+				public SendMessageResult call() {
+					return sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+				}
+			}));
+		}
+
+		assertEquals("id-small", results.get(0).get(5, TimeUnit.SECONDS).getMessageId());
+		try {
+			results.get(1).get(5, TimeUnit.SECONDS);
+			fail("The rejected message must fail.");
+		} catch (ExecutionException e) {
+			assertEquals("InvalidMessageContents", ((AmazonServiceException) e.getCause()).getErrorCode());
+		}
+		assertTrue(results.get(2).get(5, TimeUnit.SECONDS).getMessageId().startsWith("id-"));
+		executor.shutdown();
+
+		verify(sqsClient, never()).sendMessage(isA(SendMessageRequest.class));
+		verify(sqsClient, times(1)).sendMessageBatch(isA(SendMessageBatchRequest.class));
+		verify(s3, times(1)).putObject(isA(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testShutdownSendsOpenBatchAndStopsBatching() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		final AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withSendBatchLingerMillis(60000));
+		when(sqsClient.sendMessageBatch(isA(SendMessageBatchRequest.class))).thenReturn(new SendMessageBatchResult()
+				.withSuccessful(new SendMessageBatchResultEntry().withId("0").withMessageId("batched")));
+		when(sqsClient.sendMessage(isA(SendMessageRequest.class))).thenReturn(new SendMessageResult()
+				.withMessageId("direct"));
+		final List<SendMessageResult> results = new ArrayList<SendMessageResult>();
+		Thread sender = new Thread() {
+			@Override
+			public void run() {
+				results.add(sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "small")));
+			}
+		};
+		sender.start();
+		// The sender waits for the linger time of its batch.
+		long deadline = System.currentTimeMillis() + 5000;
+		while (sender.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+
+		sqsExtended.shutdown();
+		sender.join(5000);
+
+		assertEquals("batched", results.get(0).getMessageId());
+		verify(sqsClient, times(1)).sendMessageBatch(isA(SendMessageBatchRequest.class));
+		assertEquals("direct", sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "small"))
+				.getMessageId());
+		verify(sqsClient, times(1)).sendMessageBatch(isA(SendMessageBatchRequest.class));
+	}
+
 	@Test
 	public void testMessageBatch() {
 
@@ -145,7 +856,604 @@ public class AmazonSQSExtendedClientTest {
 
 		SendMessageBatchRequest batchRequest = new SendMessageBatchRequest(SQS_QUEUE_URL, batchEntries);
         sqs.sendMessageBatch(batchRequest);
-		verify(s3, times(8)).putObject(isA(PutObjectRequest.class));
+		// The 100 KB and 200 KB entries do not fit into one request together.
+		verify(s3, times(9)).putObject(isA(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testMessageBatchOffloadsLargestEntriesToFitRequestSizeLimit() throws Exception {
+		List<SendMessageBatchRequestEntry> batchEntries = new ArrayList<SendMessageBatchRequestEntry>();
+		int[] messageLengths = { 100000, 120000, 50000 };
+		for (int i = 0; i < messageLengths.length; i++) {
+			batchEntries.add(new SendMessageBatchRequestEntry("entry_" + i, generateString(messageLengths[i])));
+		}
+
+		sqs.sendMessageBatch(new SendMessageBatchRequest(SQS_QUEUE_URL, batchEntries));
+
+		// Each entry is under the threshold, but together they are not.
+		verify(s3, times(1)).putObject(isA(PutObjectRequest.class));
+		assertEquals(messageLengths[0], batchEntries.get(0).getMessageBody().length());
+		assertTrue(batchEntries.get(1).getMessageAttributes().containsKey(
+				SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+		MessageS3PointerCodec.decode(batchEntries.get(1).getMessageBody());
+		assertEquals(messageLengths[2], batchEntries.get(2).getMessageBody().length());
+	}
+
+	@Test
+	public void testMessageBatchWithS3UploadExecutor() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+					.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withS3UploadExecutor(executor);
+			AmazonSQS sqsExtended = spy(new AmazonSQSExtendedClient(mock(AmazonSQSClient.class),
+					extendedClientConfiguration));
+
+			SendMessageBatchRequest batchRequest = new SendMessageBatchRequest(SQS_QUEUE_URL,
+					generateBatchEntries(10, SQS_SIZE_LIMIT + 1));
+			sqsExtended.sendMessageBatch(batchRequest);
+
+			verify(s3, times(10)).putObject(isA(PutObjectRequest.class));
+			for (SendMessageBatchRequestEntry entry : batchRequest.getEntries()) {
+				assertTrue(entry.getMessageAttributes().containsKey(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testMessageBatchUploadFailureDeletesUploadedPayloads() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		when(s3.putObject(isA(PutObjectRequest.class))).thenReturn(null)
+				.thenThrow(new AmazonServiceException("put failed"));
+		ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration);
+		List<SendMessageBatchRequestEntry> batchEntries = generateBatchEntries(3, SQS_SIZE_LIMIT + 1);
+		String messageBody = batchEntries.get(0).getMessageBody();
+
+		try {
+			sqsExtended.sendMessageBatch(new SendMessageBatchRequest(SQS_QUEUE_URL, batchEntries));
+			fail("Expected the failed upload to be reported.");
+		} catch (AmazonServiceException e) {
+			// expected
+		}
+
+		verify(s3, times(2)).putObject(isA(PutObjectRequest.class));
+		verify(s3, times(1)).deleteObject(eq(S3_BUCKET_NAME), anyString());
+		verify(sqsClient, never()).sendMessageBatch(isA(SendMessageBatchRequest.class));
+		// The entries can be sent again.
+		for (SendMessageBatchRequestEntry entry : batchEntries) {
+			assertEquals(messageBody, entry.getMessageBody());
+			assertTrue(entry.getMessageAttributes().isEmpty());
+		}
+	}
+
+	@Test
+	public void testMessageBatchOffloadFailureRestoresEntries() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		when(s3.putObject(isA(PutObjectRequest.class))).thenThrow(new AmazonServiceException("put failed"));
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		List<SendMessageBatchRequestEntry> batchEntries = new ArrayList<SendMessageBatchRequestEntry>();
+		List<String> messageBodies = new ArrayList<String>();
+		for (int messageLength : new int[] { 100000, 120000, 50000 }) {
+			String messageBody = generateString(messageLength);
+			messageBodies.add(messageBody);
+			batchEntries.add(new SendMessageBatchRequestEntry("entry_" + messageLength, messageBody)
+					.addMessageAttributesEntry("attribute", new MessageAttributeValue().withDataType("String")
+							.withStringValue("value")));
+		}
+
+		try {
+			sqsExtended.sendMessageBatch(new SendMessageBatchRequest(SQS_QUEUE_URL, batchEntries));
+			fail("Expected the failed upload to be reported.");
+		} catch (AmazonServiceException e) {
+			// expected
+		}
+
+		verify(sqsClient, never()).sendMessageBatch(isA(SendMessageBatchRequest.class));
+		for (int i = 0; i < batchEntries.size(); i++) {
+			assertEquals(messageBodies.get(i), batchEntries.get(i).getMessageBody());
+			assertEquals(1, batchEntries.get(i).getMessageAttributes().size());
+			assertEquals("value", batchEntries.get(i).getMessageAttributes().get("attribute").getStringValue());
+		}
+	}
+
+	@Test
+	public void testReceiveMessageWithS3DownloadExecutorKeepsOrder() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 5; i++) {
+			String s3Key = "key-" + i;
+			messages.add(createS3PointerMessage(s3Key, "receipt-" + i));
+			S3Object s3Object = new S3Object();
+			s3Object.setObjectContent(new ByteArrayInputStream(("payload-" + i).getBytes(StandardCharsets.UTF_8)));
+			when(s3.getObject(argThat(hasS3Key(s3Key)))).thenReturn(s3Object);
+		}
+		messages.add(2, new Message().withBody("inline").withReceiptHandle("receipt-inline"));
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+				new ReceiveMessageResult().withMessages(messages));
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+					.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withS3DownloadExecutor(executor);
+			AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration);
+
+			List<Message> received = sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages();
+
+			assertEquals(6, received.size());
+			assertEquals("payload-0", received.get(0).getBody());
+			assertEquals("payload-1", received.get(1).getBody());
+			assertEquals("inline", received.get(2).getBody());
+			assertEquals("payload-2", received.get(3).getBody());
+			assertEquals("payload-4", received.get(5).getBody());
+			assertFalse(received.get(0).getMessageAttributes().containsKey(
+					SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+			assertTrue(received.get(0).getReceiptHandle().endsWith("receipt-0"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testReceiveLargeMessageDownloadsByteRangesInParallel() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		final byte[] payload = "0123456789abcdefghij\u00e9xyz".getBytes(StandardCharsets.UTF_8);
+		Message message = createS3PointerMessage("key", "receipt");
+		message.getMessageAttributes().get(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME).setStringValue(
+				Integer.toString(payload.length));
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+				new ReceiveMessageResult().withMessages(message));
+		when(s3.getObject(isA(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+			public S3Object answer(InvocationOnMock invocation) {
+				long[] range = ((GetObjectRequest) invocation.getArguments()[0]).getRange();
+				S3Object s3Object = new S3Object();
+				s3Object.setObjectContent(new ByteArrayInputStream(payload, (int) range[0],
+						(int) (range[1] - range[0] + 1)));
+				return s3Object;
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+					.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withS3DownloadExecutor(executor)
+					.withRangedDownloadThreshold(10).withRangedDownloadPartSize(10);
+			AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration);
+
+			List<Message> received = sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages();
+
+			assertEquals(new String(payload, StandardCharsets.UTF_8), received.get(0).getBody());
+		} finally {
+			executor.shutdown();
+		}
+		verify(s3, times(3)).getObject(isA(GetObjectRequest.class));
+	}
+
+	@Test
+	public void testFileSystemPayloadStoreStoresReadsAndDeletesPayloads() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		String messageBody = generateString(SQS_SIZE_LIMIT + 1);
+		ArgumentCaptor<SendMessageRequest> sendRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+		Path rootDirectory = temporaryFolder.getRoot().toPath();
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+					.withLargePayloadSupportEnabled(new FileSystemPayloadStore(rootDirectory), S3_BUCKET_NAME)
+					.withS3DownloadExecutor(executor).withRangedDownloadThreshold(1024)
+					.withRangedDownloadPartSize(100000);
+			AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration);
+
+			sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+			verify(sqsClient, times(1)).sendMessage(sendRequest.capture());
+			String s3Key = MessageS3PointerCodec.decode(sendRequest.getValue().getMessageBody()).getS3Key();
+			Path payloadFile = rootDirectory.resolve(S3_BUCKET_NAME).resolve(s3Key);
+			assertEquals(messageBody.length(), Files.size(payloadFile));
+
+			Message message = new Message().withBody(sendRequest.getValue().getMessageBody())
+					.withMessageAttributes(sendRequest.getValue().getMessageAttributes()).withReceiptHandle("receipt");
+			when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+					new ReceiveMessageResult().withMessages(message));
+			Message received = sqsExtended.receiveMessage(SQS_QUEUE_URL).getMessages().get(0);
+			assertEquals(messageBody, received.getBody());
+
+			sqsExtended.deleteMessage(SQS_QUEUE_URL, received.getReceiptHandle());
+			assertFalse(Files.exists(payloadFile));
+			ArgumentCaptor<DeleteMessageRequest> deleteRequest = ArgumentCaptor.forClass(DeleteMessageRequest.class);
+			verify(sqsClient, times(1)).deleteMessage(deleteRequest.capture());
+			assertEquals("receipt", deleteRequest.getValue().getReceiptHandle());
+		} finally {
+			executor.shutdown();
+		}
+		verify(s3, never()).putObject(isA(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testReceiveMessageWithSpooledPayloadsMapsPayloadsWithinQuota() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		List<Message> messages = new ArrayList<Message>();
+		messages.add(createS3PointerMessage("key1", "receipt1"));
+		messages.add(new Message().withBody("inline").withReceiptHandle("receipt-inline"));
+		messages.add(createS3PointerMessage("key2", "receipt2"));
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+				new ReceiveMessageResult().withMessages(messages));
+		InMemoryPayloadStore payloadStore = new InMemoryPayloadStore();
+		payloadStore.putPayload(S3_BUCKET_NAME, "key1", "first payload".getBytes(StandardCharsets.UTF_8));
+		payloadStore.putPayload(S3_BUCKET_NAME, "key2", "second payload".getBytes(StandardCharsets.UTF_8));
+		File spoolDirectory = temporaryFolder.newFolder();
+
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(payloadStore, S3_BUCKET_NAME)
+						.withPayloadSpoolDirectory(spoolDirectory).withPayloadSpoolQuota(20));
+		List<SpooledMessage> received = sqsExtended.receiveMessageWithSpooledPayloads(SQS_QUEUE_URL);
+
+		// The second payload does not fit into the quota, so its message is released.
+		assertEquals(2, received.size());
+		ArgumentCaptor<ChangeMessageVisibilityBatchRequest> releaseRequest = ArgumentCaptor
+				.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(sqsClient, times(1)).changeMessageVisibilityBatch(releaseRequest.capture());
+		assertEquals("receipt2", releaseRequest.getValue().getEntries().get(0).getReceiptHandle());
+		assertEquals(1, spoolDirectory.list().length);
+
+		SpooledMessage spooledMessage = received.get(0);
+		assertTrue(spooledMessage.isPayloadSpooled());
+		assertEquals(13, spooledMessage.getPayloadSize());
+		ByteBuffer payload = spooledMessage.getPayloadBuffer();
+		assertTrue(payload.isReadOnly());
+		byte[] content = new byte[payload.remaining()];
+		payload.get(content);
+		assertEquals("first payload", new String(content, StandardCharsets.UTF_8));
+		assertFalse(received.get(1).isPayloadSpooled());
+		assertEquals("inline", StandardCharsets.UTF_8.decode(received.get(1).getPayloadBuffer()).toString());
+
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, spooledMessage.getMessage().getReceiptHandle());
+		assertEquals(0, spoolDirectory.list().length);
+		assertFalse(payloadStore.doesPayloadExist(S3_BUCKET_NAME, "key1"));
+		assertTrue(payloadStore.doesPayloadExist(S3_BUCKET_NAME, "key2"));
+	}
+
+	@Test
+	public void testReceiveMessageWithPayloadStreamsOpensS3ObjectLazily() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		List<Message> messages = new ArrayList<Message>();
+		messages.add(createS3PointerMessage("key", "receipt"));
+		messages.add(new Message().withBody("inline").withReceiptHandle("receipt-inline"));
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+				new ReceiveMessageResult().withMessages(messages));
+		S3Object s3Object = new S3Object();
+		s3Object.setObjectContent(new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8)));
+		when(s3.getObject(argThat(hasS3Key("key")))).thenReturn(s3Object);
+
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		List<StreamedMessage> received = sqsExtended.receiveMessageWithPayloadStreams(SQS_QUEUE_URL);
+
+		assertEquals(2, received.size());
+		verify(s3, never()).getObject(isA(GetObjectRequest.class));
+		StreamedMessage s3Message = received.get(0);
+		assertTrue(s3Message.isPayloadInS3());
+		assertEquals(1, s3Message.getPayloadSize());
+		assertTrue(s3Message.getMessage().getReceiptHandle().endsWith("receipt"));
+		assertFalse(s3Message.getMessage().getMessageAttributes().containsKey(
+				SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME));
+		assertEquals("payload", readFully(s3Message.getPayloadStream()));
+		s3Message.close();
+		verify(s3, times(1)).getObject(isA(GetObjectRequest.class));
+
+		StreamedMessage inlineMessage = received.get(1);
+		assertFalse(inlineMessage.isPayloadInS3());
+		assertEquals("receipt-inline", inlineMessage.getMessage().getReceiptHandle());
+		assertEquals("inline", readFully(inlineMessage.getPayloadStream()));
+		inlineMessage.close();
+	}
+
+	@Test
+	public void testPrefetchedMessagesAreServedFromBufferAndReleasedOnShutdown() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withReceivePrefetchDepth(5)
+				.withReceivePrefetchVisibilityTimeout(60));
+		String s3Key = "prefetched-key";
+		S3Object s3Object = new S3Object();
+		s3Object.setObjectContent(new ByteArrayInputStream("large payload".getBytes(StandardCharsets.UTF_8)));
+		when(s3.getObject(argThat(hasS3Key(s3Key)))).thenReturn(s3Object);
+		final ReceiveMessageResult firstResult = new ReceiveMessageResult().withMessages(createS3PointerMessage(
+				s3Key, "receipt1"), new Message().withBody("small").withReceiptHandle("receipt2"), new Message()
+				.withBody("small").withReceiptHandle("receipt3"));
+		final AtomicBoolean firstReceive = new AtomicBoolean(true);
+		final CountDownLatch noMoreMessages = new CountDownLatch(1);
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenAnswer(
+				new Answer<ReceiveMessageResult>() {
+					public ReceiveMessageResult answer(InvocationOnMock invocation) {
+						if (firstReceive.getAndSet(false)) {
+							return firstResult;
+						}
+						// Stands in for a long poll which finds no messages
+						// until the pollers are interrupted on shutdown.
+						try {
+							noMoreMessages.await();
+						} catch (InterruptedException e) {
+							// The poller stops.
+						}
+						return new ReceiveMessageResult();
+					}
+				});
+
+		List<Message> messages = sqsExtended.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL)
+				.withWaitTimeSeconds(10)).getMessages();
+
+		assertEquals(1, messages.size());
+		assertEquals("large payload", messages.get(0).getBody());
+		ArgumentCaptor<ReceiveMessageRequest> receiveRequest = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+		verify(sqsClient, atLeastOnce()).receiveMessage(receiveRequest.capture());
+		assertEquals(Integer.valueOf(5), receiveRequest.getAllValues().get(0).getMaxNumberOfMessages());
+		assertEquals(Integer.valueOf(60), receiveRequest.getAllValues().get(0).getVisibilityTimeout());
+
+		sqsExtended.shutdown();
+
+		ArgumentCaptor<ChangeMessageVisibilityBatchRequest> releaseRequest = ArgumentCaptor
+				.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(sqsClient, times(1)).changeMessageVisibilityBatch(releaseRequest.capture());
+		List<ChangeMessageVisibilityBatchRequestEntry> released = releaseRequest.getValue().getEntries();
+		assertEquals(2, released.size());
+		assertEquals("receipt2", released.get(0).getReceiptHandle());
+		assertEquals(Integer.valueOf(0), released.get(1).getVisibilityTimeout());
+	}
+
+	@Test
+	public void testDeferredPayloadDeletionRetriesAfterAnUnexpectedException() throws Exception {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		when(s3.deleteObjects(isA(DeleteObjectsRequest.class))).thenThrow(new IllegalStateException("Bug"))
+				.thenReturn(null);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withDeferredPayloadDeletionEnabled(true));
+
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, embedS3Pointer("key1", "receipt1"));
+
+		// The failed batch is retried rather than stopping the deleter.
+		verify(s3, timeout(5000).times(2)).deleteObjects(isA(DeleteObjectsRequest.class));
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, embedS3Pointer("key2", "receipt2"));
+		verify(s3, timeout(5000).times(3)).deleteObjects(isA(DeleteObjectsRequest.class));
+		sqsExtended.shutdown();
+	}
+
+	@Test
+	public void testDeferredPayloadDeletionSpillsOnShutdownAndResumes() throws Exception {
+		File spillFile = new File(temporaryFolder.getRoot(), "pending-deletions");
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withDeferredPayloadDeletionEnabled(true)
+				.withPayloadDeletionSpillFile(spillFile);
+		when(s3.deleteObjects(isA(DeleteObjectsRequest.class))).thenThrow(new AmazonServiceException("S3 is down"));
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration);
+
+		sqsExtended.deleteMessage(SQS_QUEUE_URL, embedS3Pointer("key1", "receipt1"));
+
+		// The message is deleted before its payload.
+		ArgumentCaptor<DeleteMessageRequest> deleteRequest = ArgumentCaptor.forClass(DeleteMessageRequest.class);
+		verify(sqsClient, times(1)).deleteMessage(deleteRequest.capture());
+		assertEquals("receipt1", deleteRequest.getValue().getReceiptHandle());
+		verify(s3, never()).deleteObject(anyString(), anyString());
+		verify(s3, timeout(5000)).deleteObjects(isA(DeleteObjectsRequest.class));
+
+		sqsExtended.shutdown();
+		assertEquals(Arrays.asList(S3_BUCKET_NAME + "\tkey1"), Files.readAllLines(spillFile.toPath(),
+				StandardCharsets.UTF_8));
+
+		AmazonS3 recoveredS3 = mock(AmazonS3.class);
+		AmazonSQS recoveredClient = new AmazonSQSExtendedClient(sqsClient, extendedClientConfiguration
+				.withLargePayloadSupportEnabled(recoveredS3, S3_BUCKET_NAME));
+		ArgumentCaptor<DeleteObjectsRequest> deleteObjectsRequest = ArgumentCaptor
+				.forClass(DeleteObjectsRequest.class);
+		verify(recoveredS3, timeout(5000)).deleteObjects(deleteObjectsRequest.capture());
+		assertEquals("key1", deleteObjectsRequest.getValue().getKeys().get(0).getKey());
+		assertFalse(spillFile.exists());
+		recoveredClient.shutdown();
+	}
+
+	@Test
+	public void testDeleteMessageBatchUsesOneMultiObjectDeletePerBucket() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		when(sqsClient.deleteMessageBatch(isA(DeleteMessageBatchRequest.class))).thenReturn(
+				new DeleteMessageBatchResult());
+		DeleteError deleteError = new DeleteError();
+		deleteError.setKey("key-2");
+		deleteError.setCode("AccessDenied");
+		when(s3.deleteObjects(isA(DeleteObjectsRequest.class))).thenThrow(
+				new MultiObjectDeleteException(Arrays.asList(deleteError), new ArrayList<DeletedObject>()));
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+
+		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<DeleteMessageBatchRequestEntry>();
+		for (int i = 1; i <= 3; i++) {
+			entries.add(new DeleteMessageBatchRequestEntry("entry_" + i, embedS3Pointer("key-" + i, "receipt-" + i)));
+		}
+		entries.add(new DeleteMessageBatchRequestEntry("entry_inline", "receipt-inline"));
+
+		DeleteMessageBatchResult result = sqsExtended.deleteMessageBatch(SQS_QUEUE_URL, entries);
+
+		ArgumentCaptor<DeleteObjectsRequest> s3Request = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+		verify(s3, times(1)).deleteObjects(s3Request.capture());
+		assertEquals(3, s3Request.getValue().getKeys().size());
+		verify(s3, never()).deleteObject(anyString(), anyString());
+
+		ArgumentCaptor<DeleteMessageBatchRequest> sqsRequest = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+		verify(sqsClient, times(1)).deleteMessageBatch(sqsRequest.capture());
+		List<DeleteMessageBatchRequestEntry> deletedEntries = sqsRequest.getValue().getEntries();
+		assertEquals(3, deletedEntries.size());
+		assertEquals("receipt-1", deletedEntries.get(0).getReceiptHandle());
+		assertEquals("receipt-3", deletedEntries.get(1).getReceiptHandle());
+		assertEquals("receipt-inline", deletedEntries.get(2).getReceiptHandle());
+
+		assertEquals(1, result.getFailed().size());
+		assertEquals("entry_2", result.getFailed().get(0).getId());
+		assertEquals("AccessDenied", result.getFailed().get(0).getCode());
+	}
+
+	@Test
+	public void testReceiveMessageWithVisibilityHeartbeatUsesHeartbeatTimeout() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient, new ExtendedClientConfiguration()
+				.withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME).withVisibilityHeartbeatTimeout(2)
+				.withVisibilityHeartbeatMaxLifetime(3));
+		when(sqsClient.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult()
+				.withMessages(new Message().withBody("small").withReceiptHandle("receipt1")));
+
+		sqsExtended.receiveMessage(SQS_QUEUE_URL);
+
+		ArgumentCaptor<ReceiveMessageRequest> receiveRequest = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+		verify(sqsClient).receiveMessage(receiveRequest.capture());
+		assertEquals(Integer.valueOf(2), receiveRequest.getValue().getVisibilityTimeout());
+		sqsExtended.shutdown();
+	}
+
+	@Test
+	public void testVisibilityHeartbeatExtendsInFlightMessagesUntilUntrackedOrMaxLifetime() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		when(sqsClient.changeMessageVisibilityBatch(isA(ChangeMessageVisibilityBatchRequest.class))).thenReturn(
+				new ChangeMessageVisibilityBatchResult());
+		AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+		// The heartbeat is driven by the test instead of a background thread.
+		VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(sqsExtended, 2, 3,
+				mock(ScheduledExecutorService.class));
+		String largeReceiptHandle = embedS3Pointer("in-flight-key", "receipt1");
+		heartbeat.track(SQS_QUEUE_URL, Arrays.asList(new Message().withReceiptHandle(largeReceiptHandle),
+				new Message().withReceiptHandle("receipt2")), 0, 2);
+
+		heartbeat.extendDueMessages(TimeUnit.MILLISECONDS.toNanos(500));
+		verify(sqsClient, never()).changeMessageVisibilityBatch(isA(ChangeMessageVisibilityBatchRequest.class));
+
+		heartbeat.extendDueMessages(TimeUnit.SECONDS.toNanos(1));
+		ArgumentCaptor<ChangeMessageVisibilityBatchRequest> extendRequest = ArgumentCaptor
+				.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(sqsClient, times(1)).changeMessageVisibilityBatch(extendRequest.capture());
+		List<ChangeMessageVisibilityBatchRequestEntry> extended = extendRequest.getValue().getEntries();
+		assertEquals(2, extended.size());
+		for (ChangeMessageVisibilityBatchRequestEntry entry : extended) {
+			assertTrue(entry.getReceiptHandle().equals("receipt1") || entry.getReceiptHandle().equals("receipt2"));
+			assertEquals(Integer.valueOf(2), entry.getVisibilityTimeout());
+		}
+
+		heartbeat.untrack(largeReceiptHandle);
+		heartbeat.extendDueMessages(TimeUnit.SECONDS.toNanos(2));
+		verify(sqsClient, times(2)).changeMessageVisibilityBatch(extendRequest.capture());
+		extended = extendRequest.getValue().getEntries();
+		assertEquals(1, extended.size());
+		assertEquals("receipt2", extended.get(0).getReceiptHandle());
+		// The last extension ends at the maximum lifetime.
+		assertEquals(Integer.valueOf(1), extended.get(0).getVisibilityTimeout());
+
+		// The second message is dropped once its maximum lifetime is reached.
+		heartbeat.extendDueMessages(TimeUnit.MILLISECONDS.toNanos(2500));
+		verify(sqsClient, times(2)).changeMessageVisibilityBatch(isA(ChangeMessageVisibilityBatchRequest.class));
+		assertEquals(0, heartbeat.getInFlightMessageCount());
+		heartbeat.shutdown();
+	}
+
+	@Test
+	public void testChangeMessageVisibilityRestoresOriginalReceiptHandles() {
+		AmazonSQS sqsClient = mock(AmazonSQSClient.class);
+		AmazonSQS sqsExtended = new AmazonSQSExtendedClient(sqsClient,
+				new ExtendedClientConfiguration().withLargePayloadSupportEnabled(s3, S3_BUCKET_NAME));
+
+		sqsExtended.changeMessageVisibility(SQS_QUEUE_URL, embedS3Pointer("key-1", "receipt-1"), 60);
+		List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>();
+		entries.add(new ChangeMessageVisibilityBatchRequestEntry("legacy", embedS3Pointer("key-2", "receipt-2")));
+		entries.add(new ChangeMessageVisibilityBatchRequestEntry("compact", ReceiptHandleCodec.encode("receipt-3",
+				S3_BUCKET_NAME, "key-3", true)));
+		entries.add(new ChangeMessageVisibilityBatchRequestEntry("inline", "receipt-inline"));
+		sqsExtended.changeMessageVisibilityBatch(SQS_QUEUE_URL, entries);
+
+		ArgumentCaptor<ChangeMessageVisibilityRequest> request = ArgumentCaptor
+				.forClass(ChangeMessageVisibilityRequest.class);
+		verify(sqsClient, times(1)).changeMessageVisibility(request.capture());
+		assertEquals("receipt-1", request.getValue().getReceiptHandle());
+		assertEquals(Integer.valueOf(60), request.getValue().getVisibilityTimeout());
+		ArgumentCaptor<ChangeMessageVisibilityBatchRequest> batchRequest = ArgumentCaptor
+				.forClass(ChangeMessageVisibilityBatchRequest.class);
+		verify(sqsClient, times(1)).changeMessageVisibilityBatch(batchRequest.capture());
+		List<ChangeMessageVisibilityBatchRequestEntry> sent = batchRequest.getValue().getEntries();
+		assertEquals("receipt-2", sent.get(0).getReceiptHandle());
+		assertEquals("receipt-3", sent.get(1).getReceiptHandle());
+		assertEquals("receipt-inline", sent.get(2).getReceiptHandle());
+		verify(s3, never()).deleteObject(anyString(), anyString());
+	}
+
+	@Test
+	public void testReceiptHandleCodecReadsBothFormats() {
+		String s3Key = "folder/key" + SQSExtendedClientConstants.S3_KEY_MARKER + ":1";
+		for (boolean compact : new boolean[] { false, true }) {
+			String receiptHandle = ReceiptHandleCodec.encode("receipt", S3_BUCKET_NAME, s3Key, compact);
+			ReceiptHandleCodec.S3ReceiptHandle decoded = ReceiptHandleCodec.decode(receiptHandle);
+			if (compact) {
+				assertEquals(ReceiptHandleCodec.COMPACT_FORMAT_VERSION, decoded.getVersion());
+				assertEquals(s3Key, decoded.getS3Key());
+				assertEquals("receipt", decoded.getOriginalReceiptHandle());
+			} else {
+				// The legacy format cannot carry a key which contains its
+				// marker.
+				assertEquals(ReceiptHandleCodec.LEGACY_FORMAT_VERSION, decoded.getVersion());
+			}
+			assertEquals(S3_BUCKET_NAME, decoded.getS3BucketName());
+		}
+		assertEquals("key", ReceiptHandleCodec.decode(embedS3Pointer("key", "receipt")).getS3Key());
+		assertEquals("receipt", ReceiptHandleCodec.getOriginalReceiptHandle("receipt"));
+		String truncated = ReceiptHandleCodec.encode("receipt", S3_BUCKET_NAME, "key", true).substring(0, 20);
+		assertEquals(null, ReceiptHandleCodec.decode(truncated));
+		assertEquals(null, ReceiptHandleCodec.decode(SQSExtendedClientConstants.S3_RECEIPT_HANDLE_MARKER
+				+ "3:4:name3:keyreceipt"));
+	}
+
+	private String embedS3Pointer(String s3Key, String receiptHandle) {
+		return SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + S3_BUCKET_NAME
+				+ SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + SQSExtendedClientConstants.S3_KEY_MARKER + s3Key
+				+ SQSExtendedClientConstants.S3_KEY_MARKER + receiptHandle;
+	}
+
+	private Message createS3PointerMessage(String s3Key, String receiptHandle) throws Exception {
+		String pointer = "[\"com.amazon.sqs.javamessaging.MessageS3Pointer\",{\"s3BucketName\":\"" + S3_BUCKET_NAME
+				+ "\",\"s3Key\":\"" + s3Key + "\"}]";
+		MessageAttributeValue sizeAttribute = new MessageAttributeValue().withDataType("Number").withStringValue("1");
+		return new Message().withBody(pointer).withReceiptHandle(receiptHandle)
+				.addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, sizeAttribute);
+	}
+
+	private static String readFully(InputStream in) throws Exception {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readBytes(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static ArgumentMatcher<GetObjectRequest> hasS3Key(final String s3Key) {
+		return new ArgumentMatcher<GetObjectRequest>() {
+			@Override
+			public boolean matches(Object argument) {
+				return argument instanceof GetObjectRequest && s3Key.equals(((GetObjectRequest) argument).getKey());
+			}
+		};
+	}
+
+	private List<SendMessageBatchRequestEntry> generateBatchEntries(int count, int messageLength) {
+		List<SendMessageBatchRequestEntry> batchEntries = new ArrayList<SendMessageBatchRequestEntry>();
+		for (int i = 1; i <= count; i++) {
+			SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry();
+			entry.setMessageBody(generateString(messageLength));
+			entry.setId("entry_" + i);
+			batchEntries.add(entry);
+		}
+		return batchEntries;
 	}
 
 	private String generateString(int messageLength) {
@@ -15,6 +15,7 @@
 
 package com.amazon.sqs.javamessaging;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import junit.framework.Assert;
@@ -116,5 +117,32 @@ public class ExtendedClientConfigurationTest {
 
     }
 
+    @Test
+    public void testMultipartUploadSettings() {
+
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration();
+
+        Assert.assertEquals(SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_THRESHOLD,
+                extendedClientConfiguration.getMultipartUploadThreshold());
+        Assert.assertEquals(SQSExtendedClientConstants.DEFAULT_MULTIPART_UPLOAD_PART_SIZE,
+                extendedClientConfiguration.getMultipartUploadPartSize());
+
+        extendedClientConfiguration.withMultipartUploadThreshold(100L * 1024 * 1024)
+                .withMultipartUploadPartSize(16 * 1024 * 1024).withMultipartUploadParallelism(8)
+                .withMultipartUploadPartRetries(0);
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfiguration);
+
+        Assert.assertEquals(100L * 1024 * 1024, newExtendedClientConfig.getMultipartUploadThreshold());
+        Assert.assertEquals(16 * 1024 * 1024, newExtendedClientConfig.getMultipartUploadPartSize());
+        Assert.assertEquals(8, newExtendedClientConfig.getMultipartUploadParallelism());
+        Assert.assertEquals(0, newExtendedClientConfig.getMultipartUploadPartRetries());
+
+        try {
+            extendedClientConfiguration.setMultipartUploadPartSize(1024);
+            Assert.fail("Expected parts smaller than the S3 minimum to be rejected.");
+        } catch (AmazonClientException e) {
+            // expected
+        }
+    }
 
 }